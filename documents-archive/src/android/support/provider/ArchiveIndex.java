@@ -0,0 +1,363 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.provider;
+
+import android.support.annotation.Nullable;
+import android.support.v4.util.AtomicFile;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+/**
+ * Entries of an archive by path, and the children of each directory.
+ *
+ * <p>The index can be saved to a file, and loaded instead of rebuilding it as long as the
+ * archive's size, modification time and the checksum of its end didn't change. The
+ * modification time alone may only have a resolution of seconds, while the end of an archive
+ * holds its central directory, which changes with any entry.
+ *
+ * <p>This class is immutable once built or loaded.
+ *
+ * @hide
+ */
+final class ArchiveIndex {
+    private static final String TAG = "ArchiveIndex";
+
+    private static final int MAGIC = 0x41524958;
+    private static final int VERSION = 2;
+    private static final String ROOT_PATH = "/";
+    // The end of central directory record with the longest comment.
+    private static final int CHECKSUM_SIZE = 22 + 0xffff;
+
+    // Guards the index files, so that archives opened at the same time don't write an index
+    // file while it is being read or written.
+    private static final Object sFileLock = new Object();
+
+    private final Map<String, ZipEntry> mEntries;
+    private final Map<String, List<ZipEntry>> mTree;
+
+    private ArchiveIndex(Map<String, ZipEntry> entries, Map<String, List<ZipEntry>> tree) {
+        mEntries = entries;
+        mTree = tree;
+    }
+
+    /**
+     * Returns the entry with the path, or null if there is none.
+     */
+    @Nullable
+    ZipEntry getEntry(String path) {
+        return mEntries.get(path);
+    }
+
+    /**
+     * Returns the children of the directory with the path, or null if there is no such
+     * directory. The root directory has the path "/".
+     */
+    @Nullable
+    List<ZipEntry> getChildren(String path) {
+        return mTree.get(path);
+    }
+
+    /**
+     * Builds the index of the archive's entries, adding any directories which are missing from
+     * the archive.
+     */
+    static ArchiveIndex build(List<? extends ZipEntry> entries) throws IOException {
+        // Build the tree structure in memory.
+        final Map<String, List<ZipEntry>> tree = new HashMap<String, List<ZipEntry>>();
+        tree.put(ROOT_PATH, new ArrayList<ZipEntry>());
+
+        final Map<String, ZipEntry> entriesByPath = new HashMap<String, ZipEntry>();
+        ZipEntry entry;
+        final Stack<ZipEntry> stack = new Stack<>();
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            entry = entries.get(i);
+            if (entry.isDirectory() != entry.getName().endsWith("/")) {
+                throw new IOException(
+                        "Directories must have a trailing slash, and files must not.");
+            }
+            if (entriesByPath.containsKey(entry.getName())) {
+                throw new IOException("Multiple entries with the same name are not supported.");
+            }
+            entriesByPath.put(entry.getName(), entry);
+            if (entry.isDirectory()) {
+                tree.put(entry.getName(), new ArrayList<ZipEntry>());
+            }
+            stack.push(entry);
+        }
+
+        int delimiterIndex;
+        String parentPath;
+        ZipEntry parentEntry;
+        List<ZipEntry> parentList;
+
+        while (stack.size() > 0) {
+            entry = stack.pop();
+
+            delimiterIndex = entry.getName().lastIndexOf('/', entry.isDirectory()
+                    ? entry.getName().length() - 2 : entry.getName().length() - 1);
+            parentPath =
+                    delimiterIndex != -1 ? entry.getName().substring(0, delimiterIndex) + "/" : "/";
+            parentList = tree.get(parentPath);
+
+            if (parentList == null) {
+                parentEntry = entriesByPath.get(parentPath);
+                if (parentEntry == null) {
+                    // The ZIP file doesn't contain all directories leading to the entry.
+                    // It's rare, but can happen in a valid ZIP archive. In such case create a
+                    // fake ZipEntry and add it on top of the stack to process it next.
+                    parentEntry = new ZipEntry(parentPath);
+                    parentEntry.setSize(0);
+                    parentEntry.setTime(entry.getTime());
+                    entriesByPath.put(parentPath, parentEntry);
+                    stack.push(parentEntry);
+                }
+                parentList = new ArrayList<ZipEntry>();
+                tree.put(parentPath, parentList);
+            }
+
+            parentList.add(entry);
+        }
+
+        return new ArchiveIndex(entriesByPath, tree);
+    }
+
+    /**
+     * Computes the checksum of the end of the archive, which holds its central directory.
+     *
+     * @param channel Channel of the archive, whose position is not changed.
+     * @param archiveSize Size of the archive file.
+     */
+    static long computeChecksum(FileChannel channel, long archiveSize) throws IOException {
+        final int length = (int) Math.min(archiveSize, CHECKSUM_SIZE);
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        final long start = archiveSize - length;
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start + buffer.position()) < 0) {
+                throw new IOException("The archive is shorter than its size.");
+            }
+        }
+        final CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, length);
+        return crc.getValue();
+    }
+
+    /**
+     * Saves the index to the file, replacing it atomically.
+     *
+     * @param archiveId ID of the archive document, checked when loading.
+     * @param seekable Whether the entries were read by {@link SeekableZipFile}.
+     * @param archiveSize Size of the archive file, checked when loading.
+     * @param archiveTime Modification time of the archive file, checked when loading.
+     * @param archiveChecksum Checksum from {@link #computeChecksum}, checked when loading.
+     */
+    void writeTo(AtomicFile file, String archiveId, boolean seekable, long archiveSize,
+            long archiveTime, long archiveChecksum) {
+        synchronized (sFileLock) {
+            writeToLocked(file, archiveId, seekable, archiveSize, archiveTime, archiveChecksum);
+        }
+    }
+
+    private void writeToLocked(AtomicFile file, String archiveId, boolean seekable,
+            long archiveSize, long archiveTime, long archiveChecksum) {
+        FileOutputStream fileStream = null;
+        try {
+            fileStream = file.startWrite();
+            final DataOutputStream out =
+                    new DataOutputStream(new BufferedOutputStream(fileStream));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(archiveId);
+            out.writeBoolean(seekable);
+            out.writeLong(archiveSize);
+            out.writeLong(archiveTime);
+            out.writeLong(archiveChecksum);
+
+            // Entries are referenced by their position in the file.
+            final Map<ZipEntry, Integer> ids = new IdentityHashMap<>(mEntries.size());
+            out.writeInt(mEntries.size());
+            for (ZipEntry entry : mEntries.values()) {
+                ids.put(entry, ids.size());
+                writeEntry(out, entry);
+            }
+
+            out.writeInt(mTree.size());
+            for (Map.Entry<String, List<ZipEntry>> directory : mTree.entrySet()) {
+                final String path = directory.getKey();
+                out.writeInt(ROOT_PATH.equals(path) ? -1 : ids.get(mEntries.get(path)));
+                final List<ZipEntry> children = directory.getValue();
+                out.writeInt(children.size());
+                for (ZipEntry child : children) {
+                    out.writeInt(ids.get(child));
+                }
+            }
+            out.flush();
+            file.finishWrite(fileStream);
+        } catch (IOException e) {
+            // Names which can't be written as modified UTF-8 end up here too. The index will
+            // just be rebuilt the next time.
+            Log.w(TAG, "Failed to save the archive index.", e);
+            if (fileStream != null) {
+                file.failWrite(fileStream);
+            }
+        }
+    }
+
+    /**
+     * Loads an index saved by {@link #writeTo}.
+     *
+     * @return The index, or null if there is none for the archive, or if the archive changed.
+     */
+    @Nullable
+    static ArchiveIndex readFrom(AtomicFile file, String archiveId, boolean seekable,
+            long archiveSize, long archiveTime, long archiveChecksum) {
+        synchronized (sFileLock) {
+            return readFromLocked(
+                    file, archiveId, seekable, archiveSize, archiveTime, archiveChecksum);
+        }
+    }
+
+    @Nullable
+    private static ArchiveIndex readFromLocked(AtomicFile file, String archiveId,
+            boolean seekable, long archiveSize, long archiveTime, long archiveChecksum) {
+        try (final DataInputStream in =
+                new DataInputStream(new BufferedInputStream(file.openRead()))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION
+                    || !archiveId.equals(in.readUTF()) || in.readBoolean() != seekable
+                    || in.readLong() != archiveSize || in.readLong() != archiveTime
+                    || in.readLong() != archiveChecksum) {
+                return null;
+            }
+
+            final int entryCount = in.readInt();
+            if (entryCount < 0) {
+                throw new IOException("Invalid entry count.");
+            }
+            final ZipEntry[] entries = new ZipEntry[entryCount];
+            final Map<String, ZipEntry> entriesByPath = new HashMap<>(entryCount * 4 / 3 + 1);
+            for (int i = 0; i < entryCount; i++) {
+                entries[i] = readEntry(in);
+                entriesByPath.put(entries[i].getName(), entries[i]);
+            }
+
+            final int directoryCount = in.readInt();
+            if (directoryCount < 1 || directoryCount > entryCount + 1) {
+                throw new IOException("Invalid directory count.");
+            }
+            final Map<String, List<ZipEntry>> tree = new HashMap<>(directoryCount * 4 / 3 + 1);
+            for (int i = 0; i < directoryCount; i++) {
+                final int id = in.readInt();
+                final String path = id == -1 ? ROOT_PATH : getEntry(entries, id).getName();
+                final int childCount = in.readInt();
+                if (childCount < 0 || childCount > entryCount) {
+                    throw new IOException("Invalid child count.");
+                }
+                final List<ZipEntry> children = new ArrayList<>(childCount);
+                for (int j = 0; j < childCount; j++) {
+                    children.add(getEntry(entries, in.readInt()));
+                }
+                tree.put(path, children);
+            }
+            if (!tree.containsKey(ROOT_PATH)) {
+                throw new IOException("Missing root directory.");
+            }
+            return new ArchiveIndex(entriesByPath, tree);
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to load the archive index.", e);
+            return null;
+        }
+    }
+
+    private static void writeEntry(DataOutputStream out, ZipEntry entry) throws IOException {
+        out.writeUTF(entry.getName());
+        out.writeInt(entry.getMethod());
+        out.writeLong(entry.getSize());
+        out.writeLong(entry.getCompressedSize());
+        out.writeLong(entry.getCrc());
+        out.writeLong(entry.getTime());
+        if (entry instanceof SeekableZipFile.Entry) {
+            final SeekableZipFile.Entry seekableEntry = (SeekableZipFile.Entry) entry;
+            out.writeLong(seekableEntry.mLocalHeaderOffset);
+            out.writeBoolean(seekableEntry.mEncrypted);
+        } else {
+            out.writeLong(-1);
+            out.writeBoolean(false);
+        }
+    }
+
+    private static ZipEntry readEntry(DataInputStream in) throws IOException {
+        final String name = in.readUTF();
+        final int method = in.readInt();
+        final long size = in.readLong();
+        final long compressedSize = in.readLong();
+        final long crc = in.readLong();
+        final long time = in.readLong();
+        final long localHeaderOffset = in.readLong();
+        final boolean encrypted = in.readBoolean();
+
+        final ZipEntry entry;
+        if (localHeaderOffset >= 0) {
+            entry = new SeekableZipFile.Entry(
+                    name, method, size, compressedSize, localHeaderOffset, encrypted);
+        } else {
+            // An entry read by ZipFile, which only needs the name to find it again, or a
+            // directory added by build().
+            entry = new ZipEntry(name);
+            if (method == ZipEntry.STORED || method == ZipEntry.DEFLATED) {
+                entry.setMethod(method);
+            }
+            if (size >= 0) {
+                entry.setSize(size);
+            }
+            if (compressedSize >= 0) {
+                entry.setCompressedSize(compressedSize);
+            }
+        }
+        if (crc >= 0) {
+            entry.setCrc(crc);
+        }
+        if (time != -1) {
+            entry.setTime(time);
+        }
+        return entry;
+    }
+
+    private static ZipEntry getEntry(ZipEntry[] entries, int id) throws IOException {
+        if (id < 0 || id >= entries.length) {
+            throw new IOException("Invalid entry reference.");
+        }
+        return entries[id];
+    }
+}
@@ -23,6 +23,7 @@ import android.database.MatrixCursor;
 import android.graphics.Point;
 import android.media.ExifInterface;
 import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
 import android.os.CancellationSignal;
 import android.os.OperationCanceledException;
@@ -31,28 +32,28 @@ import android.provider.DocumentsContract;
 import android.provider.DocumentsContract.Document;
 import android.provider.DocumentsProvider;
 import android.support.annotation.Nullable;
+import android.support.v4.util.AtomicFile;
 import android.util.Log;
 import android.webkit.MimeTypeMap;
 
 import java.io.Closeable;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
 import java.lang.IllegalArgumentException;
 import java.lang.IllegalStateException;
 import java.lang.UnsupportedOperationException;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
-import java.util.Stack;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
@@ -78,85 +79,116 @@ public class DocumentArchive implements Closeable {
             Document.COLUMN_FLAGS
     };
 
+    // Maximum number of documents copied to pipes at the same time. Further opened documents
+    // wait until one of them is done.
+    private static final int MAX_OPEN_DOCUMENT_THREADS = 4;
+    private static final long OPEN_DOCUMENT_THREAD_KEEP_ALIVE_MS = 10 * 1000;
+    private static final int TRANSFER_SIZE = 256 * 1024;
+
     private final Context mContext;
     private final String mDocumentId;
     private final char mIdDelimiter;
     private final Uri mNotificationUri;
+    // Exactly one of mZipFile and mSeekableZipFile is set, depending on how the archive was
+    // created.
     private final ZipFile mZipFile;
-    private final ExecutorService mExecutor;
-    private final Map<String, ZipEntry> mEntries;
-    private final Map<String, List<ZipEntry>> mTree;
+    private final SeekableZipFile mSeekableZipFile;
+    private final ParcelFileDescriptor mDescriptor;
+    private final ThreadPoolExecutor mExecutor;
+    private final ArchiveIndex mIndex;
 
     private DocumentArchive(
             Context context,
-            File file,
+            @Nullable File file,
+            @Nullable ParcelFileDescriptor descriptor,
             String documentId,
             char idDelimiter,
-            @Nullable Uri notificationUri)
+            @Nullable Uri notificationUri,
+            @Nullable File indexFile)
             throws IOException {
         mContext = context;
         mDocumentId = documentId;
         mIdDelimiter = idDelimiter;
         mNotificationUri = notificationUri;
-        mZipFile = new ZipFile(file);
-        mExecutor = Executors.newSingleThreadExecutor();
-
-        // Build the tree structure in memory.
-        mTree = new HashMap<String, List<ZipEntry>>();
-        mTree.put("/", new ArrayList<ZipEntry>());
-
-        mEntries = new HashMap<String, ZipEntry>();
-        ZipEntry entry;
-        final List<? extends ZipEntry> entries = Collections.list(mZipFile.entries());
-        final Stack<ZipEntry> stack = new Stack<>();
-        for (int i = entries.size() - 1; i >= 0; i--) {
-            entry = entries.get(i);
-            if (entry.isDirectory() != entry.getName().endsWith("/")) {
-                throw new IOException(
-                        "Directories must have a trailing slash, and files must not.");
+        final FileChannel channel;
+        if (file != null) {
+            mZipFile = new ZipFile(file);
+            mSeekableZipFile = null;
+            mDescriptor = null;
+            channel = null;
+        } else {
+            // Read the archive in place with positional reads, instead of copying it.
+            channel = new FileInputStream(descriptor.getFileDescriptor()).getChannel();
+            mZipFile = null;
+            mSeekableZipFile = new SeekableZipFile(channel);
+            mDescriptor = descriptor;
+        }
+        mExecutor = new ThreadPoolExecutor(MAX_OPEN_DOCUMENT_THREADS, MAX_OPEN_DOCUMENT_THREADS,
+                OPEN_DOCUMENT_THREAD_KEEP_ALIVE_MS, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>()) {
+            @Override
+            protected void terminated() {
+                // All opened documents have been copied, so the archive can be closed.
+                IoUtils.closeQuietly(mZipFile);
+                IoUtils.closeQuietly(mSeekableZipFile);
+                IoUtils.closeQuietly(mDescriptor);
             }
-            if (mEntries.containsKey(entry.getName())) {
-                throw new IOException("Multiple entries with the same name are not supported.");
+        };
+        mExecutor.allowCoreThreadTimeOut(true);
+
+        // Load the index of the archive if it didn't change since it was saved, otherwise
+        // build it from the entries.
+        long archiveSize = -1;
+        long archiveTime = -1;
+        long archiveChecksum = -1;
+        if (indexFile != null) {
+            if (file != null) {
+                archiveSize = file.length();
+                archiveTime = file.lastModified();
+            } else if (Build.VERSION.SDK_INT >= 21) {
+                try {
+                    final long[] stat = OsCompatApi21.fstat(descriptor.getFileDescriptor());
+                    archiveSize = stat[0];
+                    archiveTime = stat[1];
+                } catch (IOException e) {
+                    Log.w(TAG, "Failed to stat the archive, not using the index file.", e);
+                }
             }
-            mEntries.put(entry.getName(), entry);
-            if (entry.isDirectory()) {
-                mTree.put(entry.getName(), new ArrayList<ZipEntry>());
+            // The modification time may only have a resolution of seconds, so the end of the
+            // archive is checked as well.
+            if (archiveTime > 0) {
+                try {
+                    if (file != null) {
+                        try (final RandomAccessFile archive = new RandomAccessFile(file, "r")) {
+                            archiveChecksum = ArchiveIndex.computeChecksum(
+                                    archive.getChannel(), archiveSize);
+                        }
+                    } else {
+                        archiveChecksum = ArchiveIndex.computeChecksum(channel, archiveSize);
+                    }
+                } catch (IOException e) {
+                    Log.w(TAG, "Failed to read the archive, not using the index file.", e);
+                    archiveTime = -1;
+                }
             }
-            stack.push(entry);
         }
-
-        int delimiterIndex;
-        String parentPath;
-        ZipEntry parentEntry;
-        List<ZipEntry> parentList;
-
-        while (stack.size() > 0) {
-            entry = stack.pop();
-
-            delimiterIndex = entry.getName().lastIndexOf('/', entry.isDirectory()
-                    ? entry.getName().length() - 2 : entry.getName().length() - 1);
-            parentPath =
-                    delimiterIndex != -1 ? entry.getName().substring(0, delimiterIndex) + "/" : "/";
-            parentList = mTree.get(parentPath);
-
-            if (parentList == null) {
-                parentEntry = mEntries.get(parentPath);
-                if (parentEntry == null) {
-                    // The ZIP file doesn't contain all directories leading to the entry.
-                    // It's rare, but can happen in a valid ZIP archive. In such case create a
-                    // fake ZipEntry and add it on top of the stack to process it next.
-                    parentEntry = new ZipEntry(parentPath);
-                    parentEntry.setSize(0);
-                    parentEntry.setTime(entry.getTime());
-                    mEntries.put(parentPath, parentEntry);
-                    stack.push(parentEntry);
-                }
-                parentList = new ArrayList<ZipEntry>();
-                mTree.put(parentPath, parentList);
+        final AtomicFile atomicIndexFile =
+                archiveTime > 0 ? new AtomicFile(indexFile) : null;
+        final boolean seekable = mSeekableZipFile != null;
+        ArchiveIndex index = null;
+        if (atomicIndexFile != null) {
+            index = ArchiveIndex.readFrom(atomicIndexFile, documentId, seekable, archiveSize,
+                    archiveTime, archiveChecksum);
+        }
+        if (index == null) {
+            index = ArchiveIndex.build(mZipFile != null
+                    ? Collections.list(mZipFile.entries()) : mSeekableZipFile.entries());
+            if (atomicIndexFile != null) {
+                index.writeTo(atomicIndexFile, documentId, seekable, archiveSize, archiveTime,
+                        archiveChecksum);
             }
-
-            parentList.add(entry);
         }
+        mIndex = index;
     }
 
     /**
@@ -176,7 +208,26 @@ public class DocumentArchive implements Closeable {
             Context context, File file, String documentId, char idDelimiter,
             @Nullable Uri notificationUri)
             throws IOException {
-        return new DocumentArchive(context, file, documentId, idDelimiter, notificationUri);
+        return createForLocalFile(context, file, documentId, idDelimiter, notificationUri, null);
+    }
+
+    /**
+     * Creates a DocumentsArchive instance for opening, browsing and accessing
+     * documents within the archive passed as a local file, using an index file to avoid
+     * listing all entries of the archive again.
+     *
+     * @param indexFile File to load the archive's index from, as long as the archive's size,
+     *            modification time and central directory are the same as when it was saved.
+     *            Otherwise the index is built and saved to the file. Each archive must use a
+     *            different file.
+     * @see createForLocalFile(Context, File, String, char, Uri)
+     */
+    public static DocumentArchive createForLocalFile(
+            Context context, File file, String documentId, char idDelimiter,
+            @Nullable Uri notificationUri, @Nullable File indexFile)
+            throws IOException {
+        return new DocumentArchive(context, file, null, documentId, idDelimiter,
+                notificationUri, indexFile);
     }
 
     /**
@@ -184,9 +235,10 @@ public class DocumentArchive implements Closeable {
      * documents within the archive passed as a file descriptor.
      *
      * <p>Note, that this method should be used only if the document does not exist
-     * on the local storage. A snapshot file will be created, which may be slower
-     * and consume significant resources, in contrast to using
-     * {@see createForLocalFile(Context, File, String, char, Uri}.
+     * on the local storage. If the descriptor is seekable, the archive is read in place and
+     * the descriptor is kept open until the archive is closed. Otherwise, a snapshot file
+     * will be created, which may be slower and consume significant resources, in contrast to
+     * using {@see createForLocalFile(Context, File, String, char, Uri}.
      *
      * @param context Context of the provider.
      * @param descriptor File descriptor for the archive's contents.
@@ -200,6 +252,39 @@ public class DocumentArchive implements Closeable {
             Context context, ParcelFileDescriptor descriptor, String documentId,
             char idDelimiter, @Nullable Uri notificationUri)
             throws IOException {
+        return createForParcelFileDescriptor(context, descriptor, documentId, idDelimiter,
+                notificationUri, null);
+    }
+
+    /**
+     * Creates a DocumentsArchive instance for opening, browsing and accessing
+     * documents within the archive passed as a file descriptor, using an index file to avoid
+     * listing all entries of the archive again.
+     *
+     * <p>The index file is only used for seekable descriptors on API 21 and newer, where the
+     * archive's modification time is available.
+     *
+     * @param indexFile File to load the archive's index from, as long as the archive's size,
+     *            modification time and central directory are the same as when it was saved.
+     *            Otherwise the index is built and saved to the file. Each archive must use a
+     *            different file.
+     * @see createForParcelFileDescriptor(Context, ParcelFileDescriptor, String, char, Uri)
+     */
+    public static DocumentArchive createForParcelFileDescriptor(
+            Context context, ParcelFileDescriptor descriptor, String documentId,
+            char idDelimiter, @Nullable Uri notificationUri, @Nullable File indexFile)
+            throws IOException {
+        // Only regular files have a size, while pipes and sockets can't be seeked.
+        if (descriptor.getStatSize() >= 0) {
+            try {
+                return new DocumentArchive(context, null, descriptor, documentId, idDelimiter,
+                        notificationUri, indexFile);
+            } catch (IOException | RuntimeException e) {
+                IoUtils.closeQuietly(descriptor);
+                throw e;
+            }
+        }
+
         File snapshotFile = null;
         try {
             // Create a copy of the archive, as ZipFile doesn't operate on streams.
@@ -222,8 +307,8 @@ public class DocumentArchive implements Closeable {
                     outputStream.write(buffer, 0, bytes);
                 }
                 outputStream.flush();
-                return new DocumentArchive(context, snapshotFile, documentId, idDelimiter,
-                        notificationUri);
+                return new DocumentArchive(context, snapshotFile, null, documentId, idDelimiter,
+                        notificationUri, null);
             }
         } finally {
             // On UNIX the file will be still available for processes which opened it, even
@@ -255,7 +340,7 @@ public class DocumentArchive implements Closeable {
             result.setNotificationUri(mContext.getContentResolver(), mNotificationUri);
         }
 
-        final List<ZipEntry> parentList = mTree.get(parentPath);
+        final List<ZipEntry> parentList = mIndex.getChildren(parentPath);
         if (parentList == null) {
             throw new FileNotFoundException();
         }
@@ -277,7 +362,7 @@ public class DocumentArchive implements Closeable {
                 "Mismatching document ID. Expected: %s, actual: %s.");
         Preconditions.checkArgumentNotNull(parsedId.mPath, "Not a document within an archive.");
 
-        final ZipEntry entry = mEntries.get(parsedId.mPath);
+        final ZipEntry entry = mIndex.getEntry(parsedId.mPath);
         if (entry == null) {
             throw new FileNotFoundException();
         }
@@ -300,7 +385,7 @@ public class DocumentArchive implements Closeable {
         Preconditions.checkArgumentNotNull(parsedId.mPath,
                 "Not a document within an archive.");
 
-        final ZipEntry entry = mEntries.get(parsedId.mPath);
+        final ZipEntry entry = mIndex.getEntry(parsedId.mPath);
         if (entry == null) {
             return false;
         }
@@ -311,7 +396,7 @@ public class DocumentArchive implements Closeable {
             return true;
         }
 
-        final ZipEntry parentEntry = mEntries.get(parsedParentId.mPath);
+        final ZipEntry parentEntry = mIndex.getEntry(parsedParentId.mPath);
         if (parentEntry == null || !parentEntry.isDirectory()) {
             return false;
         }
@@ -337,7 +422,7 @@ public class DocumentArchive implements Closeable {
                 "Mismatching document ID. Expected: %s, actual: %s.");
         Preconditions.checkArgumentNotNull(parsedId.mPath, "Not a document within an archive.");
 
-        final ZipEntry entry = mEntries.get(parsedId.mPath);
+        final ZipEntry entry = mIndex.getEntry(parsedId.mPath);
         if (entry == null) {
             throw new FileNotFoundException();
         }
@@ -367,7 +452,7 @@ public class DocumentArchive implements Closeable {
                 "Mismatching document ID. Expected: %s, actual: %s.");
         Preconditions.checkArgumentNotNull(parsedId.mPath, "Not a document within an archive.");
 
-        final ZipEntry entry = mEntries.get(parsedId.mPath);
+        final ZipEntry entry = mIndex.getEntry(parsedId.mPath);
         if (entry == null) {
             throw new FileNotFoundException();
         }
@@ -376,7 +461,9 @@ public class DocumentArchive implements Closeable {
         InputStream inputStream = null;
         try {
             pipe = ParcelFileDescriptor.createReliablePipe();
-            inputStream = mZipFile.getInputStream(entry);
+            if (mSeekableZipFile == null || !mSeekableZipFile.isStored(entry)) {
+                inputStream = getInputStream(entry);
+            }
         } catch (IOException e) {
             if (inputStream != null) {
                 IoUtils.closeQuietly(inputStream);
@@ -394,16 +481,20 @@ public class DocumentArchive implements Closeable {
                         try (final ParcelFileDescriptor.AutoCloseOutputStream outputStream =
                                 new ParcelFileDescriptor.AutoCloseOutputStream(outputPipe)) {
                             try {
-                                final byte buffer[] = new byte[32 * 1024];
-                                int bytes;
-                                while ((bytes = finalInputStream.read(buffer)) != -1) {
-                                    if (Thread.interrupted()) {
-                                        throw new InterruptedException();
+                                if (finalInputStream == null) {
+                                    transferStoredEntry(entry, outputStream.getChannel(), signal);
+                                } else {
+                                    final byte buffer[] = new byte[32 * 1024];
+                                    int bytes;
+                                    while ((bytes = finalInputStream.read(buffer)) != -1) {
+                                        if (Thread.interrupted()) {
+                                            throw new InterruptedException();
+                                        }
+                                        if (signal != null) {
+                                            signal.throwIfCanceled();
+                                        }
+                                        outputStream.write(buffer, 0, bytes);
                                     }
-                                    if (signal != null) {
-                                        signal.throwIfCanceled();
-                                    }
-                                    outputStream.write(buffer, 0, bytes);
                                 }
                             } catch (IOException | InterruptedException e) {
                                 // Catch the exception before the outer try-with-resource closes the
@@ -442,14 +533,14 @@ public class DocumentArchive implements Closeable {
         Preconditions.checkArgument(getDocumentType(documentId).startsWith("image/"),
                 "Thumbnails only supported for image/* MIME type.");
 
-        final ZipEntry entry = mEntries.get(parsedId.mPath);
+        final ZipEntry entry = mIndex.getEntry(parsedId.mPath);
         if (entry == null) {
             throw new FileNotFoundException();
         }
 
         InputStream inputStream = null;
         try {
-            inputStream = mZipFile.getInputStream(entry);
+            inputStream = getInputStream(entry);
             final ExifInterface exif = new ExifInterface(inputStream);
             if (exif.hasThumbnail()) {
                 Bundle extras = null;
@@ -468,6 +559,11 @@ public class DocumentArchive implements Closeable {
                         break;
                 }
                 final long[] range = exif.getThumbnailRange();
+                if (isStoredInPlace(entry)) {
+                    // Point directly at the thumbnail within the archive, without a pipe.
+                    return new AssetFileDescriptor(mDescriptor.dup(),
+                            mSeekableZipFile.getDataOffset(entry) + range[0], range[1], extras);
+                }
                 return new AssetFileDescriptor(
                         openDocument(documentId, "r", signal), range[0], range[1], extras);
             }
@@ -478,6 +574,14 @@ public class DocumentArchive implements Closeable {
             IoUtils.closeQuietly(inputStream);
         }
 
+        if (isStoredInPlace(entry)) {
+            try {
+                return new AssetFileDescriptor(mDescriptor.dup(),
+                        mSeekableZipFile.getDataOffset(entry), entry.getSize(), null);
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to open the document.", e);
+            }
+        }
         return new AssetFileDescriptor(
                 openDocument(documentId, "r", signal), 0, entry.getSize(), null);
     }
@@ -490,15 +594,45 @@ public class DocumentArchive implements Closeable {
      */
     @Override
     public void close() {
-        mExecutor.execute(new Runnable() {
-            @Override
-            public void run() {
-                IoUtils.closeQuietly(mZipFile);
-            }
-        });
+        // The archive is closed once the executor terminates.
         mExecutor.shutdown();
     }
 
+    private InputStream getInputStream(ZipEntry entry) throws IOException {
+        return mZipFile != null
+                ? mZipFile.getInputStream(entry) : mSeekableZipFile.getInputStream(entry);
+    }
+
+    /**
+     * Returns true if the entry's contents can be served as a range of the archive descriptor.
+     */
+    private boolean isStoredInPlace(ZipEntry entry) {
+        return mSeekableZipFile != null && mSeekableZipFile.isStored(entry);
+    }
+
+    /**
+     * Copies a STORED entry of a seekable archive to the output channel, in chunks so that
+     * cancellation is still checked.
+     */
+    private void transferStoredEntry(ZipEntry entry, FileChannel outputChannel,
+            @Nullable CancellationSignal signal) throws IOException, InterruptedException {
+        long position = 0;
+        while (position < entry.getSize()) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (signal != null) {
+                signal.throwIfCanceled();
+            }
+            final long bytes = mSeekableZipFile.transferStoredTo(
+                    entry, position, TRANSFER_SIZE, outputChannel);
+            if (bytes <= 0) {
+                throw new IOException("Failed to copy the document.");
+            }
+            position += bytes;
+        }
+    }
+
     private void addCursorRow(MatrixCursor cursor, ZipEntry entry) {
         final MatrixCursor.RowBuilder row = cursor.newRow();
         final ParsedDocumentId parsedId = new ParsedDocumentId(mDocumentId, entry.getName());
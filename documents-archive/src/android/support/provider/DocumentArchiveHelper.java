@@ -71,6 +71,9 @@ public class DocumentArchiveHelper implements Closeable {
     private final DocumentsProvider mProvider;
     private final char mIdDelimiter;
 
+    // @GuardedBy("mArchives")
+    private File mIndexDirectory;
+
     // @GuardedBy("mArchives")
     private final LruCache<String, Loader> mArchives =
             new LruCache<String, Loader>(OPENED_ARCHIVES_CACHE_SIZE) {
@@ -103,6 +106,20 @@ public class DocumentArchiveHelper implements Closeable {
         mIdDelimiter = idDelimiter;
     }
 
+    /**
+     * Sets a directory for saving the index of each opened archive, so that archives which didn't
+     * change can be opened again without listing all of their entries. Only affects archives
+     * opened afterwards.
+     *
+     * @param directory Directory for the index files, eg. in the cache directory, or null to
+     *            not save indexes.
+     */
+    public void setIndexDirectory(@Nullable File directory) {
+        synchronized (mArchives) {
+            mIndexDirectory = directory;
+        }
+    }
+
     /**
      * Lists child documents of an archive or a directory within an
      * archive. Must be called only for archives with supported mime type,
@@ -284,8 +301,13 @@ public class DocumentArchiveHelper implements Closeable {
             final String localFilePath = columnIndex != -1 ? cursor.getString(columnIndex) : null;
             final File localFile = localFilePath != null ? new File(localFilePath) : null;
             final Uri notificationUri = cursor.getNotificationUri();
+            // Index files are checked to belong to the archive when loaded, so a hash is enough.
+            final File indexFile = mIndexDirectory != null
+                    ? new File(mIndexDirectory, "archive-index-"
+                            + Integer.toHexString(id.mArchiveId.hashCode()))
+                    : null;
             final Loader loader = new Loader(mProvider, localFile, id, mIdDelimiter,
-                    notificationUri);
+                    notificationUri, indexFile);
 
             // Remove the instance from mArchives collection once the archive file changes.
             if (notificationUri != null) {
@@ -323,16 +345,18 @@ public class DocumentArchiveHelper implements Closeable {
         private final ParsedDocumentId mId;
         private final char mIdDelimiter;
         private final Uri mNotificationUri;
+        private final File mIndexFile;
         private final ReentrantReadWriteLock mLock = new ReentrantReadWriteLock();
         private DocumentArchive mArchive = null;
 
         Loader(DocumentsProvider provider, @Nullable File localFile, ParsedDocumentId id,
-                char idDelimiter, Uri notificationUri) {
+                char idDelimiter, Uri notificationUri, @Nullable File indexFile) {
             this.mProvider = provider;
             this.mLocalFile = localFile;
             this.mId = id;
             this.mIdDelimiter = idDelimiter;
             this.mNotificationUri = notificationUri;
+            this.mIndexFile = indexFile;
         }
 
         synchronized DocumentArchive get() throws FileNotFoundException {
@@ -344,12 +368,12 @@ public class DocumentArchiveHelper implements Closeable {
                 if (mLocalFile != null) {
                     mArchive = DocumentArchive.createForLocalFile(
                             mProvider.getContext(), mLocalFile, mId.mArchiveId, mIdDelimiter,
-                            mNotificationUri);
+                            mNotificationUri, mIndexFile);
                 } else {
                     mArchive = DocumentArchive.createForParcelFileDescriptor(
                             mProvider.getContext(),
                             mProvider.openDocument(mId.mArchiveId, "r", null /* signal */),
-                            mId.mArchiveId, mIdDelimiter, mNotificationUri);
+                            mId.mArchiveId, mIdDelimiter, mNotificationUri, mIndexFile);
                 }
             } catch (IOException e) {
                 throw new IllegalStateException(e);
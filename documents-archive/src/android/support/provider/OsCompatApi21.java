@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.provider;
+
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.StructStat;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+
+/**
+ * Static methods calling the API 21 {@link Os} class, so it is only loaded on API 21 and
+ * later.
+ * @hide
+ */
+final class OsCompatApi21 {
+    /**
+     * Returns the size and the last modification time of an open file.
+     *
+     * @return An array holding the size in bytes, then the modification time in seconds.
+     * @throws IOException if the file can't be read.
+     */
+    static long[] fstat(FileDescriptor fd) throws IOException {
+        try {
+            final StructStat stat = Os.fstat(fd);
+            return new long[] { stat.st_size, stat.st_mtime };
+        } catch (ErrnoException e) {
+            throw new IOException(e);
+        }
+    }
+}
@@ -0,0 +1,441 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.provider;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Reads ZIP archives directly from a seekable channel, without copying them first.
+ *
+ * <p>Only the central directory is read, and only when the entries are listed, so entries of
+ * a known archive can be read without it. Entries are read with positional reads, so
+ * any number of them can be read concurrently. STORED entries can also be served as an
+ * offset and length within the archive.
+ *
+ * @hide
+ */
+final class SeekableZipFile implements Closeable {
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int END_SIZE = 22;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_END_SIZE = 56;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final int EXTENDED_TIMESTAMP_EXTRA_ID = 0x5455;
+    private static final int MAX_COMMENT_SIZE = 0xffff;
+    private static final long ZIP64_MAGIC = 0xffffffffL;
+    private static final int FLAG_ENCRYPTED = 1;
+
+    private static final int BUFFER_SIZE = 32 * 1024;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final FileChannel mChannel;
+    // @GuardedBy("this")
+    private List<Entry> mEntries;
+
+    /**
+     * An entry in the central directory, with the location of its data.
+     */
+    static final class Entry extends ZipEntry {
+        final long mLocalHeaderOffset;
+        // ZipEntry only accepts STORED and DEFLATED, and doesn't accept sizes over 4GB on all API
+        // levels, so keep them here.
+        final int mMethod;
+        final long mSize;
+        final long mCompressedSize;
+        final boolean mEncrypted;
+        // Offset of the entry's data, read lazily from the local header.
+        long mDataOffset = -1;
+
+        Entry(String name, int method, long size, long compressedSize, long localHeaderOffset,
+                boolean encrypted) {
+            super(name);
+            mMethod = method;
+            mSize = size;
+            mCompressedSize = compressedSize;
+            mLocalHeaderOffset = localHeaderOffset;
+            mEncrypted = encrypted;
+        }
+
+        @Override
+        public int getMethod() {
+            return mMethod;
+        }
+
+        @Override
+        public long getSize() {
+            return mSize;
+        }
+
+        @Override
+        public long getCompressedSize() {
+            return mCompressedSize;
+        }
+    }
+
+    /**
+     * Creates an instance for the archive in the channel. The channel is closed together with
+     * this instance.
+     */
+    SeekableZipFile(FileChannel channel) {
+        mChannel = channel;
+    }
+
+    /**
+     * Returns all entries in the order of the central directory, reading it on the first call.
+     *
+     * @throws ZipException if the archive is malformed.
+     */
+    synchronized List<? extends ZipEntry> entries() throws IOException {
+        if (mEntries == null) {
+            mEntries = readCentralDirectory();
+        }
+        return mEntries;
+    }
+
+    /**
+     * Returns whether the entry's data can be read as-is from the archive.
+     */
+    boolean isStored(ZipEntry entry) {
+        return entry instanceof Entry && entry.getMethod() == ZipEntry.STORED
+                && !((Entry) entry).mEncrypted;
+    }
+
+    /**
+     * Returns the offset of the entry's data within the archive.
+     */
+    long getDataOffset(ZipEntry entry) throws IOException {
+        final Entry zipEntry = (Entry) entry;
+        synchronized (zipEntry) {
+            if (zipEntry.mDataOffset == -1) {
+                final ByteBuffer header = read(zipEntry.mLocalHeaderOffset, LOCAL_HEADER_SIZE);
+                if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+                    throw new ZipException("Invalid local header: " + entry.getName());
+                }
+                final int nameLength = header.getShort(26) & 0xffff;
+                final int extraLength = header.getShort(28) & 0xffff;
+                final long dataOffset = zipEntry.mLocalHeaderOffset + LOCAL_HEADER_SIZE
+                        + nameLength + extraLength;
+                if (dataOffset + zipEntry.mCompressedSize > mChannel.size()) {
+                    throw new ZipException("Entry exceeds the archive: " + entry.getName());
+                }
+                zipEntry.mDataOffset = dataOffset;
+            }
+            return zipEntry.mDataOffset;
+        }
+    }
+
+    /**
+     * Returns a stream of the entry's uncompressed contents. Streams of different entries, or of
+     * the same one, can be read concurrently.
+     */
+    InputStream getInputStream(ZipEntry entry) throws IOException {
+        if (!(entry instanceof Entry)) {
+            throw new ZipException("Not an entry of this archive: " + entry.getName());
+        }
+        final Entry zipEntry = (Entry) entry;
+        if (zipEntry.mEncrypted) {
+            throw new ZipException("Encrypted entries are not supported: " + entry.getName());
+        }
+        final InputStream rangeStream = new RangeInputStream(
+                mChannel, getDataOffset(entry), zipEntry.mCompressedSize);
+        switch (entry.getMethod()) {
+            case ZipEntry.STORED:
+                return rangeStream;
+            case ZipEntry.DEFLATED:
+                return new EntryInflaterInputStream(rangeStream);
+            default:
+                rangeStream.close();
+                throw new ZipException("Unsupported compression method: " + entry.getMethod());
+        }
+    }
+
+    /**
+     * Copies the data of a STORED entry to the target channel, without passing it through
+     * the Java heap where the platform supports it.
+     *
+     * @param position Position within the entry to copy from.
+     * @param count Maximum number of bytes to copy.
+     * @return Number of bytes copied.
+     */
+    long transferStoredTo(ZipEntry entry, long position, long count, WritableByteChannel target)
+            throws IOException {
+        final long remaining = entry.getSize() - position;
+        if (remaining <= 0) {
+            return 0;
+        }
+        return mChannel.transferTo(
+                getDataOffset(entry) + position, Math.min(count, remaining), target);
+    }
+
+    @Override
+    public void close() throws IOException {
+        mChannel.close();
+    }
+
+    private List<Entry> readCentralDirectory() throws IOException {
+        final long archiveSize = mChannel.size();
+        if (archiveSize < END_SIZE) {
+            throw new ZipException("File too short to be a ZIP archive.");
+        }
+
+        // The end of central directory record is followed by a comment of up to 64KB, so search
+        // for its signature backwards from the end.
+        final int tailSize = (int) Math.min(archiveSize, END_SIZE + MAX_COMMENT_SIZE);
+        final long tailOffset = archiveSize - tailSize;
+        final ByteBuffer tail = read(tailOffset, tailSize);
+        int endPosition = tailSize - END_SIZE;
+        while (endPosition >= 0 && tail.getInt(endPosition) != END_SIGNATURE) {
+            endPosition--;
+        }
+        if (endPosition < 0) {
+            throw new ZipException("End of central directory not found.");
+        }
+
+        long entryCount = tail.getShort(endPosition + 10) & 0xffff;
+        long directorySize = tail.getInt(endPosition + 12) & ZIP64_MAGIC;
+        long directoryOffset = tail.getInt(endPosition + 16) & ZIP64_MAGIC;
+
+        final long locatorOffset = tailOffset + endPosition - ZIP64_LOCATOR_SIZE;
+        if (locatorOffset >= 0) {
+            final ByteBuffer locator = read(locatorOffset, ZIP64_LOCATOR_SIZE);
+            if (locator.getInt(0) == ZIP64_LOCATOR_SIGNATURE) {
+                final ByteBuffer end = read(locator.getLong(8), ZIP64_END_SIZE);
+                if (end.getInt(0) != ZIP64_END_SIGNATURE) {
+                    throw new ZipException("Invalid ZIP64 end of central directory.");
+                }
+                entryCount = end.getLong(32);
+                directorySize = end.getLong(40);
+                directoryOffset = end.getLong(48);
+            }
+        }
+
+        if (directoryOffset < 0 || directorySize < 0
+                || directoryOffset + directorySize > archiveSize
+                || directorySize > Integer.MAX_VALUE
+                || entryCount > directorySize / CENTRAL_HEADER_SIZE) {
+            throw new ZipException("Invalid central directory.");
+        }
+
+        final ByteBuffer directory = read(directoryOffset, (int) directorySize);
+        final List<Entry> entries = new ArrayList<>((int) entryCount);
+        for (long i = 0; i < entryCount; i++) {
+            entries.add(readCentralHeader(directory));
+        }
+        return entries;
+    }
+
+    private Entry readCentralHeader(ByteBuffer directory) throws IOException {
+        final int start = directory.position();
+        if (directory.remaining() < CENTRAL_HEADER_SIZE
+                || directory.getInt(start) != CENTRAL_HEADER_SIGNATURE) {
+            throw new ZipException("Invalid central directory header.");
+        }
+        final int flags = directory.getShort(start + 8) & 0xffff;
+        final int method = directory.getShort(start + 10) & 0xffff;
+        final int dosTime = directory.getShort(start + 12) & 0xffff;
+        final int dosDate = directory.getShort(start + 14) & 0xffff;
+        final long crc = directory.getInt(start + 16) & ZIP64_MAGIC;
+        long compressedSize = directory.getInt(start + 20) & ZIP64_MAGIC;
+        long size = directory.getInt(start + 24) & ZIP64_MAGIC;
+        final int nameLength = directory.getShort(start + 28) & 0xffff;
+        final int extraLength = directory.getShort(start + 30) & 0xffff;
+        final int commentLength = directory.getShort(start + 32) & 0xffff;
+        long localHeaderOffset = directory.getInt(start + 42) & ZIP64_MAGIC;
+
+        final int nameStart = start + CENTRAL_HEADER_SIZE;
+        final int extraStart = nameStart + nameLength;
+        final int end = extraStart + extraLength + commentLength;
+        if (end > directory.limit()) {
+            throw new ZipException("Truncated central directory header.");
+        }
+
+        final byte[] nameBytes = new byte[nameLength];
+        directory.position(nameStart);
+        directory.get(nameBytes);
+        // Names are always decoded as UTF-8, the same as ZipFile does on Android.
+        final String name = new String(nameBytes, UTF_8);
+
+        // Sizes and offsets which don't fit in 32 bits are in the ZIP64 extra field, in this
+        // order, and only if the central header has the magic value for them. The modification
+        // time may be in the extended timestamp extra field, in UTC.
+        long time = dosToJavaTime(dosDate, dosTime);
+        int extraPosition = extraStart;
+        while (extraPosition + 4 <= extraStart + extraLength) {
+            final int id = directory.getShort(extraPosition) & 0xffff;
+            final int length = directory.getShort(extraPosition + 2) & 0xffff;
+            int field = extraPosition + 4;
+            final int fieldsEnd = field + length;
+            if (fieldsEnd > extraStart + extraLength) {
+                throw new ZipException("Invalid extra field: " + name);
+            }
+            if (id == ZIP64_EXTRA_ID) {
+                if (size == ZIP64_MAGIC && field + 8 <= fieldsEnd) {
+                    size = directory.getLong(field);
+                    field += 8;
+                }
+                if (compressedSize == ZIP64_MAGIC && field + 8 <= fieldsEnd) {
+                    compressedSize = directory.getLong(field);
+                    field += 8;
+                }
+                if (localHeaderOffset == ZIP64_MAGIC && field + 8 <= fieldsEnd) {
+                    localHeaderOffset = directory.getLong(field);
+                }
+            } else if (id == EXTENDED_TIMESTAMP_EXTRA_ID && field + 5 <= fieldsEnd
+                    && (directory.get(field) & 1) != 0) {
+                time = (directory.getInt(field + 1) & ZIP64_MAGIC) * 1000;
+            }
+            extraPosition = fieldsEnd;
+        }
+        if (size < 0 || compressedSize < 0 || localHeaderOffset < 0) {
+            throw new ZipException("Invalid sizes: " + name);
+        }
+        directory.position(end);
+
+        final Entry entry = new Entry(name, method, size, compressedSize, localHeaderOffset,
+                (flags & FLAG_ENCRYPTED) != 0);
+        entry.setCrc(crc);
+        entry.setTime(time);
+        return entry;
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (mChannel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static long dosToJavaTime(int date, int time) {
+        final Calendar calendar = new GregorianCalendar();
+        calendar.clear();
+        calendar.set(1980 + ((date >> 9) & 0x7f), ((date >> 5) & 0xf) - 1, date & 0x1f,
+                (time >> 11) & 0x1f, (time >> 5) & 0x3f, (time & 0x1f) << 1);
+        return calendar.getTimeInMillis();
+    }
+
+    /**
+     * Reads a range of the channel with positional reads, so it doesn't affect or depend on the
+     * channel's position.
+     */
+    private static final class RangeInputStream extends InputStream {
+        private final FileChannel mChannel;
+        private final long mEnd;
+        private long mPosition;
+
+        RangeInputStream(FileChannel channel, long start, long length) {
+            mChannel = channel;
+            mPosition = start;
+            mEnd = start + length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] buffer = new byte[1];
+            return read(buffer, 0, 1) == -1 ? -1 : buffer[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (mPosition >= mEnd) {
+                return -1;
+            }
+            final int count = (int) Math.min(length, mEnd - mPosition);
+            final int bytes = mChannel.read(ByteBuffer.wrap(buffer, offset, count), mPosition);
+            if (bytes < 0) {
+                throw new EOFException();
+            }
+            mPosition += bytes;
+            return bytes;
+        }
+
+        @Override
+        public long skip(long count) {
+            final long skipped = Math.max(0, Math.min(count, mEnd - mPosition));
+            mPosition += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, mEnd - mPosition);
+        }
+    }
+
+    /**
+     * Inflates raw deflate data, and releases the native inflater when closed.
+     */
+    private static final class EntryInflaterInputStream extends InflaterInputStream {
+        private boolean mDummyByteSent;
+
+        EntryInflaterInputStream(InputStream in) {
+            super(in, new Inflater(true /* nowrap */), BUFFER_SIZE);
+        }
+
+        @Override
+        protected void fill() throws IOException {
+            len = in.read(buf, 0, buf.length);
+            if (len == -1) {
+                // Without the zlib header the inflater may need an extra dummy byte to finish.
+                if (mDummyByteSent) {
+                    throw new EOFException("Unexpected end of ZIP entry.");
+                }
+                mDummyByteSent = true;
+                buf[0] = 0;
+                len = 1;
+            }
+            inf.setInput(buf, 0, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                inf.end();
+            }
+        }
+    }
+}
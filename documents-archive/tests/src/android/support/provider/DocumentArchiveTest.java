@@ -28,6 +28,7 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.util.Scanner;
 
 /**
@@ -78,6 +79,25 @@ public class DocumentArchiveTest extends AndroidTestCase {
         }
     }
 
+    public void loadArchiveFromSeekableDescriptor(int resource) {
+        File file = null;
+        try {
+            file = TestUtils.createFileFromResource(mContext, resource);
+            mArchive = DocumentArchive.createForParcelFileDescriptor(
+                    mContext,
+                    ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY),
+                    DOCUMENT_ID,
+                    DELIMITER,
+                    Uri.parse(NOTIFICATION_URI));
+        } catch (IOException e) {
+            fail(String.valueOf(e));
+        } finally {
+            if (file != null) {
+                file.delete();
+            }
+        }
+    }
+
     @Override
     public void tearDown() {
         if (mArchive != null) {
@@ -270,4 +290,126 @@ public class DocumentArchiveTest extends AndroidTestCase {
             assertEquals("I love strawberries!", new Scanner(inputStream).nextLine());
         }
     }
+
+    public void testQueryChildDocument_SeekableDescriptor() throws IOException {
+        loadArchiveFromSeekableDescriptor(R.raw.archive);
+        final Cursor cursor = mArchive.queryChildDocuments("document-id:dir1/", null, null);
+
+        assertTrue(cursor.moveToFirst());
+        assertEquals("document-id:dir1/cherries.txt",
+                cursor.getString(cursor.getColumnIndexOrThrow(Document.COLUMN_DOCUMENT_ID)));
+        assertEquals(17,
+                cursor.getInt(cursor.getColumnIndexOrThrow(Document.COLUMN_SIZE)));
+        assertFalse(cursor.moveToNext());
+    }
+
+    public void testOpenDocument_SeekableDescriptor() throws IOException {
+        loadArchiveFromSeekableDescriptor(R.raw.archive);
+        final ParcelFileDescriptor descriptor = mArchive.openDocument(
+                "document-id:dir2/strawberries.txt", "r", null /* signal */);
+        try (final ParcelFileDescriptor.AutoCloseInputStream inputStream =
+                new ParcelFileDescriptor.AutoCloseInputStream(descriptor)) {
+            assertEquals("I love strawberries!", new Scanner(inputStream).nextLine());
+        }
+    }
+
+    public void testOpenDocument_Concurrent() throws IOException {
+        loadArchiveFromSeekableDescriptor(R.raw.archive);
+        // Open more documents than there are threads copying them, before reading any.
+        final ParcelFileDescriptor[] descriptors = new ParcelFileDescriptor[10];
+        for (int i = 0; i < descriptors.length; i++) {
+            descriptors[i] = mArchive.openDocument(i % 2 == 0
+                    ? "document-id:dir2/strawberries.txt" : "document-id:dir1/cherries.txt",
+                    "r", null /* signal */);
+        }
+        for (int i = descriptors.length - 1; i >= 0; i--) {
+            try (final ParcelFileDescriptor.AutoCloseInputStream inputStream =
+                    new ParcelFileDescriptor.AutoCloseInputStream(descriptors[i])) {
+                assertEquals(i % 2 == 0 ? "I love strawberries!" : "I love cherries!",
+                        new Scanner(inputStream).nextLine());
+            }
+        }
+    }
+
+    public void testIndexFile() throws IOException {
+        final File file = TestUtils.createFileFromResource(mContext, R.raw.no_dirs);
+        final File indexFile = new File(mContext.getCacheDir(), "archive-index-test");
+        indexFile.delete();
+        try {
+            mArchive = DocumentArchive.createForLocalFile(mContext, file, DOCUMENT_ID, DELIMITER,
+                    Uri.parse(NOTIFICATION_URI), indexFile);
+            assertTrue(indexFile.exists());
+            mArchive.close();
+
+            // Reopen with the saved index, including the directories which were added for it.
+            mArchive = DocumentArchive.createForLocalFile(mContext, file, DOCUMENT_ID, DELIMITER,
+                    Uri.parse(NOTIFICATION_URI), indexFile);
+            final Cursor cursor = mArchive.queryChildDocuments(
+                    "document-id:dir1/dir2/", null, null);
+            assertTrue(cursor.moveToFirst());
+            assertEquals("document-id:dir1/dir2/cherries.txt",
+                    cursor.getString(cursor.getColumnIndexOrThrow(Document.COLUMN_DOCUMENT_ID)));
+            assertEquals(17,
+                    cursor.getInt(cursor.getColumnIndexOrThrow(Document.COLUMN_SIZE)));
+            assertFalse(cursor.moveToNext());
+
+            final ParcelFileDescriptor descriptor = mArchive.openDocument(
+                    "document-id:dir1/dir2/cherries.txt", "r", null /* signal */);
+            try (final ParcelFileDescriptor.AutoCloseInputStream inputStream =
+                    new ParcelFileDescriptor.AutoCloseInputStream(descriptor)) {
+                assertEquals("I love cherries!", new Scanner(inputStream).nextLine());
+            }
+            mArchive.close();
+
+            // An index is not used if the archive changed within the modification time's
+            // resolution, keeping the same size.
+            final long lastModified = file.lastModified();
+            replaceBytes(file, "cherries", "cherriez");
+            assertTrue(file.setLastModified(lastModified));
+            mArchive = DocumentArchive.createForLocalFile(mContext, file, DOCUMENT_ID, DELIMITER,
+                    Uri.parse(NOTIFICATION_URI), indexFile);
+            final Cursor changedCursor = mArchive.queryChildDocuments(
+                    "document-id:dir1/dir2/", null, null);
+            assertTrue(changedCursor.moveToFirst());
+            assertEquals("document-id:dir1/dir2/cherriez.txt", changedCursor.getString(
+                    changedCursor.getColumnIndexOrThrow(Document.COLUMN_DOCUMENT_ID)));
+            mArchive.close();
+
+            // An index of another archive is not used.
+            final File otherFile = TestUtils.createFileFromResource(mContext, R.raw.archive);
+            try {
+                mArchive = DocumentArchive.createForLocalFile(mContext, otherFile, DOCUMENT_ID,
+                        DELIMITER, Uri.parse(NOTIFICATION_URI), indexFile);
+                assertEquals("text/plain", mArchive.getDocumentType("document-id:file1.txt"));
+            } finally {
+                otherFile.delete();
+            }
+        } finally {
+            file.delete();
+            indexFile.delete();
+        }
+    }
+
+    /**
+     * Replaces each occurrence of a string in the file with another one of the same length.
+     */
+    private static void replaceBytes(File file, String from, String to) throws IOException {
+        final byte[] data = new byte[(int) file.length()];
+        try (final RandomAccessFile archive = new RandomAccessFile(file, "rw")) {
+            archive.readFully(data);
+            final byte[] fromBytes = from.getBytes("US-ASCII");
+            final byte[] toBytes = to.getBytes("US-ASCII");
+            for (int i = 0; i + fromBytes.length <= data.length; i++) {
+                boolean found = true;
+                for (int j = 0; j < fromBytes.length && found; j++) {
+                    found = data[i + j] == fromBytes[j];
+                }
+                if (found) {
+                    System.arraycopy(toBytes, 0, data, i, toBytes.length);
+                }
+            }
+            archive.seek(0);
+            archive.write(data);
+        }
+    }
 }
@@ -14,6 +14,12 @@
 package android.support.v17.leanback.app;
 
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import android.support.annotation.ColorInt;
 import android.graphics.PixelFormat;
@@ -36,6 +42,7 @@ import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.LayerDrawable;
 import android.os.Handler;
+import android.os.Process;
 import android.support.v17.leanback.widget.BackgroundHelper;
 import android.support.v4.view.animation.FastOutLinearInInterpolator;
 import android.util.Log;
@@ -75,6 +82,11 @@ import android.support.v4.content.ContextCompat;
  *   {@link #setDrawable}), which may be in transition</li>
  * </ul>
  *
+ * <p>Bitmaps set via {@link #setBitmap} are scaled and cropped to the size of
+ * the window on a background thread, so the background is drawn without
+ * scaling.  The last few scaled bitmaps are kept, so setting a recent bitmap
+ * again takes effect without scaling it again.
+ *
  * <p>BackgroundManager holds references to potentially large bitmap Drawables.
  * Call {@link #release} to release these references when the Activity is not
  * visible.
@@ -95,6 +107,7 @@ public final class BackgroundManager {
     private static final int DIM_ALPHA_ON_SOLID = (int) (0.8f * FULL_ALPHA);
     private static final int CHANGE_BG_DELAY_MS = 500;
     private static final int FADE_DURATION = 500;
+    private static final int PREPARED_BITMAP_CACHE_SIZE = 3;
 
     /**
      * Using a separate window for backgrounds can improve graphics performance by
@@ -127,16 +140,41 @@ public final class BackgroundManager {
     private final ValueAnimator mAnimator;
     private final ValueAnimator mDimAnimator;
 
-    private static class BitmapDrawable extends Drawable {
+    /**
+     * Scales bitmaps to the window size, one at a time, at background priority.  The thread
+     * stops when idle.
+     */
+    private static final Executor sPrepareBitmapExecutor = new ThreadPoolExecutor(0, 1,
+            1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    return new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            runnable.run();
+                        }
+                    }, "BackgroundManager bitmap");
+                }
+            });
+
+    static class BitmapDrawable extends Drawable {
 
         static class ConstantState extends Drawable.ConstantState {
             Bitmap mBitmap;
             Matrix mMatrix;
             Paint mPaint;
+            // Bitmap passed to setBitmap() which mBitmap was prepared from, and its
+            // generation id at that time
+            WeakReference<Bitmap> mSource;
+            int mSourceGenerationId;
 
             @Override
             public Drawable newDrawable() {
-                return new BitmapDrawable(null, mBitmap, mMatrix);
+                BitmapDrawable drawable = new BitmapDrawable(null, mBitmap, mMatrix);
+                drawable.mState.mSource = mSource;
+                drawable.mState.mSourceGenerationId = mSourceGenerationId;
+                return drawable;
             }
 
             @Override
@@ -158,10 +196,29 @@ public final class BackgroundManager {
             mState.mPaint.setFilterBitmap(true);
         }
 
+        BitmapDrawable(Resources resources, Bitmap bitmap, Matrix matrix, Bitmap source) {
+            this(resources, bitmap, matrix);
+            mState.mSource = new WeakReference<Bitmap>(source);
+            mState.mSourceGenerationId = source.getGenerationId();
+        }
+
         Bitmap getBitmap() {
             return mState.mBitmap;
         }
 
+        Bitmap getSource() {
+            return mState.mSource != null ? mState.mSource.get() : null;
+        }
+
+        /**
+         * Returns true if the drawable shows the given bitmap passed to setBitmap(), and the
+         * bitmap hasn't been modified since.
+         */
+        boolean isPreparedFrom(Bitmap source) {
+            return source != null && getSource() == source
+                    && mState.mSourceGenerationId == source.getGenerationId();
+        }
+
         @Override
         public void draw(Canvas canvas) {
             if (mState.mBitmap == null) {
@@ -443,6 +500,13 @@ public final class BackgroundManager {
     private Drawable mDimDrawable;
     private ChangeBackgroundRunnable mChangeRunnable;
     private boolean mChangeRunnablePending;
+    // Incremented for each new background passed to setDrawable() or setBitmap(), so a change
+    // runnable for a background which was replaced since doesn't run
+    private int mBackgroundGeneration;
+    private PrepareBitmapTask mPrepareBitmapTask;
+    // Most recently used first
+    private final ArrayList<PreparedBitmap> mPreparedBitmaps =
+            new ArrayList<PreparedBitmap>(PREPARED_BITMAP_CACHE_SIZE);
 
     private final Animator.AnimatorListener mAnimationListener = new Animator.AnimatorListener() {
         final Runnable mRunnable = new Runnable() {
@@ -873,10 +937,9 @@ public final class BackgroundManager {
             mLayerDrawable.clearDrawable(R.id.background_theme, mContext);
             mLayerDrawable = null;
         }
-        if (mChangeRunnable != null) {
-            mHandler.removeCallbacks(mChangeRunnable);
-            mChangeRunnable = null;
-        }
+        cancelChangeRunnable();
+        cancelPrepareBitmapTask();
+        mPreparedBitmaps.clear();
         releaseBackgroundBitmap();
     }
 
@@ -985,6 +1048,8 @@ public final class BackgroundManager {
      */
     public void setDrawable(Drawable drawable) {
         if (DEBUG) Log.v(TAG, "setBackgroundDrawable " + drawable);
+        mBackgroundGeneration++;
+        cancelPrepareBitmapTask();
         setDrawableInternal(drawable);
     }
 
@@ -996,10 +1061,10 @@ public final class BackgroundManager {
         if (mChangeRunnable != null) {
             if (sameDrawable(drawable, mChangeRunnable.mDrawable)) {
                 if (DEBUG) Log.v(TAG, "new drawable same as pending");
+                mChangeRunnable.mGeneration = mBackgroundGeneration;
                 return;
             }
-            mHandler.removeCallbacks(mChangeRunnable);
-            mChangeRunnable = null;
+            cancelChangeRunnable();
         }
 
         // If layer drawable is null then the activity hasn't started yet.
@@ -1013,7 +1078,7 @@ public final class BackgroundManager {
             return;
         }
 
-        mChangeRunnable = new ChangeBackgroundRunnable(drawable);
+        mChangeRunnable = new ChangeBackgroundRunnable(drawable, mBackgroundGeneration);
         mChangeRunnablePending = true;
 
         postChangeRunnable();
@@ -1035,6 +1100,8 @@ public final class BackgroundManager {
         }
 
         if (bitmap == null) {
+            mBackgroundGeneration++;
+            cancelPrepareBitmapTask();
             setDrawableInternal(null);
             return;
         }
@@ -1046,34 +1113,235 @@ public final class BackgroundManager {
             return;
         }
 
-        Matrix matrix = null;
+        if (!mAttached) {
+            throw new IllegalStateException("Must attach before setting background drawable");
+        }
 
-        if ((bitmap.getWidth() != mWidthPx || bitmap.getHeight() != mHeightPx)) {
-            int dwidth = bitmap.getWidth();
-            int dheight = bitmap.getHeight();
-            float scale;
+        if (mPrepareBitmapTask != null) {
+            if (mPrepareBitmapTask.isPreparing(bitmap)) {
+                if (DEBUG) Log.v(TAG, "new bitmap same as preparing");
+                return;
+            }
+            cancelPrepareBitmapTask();
+        }
+        mBackgroundGeneration++;
 
-            // Scale proportionately to fit width and height.
-            if (dwidth * mHeightPx > mWidthPx * dheight) {
-                scale = (float) mHeightPx / (float) dheight;
-            } else {
-                scale = (float) mWidthPx / (float) dwidth;
+        if (bitmap.getWidth() == mWidthPx && bitmap.getHeight() == mHeightPx) {
+            setDrawableInternal(new BitmapDrawable(mContext.getResources(), bitmap, null, bitmap));
+            return;
+        }
+
+        Bitmap prepared = getPreparedBitmap(bitmap);
+        if (prepared != null) {
+            if (DEBUG) Log.v(TAG, "using prepared bitmap " + prepared);
+            setDrawableInternal(new BitmapDrawable(mContext.getResources(), prepared, null,
+                    bitmap));
+            return;
+        }
+
+        Matrix matrix = createScaleMatrix(bitmap);
+        if (mLayerDrawable == null || mLayerDrawable.getAlpha() == 0) {
+            // The background is updated immediately: show the bitmap scaled while drawing
+            // until the prepared bitmap replaces it.
+            setDrawableInternal(new BitmapDrawable(mContext.getResources(), bitmap, matrix,
+                    bitmap));
+        } else {
+            // Don't fade in a previous background while this one is prepared
+            cancelChangeRunnable();
+        }
+        mPrepareBitmapTask = new PrepareBitmapTask(bitmap, matrix, mWidthPx, mHeightPx);
+        sPrepareBitmapExecutor.execute(mPrepareBitmapTask);
+    }
+
+    /**
+     * Returns the matrix which scales and crops the bitmap to the window.
+     */
+    private Matrix createScaleMatrix(Bitmap bitmap) {
+        int dwidth = bitmap.getWidth();
+        int dheight = bitmap.getHeight();
+        float scale;
+
+        // Scale proportionately to fit width and height.
+        if (dwidth * mHeightPx > mWidthPx * dheight) {
+            scale = (float) mHeightPx / (float) dheight;
+        } else {
+            scale = (float) mWidthPx / (float) dwidth;
+        }
+
+        int subX = Math.min((int) (mWidthPx / scale), dwidth);
+        int dx = Math.max(0, (dwidth - subX) / 2);
+
+        Matrix matrix = new Matrix();
+        matrix.setScale(scale, scale);
+        matrix.preTranslate(-dx, 0);
+
+        if (DEBUG) Log.v(TAG, "original image size " + bitmap.getWidth() + "x"
+                + bitmap.getHeight() + " scale " + scale + " dx " + dx);
+        return matrix;
+    }
+
+    Bitmap getPreparedBitmap(Bitmap source) {
+        removeCollectedPreparedBitmaps();
+        for (int i = 0, size = mPreparedBitmaps.size(); i < size; i++) {
+            PreparedBitmap prepared = mPreparedBitmaps.get(i);
+            if (prepared.isPreparedFrom(source)) {
+                if (i > 0) {
+                    mPreparedBitmaps.remove(i);
+                    mPreparedBitmaps.add(0, prepared);
+                }
+                return prepared.mBitmap;
             }
+        }
+        return null;
+    }
 
-            int subX = Math.min((int) (mWidthPx / scale), dwidth);
-            int dx = Math.max(0, (dwidth - subX) / 2);
+    private void putPreparedBitmap(Bitmap source, Bitmap bitmap) {
+        removeCollectedPreparedBitmaps();
+        if (mPreparedBitmaps.size() >= PREPARED_BITMAP_CACHE_SIZE) {
+            mPreparedBitmaps.remove(mPreparedBitmaps.size() - 1);
+        }
+        mPreparedBitmaps.add(0, new PreparedBitmap(source, bitmap));
+    }
 
-            matrix = new Matrix();
-            matrix.setScale(scale, scale);
-            matrix.preTranslate(-dx, 0);
+    /**
+     * Removes the bitmaps whose source was garbage collected, which can't be used again.
+     */
+    private void removeCollectedPreparedBitmaps() {
+        for (int i = mPreparedBitmaps.size() - 1; i >= 0; i--) {
+            if (mPreparedBitmaps.get(i).mSource.get() == null) {
+                mPreparedBitmaps.remove(i);
+            }
+        }
+    }
+
+    private void cancelChangeRunnable() {
+        if (mChangeRunnable != null) {
+            mHandler.removeCallbacks(mChangeRunnable);
+            mChangeRunnable = null;
+        }
+    }
+
+    private void cancelPrepareBitmapTask() {
+        if (mPrepareBitmapTask != null) {
+            mPrepareBitmapTask.mCancelled = true;
+            mPrepareBitmapTask = null;
+        }
+    }
+
+    private void onBitmapPrepared(PrepareBitmapTask task, Bitmap prepared) {
+        if (task != mPrepareBitmapTask) {
+            if (DEBUG) Log.v(TAG, "prepared bitmap superseded");
+            return;
+        }
+        mPrepareBitmapTask = null;
+        if (!mAttached) {
+            return;
+        }
+        final Bitmap source = task.mSource;
+        final boolean showingSource = mBackgroundDrawable instanceof BitmapDrawable
+                && ((BitmapDrawable) mBackgroundDrawable).getBitmap() == source
+                && ((BitmapDrawable) mBackgroundDrawable).isPreparedFrom(source);
+        if (prepared == null) {
+            // Could not prepare, scale while drawing instead
+            if (!showingSource && !source.isRecycled()) {
+                setDrawableInternal(new BitmapDrawable(mContext.getResources(), source,
+                        task.mMatrix, source));
+            }
+            return;
+        }
+        putPreparedBitmap(source, prepared);
+        Drawable drawable = new BitmapDrawable(mContext.getResources(), prepared, null, source);
+        if (showingSource) {
+            // Swap in the prepared bitmap, which looks the same
+            if (DEBUG) Log.v(TAG, "replacing background with prepared bitmap");
+            DrawableWrapper imageInWrapper = getImageInWrapper();
+            Drawable unprepared = mBackgroundDrawable;
+            setBackgroundDrawable(drawable);
+            if (imageInWrapper != null && imageInWrapper.getDrawable() == unprepared) {
+                mLayerDrawable.updateDrawable(R.id.background_imagein, drawable)
+                        .setAlpha(imageInWrapper.getAlpha());
+            }
+        } else {
+            setDrawableInternal(drawable);
+        }
+    }
+
+    /**
+     * Bitmap scaled and cropped to the window, with the bitmap it was prepared from.
+     */
+    private static class PreparedBitmap {
+        final WeakReference<Bitmap> mSource;
+        final int mSourceGenerationId;
+        final Bitmap mBitmap;
+
+        PreparedBitmap(Bitmap source, Bitmap bitmap) {
+            mSource = new WeakReference<Bitmap>(source);
+            mSourceGenerationId = source.getGenerationId();
+            mBitmap = bitmap;
+        }
+
+        boolean isPreparedFrom(Bitmap source) {
+            return mSource.get() == source && mSourceGenerationId == source.getGenerationId();
+        }
+    }
+
+    /**
+     * Task which scales and crops a bitmap to the window on a background thread.
+     */
+    private class PrepareBitmapTask implements Runnable {
+        final Bitmap mSource;
+        final int mSourceGenerationId;
+        final Matrix mMatrix;
+        final int mWidth;
+        final int mHeight;
+        volatile boolean mCancelled;
+
+        PrepareBitmapTask(Bitmap source, Matrix matrix, int width, int height) {
+            mSource = source;
+            mSourceGenerationId = source.getGenerationId();
+            mMatrix = matrix;
+            mWidth = width;
+            mHeight = height;
+        }
 
-            if (DEBUG) Log.v(TAG, "original image size " + bitmap.getWidth() + "x" + bitmap.getHeight() +
-                    " scale " + scale + " dx " + dx);
+        boolean isPreparing(Bitmap source) {
+            return mSource == source && mSourceGenerationId == source.getGenerationId();
         }
 
-        BitmapDrawable bitmapDrawable = new BitmapDrawable(mContext.getResources(), bitmap, matrix);
+        @Override
+        public void run() {
+            if (mCancelled) {
+                return;
+            }
+            final Bitmap prepared = prepare();
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onBitmapPrepared(PrepareBitmapTask.this, prepared);
+                }
+            });
+        }
 
-        setDrawableInternal(bitmapDrawable);
+        private Bitmap prepare() {
+            if (mSource.isRecycled()) {
+                return null;
+            }
+            try {
+                Bitmap.Config config = mSource.getConfig() != null ? mSource.getConfig()
+                        : Bitmap.Config.ARGB_8888;
+                Bitmap prepared = Bitmap.createBitmap(mWidth, mHeight, config);
+                new Canvas(prepared).drawBitmap(mSource, mMatrix,
+                        new Paint(Paint.FILTER_BITMAP_FLAG));
+                prepared.setHasAlpha(mSource.hasAlpha());
+                return prepared;
+            } catch (OutOfMemoryError e) {
+                Log.w(TAG, "Can't prepare background bitmap", e);
+            } catch (RuntimeException e) {
+                // The bitmap was recycled while drawing it
+                Log.w(TAG, "Can't prepare background bitmap", e);
+            }
+            return null;
+        }
     }
 
     private void applyBackgroundChanges() {
@@ -1137,7 +1405,10 @@ public final class BackgroundManager {
             return true;
         }
         if (first instanceof BitmapDrawable && second instanceof BitmapDrawable) {
-            if (((BitmapDrawable) first).getBitmap().sameAs(((BitmapDrawable) second).getBitmap())) {
+            // Compare the bitmaps passed to setBitmap(), instead of the pixels
+            Bitmap source = ((BitmapDrawable) first).getSource();
+            if (((BitmapDrawable) first).isPreparedFrom(source)
+                    && ((BitmapDrawable) second).isPreparedFrom(source)) {
                 return true;
             }
         }
@@ -1149,13 +1420,19 @@ public final class BackgroundManager {
      */
     class ChangeBackgroundRunnable implements Runnable {
         private Drawable mDrawable;
+        int mGeneration;
 
-        ChangeBackgroundRunnable(Drawable drawable) {
+        ChangeBackgroundRunnable(Drawable drawable, int generation) {
             mDrawable = drawable;
+            mGeneration = generation;
         }
 
         @Override
         public void run() {
+            if (mChangeRunnable != this || mGeneration != mBackgroundGeneration) {
+                if (DEBUG) Log.v(TAG, "background was replaced");
+                return;
+            }
             runTask();
             mChangeRunnable = null;
         }
@@ -290,6 +290,10 @@ public class RowsFragment extends BaseRowFragment implements
         // Need set this for directly using RowsFragment.
         getVerticalGridView().setItemAlignmentViewId(R.id.row_content);
         getVerticalGridView().setSaveChildrenPolicy(VerticalGridView.SAVE_LIMITED_CHILD);
+        // Create and bind the next row before focus moves to it; rows share their
+        // RecycledViewPool so its cards reuse the views recycled by other rows.
+        getVerticalGridView().setFocusPrefetchSpace(getResources()
+                .getDimensionPixelSize(R.dimen.lb_browse_rows_focus_prefetch_space));
 
         setAlignment(mAlignedTop);
 
@@ -19,6 +19,8 @@ import android.content.Intent;
 import android.graphics.drawable.Drawable;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.speech.RecognizerIntent;
 import android.speech.SpeechRecognizer;
 import android.support.v17.leanback.R;
@@ -39,6 +41,7 @@ import android.view.ViewGroup;
 import android.view.inputmethod.CompletionInfo;
 import android.widget.FrameLayout;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -63,6 +66,12 @@ import static android.content.pm.PackageManager.PERMISSION_GRANTED;
  * not when fragment is restored from an instance state.  Activity may manually
  * call {@link #startRecognition()}, typically in onNewIntent().
  * </p>
+ * <p>
+ * Queries can be delayed until the user stops typing with
+ * {@link #setQueryDebounceDelay(long)}.  A provider which loads results in the
+ * background should implement {@link AsyncSearchResultProvider}, so that the
+ * results of a query are dropped when a newer query has started.
+ * </p>
  */
 public class SearchFragment extends Fragment {
     private static final String TAG = SearchFragment.class.getSimpleName();
@@ -119,6 +128,111 @@ public class SearchFragment extends Fragment {
         public boolean onQueryTextSubmit(String query);
     }
 
+    /**
+     * Search API for providers which load results in the background.
+     *
+     * <p>Instead of {@link #onQueryTextChange}, {@link #onQueryStart} is called with a
+     * {@link Query}.  The provider loads the results and passes the update of the results
+     * adapter to {@link Query#deliverResults(Runnable)}, which drops it if a newer query has
+     * started in the meantime.  {@link #onQueryTextSubmit} is still called when the query is
+     * submitted, after cancelling the query in progress.</p>
+     */
+    public static interface AsyncSearchResultProvider extends SearchResultProvider {
+        /**
+         * Method invoked on the main thread to start loading the results of a query.
+         *
+         * @param query The query, with the current search text.
+         */
+        public void onQueryStart(Query query);
+
+        /**
+         * Method invoked on the main thread when a query started with {@link #onQueryStart}
+         * has been superseded before delivering its results.  The provider should stop
+         * loading them.
+         *
+         * @param query The cancelled query.
+         */
+        public void onQueryCancel(Query query);
+    }
+
+    /**
+     * Listener receiving the latency of every query.
+     */
+    public static interface QueryMetricsListener {
+        /**
+         * Method invoked on the main thread when the results of a query have been delivered,
+         * or when the query has been cancelled.
+         *
+         * @param query The search text of the query.
+         * @param waitTimeMillis Time from the last change of the search text to the start of
+         *                       the query, including the debounce delay.
+         * @param loadTimeMillis Time from the start of the query until its results were
+         *                       delivered or it was cancelled.
+         * @param cancelled Whether the query was superseded by a newer one.
+         */
+        public void onQueryFinished(String query, long waitTimeMillis, long loadTimeMillis,
+                boolean cancelled);
+    }
+
+    /**
+     * A query started on an {@link AsyncSearchResultProvider}.  It only references the
+     * fragment weakly, and drops the reference once the query is cancelled or its results
+     * are delivered, so a provider may keep it while it loads.
+     */
+    public static final class Query {
+        private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+        private final String mText;
+        private final int mGeneration;
+        private final WeakReference<SearchFragment> mFragment;
+        private volatile boolean mCancelled;
+
+        Query(SearchFragment fragment, String text, int generation) {
+            mFragment = new WeakReference<SearchFragment>(fragment);
+            mText = text;
+            mGeneration = generation;
+        }
+
+        /**
+         * Returns the search text of the query.
+         */
+        public String getText() {
+            return mText;
+        }
+
+        /**
+         * Returns true if a newer query has started, or the fragment has been destroyed.
+         * May be called from any thread, so that a provider can stop loading early.
+         */
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        /**
+         * Completes the query.  May be called from any thread.  The update runs on the
+         * main thread, unless the query has been cancelled by then, and should update the
+         * results adapter.
+         *
+         * @param update Runnable updating the results adapter, or null.
+         */
+        public void deliverResults(final Runnable update) {
+            sMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    final SearchFragment fragment = mFragment.get();
+                    if (fragment != null) {
+                        fragment.onQueryResults(Query.this, update);
+                    }
+                }
+            });
+        }
+
+        void cancel() {
+            mCancelled = true;
+            mFragment.clear();
+        }
+    }
+
     private final DataObserver mAdapterObserver = new DataObserver() {
         @Override
         public void onChanged() {
@@ -207,6 +321,24 @@ public class SearchFragment extends Fragment {
     private SearchResultProvider mProvider;
     private String mPendingQuery = null;
 
+    private long mQueryDebounceDelay;
+    private QueryMetricsListener mQueryMetricsListener;
+    // Search text waiting for the debounce delay, and the time it was typed
+    private String mDebouncedQuery;
+    private long mQueryChangeTime;
+    // The query in progress on an AsyncSearchResultProvider, and the time it started
+    private Query mQuery;
+    private AsyncSearchResultProvider mQueryProvider;
+    private int mQueryGeneration;
+    private long mQueryStartTime;
+
+    private final Runnable mStartQueryRunnable = new Runnable() {
+        @Override
+        public void run() {
+            startQuery();
+        }
+    };
+
     private OnItemViewSelectedListener mOnItemViewSelectedListener;
     private OnItemViewClickedListener mOnItemViewClickedListener;
     private ObjectAdapter mResultAdapter;
@@ -406,6 +538,9 @@ public class SearchFragment extends Fragment {
 
     @Override
     public void onDestroy() {
+        mHandler.removeCallbacks(mStartQueryRunnable);
+        mDebouncedQuery = null;
+        cancelQuery();
         releaseAdapter();
         super.onDestroy();
     }
@@ -439,11 +574,40 @@ public class SearchFragment extends Fragment {
      */
     public void setSearchResultProvider(SearchResultProvider searchResultProvider) {
         if (mProvider != searchResultProvider) {
+            cancelQuery();
             mProvider = searchResultProvider;
             onSetSearchResultProvider();
         }
     }
 
+    /**
+     * Sets the time to wait after the search text changes before querying the provider.
+     * Queries for text which changes again within the delay are skipped.  The default is
+     * 0, which queries on every change.
+     *
+     * @param delayMs The delay in milliseconds.
+     */
+    public void setQueryDebounceDelay(long delayMs) {
+        if (delayMs < 0) {
+            throw new IllegalArgumentException("Negative delay " + delayMs);
+        }
+        mQueryDebounceDelay = delayMs;
+    }
+
+    /**
+     * Returns the time to wait after the search text changes before querying the provider.
+     */
+    public long getQueryDebounceDelay() {
+        return mQueryDebounceDelay;
+    }
+
+    /**
+     * Sets a listener receiving the latency of every query, or null.
+     */
+    public void setQueryMetricsListener(QueryMetricsListener listener) {
+        mQueryMetricsListener = listener;
+    }
+
     /**
      * Sets an item selection listener for the results.
      *
@@ -614,12 +778,83 @@ public class SearchFragment extends Fragment {
 
     private void retrieveResults(String searchQuery) {
         if (DEBUG) Log.v(TAG, "retrieveResults " + searchQuery);
-        if (mProvider.onQueryTextChange(searchQuery)) {
+        // The results of the query in progress are out of date
+        cancelQuery();
+        mDebouncedQuery = searchQuery;
+        mQueryChangeTime = SystemClock.uptimeMillis();
+        mHandler.removeCallbacks(mStartQueryRunnable);
+        if (mQueryDebounceDelay > 0) {
+            mHandler.postDelayed(mStartQueryRunnable, mQueryDebounceDelay);
+        } else {
+            startQuery();
+        }
+    }
+
+    private void startQuery() {
+        final String searchQuery = mDebouncedQuery;
+        mDebouncedQuery = null;
+        if (searchQuery == null || mProvider == null) {
+            return;
+        }
+        if (DEBUG) Log.v(TAG, "startQuery " + searchQuery);
+        final long startTime = SystemClock.uptimeMillis();
+        if (mProvider instanceof AsyncSearchResultProvider) {
+            mQueryProvider = (AsyncSearchResultProvider) mProvider;
+            mQuery = new Query(this, searchQuery, ++mQueryGeneration);
+            mQueryStartTime = startTime;
             mStatus &= ~QUERY_COMPLETE;
+            mQueryProvider.onQueryStart(mQuery);
+        } else {
+            if (mProvider.onQueryTextChange(searchQuery)) {
+                mStatus &= ~QUERY_COMPLETE;
+            }
+            if (mQueryMetricsListener != null) {
+                mQueryMetricsListener.onQueryFinished(searchQuery, startTime - mQueryChangeTime,
+                        SystemClock.uptimeMillis() - startTime, false);
+            }
+        }
+    }
+
+    private void cancelQuery() {
+        final Query query = mQuery;
+        if (query == null) {
+            return;
+        }
+        if (DEBUG) Log.v(TAG, "cancelQuery " + query.mText);
+        mQuery = null;
+        query.cancel();
+        mQueryProvider.onQueryCancel(query);
+        mQueryProvider = null;
+        reportQueryFinished(query, true);
+    }
+
+    private void onQueryResults(Query query, Runnable update) {
+        if (mQuery == null || query.mGeneration != mQueryGeneration) {
+            if (DEBUG) Log.v(TAG, "dropping results of " + query.mText);
+            return;
+        }
+        if (DEBUG) Log.v(TAG, "results of " + query.mText);
+        mQuery = null;
+        mQueryProvider = null;
+        query.mFragment.clear();
+        if (update != null) {
+            update.run();
+        }
+        reportQueryFinished(query, false);
+    }
+
+    private void reportQueryFinished(Query query, boolean cancelled) {
+        if (mQueryMetricsListener != null) {
+            mQueryMetricsListener.onQueryFinished(query.mText,
+                    mQueryStartTime - mQueryChangeTime,
+                    SystemClock.uptimeMillis() - mQueryStartTime, cancelled);
         }
     }
 
     private void submitQuery(String query) {
+        mHandler.removeCallbacks(mStartQueryRunnable);
+        mDebouncedQuery = null;
+        cancelQuery();
         queryComplete();
         if (null != mProvider) {
             mProvider.onQueryTextSubmit(query);
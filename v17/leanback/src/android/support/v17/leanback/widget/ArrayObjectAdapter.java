@@ -13,17 +13,32 @@
  */
 package android.support.v17.leanback.widget;
 
+import android.support.v7.util.DiffUtil;
+import android.support.v7.util.ListUpdateCallback;
+
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 
 /**
  * An {@link ObjectAdapter} implemented with an {@link ArrayList}.
+ *
+ * <p>{@link #setItems(List, DiffCallback)} replaces all the items, notifying observers of the
+ * items which were inserted, removed, moved or changed so that only those are rebound.
  */
 public class ArrayObjectAdapter extends ObjectAdapter {
 
     private ArrayList<Object> mItems = new ArrayList<Object>();
+    // Incremented whenever mItems changes, so a diff calculated in the background can tell
+    // whether it still applies.
+    private int mModificationCount;
+    // Incremented by setItems(), so only the diff of the latest call is applied.
+    private int mSetItemsGeneration;
+    // Position of the first occurrence of each item, or null if the index is disabled.
+    private IdentityHashMap<Object, Integer> mIdentityIndex;
+    private boolean mIdentityIndexValid;
 
     /**
      * Constructs an adapter with the given {@link PresenterSelector}.
@@ -58,14 +73,56 @@ public class ArrayObjectAdapter extends ObjectAdapter {
 
     /**
      * Returns the index for the first occurrence of item in the adapter, or -1 if
-     * not found.
+     * not found. When the identity index is enabled, items are compared by identity
+     * instead of {@link Object#equals(Object)}.
      *
      * @param item  The item to find in the list.
      * @return Index of the first occurrence of the item in the adapter, or -1
      *         if not found.
+     * @see #setIdentityIndexEnabled(boolean)
      */
     public int indexOf(Object item) {
-        return mItems.indexOf(item);
+        if (mIdentityIndex == null) {
+            return mItems.indexOf(item);
+        }
+        if (!mIdentityIndexValid) {
+            // Visit the items from the last to the first, so the first occurrence wins
+            mIdentityIndex.clear();
+            for (int i = mItems.size() - 1; i >= 0; i--) {
+                mIdentityIndex.put(mItems.get(i), i);
+            }
+            mIdentityIndexValid = true;
+        }
+        Integer index = mIdentityIndex.get(item);
+        return index != null ? index : -1;
+    }
+
+    /**
+     * Enables or disables the identity index, which makes {@link #indexOf(Object)} and
+     * {@link #remove(Object)} find items in constant time instead of scanning the list.
+     * <p>
+     * With the index enabled, items are found only if they are the same instance as the item
+     * in the adapter, not if they are merely {@link Object#equals(Object) equal}. The index is
+     * rebuilt on the first lookup after the adapter is modified, so it helps most with adapters
+     * which are looked up more often than they are modified. It is disabled by default.
+     *
+     * @param enabled True to index the items by identity.
+     */
+    public void setIdentityIndexEnabled(boolean enabled) {
+        if (enabled == (mIdentityIndex != null)) {
+            return;
+        }
+        mIdentityIndex = enabled ? new IdentityHashMap<Object, Integer>() : null;
+        mIdentityIndexValid = false;
+    }
+
+    /**
+     * Returns whether the identity index is enabled.
+     *
+     * @see #setIdentityIndexEnabled(boolean)
+     */
+    public boolean isIdentityIndexEnabled() {
+        return mIdentityIndex != null;
     }
 
     /**
@@ -97,6 +154,7 @@ public class ArrayObjectAdapter extends ObjectAdapter {
      */
     public void add(int index, Object item) {
         mItems.add(index, item);
+        onItemsModified();
         notifyItemRangeInserted(index, 1);
     }
 
@@ -113,19 +171,22 @@ public class ArrayObjectAdapter extends ObjectAdapter {
             return;
         }
         mItems.addAll(index, items);
+        onItemsModified();
         notifyItemRangeInserted(index, itemsCount);
     }
 
     /**
-     * Removes the first occurrence of the given item from the adapter.
+     * Removes the first occurrence of the given item from the adapter. When the identity
+     * index is enabled, items are compared by identity.
      *
      * @param item The item to remove from the adapter.
      * @return True if the item was found and thus removed from the adapter.
      */
     public boolean remove(Object item) {
-        int index = mItems.indexOf(item);
+        int index = indexOf(item);
         if (index >= 0) {
             mItems.remove(index);
+            onItemsModified();
             notifyItemRangeRemoved(index, 1);
         }
         return index >= 0;
@@ -140,6 +201,7 @@ public class ArrayObjectAdapter extends ObjectAdapter {
      */
     public void replace(int position, Object item) {
         mItems.set(position, item);
+        onItemsModified();
         notifyItemRangeChanged(position, 1);
     }
 
@@ -157,9 +219,8 @@ public class ArrayObjectAdapter extends ObjectAdapter {
             return 0;
         }
 
-        for (int i = 0; i < itemsToRemove; i++) {
-            mItems.remove(position);
-        }
+        mItems.subList(position, position + itemsToRemove).clear();
+        onItemsModified();
         notifyItemRangeRemoved(position, itemsToRemove);
         return itemsToRemove;
     }
@@ -173,13 +234,142 @@ public class ArrayObjectAdapter extends ObjectAdapter {
             return;
         }
         mItems.clear();
+        onItemsModified();
         notifyItemRangeRemoved(0, itemCount);
     }
 
+    /**
+     * Replaces all the items of the adapter with the items of a list.
+     * <p>
+     * If a {@link DiffCallback} is given, the changes between the current items and the new
+     * items are calculated on a background thread. The items are replaced on the main thread
+     * once this is done, and observers are notified of the ranges of items which were inserted,
+     * removed or changed, and of the items which were moved. Until then, the adapter keeps its
+     * current items. If setItems is called again before the changes are calculated, only the
+     * items of the latest call are applied. Changes made to the adapter in the meantime are
+     * replaced by the new items, once the changes from the modified items are calculated.
+     * <p>
+     * Without a {@link DiffCallback}, the items are replaced right away and observers are
+     * notified that the whole data set changed.
+     *
+     * @param itemList The new items. The list is copied, so it may be modified afterwards.
+     * @param callback Callback which compares the current items with the new items, or null.
+     */
+    public void setItems(final List itemList, final DiffCallback callback) {
+        mSetItemsGeneration++;
+        if (callback == null) {
+            mItems.clear();
+            mItems.addAll(itemList);
+            onItemsModified();
+            notifyChanged();
+            return;
+        }
+        if (mItems.isEmpty() || itemList.isEmpty()) {
+            // Nothing to compare
+            clear();
+            addAll(0, itemList);
+            return;
+        }
+        calculateDiffAsync(new ArrayList<Object>(itemList), callback, mSetItemsGeneration);
+    }
+
+    /**
+     * Calculates the changes between a snapshot of the current items and the new items on a
+     * background thread, then applies them unless setItems() was called again.
+     */
+    private void calculateDiffAsync(final List<Object> newItems, final DiffCallback callback,
+            final int generation) {
+        final int modificationCount = mModificationCount;
+        DiffUtil.calculateDiffAsync(
+                new ItemListDiffCallback(new ArrayList<Object>(mItems), newItems, callback), true,
+                new DiffUtil.OnDiffCalculatedListener() {
+                    @Override
+                    public void onDiffCalculated(DiffUtil.DiffResult result) {
+                        if (generation != mSetItemsGeneration) {
+                            // Superseded by a later call
+                            return;
+                        }
+                        if (modificationCount != mModificationCount) {
+                            // The items changed since the diff was started, compare with them
+                            calculateDiffAsync(newItems, callback, generation);
+                            return;
+                        }
+                        mItems.clear();
+                        mItems.addAll(newItems);
+                        onItemsModified();
+                        result.dispatchUpdatesTo(new ListUpdateCallback() {
+                            @Override
+                            public void onInserted(int position, int count) {
+                                notifyItemRangeInserted(position, count);
+                            }
+
+                            @Override
+                            public void onRemoved(int position, int count) {
+                                notifyItemRangeRemoved(position, count);
+                            }
+
+                            @Override
+                            public void onMoved(int fromPosition, int toPosition) {
+                                notifyItemMoved(fromPosition, toPosition);
+                            }
+
+                            @Override
+                            public void onChanged(int position, int count, Object payload) {
+                                notifyItemRangeChanged(position, count);
+                            }
+                        });
+                    }
+                });
+    }
+
     /**
      * Gets a read-only view of the list of object of this ArrayObjectAdapter.
      */
     public <E> List<E> unmodifiableList() {
         return Collections.unmodifiableList((List<E>) mItems);
     }
+
+    private void onItemsModified() {
+        mModificationCount++;
+        mIdentityIndexValid = false;
+    }
+
+    /**
+     * Compares two lists of items with a {@link DiffCallback}.
+     */
+    private static final class ItemListDiffCallback extends DiffUtil.Callback {
+        private final List<Object> mOldItems;
+        private final List<Object> mNewItems;
+        private final DiffCallback mCallback;
+
+        ItemListDiffCallback(List<Object> oldItems, List<Object> newItems, DiffCallback callback) {
+            mOldItems = oldItems;
+            mNewItems = newItems;
+            mCallback = callback;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOldItems.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNewItems.size();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return mCallback.areItemsTheSame(mOldItems.get(oldItemPosition),
+                    mNewItems.get(newItemPosition));
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return mCallback.areContentsTheSame(mOldItems.get(oldItemPosition),
+                    mNewItems.get(newItemPosition));
+        }
+    }
 }
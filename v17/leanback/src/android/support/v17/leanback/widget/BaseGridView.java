@@ -943,4 +943,30 @@ abstract class BaseGridView extends RecyclerView {
         return mLayoutManager.getExtraLayoutSpace();
     }
 
+    /**
+     * Sets pixels of extra space for layout child in invisible area, in the
+     * direction the focus last moved. The children the focus is about to reach,
+     * such as the next row of a {@link VerticalGridView} of rows, are created
+     * and bound before they become visible. The extra space is kept while the
+     * grid is idle, and is dropped when the focus leaves the grid.
+     *
+     * @param focusPrefetchSpace  Pixels of extra space for layout invisible child
+     *                            in the direction of focus movement.
+     *                            Must be bigger or equals to 0.
+     * @hide
+     */
+    public void setFocusPrefetchSpace(int focusPrefetchSpace) {
+        mLayoutManager.setFocusPrefetchSpace(focusPrefetchSpace);
+    }
+
+    /**
+     * Returns pixels of extra space for layout child in invisible area, in the
+     * direction the focus last moved.
+     *
+     * @hide
+     */
+    public int getFocusPrefetchSpace() {
+        return mLayoutManager.getFocusPrefetchSpace();
+    }
+
 }
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.support.v17.leanback.widget;
+
+/**
+ * Callback which decides how the items of an {@link ArrayObjectAdapter} are compared when they
+ * are replaced with {@link ArrayObjectAdapter#setItems(java.util.List, DiffCallback)}.
+ *
+ * <p>The methods are called on a background thread, so they must not depend on state which
+ * is modified on the main thread.
+ *
+ * @param <Value> Type of the items.
+ */
+public abstract class DiffCallback<Value> {
+
+    /**
+     * Returns whether two items represent the same object, such as items with the same id.
+     *
+     * @param oldItem The item in the current list.
+     * @param newItem The item in the new list.
+     * @return True if the two items represent the same object.
+     */
+    public abstract boolean areItemsTheSame(Value oldItem, Value newItem);
+
+    /**
+     * Returns whether two items which represent the same object are displayed the same way.
+     * Items for which this returns false are reported as changed.
+     * <p>
+     * This is only called for items for which {@link #areItemsTheSame(Object, Object)} returns
+     * true.
+     *
+     * @param oldItem The item in the current list.
+     * @param newItem The item in the new list.
+     * @return True if the contents of the two items are the same.
+     */
+    public abstract boolean areContentsTheSame(Value oldItem, Value newItem);
+}
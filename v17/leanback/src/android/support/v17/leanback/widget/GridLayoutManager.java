@@ -572,6 +572,18 @@ final class GridLayoutManager extends RecyclerView.LayoutManager {
      */
     private int mExtraLayoutSpace;
 
+    /**
+     * Pixels of extra space for layout item (outside the widget) in the direction the
+     * focus last moved, so items are created and bound before the focus reaches them.
+     */
+    private int mFocusPrefetchSpace;
+
+    /**
+     * Direction the focus last moved: 1 towards higher positions, -1 towards lower
+     * positions, 0 if it has not moved yet.
+     */
+    private int mFocusMoveDirection;
+
     /**
      *  Allow DPAD key to navigate out at the front of the View (where position = 0),
      *  default is false.
@@ -1686,7 +1698,7 @@ final class GridLayoutManager extends RecyclerView.LayoutManager {
     void setExtraLayoutSpace(int extraLayoutSpace) {
         if (mExtraLayoutSpace == extraLayoutSpace) {
             return;
-        } else if (mExtraLayoutSpace < 0) {
+        } else if (extraLayoutSpace < 0) {
             throw new IllegalArgumentException("ExtraLayoutSpace must >= 0");
         }
         mExtraLayoutSpace = extraLayoutSpace;
@@ -1697,17 +1709,49 @@ final class GridLayoutManager extends RecyclerView.LayoutManager {
         return mExtraLayoutSpace;
     }
 
+    void setFocusPrefetchSpace(int focusPrefetchSpace) {
+        if (mFocusPrefetchSpace == focusPrefetchSpace) {
+            return;
+        } else if (focusPrefetchSpace < 0) {
+            throw new IllegalArgumentException("FocusPrefetchSpace must >= 0");
+        }
+        mFocusPrefetchSpace = focusPrefetchSpace;
+        requestLayout();
+    }
+
+    int getFocusPrefetchSpace() {
+        return mFocusPrefetchSpace;
+    }
+
+    /**
+     * Returns the extra space for layout after the last position.
+     */
+    private int getExtraLayoutSpaceAtEnd() {
+        return mFocusMoveDirection > 0 && mBaseGridView.hasFocus()
+                ? mExtraLayoutSpace + mFocusPrefetchSpace : mExtraLayoutSpace;
+    }
+
+    /**
+     * Returns the extra space for layout before the first position.
+     */
+    private int getExtraLayoutSpaceAtFront() {
+        return mFocusMoveDirection < 0 && mBaseGridView.hasFocus()
+                ? mExtraLayoutSpace + mFocusPrefetchSpace : mExtraLayoutSpace;
+    }
+
     private void removeInvisibleViewsAtEnd() {
         if (mPruneChild) {
+            final int extraLayoutSpace = getExtraLayoutSpaceAtEnd();
             mGrid.removeInvisibleItemsAtEnd(mFocusPosition,
-                    mReverseFlowPrimary ? -mExtraLayoutSpace : mSizePrimary + mExtraLayoutSpace);
+                    mReverseFlowPrimary ? -extraLayoutSpace : mSizePrimary + extraLayoutSpace);
         }
     }
 
     private void removeInvisibleViewsAtFront() {
         if (mPruneChild) {
+            final int extraLayoutSpace = getExtraLayoutSpaceAtFront();
             mGrid.removeInvisibleItemsAtFront(mFocusPosition,
-                    mReverseFlowPrimary ? mSizePrimary + mExtraLayoutSpace: -mExtraLayoutSpace);
+                    mReverseFlowPrimary ? mSizePrimary + extraLayoutSpace: -extraLayoutSpace);
         }
     }
 
@@ -1720,13 +1764,15 @@ final class GridLayoutManager extends RecyclerView.LayoutManager {
     }
 
     private void appendVisibleItems() {
-        mGrid.appendVisibleItems(mReverseFlowPrimary ? -mExtraLayoutSpace
-                : mSizePrimary + mExtraLayoutSpace);
+        final int extraLayoutSpace = getExtraLayoutSpaceAtEnd();
+        mGrid.appendVisibleItems(mReverseFlowPrimary ? -extraLayoutSpace
+                : mSizePrimary + extraLayoutSpace);
     }
 
     private void prependVisibleItems() {
-        mGrid.prependVisibleItems(mReverseFlowPrimary ? mSizePrimary + mExtraLayoutSpace
-                : -mExtraLayoutSpace);
+        final int extraLayoutSpace = getExtraLayoutSpaceAtFront();
+        mGrid.prependVisibleItems(mReverseFlowPrimary ? mSizePrimary + extraLayoutSpace
+                : -extraLayoutSpace);
     }
 
     /**
@@ -2524,6 +2570,10 @@ final class GridLayoutManager extends RecyclerView.LayoutManager {
         int newFocusPosition = getPositionByView(view);
         int newSubFocusPosition = getSubPositionByView(view, childView);
         if (newFocusPosition != mFocusPosition || newSubFocusPosition != mSubFocusPosition) {
+            if (newFocusPosition != NO_POSITION && mFocusPosition != NO_POSITION
+                    && newFocusPosition != mFocusPosition) {
+                mFocusMoveDirection = newFocusPosition > mFocusPosition ? 1 : -1;
+            }
             mFocusPosition = newFocusPosition;
             mSubFocusPosition = newSubFocusPosition;
             mFocusPositionOffset = 0;
@@ -13,7 +13,6 @@
  */
 package android.support.v17.leanback.widget;
 
-import android.support.v4.util.CircularArray;
 import android.support.v4.util.CircularIntArray;
 
 import java.io.PrintWriter;
@@ -33,7 +32,9 @@ import java.util.List;
  * scrolls back to 0 and we don't keep history location information, edges of
  * the very beginning of rows will not be aligned. It is recommended to keep a
  * list of tens of thousands of {@link StaggeredGrid.Location}s which will be
- * big enough to remember a typical user's scroll history.
+ * big enough to remember a typical user's scroll history.  The locations are
+ * stored in a {@link LocationArray} of primitive ints, so keeping many of them
+ * and scrolling through them allocates no objects.
  *
  * <p>
  * This class is abstract and can be replaced with different implementations.
@@ -63,12 +64,166 @@ abstract class StaggeredGrid extends Grid {
         }
     }
 
-    protected CircularArray<Location> mLocations = new CircularArray<Location>(64);
+    /**
+     * Circular array of the row, offset and size of consecutive items, kept in parallel int
+     * arrays instead of one {@link Location} object per item.
+     */
+    static final class LocationArray {
+        private int[] mRows;
+        private int[] mOffsets;
+        private int[] mSizes;
+        private int mHead;
+        private int mSize;
+        private int mCapacityBitmask;
+
+        /**
+         * Creates an array with capacity for at least {@code minCapacity} locations.
+         */
+        LocationArray(int minCapacity) {
+            if (minCapacity < 1) {
+                throw new IllegalArgumentException("capacity must be >= 1");
+            }
+            if (minCapacity > (2 << 29)) {
+                throw new IllegalArgumentException("capacity must be <= 2^30");
+            }
+            final int arrayCapacity;
+            if (Integer.bitCount(minCapacity) != 1) {
+                arrayCapacity = Integer.highestOneBit(minCapacity - 1) << 1;
+            } else {
+                arrayCapacity = minCapacity;
+            }
+            mCapacityBitmask = arrayCapacity - 1;
+            mRows = new int[arrayCapacity];
+            mOffsets = new int[arrayCapacity];
+            mSizes = new int[arrayCapacity];
+        }
+
+        private void doubleCapacity() {
+            final int n = mRows.length;
+            final int newCapacity = n << 1;
+            if (newCapacity < 0) {
+                throw new RuntimeException("Max array capacity exceeded");
+            }
+            mRows = copyToCapacity(mRows, newCapacity);
+            mOffsets = copyToCapacity(mOffsets, newCapacity);
+            mSizes = copyToCapacity(mSizes, newCapacity);
+            mHead = 0;
+            mCapacityBitmask = newCapacity - 1;
+        }
+
+        private int[] copyToCapacity(int[] elements, int newCapacity) {
+            final int r = elements.length - mHead;
+            final int[] a = new int[newCapacity];
+            System.arraycopy(elements, mHead, a, 0, r);
+            System.arraycopy(elements, 0, a, r, mHead);
+            return a;
+        }
+
+        private int slot(int n) {
+            if (n < 0 || n >= mSize) {
+                throw new ArrayIndexOutOfBoundsException();
+            }
+            return (mHead + n) & mCapacityBitmask;
+        }
+
+        /**
+         * Adds a location in front of the array.
+         */
+        void addFirst(int row, int offset, int size) {
+            if (mSize == mRows.length) {
+                doubleCapacity();
+            }
+            mHead = (mHead - 1) & mCapacityBitmask;
+            mRows[mHead] = row;
+            mOffsets[mHead] = offset;
+            mSizes[mHead] = size;
+            mSize++;
+        }
+
+        /**
+         * Adds a location at the end of the array.
+         */
+        void addLast(int row, int offset, int size) {
+            if (mSize == mRows.length) {
+                doubleCapacity();
+            }
+            final int tail = (mHead + mSize) & mCapacityBitmask;
+            mRows[tail] = row;
+            mOffsets[tail] = offset;
+            mSizes[tail] = size;
+            mSize++;
+        }
+
+        /**
+         * Removes locations from the front of the array, ignored when numOfElements is less
+         * than or equal to 0.
+         * @throws ArrayIndexOutOfBoundsException if numOfElements is larger than {@link #size()}
+         */
+        void removeFromStart(int numOfElements) {
+            if (numOfElements <= 0) {
+                return;
+            }
+            if (numOfElements > mSize) {
+                throw new ArrayIndexOutOfBoundsException();
+            }
+            mHead = (mHead + numOfElements) & mCapacityBitmask;
+            mSize -= numOfElements;
+        }
+
+        /**
+         * Removes locations from the end of the array, ignored when numOfElements is less
+         * than or equal to 0.
+         * @throws ArrayIndexOutOfBoundsException if numOfElements is larger than {@link #size()}
+         */
+        void removeFromEnd(int numOfElements) {
+            if (numOfElements <= 0) {
+                return;
+            }
+            if (numOfElements > mSize) {
+                throw new ArrayIndexOutOfBoundsException();
+            }
+            mSize -= numOfElements;
+        }
+
+        void clear() {
+            mHead = 0;
+            mSize = 0;
+        }
+
+        int size() {
+            return mSize;
+        }
+
+        int getRow(int n) {
+            return mRows[slot(n)];
+        }
+
+        int getOffset(int n) {
+            return mOffsets[slot(n)];
+        }
+
+        int getSize(int n) {
+            return mSizes[slot(n)];
+        }
+
+        void setOffset(int n, int offset) {
+            mOffsets[slot(n)] = offset;
+        }
+
+        void setSize(int n, int size) {
+            mSizes[slot(n)] = size;
+        }
+    }
+
+    protected final LocationArray mLocations = new LocationArray(64);
 
     // mFirstIndex <= mFirstVisibleIndex <= mLastVisibleIndex
     //    <= mFirstIndex + mLocations.size() - 1
     protected int mFirstIndex = -1;
 
+    // Returned by getLocation(), so reading locations doesn't allocate.
+    private final Location mTmpLocation = new Location(0, 0, 0);
+
     private Object[] mTmpItem = new Object[1];
 
     protected Object mPendingItem;
@@ -102,14 +257,17 @@ abstract class StaggeredGrid extends Grid {
         if (mLocations.size() == 0) {
             return null;
         }
-        return mLocations.get(index - mFirstIndex);
+        final int n = index - mFirstIndex;
+        mTmpLocation.row = mLocations.getRow(n);
+        mTmpLocation.offset = mLocations.getOffset(n);
+        mTmpLocation.size = mLocations.getSize(n);
+        return mTmpLocation;
     }
 
     @Override
     public final void debugPrint(PrintWriter pw) {
         for (int i = 0, size = mLocations.size(); i < size; i++) {
-            Location loc = mLocations.get(i);
-            pw.print("<" + (mFirstIndex + i) + "," + loc.row + ">");
+            pw.print("<" + (mFirstIndex + i) + "," + mLocations.getRow(i) + ">");
             pw.print(" ");
             pw.println();
         }
@@ -167,10 +325,10 @@ abstract class StaggeredGrid extends Grid {
             }
         }
         for (; itemIndex >= mFirstIndex; itemIndex--) {
-            Location loc = getLocation(itemIndex);
-            int rowIndex = loc.row;
+            final int n = itemIndex - mFirstIndex;
+            int rowIndex = mLocations.getRow(n);
             int size = mProvider.createItem(itemIndex, false, mTmpItem);
-            if (size != loc.size) {
+            if (size != mLocations.getSize(n)) {
                 mLocations.removeFromStart(itemIndex + 1 - mFirstIndex);
                 mFirstIndex = mFirstVisibleIndex;
                 // pending item will be added in prependVisibleItemsWithoutCache
@@ -187,7 +345,7 @@ abstract class StaggeredGrid extends Grid {
                 return true;
             }
             edge = mProvider.getEdge(itemIndex);
-            offset = loc.offset;
+            offset = mLocations.getOffset(n);
             // Check limit after filled a full column
             if (rowIndex == 0) {
                 if (oneColumnMode) {
@@ -246,29 +404,30 @@ abstract class StaggeredGrid extends Grid {
                 throw new IllegalStateException();
             }
         }
-        Location oldFirstLoc = mFirstIndex >= 0 ? getLocation(mFirstIndex) : null;
+        final boolean hasOldFirst = mFirstIndex >= 0 && mLocations.size() > 0;
         int oldFirstEdge = mProvider.getEdge(mFirstIndex);
-        Location loc = new Location(rowIndex, 0, 0);
-        mLocations.addFirst(loc);
+        mLocations.addFirst(rowIndex, 0, 0);
+        int size;
         Object item;
         if (mPendingItem != null) {
-            loc.size = mPendingItemSize;
+            size = mPendingItemSize;
             item = mPendingItem;
             mPendingItem = null;
         } else {
-            loc.size = mProvider.createItem(itemIndex, false, mTmpItem);
+            size = mProvider.createItem(itemIndex, false, mTmpItem);
             item = mTmpItem[0];
         }
+        mLocations.setSize(0, size);
         mFirstIndex = mFirstVisibleIndex = itemIndex;
         if (mLastVisibleIndex < 0) {
             mLastVisibleIndex = itemIndex;
         }
-        int thisEdge = !mReversedFlow ? edge - loc.size : edge + loc.size;
-        if (oldFirstLoc != null) {
-            oldFirstLoc.offset = oldFirstEdge - thisEdge;
+        int thisEdge = !mReversedFlow ? edge - size : edge + size;
+        if (hasOldFirst) {
+            mLocations.setOffset(1, oldFirstEdge - thisEdge);
         }
-        mProvider.addItem(item, itemIndex, loc.size, rowIndex, thisEdge);
-        return loc.size;
+        mProvider.addItem(item, itemIndex, size, rowIndex, thisEdge);
+        return size;
     }
 
     @Override
@@ -321,14 +480,14 @@ abstract class StaggeredGrid extends Grid {
         }
         int lastIndex = getLastIndex();
         for (; itemIndex < count && itemIndex <= lastIndex; itemIndex++) {
-            Location loc = getLocation(itemIndex);
+            final int n = itemIndex - mFirstIndex;
             if (edge != Integer.MAX_VALUE) {
-                edge = edge + loc.offset;
+                edge = edge + mLocations.getOffset(n);
             }
-            int rowIndex = loc.row;
+            int rowIndex = mLocations.getRow(n);
             int size = mProvider.createItem(itemIndex, true, mTmpItem);
-            if (size != loc.size) {
-                loc.size = size;
+            if (size != mLocations.getSize(n)) {
+                mLocations.setSize(n, size);
                 mLocations.removeFromEnd(lastIndex - itemIndex);
                 lastIndex = itemIndex;
             }
@@ -382,17 +541,18 @@ abstract class StaggeredGrid extends Grid {
         } else {
             offset = location - mProvider.getEdge(mLastVisibleIndex);
         }
-        Location loc = new Location(rowIndex, offset, 0);
-        mLocations.addLast(loc);
+        mLocations.addLast(rowIndex, offset, 0);
+        int size;
         Object item;
         if (mPendingItem != null) {
-            loc.size = mPendingItemSize;
+            size = mPendingItemSize;
             item = mPendingItem;
             mPendingItem = null;
         } else {
-            loc.size = mProvider.createItem(itemIndex, true, mTmpItem);
+            size = mProvider.createItem(itemIndex, true, mTmpItem);
             item = mTmpItem[0];
         }
+        mLocations.setSize(mLocations.size() - 1, size);
         if (mLocations.size() == 1) {
             mFirstIndex = mFirstVisibleIndex = mLastVisibleIndex = itemIndex;
         } else {
@@ -402,8 +562,8 @@ abstract class StaggeredGrid extends Grid {
                 mLastVisibleIndex++;
             }
         }
-        mProvider.addItem(item, itemIndex, loc.size, rowIndex, location);
-        return loc.size;
+        mProvider.addItem(item, itemIndex, size, rowIndex, location);
+        return size;
     }
 
     @Override
@@ -413,7 +573,8 @@ abstract class StaggeredGrid extends Grid {
         }
         if (startPos >= 0) {
             for (int i = startPos; i <= endPos; i++) {
-                CircularIntArray row = mTmpItemPositionsInRows[getLocation(i).row];
+                CircularIntArray row =
+                        mTmpItemPositionsInRows[mLocations.getRow(i - mFirstIndex)];
                 if (row.size() > 0 && row.getLast() == i - 1) {
                     // update continuous range
                     row.popLast();
@@ -41,7 +41,7 @@ for w in files:
     file.close()
     outfile.close()
 
-testcls = ['Browse']
+testcls = ['Browse', 'Search']
 
 for w in testcls:
     print "copy {}FrgamentTest to {}SupportFragmentTest".format(w, w)
@@ -78,3 +78,19 @@ for line in file:
 file.close()
 outfile.close()
 
+
+
+print "copy SearchFragmentTestActivity to SearchSupportFragmentTestActivity"
+file = open('src/android/support/v17/leanback/app/SearchFragmentTestActivity.java', 'r')
+outfile = open('src/android/support/v17/leanback/app/SearchSupportFragmentTestActivity.java', 'w')
+outfile.write("/* This file is auto-generated from SearchFragmentTestActivity.java.  DO NOT MODIFY. */\n\n")
+for line in file:
+    line = line.replace('SearchFragmentTestActivity', 'SearchSupportFragmentTestActivity')
+    line = line.replace('SearchFragment', 'SearchSupportFragment')
+    line = line.replace('android.app.Fragment', 'android.support.v4.app.Fragment')
+    line = line.replace('android.app.Activity', 'android.support.v4.app.FragmentActivity')
+    line = line.replace('extends Activity', 'extends FragmentActivity')
+    line = line.replace('getFragmentManager', 'getSupportFragmentManager')
+    outfile.write(line)
+file.close()
+outfile.close()
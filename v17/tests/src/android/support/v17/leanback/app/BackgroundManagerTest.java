@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.support.v17.leanback.app;
+
+import android.app.Instrumentation;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.graphics.drawable.ColorDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.SystemClock;
+import android.test.ActivityInstrumentationTestCase2;
+
+/**
+ * @hide from javadoc
+ */
+public class BackgroundManagerTest extends
+        ActivityInstrumentationTestCase2<BackgroundManagerTestActivity> {
+
+    static final long TIMEOUT = 5000;
+
+    Instrumentation mInstrumentation;
+    BackgroundManager mManager;
+
+    public BackgroundManagerTest() {
+        super(BackgroundManagerTestActivity.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mInstrumentation = getInstrumentation();
+        final BackgroundManagerTestActivity activity = getActivity();
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mManager = BackgroundManager.getInstance(activity);
+                mManager.attach(activity.getWindow());
+            }
+        });
+        mInstrumentation.waitForIdleSync();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mManager.release();
+            }
+        });
+        super.tearDown();
+    }
+
+    /**
+     * Returns a bitmap smaller than the window, which needs to be prepared.
+     */
+    private static Bitmap createBitmap(int color) {
+        Bitmap bitmap = Bitmap.createBitmap(64, 32, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(color);
+        return bitmap;
+    }
+
+    private void setBitmaps(final Bitmap... bitmaps) {
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                for (Bitmap bitmap : bitmaps) {
+                    mManager.setBitmap(bitmap);
+                }
+            }
+        });
+    }
+
+    private Bitmap getPreparedBitmap(final Bitmap source) {
+        final Bitmap[] prepared = new Bitmap[1];
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                prepared[0] = mManager.getPreparedBitmap(source);
+            }
+        });
+        return prepared[0];
+    }
+
+    private Drawable getDrawable() {
+        final Drawable[] drawable = new Drawable[1];
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                drawable[0] = mManager.getDrawable();
+            }
+        });
+        return drawable[0];
+    }
+
+    /**
+     * Waits until the background shows the bitmap prepared from the given one, and returns it.
+     */
+    private Bitmap waitForPreparedBackground(final Bitmap source) {
+        final Bitmap[] prepared = new Bitmap[1];
+        final long end = SystemClock.uptimeMillis() + TIMEOUT;
+        while (SystemClock.uptimeMillis() < end) {
+            mInstrumentation.runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    Drawable drawable = mManager.getDrawable();
+                    if (drawable instanceof BackgroundManager.BitmapDrawable) {
+                        BackgroundManager.BitmapDrawable bitmapDrawable =
+                                (BackgroundManager.BitmapDrawable) drawable;
+                        if (bitmapDrawable.isPreparedFrom(source)
+                                && bitmapDrawable.getBitmap() != source) {
+                            prepared[0] = bitmapDrawable.getBitmap();
+                        }
+                    }
+                }
+            });
+            if (prepared[0] != null) {
+                return prepared[0];
+            }
+            SystemClock.sleep(50);
+        }
+        fail("Background not prepared from " + source);
+        return null;
+    }
+
+    public void testNewerBitmapCancelsPreparation() throws Throwable {
+        final Bitmap first = createBitmap(Color.RED);
+        final Bitmap second = createBitmap(Color.BLUE);
+        setBitmaps(first, second);
+
+        final Bitmap prepared = waitForPreparedBackground(second);
+        assertSame(prepared, getPreparedBitmap(second));
+        assertNull(getPreparedBitmap(first));
+    }
+
+    public void testNewerDrawableCancelsPreparation() throws Throwable {
+        final Bitmap bitmap = createBitmap(Color.RED);
+        final Drawable drawable = new ColorDrawable(Color.GREEN);
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mManager.setBitmap(bitmap);
+                mManager.setDrawable(drawable);
+            }
+        });
+        final long end = SystemClock.uptimeMillis() + TIMEOUT;
+        while (getDrawable() != drawable && SystemClock.uptimeMillis() < end) {
+            SystemClock.sleep(50);
+        }
+        assertSame(drawable, getDrawable());
+        // Let the cancelled preparation complete
+        SystemClock.sleep(500);
+        mInstrumentation.waitForIdleSync();
+        assertNull(getPreparedBitmap(bitmap));
+        assertSame(drawable, getDrawable());
+    }
+
+    public void testSameBitmapServedFromCache() throws Throwable {
+        final Bitmap[] bitmaps = new Bitmap[] {
+                createBitmap(Color.RED), createBitmap(Color.GREEN), createBitmap(Color.BLUE),
+                createBitmap(Color.YELLOW)};
+        final Bitmap[] prepared = new Bitmap[bitmaps.length];
+        for (int i = 0; i < 3; i++) {
+            setBitmaps(bitmaps[i]);
+            prepared[i] = waitForPreparedBackground(bitmaps[i]);
+        }
+
+        // Shown again without preparing it
+        setBitmaps(bitmaps[0]);
+        assertSame(prepared[0], waitForPreparedBackground(bitmaps[0]));
+
+        // Only 3 bitmaps are kept, the least recently used is prepared again
+        setBitmaps(bitmaps[3]);
+        prepared[3] = waitForPreparedBackground(bitmaps[3]);
+        assertNull(getPreparedBitmap(bitmaps[1]));
+        setBitmaps(bitmaps[1]);
+        assertNotSame(prepared[1], waitForPreparedBackground(bitmaps[1]));
+    }
+}
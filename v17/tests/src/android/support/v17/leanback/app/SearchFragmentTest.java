@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.support.v17.leanback.app;
+
+import android.app.Instrumentation;
+import android.support.v17.leanback.widget.ArrayObjectAdapter;
+import android.support.v17.leanback.widget.ListRowPresenter;
+import android.support.v17.leanback.widget.ObjectAdapter;
+import android.test.ActivityInstrumentationTestCase2;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @hide from javadoc
+ */
+public class SearchFragmentTest extends
+        ActivityInstrumentationTestCase2<SearchFragmentTestActivity> {
+
+    static final long DEBOUNCE_DELAY = 500;
+
+    Instrumentation mInstrumentation;
+    SearchFragmentTestActivity mActivity;
+    SearchFragment mFragment;
+    TestProvider mProvider;
+
+    static class TestProvider implements SearchFragment.AsyncSearchResultProvider {
+        final ArrayObjectAdapter mAdapter = new ArrayObjectAdapter(new ListRowPresenter());
+        final List<SearchFragment.Query> mStarted = new ArrayList<SearchFragment.Query>();
+        final List<SearchFragment.Query> mCancelled = new ArrayList<SearchFragment.Query>();
+
+        @Override
+        public ObjectAdapter getResultsAdapter() {
+            return mAdapter;
+        }
+
+        @Override
+        public boolean onQueryTextChange(String newQuery) {
+            return false;
+        }
+
+        @Override
+        public boolean onQueryTextSubmit(String query) {
+            return false;
+        }
+
+        @Override
+        public void onQueryStart(SearchFragment.Query query) {
+            mStarted.add(query);
+        }
+
+        @Override
+        public void onQueryCancel(SearchFragment.Query query) {
+            mCancelled.add(query);
+        }
+    }
+
+    public SearchFragmentTest() {
+        super(SearchFragmentTestActivity.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mInstrumentation = getInstrumentation();
+        mActivity = getActivity();
+        mInstrumentation.waitForIdleSync();
+        mFragment = mActivity.getSearchFragment();
+        mProvider = new TestProvider();
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mFragment.setSearchResultProvider(mProvider);
+            }
+        });
+        mInstrumentation.waitForIdleSync();
+    }
+
+    private void setSearchQuery(final String query) {
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mFragment.setSearchQuery(query, false);
+            }
+        });
+    }
+
+    public void testQueryDebounce() throws Throwable {
+        mFragment.setQueryDebounceDelay(DEBOUNCE_DELAY);
+        setSearchQuery("a");
+        setSearchQuery("ab");
+        assertEquals(0, mProvider.mStarted.size());
+
+        Thread.sleep(DEBOUNCE_DELAY * 2);
+        mInstrumentation.waitForIdleSync();
+        // Only the last text is queried, and the skipped one is never cancelled
+        assertEquals(1, mProvider.mStarted.size());
+        assertEquals("ab", mProvider.mStarted.get(0).getText());
+        assertEquals(0, mProvider.mCancelled.size());
+    }
+
+    public void testSupersededQueryCancelled() throws Throwable {
+        setSearchQuery("a");
+        assertEquals(1, mProvider.mStarted.size());
+        final SearchFragment.Query first = mProvider.mStarted.get(0);
+        assertFalse(first.isCancelled());
+
+        setSearchQuery("ab");
+        assertEquals(2, mProvider.mStarted.size());
+        final SearchFragment.Query second = mProvider.mStarted.get(1);
+        assertEquals(1, mProvider.mCancelled.size());
+        assertSame(first, mProvider.mCancelled.get(0));
+        assertTrue(first.isCancelled());
+        assertFalse(second.isCancelled());
+        assertEquals("ab", second.getText());
+    }
+
+    public void testStaleResultsDropped() throws Throwable {
+        setSearchQuery("a");
+        setSearchQuery("ab");
+        final SearchFragment.Query first = mProvider.mStarted.get(0);
+        final SearchFragment.Query second = mProvider.mStarted.get(1);
+        final boolean[] updated = new boolean[3];
+
+        // Results are delivered from a background thread
+        first.deliverResults(new Runnable() {
+            @Override
+            public void run() {
+                updated[0] = true;
+            }
+        });
+        second.deliverResults(new Runnable() {
+            @Override
+            public void run() {
+                updated[1] = true;
+            }
+        });
+        mInstrumentation.waitForIdleSync();
+        assertFalse(updated[0]);
+        assertTrue(updated[1]);
+
+        // The query is finished once its results are delivered
+        second.deliverResults(new Runnable() {
+            @Override
+            public void run() {
+                updated[2] = true;
+            }
+        });
+        mInstrumentation.waitForIdleSync();
+        assertFalse(updated[2]);
+        assertEquals(1, mProvider.mCancelled.size());
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.support.v17.leanback.widget;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class ArrayObjectAdapterTest extends TestCase {
+
+    private static final long TIMEOUT_MS = 5000;
+
+    static class Item {
+        final int mId;
+        final String mContent;
+
+        Item(int id, String content) {
+            mId = id;
+            mContent = content;
+        }
+
+        @Override
+        public String toString() {
+            return mId + ":" + mContent;
+        }
+    }
+
+    static final DiffCallback<Item> ITEM_DIFF = new DiffCallback<Item>() {
+        @Override
+        public boolean areItemsTheSame(Item oldItem, Item newItem) {
+            return oldItem.mId == newItem.mId;
+        }
+
+        @Override
+        public boolean areContentsTheSame(Item oldItem, Item newItem) {
+            return oldItem.mContent.equals(newItem.mContent);
+        }
+    };
+
+    /**
+     * Applies the notifications of the adapter to a copy of its items, marking the inserted and
+     * changed items.
+     */
+    static class ReplayObserver extends ObjectAdapter.DataObserver {
+        static final Object INSERTED = new Object();
+        static final Object CHANGED = new Object();
+
+        final List<Object> mItems;
+        boolean mFullChange;
+
+        ReplayObserver(ArrayObjectAdapter adapter) {
+            mItems = new ArrayList<Object>(adapter.unmodifiableList());
+        }
+
+        @Override
+        public void onChanged() {
+            mFullChange = true;
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+            for (int i = 0; i < itemCount; i++) {
+                mItems.set(positionStart + i, CHANGED);
+            }
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            for (int i = 0; i < itemCount; i++) {
+                mItems.add(positionStart, INSERTED);
+            }
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            for (int i = 0; i < itemCount; i++) {
+                mItems.remove(positionStart);
+            }
+        }
+
+        @Override
+        public void onItemMoved(int fromPosition, int toPosition) {
+            mItems.add(toPosition, mItems.remove(fromPosition));
+        }
+    }
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private ArrayObjectAdapter mAdapter;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mAdapter = new ArrayObjectAdapter();
+    }
+
+    public void testIdentityIndex() {
+        final String a = new String("a");
+        final String b = new String("b");
+        final String otherA = new String("a");
+        mAdapter.add(a);
+        mAdapter.add(b);
+        mAdapter.add(a);
+        assertEquals(0, mAdapter.indexOf(otherA));
+
+        mAdapter.setIdentityIndexEnabled(true);
+        assertTrue(mAdapter.isIdentityIndexEnabled());
+        assertEquals(0, mAdapter.indexOf(a));
+        assertEquals(1, mAdapter.indexOf(b));
+        assertEquals(-1, mAdapter.indexOf(otherA));
+        assertFalse(mAdapter.remove(otherA));
+
+        mAdapter.add(0, otherA);
+        assertEquals(0, mAdapter.indexOf(otherA));
+        assertEquals(1, mAdapter.indexOf(a));
+        assertTrue(mAdapter.remove(a));
+        assertEquals(1, mAdapter.indexOf(b));
+        assertEquals(2, mAdapter.indexOf(a));
+        mAdapter.replace(1, a);
+        assertEquals(1, mAdapter.indexOf(a));
+        assertEquals(-1, mAdapter.indexOf(b));
+        mAdapter.removeItems(0, 2);
+        assertEquals(0, mAdapter.indexOf(a));
+        mAdapter.clear();
+        assertEquals(-1, mAdapter.indexOf(a));
+
+        mAdapter.setIdentityIndexEnabled(false);
+        mAdapter.add(a);
+        assertEquals(0, mAdapter.indexOf(otherA));
+    }
+
+    public void testSetItemsWithoutCallback() {
+        mAdapter.add("a");
+        ReplayObserver observer = new ReplayObserver(mAdapter);
+        mAdapter.registerObserver(observer);
+        mAdapter.setItems(Arrays.asList("b", "c"), null);
+        assertTrue(observer.mFullChange);
+        assertEquals(Arrays.asList("b", "c"), mAdapter.unmodifiableList());
+    }
+
+    public void testSetItemsNotifiesRanges() throws Throwable {
+        final List<Item> oldItems = Arrays.asList(new Item(1, "a"), new Item(2, "b"),
+                new Item(3, "c"), new Item(4, "d"), new Item(5, "e"), new Item(6, "f"));
+        final List<Item> newItems = Arrays.asList(new Item(6, "f"), new Item(1, "a"),
+                new Item(3, "C"), new Item(7, "g"), new Item(4, "d"), new Item(5, "e"));
+        final ReplayObserver observer = setUpAdapter(oldItems);
+
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mAdapter.setItems(newItems, ITEM_DIFF);
+            }
+        });
+        waitForItems(newItems);
+
+        assertFalse(observer.mFullChange);
+        assertReplayed(observer, oldItems, newItems);
+    }
+
+    public void testSetItemsAppliesLatestCall() throws Throwable {
+        final List<Item> oldItems = Arrays.asList(new Item(1, "a"), new Item(2, "b"));
+        final List<Item> firstItems = Arrays.asList(new Item(2, "b"), new Item(3, "c"));
+        final List<Item> secondItems = Arrays.asList(new Item(1, "A"), new Item(4, "d"));
+        final ReplayObserver observer = setUpAdapter(oldItems);
+
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mAdapter.setItems(firstItems, ITEM_DIFF);
+                mAdapter.setItems(secondItems, ITEM_DIFF);
+            }
+        });
+        waitForItems(secondItems);
+        // Let the result of the first call arrive, if it is still pending
+        SystemClock.sleep(100);
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+
+        assertEquals(secondItems, mAdapter.unmodifiableList());
+        assertReplayed(observer, oldItems, secondItems);
+    }
+
+    public void testSetItemsAfterModification() throws Throwable {
+        final List<Item> oldItems = Arrays.asList(new Item(1, "a"), new Item(2, "b"));
+        final List<Item> newItems = Arrays.asList(new Item(2, "b"), new Item(3, "c"));
+        final ReplayObserver observer = setUpAdapter(oldItems);
+
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mAdapter.setItems(newItems, ITEM_DIFF);
+                // Modified before the diff is delivered
+                mAdapter.add(0, new Item(4, "d"));
+            }
+        });
+        waitForItems(newItems);
+
+        assertFalse(observer.mFullChange);
+        assertEquals(newItems.size(), observer.mItems.size());
+        assertEquals(2, ((Item) observer.mItems.get(0)).mId);
+        assertSame(ReplayObserver.INSERTED, observer.mItems.get(1));
+    }
+
+    private ReplayObserver setUpAdapter(List<Item> items) {
+        mAdapter.addAll(0, items);
+        ReplayObserver observer = new ReplayObserver(mAdapter);
+        mAdapter.registerObserver(observer);
+        return observer;
+    }
+
+    private static void assertReplayed(ReplayObserver observer, List<Item> oldItems,
+            List<Item> newItems) {
+        assertEquals(newItems.size(), observer.mItems.size());
+        for (int i = 0; i < newItems.size(); i++) {
+            final Item newItem = newItems.get(i);
+            final Object replayed = observer.mItems.get(i);
+            if (replayed == ReplayObserver.INSERTED) {
+                for (Item oldItem : oldItems) {
+                    assertTrue("inserted " + newItem + " was present", oldItem.mId != newItem.mId);
+                }
+            } else if (replayed == ReplayObserver.CHANGED) {
+                assertNotNull("changed " + newItem + " was not present",
+                        findItem(oldItems, newItem.mId));
+            } else {
+                final Item oldItem = (Item) replayed;
+                assertEquals(newItem.mId, oldItem.mId);
+                assertEquals(newItem.mContent, oldItem.mContent);
+            }
+        }
+    }
+
+    private static Item findItem(List<Item> items, int id) {
+        for (Item item : items) {
+            if (item.mId == id) {
+                return item;
+            }
+        }
+        return null;
+    }
+
+    private void waitForItems(final List<Item> expected) throws Throwable {
+        final long end = SystemClock.uptimeMillis() + TIMEOUT_MS;
+        final boolean[] done = new boolean[1];
+        while (SystemClock.uptimeMillis() < end) {
+            runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    done[0] = expected.equals(mAdapter.unmodifiableList());
+                }
+            });
+            if (done[0]) {
+                return;
+            }
+            SystemClock.sleep(10);
+        }
+        fail("Items were not set: " + mAdapter.unmodifiableList());
+    }
+
+    private void runOnMainSync(final Runnable runnable) throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                runnable.run();
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    }
+}
@@ -2517,6 +2517,90 @@ public class GridWidgetTest extends ActivityInstrumentationTestCase2<GridActivit
         assertTrue(v.getBottom() >= windowSize - mGridView.getVerticalMargin());
     }
 
+    public void testFocusPrefetchSpace() throws Throwable {
+        mInstrumentation = getInstrumentation();
+        Intent intent = new Intent(mInstrumentation.getContext(), GridActivity.class);
+        intent.putExtra(GridActivity.EXTRA_LAYOUT_RESOURCE_ID,
+                R.layout.vertical_linear);
+        intent.putExtra(GridActivity.EXTRA_NUM_ITEMS, 1000);
+        intent.putExtra(GridActivity.EXTRA_STAGGERED, false);
+        initActivity(intent);
+
+        final int windowSize = mGridView.getHeight();
+        final int prefetchSize = windowSize;
+        mOrientation = BaseGridView.VERTICAL;
+        mNumRows = 1;
+
+        setSelectedPosition(150, 0);
+        waitForScrollIdle(mVerifyLayout);
+        // Keep the grid still while the focus moves, so the focus direction is kept
+        runTestOnUiThread(new Runnable() {
+            public void run() {
+                mGridView.setFocusPrefetchSpace(prefetchSize);
+                mGridView.setScrollEnabled(false);
+            }
+        });
+        Thread.sleep(50);
+
+        // the extra space is added above the focus after it moves up
+        sendKeys(KeyEvent.KEYCODE_DPAD_UP);
+        Thread.sleep(50);
+        runTestOnUiThread(new Runnable() {
+            public void run() {
+                mGridView.requestLayout();
+            }
+        });
+        Thread.sleep(50);
+        View v;
+        v = mGridView.getChildAt(0);
+        assertTrue(v.getBottom() > -prefetchSize);
+        assertTrue(v.getTop() <= -prefetchSize + mGridView.getVerticalMargin());
+        v = mGridView.getChildAt(mGridView.getChildCount() - 1);
+        assertTrue(v.getTop() < windowSize);
+        assertTrue(v.getBottom() >= windowSize - mGridView.getVerticalMargin());
+
+        // and below the focus after it moves down
+        sendKeys(KeyEvent.KEYCODE_DPAD_DOWN, KeyEvent.KEYCODE_DPAD_DOWN);
+        Thread.sleep(50);
+        runTestOnUiThread(new Runnable() {
+            public void run() {
+                mGridView.requestLayout();
+            }
+        });
+        Thread.sleep(50);
+        v = mGridView.getChildAt(0);
+        assertTrue(v.getBottom() > 0);
+        v = mGridView.getChildAt(mGridView.getChildCount() - 1);
+        assertTrue(v.getTop() < windowSize + prefetchSize);
+        assertTrue(v.getBottom() >= windowSize + prefetchSize - mGridView.getVerticalMargin());
+
+        // the extra space is kept once the grid stops scrolling
+        runTestOnUiThread(new Runnable() {
+            public void run() {
+                mGridView.setScrollEnabled(true);
+            }
+        });
+        sendKeys(KeyEvent.KEYCODE_DPAD_UP);
+        waitForScrollIdle(mVerifyLayout);
+        Thread.sleep(50);
+        v = mGridView.getChildAt(0);
+        assertTrue(v.getBottom() > -prefetchSize);
+        assertTrue(v.getTop() <= -prefetchSize + mGridView.getVerticalMargin());
+
+        // and is dropped with the prefetch space
+        runTestOnUiThread(new Runnable() {
+            public void run() {
+                mGridView.setFocusPrefetchSpace(0);
+            }
+        });
+        Thread.sleep(50);
+        v = mGridView.getChildAt(0);
+        assertTrue(v.getBottom() > 0);
+        v = mGridView.getChildAt(mGridView.getChildCount() - 1);
+        assertTrue(v.getTop() < windowSize);
+        assertTrue(v.getBottom() >= windowSize - mGridView.getVerticalMargin());
+    }
+
     public void testFocusFinder() throws Throwable {
         mInstrumentation = getInstrumentation();
         Intent intent = new Intent(mInstrumentation.getContext(), GridActivity.class);
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.support.v17.leanback.widget;
+
+import android.os.Debug;
+import android.test.suitebuilder.annotation.Suppress;
+import android.util.Log;
+
+/**
+ * Counts the objects allocated by StaggeredGridDefault while scrolling through a large grid,
+ * filling items at one end and removing them at the other as GridLayoutManager does, and logs
+ * them per scrolled item.
+ * <p>
+ * This is not run as part of the regular test suite, since allocation counting slows down the
+ * whole process; remove the {@link Suppress} annotation to run it locally.
+ * @hide
+ */
+@Suppress
+public class StaggeredGridBenchmark extends GridTest {
+
+    private static final String TAG = "StaggeredGridBenchmark";
+
+    private static final int ITEM_COUNT = 10000;
+    private static final int NUM_ROWS = 3;
+    private static final int WINDOW_SIZE = 1080;
+    private static final int SCROLL_STEP = 300;
+
+    StaggeredGridDefault mStaggeredGrid;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        final int[] items = new int[ITEM_COUNT];
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            items[i] = 100 + (i * 37) % 200;
+        }
+        mProvider = new Provider(items);
+        mStaggeredGrid = new StaggeredGridDefault();
+        mStaggeredGrid.setNumRows(NUM_ROWS);
+        mStaggeredGrid.setMargin(20);
+        mStaggeredGrid.setProvider(mProvider);
+        mStaggeredGrid.appendVisibleItems(WINDOW_SIZE);
+    }
+
+    public void testScrollAllocations() throws Throwable {
+        // First pass lays out every item and grows the location cache.
+        final int firstPass = countAllocations(true, "first pass to end");
+        assertEquals(ITEM_COUNT, mStaggeredGrid.mLocations.size());
+        assertTrue(firstPass + " allocations should not grow with the number of items",
+                firstPass < ITEM_COUNT / 100);
+
+        // Later passes reuse the cached locations.
+        assertEquals(0, countAllocations(false, "cached pass to start"));
+        assertEquals(0, countAllocations(true, "cached pass to end"));
+    }
+
+    private int countAllocations(boolean forward, String name) {
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocCount();
+        final long start = System.nanoTime();
+        final int steps = forward ? scrollToEnd() : scrollToStart();
+        final long duration = System.nanoTime() - start;
+        final int allocations = Debug.getThreadAllocCount();
+        Debug.stopAllocCounting();
+        Log.i(TAG, String.format("%s: %d steps, %d allocations, %.4f per item, %.2f ms", name,
+                steps, allocations, (float) allocations / ITEM_COUNT, duration / 1000000f));
+        return allocations;
+    }
+
+    private int scrollToEnd() {
+        int steps = 0;
+        while (mStaggeredGrid.getLastVisibleIndex() < ITEM_COUNT - 1) {
+            mProvider.scroll(SCROLL_STEP);
+            mStaggeredGrid.appendVisibleItems(WINDOW_SIZE);
+            mStaggeredGrid.removeInvisibleItemsAtFront(mStaggeredGrid.getLastVisibleIndex(), 0);
+            steps++;
+        }
+        return steps;
+    }
+
+    private int scrollToStart() {
+        int steps = 0;
+        while (mStaggeredGrid.getFirstVisibleIndex() > 0) {
+            mProvider.scroll(-SCROLL_STEP);
+            mStaggeredGrid.prependVisibleItems(0);
+            mStaggeredGrid.removeInvisibleItemsAtEnd(mStaggeredGrid.getFirstVisibleIndex(),
+                    WINDOW_SIZE);
+            steps++;
+        }
+        return steps;
+    }
+}
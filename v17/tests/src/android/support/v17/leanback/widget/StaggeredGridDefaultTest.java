@@ -55,4 +55,42 @@ public class StaggeredGridDefaultTest extends GridTest {
         assertEquals(dump(mStaggeredGrid) + " last item should be placed on row 1",
                 1, row_result2);
     }
+
+    public void testScrollBackThroughCachedLocations() throws Throwable {
+        final int[] items = new int[500];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = 50 + (i * 37) % 100;
+        }
+        mProvider = new Provider(items);
+
+        mStaggeredGrid = new StaggeredGridDefault();
+        mStaggeredGrid.setNumRows(3);
+        mStaggeredGrid.setMargin(20);
+        mStaggeredGrid.setProvider(mProvider);
+        mStaggeredGrid.appendVisibleItems(Integer.MAX_VALUE);
+        assertEquals(dump(mStaggeredGrid) + " Should fill all items",
+                items.length, mStaggeredGrid.mLocations.size());
+        final int[] rows = new int[items.length];
+        for (int i = 0; i < items.length; i++) {
+            rows[i] = mStaggeredGrid.getLocation(i).row;
+        }
+
+        // scroll to the end, then back to the start using the cached locations
+        mStaggeredGrid.removeInvisibleItemsAtFront(items.length - 1, Integer.MAX_VALUE);
+        mStaggeredGrid.prependVisibleItems(0);
+        assertEquals(dump(mStaggeredGrid) + " Should prepend all items",
+                0, mStaggeredGrid.getFirstVisibleIndex());
+        assertEquals(items.length, mStaggeredGrid.mLocations.size());
+        for (int i = 0; i < items.length; i++) {
+            assertEquals("item " + i + " should stay on its row",
+                    rows[i], mStaggeredGrid.getLocation(i).row);
+        }
+
+        mStaggeredGrid.invalidateItemsAfter(200);
+        assertEquals(dump(mStaggeredGrid) + " Should keep 200 locations",
+                200, mStaggeredGrid.mLocations.size());
+        assertEquals(199, mStaggeredGrid.getLastIndex());
+        assertEquals(199, mStaggeredGrid.getLastVisibleIndex());
+        assertEquals(rows[199], mStaggeredGrid.getLocation(199).row);
+    }
 }
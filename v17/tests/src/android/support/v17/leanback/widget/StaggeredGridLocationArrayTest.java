@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.support.v17.leanback.widget;
+
+import junit.framework.TestCase;
+
+public class StaggeredGridLocationArrayTest extends TestCase {
+
+    private StaggeredGrid.LocationArray mLocations;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mLocations = new StaggeredGrid.LocationArray(4);
+    }
+
+    public void testGrowPastInitialCapacity() {
+        // Wrap the head around the end of the arrays before they grow
+        for (int i = 2; i >= 0; i--) {
+            mLocations.addFirst(i % 3, i * 10, i + 100);
+        }
+        for (int i = 3; i < 20; i++) {
+            mLocations.addLast(i % 3, i * 10, i + 100);
+        }
+        assertEquals(20, mLocations.size());
+        assertLocations(0, 20);
+    }
+
+    public void testRemoveAndInsert() {
+        for (int i = 0; i < 8; i++) {
+            mLocations.addLast(i % 3, i * 10, i + 100);
+        }
+        mLocations.removeFromStart(3);
+        mLocations.removeFromEnd(2);
+        assertEquals(3, mLocations.size());
+        assertLocations(3, 6);
+
+        mLocations.addFirst(2 % 3, 20, 102);
+        mLocations.addLast(6 % 3, 60, 106);
+        assertLocations(2, 7);
+
+        mLocations.setOffset(1, -5);
+        mLocations.setSize(1, 7);
+        assertEquals(3 % 3, mLocations.getRow(1));
+        assertEquals(-5, mLocations.getOffset(1));
+        assertEquals(7, mLocations.getSize(1));
+
+        // Counts of 0 or less are ignored
+        mLocations.removeFromStart(0);
+        mLocations.removeFromEnd(-1);
+        assertEquals(5, mLocations.size());
+
+        mLocations.clear();
+        assertEquals(0, mLocations.size());
+        mLocations.addLast(1, 2, 3);
+        assertEquals(1, mLocations.getRow(0));
+        assertEquals(2, mLocations.getOffset(0));
+        assertEquals(3, mLocations.getSize(0));
+    }
+
+    public void testOutOfRange() {
+        mLocations.addLast(0, 0, 1);
+        try {
+            mLocations.getRow(1);
+            fail("Expected ArrayIndexOutOfBoundsException");
+        } catch (ArrayIndexOutOfBoundsException expected) {
+        }
+        try {
+            mLocations.getOffset(-1);
+            fail("Expected ArrayIndexOutOfBoundsException");
+        } catch (ArrayIndexOutOfBoundsException expected) {
+        }
+        try {
+            mLocations.removeFromStart(2);
+            fail("Expected ArrayIndexOutOfBoundsException");
+        } catch (ArrayIndexOutOfBoundsException expected) {
+        }
+        try {
+            mLocations.removeFromEnd(2);
+            fail("Expected ArrayIndexOutOfBoundsException");
+        } catch (ArrayIndexOutOfBoundsException expected) {
+        }
+        assertEquals(1, mLocations.size());
+    }
+
+    /**
+     * Checks that the array holds the locations of items {@code from} to {@code to}, with the
+     * values added by the tests for each item.
+     */
+    private void assertLocations(int from, int to) {
+        assertEquals(to - from, mLocations.size());
+        for (int i = from; i < to; i++) {
+            assertEquals("row of item " + i, i % 3, mLocations.getRow(i - from));
+            assertEquals("offset of item " + i, i * 10, mLocations.getOffset(i - from));
+            assertEquals("size of item " + i, i + 100, mLocations.getSize(i - from));
+        }
+    }
+}
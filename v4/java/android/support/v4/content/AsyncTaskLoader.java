@@ -27,6 +27,7 @@ import java.io.FileDescriptor;
 import java.io.PrintWriter;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Static library support version of the framework's {@link android.content.AsyncTaskLoader}.
@@ -39,6 +40,9 @@ public abstract class AsyncTaskLoader<D> extends Loader<D> {
     static final String TAG = "AsyncTaskLoader";
     static final boolean DEBUG = false;
 
+    // Delay before trying again to execute a load rejected by a full executor.
+    private static final long REJECTED_LOAD_RETRY_DELAY_MS = 100;
+
     final class LoadTask extends ModernAsyncTask<Void, Void, D> implements Runnable {
         private final CountDownLatch mDone = new CountDownLatch(1);
 
@@ -110,6 +114,18 @@ public abstract class AsyncTaskLoader<D> extends Loader<D> {
     }
 
     private final Executor mExecutor;
+    private final Executor mPrioritizedExecutor = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            if (mExecutor instanceof LoaderExecutor) {
+                ((LoaderExecutor) mExecutor).execute(command, mLoadPriority,
+                        AsyncTaskLoader.this);
+            } else {
+                mExecutor.execute(command);
+            }
+        }
+    };
+    int mLoadPriority = LoaderExecutor.PRIORITY_DEFAULT;
 
     volatile LoadTask mTask;
     volatile LoadTask mCancellingTask;
@@ -119,10 +135,17 @@ public abstract class AsyncTaskLoader<D> extends Loader<D> {
     Handler mHandler;
 
     public AsyncTaskLoader(Context context) {
-        this(context, ModernAsyncTask.THREAD_POOL_EXECUTOR);
+        this(context, LoaderExecutor.getDefault());
     }
 
-    private AsyncTaskLoader(Context context, Executor executor) {
+    /**
+     * Creates a loader which loads on the given executor instead of the one
+     * shared by default, {@link LoaderExecutor#getDefault()}.
+     *
+     * @param executor Executor of the loads. If it is a {@link LoaderExecutor},
+     *                 loads are run according to {@link #setLoadPriority(int)}.
+     */
+    public AsyncTaskLoader(Context context, Executor executor) {
         super(context);
         mExecutor = executor;
     }
@@ -141,9 +164,36 @@ public abstract class AsyncTaskLoader<D> extends Loader<D> {
         }
     }
 
+    /**
+     * Set the priority of the loads, such as {@link LoaderExecutor#PRIORITY_VISIBLE}
+     * for the data on screen.  Loads with a higher priority run first when they
+     * are queued by a {@link LoaderExecutor}.
+     *
+     * @param priority Priority of the loads, {@link LoaderExecutor#PRIORITY_DEFAULT}
+     * by default.
+     */
+    public void setLoadPriority(int priority) {
+        mLoadPriority = priority;
+    }
+
+    /**
+     * Returns the priority of the loads set by {@link #setLoadPriority(int)}.
+     */
+    public int getLoadPriority() {
+        return mLoadPriority;
+    }
+
     @Override
     protected void onForceLoad() {
         super.onForceLoad();
+        if (mTask != null && mCancellingTask == null && !mTask.waiting
+                && mTask.getStatus() == ModernAsyncTask.Status.RUNNING
+                && !mTask.isInvoked()) {
+            // The task is queued and didn't start loading yet, so it will load the
+            // latest data anyway.
+            if (DEBUG) Log.v(TAG, "Coalescing load with queued task: mTask=" + mTask);
+            return;
+        }
         cancelLoad();
         mTask = new LoadTask();
         if (DEBUG) Log.v(TAG, "Preparing load: mTask=" + mTask);
@@ -203,7 +253,7 @@ public abstract class AsyncTaskLoader<D> extends Loader<D> {
                 mTask.waiting = false;
                 mHandler.removeCallbacks(mTask);
             }
-            if (mUpdateThrottle > 0) {
+            if (mUpdateThrottle > 0 && shouldThrottleLoad()) {
                 long now = SystemClock.uptimeMillis();
                 if (now < (mLastLoadCompleteTime+mUpdateThrottle)) {
                     // Not yet time to do another load.
@@ -216,10 +266,29 @@ public abstract class AsyncTaskLoader<D> extends Loader<D> {
                 }
             }
             if (DEBUG) Log.v(TAG, "Executing: " + mTask);
-            mTask.executeOnExecutor(mExecutor, (Void[]) null);
+            try {
+                mTask.executeOnExecutor(mPrioritizedExecutor, (Void[]) null);
+            } catch (RejectedExecutionException e) {
+                // The executor is saturated; try again later with a new task, since
+                // a task only executes once.
+                if (DEBUG) Log.v(TAG, "Load rejected, retrying: " + mTask, e);
+                if (mHandler == null) {
+                    mHandler = new Handler();
+                }
+                mTask = new LoadTask();
+                mTask.waiting = true;
+                mHandler.postDelayed(mTask, REJECTED_LOAD_RETRY_DELAY_MS);
+            }
         }
     }
 
+    /**
+     * Returns whether the pending load is delayed by the update throttle.
+     */
+    boolean shouldThrottleLoad() {
+        return true;
+    }
+
     void dispatchOnCancelled(LoadTask task, D data) {
         onCanceled(data);
         if (mCancellingTask == task) {
@@ -349,6 +418,9 @@ public abstract class AsyncTaskLoader<D> extends Loader<D> {
             writer.print(prefix); writer.print("mCancellingTask="); writer.print(mCancellingTask);
                     writer.print(" waiting="); writer.println(mCancellingTask.waiting);
         }
+        if (mLoadPriority != LoaderExecutor.PRIORITY_DEFAULT) {
+            writer.print(prefix); writer.print("mLoadPriority="); writer.println(mLoadPriority);
+        }
         if (mUpdateThrottle != 0) {
             writer.print(prefix); writer.print("mUpdateThrottle=");
                     TimeUtils.formatDuration(mUpdateThrottle, writer);
@@ -25,7 +25,9 @@ import android.support.v4.os.OperationCanceledException;
 
 import java.io.FileDescriptor;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 /**
  * Static library support version of the framework's {@link android.content.CursorLoader}.
@@ -33,6 +35,14 @@ import java.util.Arrays;
  * on Android 3.0 or above, this implementation is still used; it does not try
  * to switch to the framework's implementation.  See the framework SDK
  * documentation for a class overview.
+ *
+ * <p>For large results, {@link #setPageSize(int)} makes the loader deliver only
+ * the first rows, as soon as they are queried, instead of waiting for the whole
+ * result to be counted. Further rows are loaded with {@link #loadNextPage()} as
+ * the UI scrolls, and a new cursor is delivered with all the rows loaded so far.
+ * In this mode, {@link #setUpdateThrottle(long)} only delays the reloads caused
+ * by content changes, so a burst of changes causes few reloads, while pages are
+ * loaded right away.
  */
 public class CursorLoader extends AsyncTaskLoader<Cursor> {
     final ForceLoadContentObserver mObserver;
@@ -46,6 +56,14 @@ public class CursorLoader extends AsyncTaskLoader<Cursor> {
     Cursor mCursor;
     CancellationSignal mCancellationSignal;
 
+    // Paged mode, guarded by this. The number of rows to load, and the number of content
+    // changes, to know whether the pages of mCursor are up to date.
+    int mPageSize;
+    int mRequestedRowCount;
+    int mContentGeneration;
+    // Whether the pending load is for the next page rather than for a content change.
+    boolean mPageRequested;
+
     /* Runs on a worker thread */
     @Override
     public Cursor loadInBackground() {
@@ -56,6 +74,9 @@ public class CursorLoader extends AsyncTaskLoader<Cursor> {
             mCancellationSignal = new CancellationSignal();
         }
         try {
+            if (getPageSize() > 0) {
+                return loadPagesInBackground();
+            }
             Cursor cursor = ContentResolverCompat.query(getContext().getContentResolver(),
                     mUri, mProjection, mSelection, mSelectionArgs, mSortOrder,
                     mCancellationSignal);
@@ -77,6 +98,82 @@ public class CursorLoader extends AsyncTaskLoader<Cursor> {
         }
     }
 
+    /* Runs on a worker thread */
+    private Cursor loadPagesInBackground() {
+        final int requestedRowCount;
+        final int generation;
+        PagedCursor.Page[] loadedPages = null;
+        boolean hasMore = true;
+        synchronized (this) {
+            requestedRowCount = mRequestedRowCount;
+            generation = mContentGeneration;
+            if (mCursor instanceof PagedCursor) {
+                final PagedCursor cursor = (PagedCursor) mCursor;
+                if (cursor.getGeneration() == generation) {
+                    // Only the rows after the delivered ones need to be loaded.
+                    loadedPages = cursor.acquirePages();
+                    hasMore = cursor.hasMore();
+                }
+            }
+        }
+
+        final List<PagedCursor.Page> pages = new ArrayList<>();
+        int rowCount = 0;
+        if (loadedPages != null) {
+            for (PagedCursor.Page page : loadedPages) {
+                pages.add(page);
+                rowCount += page.mCursor.getCount();
+            }
+        }
+        try {
+            while (hasMore && rowCount < requestedRowCount) {
+                final int limit = requestedRowCount - rowCount;
+                final Cursor cursor = queryPage(rowCount, limit, mCancellationSignal);
+                if (cursor == null) {
+                    if (pages.isEmpty()) {
+                        return null;
+                    }
+                    break;
+                }
+                pages.add(new PagedCursor.Page(cursor));
+                final int count = cursor.getCount();
+                if (rowCount == 0) {
+                    cursor.registerContentObserver(mObserver);
+                }
+                rowCount += count;
+                hasMore = count == limit;
+            }
+            return new PagedCursor(pages, hasMore, generation);
+        } catch (RuntimeException ex) {
+            for (PagedCursor.Page page : pages) {
+                page.release();
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Queries a page of rows in paged mode, on a worker thread. The default
+     * implementation appends a {@code LIMIT} clause to the sort order, which
+     * works with content providers which pass the sort order to SQLite, such as
+     * those using {@link android.database.sqlite.SQLiteQueryBuilder}. Override
+     * this method for providers which take the limit in another way.
+     *
+     * @param offset Position of the first row of the page.
+     * @param limit Maximum number of rows in the page.
+     * @param cancellationSignal Signal to cancel the query.
+     * @return The rows, or null if the query failed.
+     * @throws IllegalStateException if no sort order is set.
+     */
+    protected Cursor queryPage(int offset, int limit, CancellationSignal cancellationSignal) {
+        if (mSortOrder == null) {
+            throw new IllegalStateException("A sort order is required to load pages");
+        }
+        return ContentResolverCompat.query(getContext().getContentResolver(),
+                mUri, mProjection, mSelection, mSelectionArgs,
+                mSortOrder + " LIMIT " + limit + " OFFSET " + offset, cancellationSignal);
+    }
+
     @Override
     public void cancelLoadInBackground() {
         super.cancelLoadInBackground();
@@ -99,7 +196,10 @@ public class CursorLoader extends AsyncTaskLoader<Cursor> {
             return;
         }
         Cursor oldCursor = mCursor;
-        mCursor = cursor;
+        synchronized (this) {
+            mCursor = cursor;
+        }
+        mPageRequested = false;
 
         if (isStarted()) {
             super.deliverResult(cursor);
@@ -149,7 +249,7 @@ public class CursorLoader extends AsyncTaskLoader<Cursor> {
         if (mCursor != null) {
             deliverResult(mCursor);
         }
-        if (takeContentChanged() || mCursor == null) {
+        if (takeContentChanged() || mCursor == null || isPageLoadPending()) {
             forceLoad();
         }
     }
@@ -163,6 +263,97 @@ public class CursorLoader extends AsyncTaskLoader<Cursor> {
         cancelLoad();
     }
 
+    /**
+     * Sets the number of rows of each page, to load the rows a page at a time
+     * instead of all at once. Loading the first page only takes the time to
+     * query its rows, and further pages are loaded by {@link #loadNextPage()}.
+     * When the content changes, the rows of all the loaded pages are loaded again.
+     *
+     * <p>Pages are queried by {@link #queryPage}, and require a sort order so the
+     * rows are in the same order in all pages. Must be called before the loader
+     * is started.
+     *
+     * @param pageSize Number of rows per page, or 0 to load all rows at once.
+     */
+    public void setPageSize(int pageSize) {
+        if (pageSize < 0) {
+            throw new IllegalArgumentException("pageSize < 0");
+        }
+        synchronized (this) {
+            mPageSize = pageSize;
+            mRequestedRowCount = pageSize;
+        }
+    }
+
+    /**
+     * Returns the number of rows of each page, or 0 if all rows are loaded at once.
+     */
+    public int getPageSize() {
+        synchronized (this) {
+            return mPageSize;
+        }
+    }
+
+    /**
+     * Starts loading the page after the rows of the last delivered cursor, for
+     * instance when the UI scrolls close to its last row. The delivered cursor
+     * will have the rows of all the pages loaded so far.
+     *
+     * Must be called from the UI thread
+     *
+     * @return True if a page is loading, false if all rows were loaded already,
+     * or if the loader is not started.
+     * @throws IllegalStateException if {@link #setPageSize(int)} wasn't called.
+     */
+    public boolean loadNextPage() {
+        if (getPageSize() == 0) {
+            throw new IllegalStateException("The page size is not set");
+        }
+        if (!isStarted() || !(mCursor instanceof PagedCursor) || mCursor.isClosed()) {
+            return false;
+        }
+        final PagedCursor cursor = (PagedCursor) mCursor;
+        if (!cursor.hasMore()) {
+            return false;
+        }
+        synchronized (this) {
+            if (mRequestedRowCount > cursor.getCount()) {
+                // Already loading it
+                return true;
+            }
+            mRequestedRowCount = cursor.getCount() + mPageSize;
+        }
+        mPageRequested = true;
+        forceLoad();
+        return true;
+    }
+
+    /**
+     * Returns whether a page was requested but not delivered, such as when the
+     * loader was stopped while loading it.
+     */
+    private boolean isPageLoadPending() {
+        synchronized (this) {
+            return mCursor instanceof PagedCursor && ((PagedCursor) mCursor).hasMore()
+                    && mRequestedRowCount > mCursor.getCount();
+        }
+    }
+
+    @Override
+    public void onContentChanged() {
+        synchronized (this) {
+            mContentGeneration++;
+        }
+        mPageRequested = false;
+        super.onContentChanged();
+    }
+
+    @Override
+    boolean shouldThrottleLoad() {
+        // Pages are loaded as the UI needs them, only reloads are throttled
+        return !mPageRequested;
+    }
+
     @Override
     public void onCanceled(Cursor cursor) {
         if (cursor != null && !cursor.isClosed()) {
@@ -180,7 +371,10 @@ public class CursorLoader extends AsyncTaskLoader<Cursor> {
         if (mCursor != null && !mCursor.isClosed()) {
             mCursor.close();
         }
-        mCursor = null;
+        synchronized (this) {
+            mCursor = null;
+            mRequestedRowCount = mPageSize;
+        }
     }
 
     public Uri getUri() {
@@ -234,6 +428,10 @@ public class CursorLoader extends AsyncTaskLoader<Cursor> {
                 writer.println(Arrays.toString(mSelectionArgs));
         writer.print(prefix); writer.print("mSortOrder="); writer.println(mSortOrder);
         writer.print(prefix); writer.print("mCursor="); writer.println(mCursor);
+        if (mPageSize != 0) {
+            writer.print(prefix); writer.print("mPageSize="); writer.print(mPageSize);
+                    writer.print(" mRequestedRowCount="); writer.println(mRequestedRowCount);
+        }
         writer.print(prefix); writer.print("mContentChanged="); writer.println(mContentChanged);
     }
 }
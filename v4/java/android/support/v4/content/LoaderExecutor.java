@@ -0,0 +1,293 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.content;
+
+import android.os.SystemClock;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * {@link Executor} for the loads of {@link AsyncTaskLoader}s, which runs the loads of
+ * the highest priority first.
+ *
+ * <p>At most a given number of tasks run at once on an underlying executor; other tasks wait
+ * in a bounded queue, ordered by the priority given to
+ * {@link #execute(Runnable, int, Object)} and then in the order they were submitted. When the
+ * queue is full, {@link #execute} throws a {@link RejectedExecutionException}, and
+ * {@link AsyncTaskLoader} tries again later instead of adding to the backlog.
+ *
+ * <p>A {@link Listener} receives the time each task waited in the queue and the time it ran,
+ * along with the loader which submitted it.
+ *
+ * <p>By default, all {@link AsyncTaskLoader}s share the executor returned by
+ * {@link #getDefault()}. Set the priority of a loader with
+ * {@link AsyncTaskLoader#setLoadPriority(int)}, or give it its own executor with
+ * {@link AsyncTaskLoader#AsyncTaskLoader(Context, Executor)}.
+ */
+public final class LoaderExecutor implements Executor {
+    /**
+     * Priority of loads which the user is not waiting for, such as prefetching.
+     */
+    public static final int PRIORITY_BACKGROUND = -10;
+
+    /**
+     * Priority of loads by default.
+     */
+    public static final int PRIORITY_DEFAULT = 0;
+
+    /**
+     * Priority of loads of data which is visible on screen.
+     */
+    public static final int PRIORITY_VISIBLE = 10;
+
+    private static final int DEFAULT_MAX_ACTIVE_TASKS = 5;
+    private static final int DEFAULT_MAX_QUEUED_TASKS = 128;
+
+    private static LoaderExecutor sDefault;
+
+    /**
+     * Receives the timing of each task.
+     */
+    public interface Listener {
+        /**
+         * Called on the worker thread after a task has run.
+         *
+         * @param owner Object given to {@link #execute(Runnable, int, Object)}, which is the
+         *              loader for the loads of {@link AsyncTaskLoader}, or null.
+         * @param queueTimeMillis Time the task waited before running, in milliseconds.
+         * @param runTimeMillis Time the task ran, in milliseconds.
+         */
+        void onTaskFinished(Object owner, long queueTimeMillis, long runTimeMillis);
+    }
+
+    private final class Task implements Runnable, Comparable<Task> {
+        final Runnable mCommand;
+        final int mPriority;
+        final long mSequence;
+        final Object mOwner;
+        final long mQueuedTime;
+
+        Task(Runnable command, int priority, long sequence, Object owner) {
+            mCommand = command;
+            mPriority = priority;
+            mSequence = sequence;
+            mOwner = owner;
+            mQueuedTime = SystemClock.uptimeMillis();
+        }
+
+        @Override
+        public void run() {
+            final long startTime = SystemClock.uptimeMillis();
+            try {
+                mCommand.run();
+            } finally {
+                final Listener listener = mListener;
+                if (listener != null) {
+                    listener.onTaskFinished(mOwner, startTime - mQueuedTime,
+                            SystemClock.uptimeMillis() - startTime);
+                }
+                scheduleNext();
+            }
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            if (mPriority != other.mPriority) {
+                return mPriority > other.mPriority ? -1 : 1;
+            }
+            return mSequence < other.mSequence ? -1 : (mSequence == other.mSequence ? 0 : 1);
+        }
+    }
+
+    private final Executor mExecutor;
+    private final int mMaxActiveTasks;
+    private final int mMaxQueuedTasks;
+    private volatile Listener mListener;
+
+    // Guarded by this
+    private final PriorityQueue<Task> mQueue = new PriorityQueue<>();
+    private int mActiveTaskCount;
+    private long mSequence;
+    private int mRejectedTaskCount;
+
+    /**
+     * Creates an executor which runs tasks on another executor.
+     *
+     * @param executor Executor which runs the tasks. It must accept
+     *                 {@code maxActiveTasks} tasks at once.
+     * @param maxActiveTasks Maximum number of tasks running at once.
+     * @param maxQueuedTasks Maximum number of tasks waiting to run.
+     */
+    public LoaderExecutor(Executor executor, int maxActiveTasks, int maxQueuedTasks) {
+        if (maxActiveTasks <= 0) {
+            throw new IllegalArgumentException("maxActiveTasks <= 0");
+        }
+        if (maxQueuedTasks < 0) {
+            throw new IllegalArgumentException("maxQueuedTasks < 0");
+        }
+        mExecutor = executor;
+        mMaxActiveTasks = maxActiveTasks;
+        mMaxQueuedTasks = maxQueuedTasks;
+    }
+
+    /**
+     * Returns the executor used by {@link AsyncTaskLoader}s by default.
+     */
+    public static LoaderExecutor getDefault() {
+        synchronized (LoaderExecutor.class) {
+            if (sDefault == null) {
+                sDefault = new LoaderExecutor(ModernAsyncTask.THREAD_POOL_EXECUTOR,
+                        DEFAULT_MAX_ACTIVE_TASKS, DEFAULT_MAX_QUEUED_TASKS);
+            }
+            return sDefault;
+        }
+    }
+
+    /**
+     * Sets the listener receiving the timing of each task, or null.
+     */
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Runs a task with the default priority.
+     *
+     * @throws RejectedExecutionException if the queue is full.
+     */
+    @Override
+    public void execute(Runnable command) {
+        execute(command, PRIORITY_DEFAULT, null);
+    }
+
+    /**
+     * Runs a task after the queued tasks of the same or higher priority.
+     *
+     * @param priority Priority of the task, such as {@link #PRIORITY_VISIBLE}. Tasks with a
+     *                 higher priority run first.
+     * @param owner Object passed to the {@link Listener} with the timing of the task.
+     * @throws RejectedExecutionException if the queue is full.
+     */
+    public void execute(Runnable command, int priority, Object owner) {
+        if (command == null) {
+            throw new NullPointerException("command == null");
+        }
+        final Task task;
+        synchronized (this) {
+            task = new Task(command, priority, mSequence++, owner);
+            if (mActiveTaskCount >= mMaxActiveTasks) {
+                if (mQueue.size() >= mMaxQueuedTasks) {
+                    mRejectedTaskCount++;
+                    throw new RejectedExecutionException("Too many queued loads: "
+                            + mQueue.size());
+                }
+                mQueue.add(task);
+                return;
+            }
+            mActiveTaskCount++;
+        }
+        try {
+            mExecutor.execute(task);
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                mActiveTaskCount--;
+                mRejectedTaskCount++;
+            }
+            throw e;
+        }
+        startQueuedTasks();
+    }
+
+    /**
+     * Returns the number of tasks waiting to run.
+     */
+    public synchronized int getQueuedTaskCount() {
+        return mQueue.size();
+    }
+
+    /**
+     * Returns the number of tasks running.
+     */
+    public synchronized int getActiveTaskCount() {
+        return mActiveTaskCount;
+    }
+
+    /**
+     * Returns the number of tasks rejected because the queue was full.
+     */
+    public synchronized int getRejectedTaskCount() {
+        return mRejectedTaskCount;
+    }
+
+    void scheduleNext() {
+        final Task next;
+        synchronized (this) {
+            next = mQueue.poll();
+            if (next == null) {
+                mActiveTaskCount--;
+                return;
+            }
+        }
+        // The next task takes the place of the finished one
+        runQueuedTask(next);
+    }
+
+    /**
+     * Starts queued tasks while fewer than the maximum are running, which only happens after
+     * the underlying executor rejected a queued task.
+     */
+    private void startQueuedTasks() {
+        while (true) {
+            final Task next;
+            synchronized (this) {
+                if (mActiveTaskCount >= mMaxActiveTasks) {
+                    return;
+                }
+                next = mQueue.poll();
+                if (next == null) {
+                    return;
+                }
+                mActiveTaskCount++;
+            }
+            if (!runQueuedTask(next)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Runs a task taken from the queue, which is already counted as active. If the underlying
+     * executor rejects it, the task goes back to the queue, to start when another task finishes
+     * or is executed.
+     *
+     * @return Whether the task was accepted.
+     */
+    private boolean runQueuedTask(Task task) {
+        try {
+            mExecutor.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            synchronized (this) {
+                mQueue.add(task);
+                mActiveTaskCount--;
+            }
+            return false;
+        }
+    }
+}
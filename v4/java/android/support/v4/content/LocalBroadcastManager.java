@@ -17,8 +17,12 @@
 package android.support.v4.content;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 import android.content.BroadcastReceiver;
 import android.content.Context;
@@ -42,16 +46,92 @@ import android.util.Log;
  * <li> It is more efficient than sending a global broadcast through the
  * system.
  * </ul>
+ *
+ * <p>Receivers are called on the main thread, unless they are registered with
+ * {@link #registerReceiver(BroadcastReceiver, IntentFilter, Handler)} or
+ * {@link #registerReceiverOnExecutor(BroadcastReceiver, IntentFilter, Executor)}, which
+ * keeps frequent broadcasts, such as progress updates, off the main thread.
+ * Those can also be sent with {@link #sendCoalescedBroadcast(Intent)}, so only
+ * the latest of the broadcasts a receiver hasn't received yet is delivered.
  */
 public final class LocalBroadcastManager {
-    private static class ReceiverRecord {
+    private final class ReceiverRecord implements Runnable {
         final IntentFilter filter;
         final BroadcastReceiver receiver;
-        boolean broadcasting;
+        // Categories of the filter, or null if it has none.
+        final HashSet<String> categories;
+        // Whether the filter only matches intents without data or type.
+        final boolean matchesNoData;
+        // Executor the receiver is called on, or null for the main thread.
+        final Executor executor;
+
+        // Broadcasts waiting to be delivered on the executor, guarded by this.
+        private final ArrayList<BroadcastRecord> pending;
+        private boolean scheduled;
 
-        ReceiverRecord(IntentFilter _filter, BroadcastReceiver _receiver) {
+        ReceiverRecord(IntentFilter _filter, BroadcastReceiver _receiver, Executor _executor) {
             filter = _filter;
             receiver = _receiver;
+            executor = _executor;
+            final int categoryCount = _filter.countCategories();
+            if (categoryCount > 0) {
+                categories = new HashSet<String>(categoryCount * 2);
+                for (int i = 0; i < categoryCount; i++) {
+                    categories.add(_filter.getCategory(i));
+                }
+            } else {
+                categories = null;
+            }
+            matchesNoData = _filter.countDataSchemes() == 0 && _filter.countDataTypes() == 0;
+            pending = _executor != null ? new ArrayList<BroadcastRecord>() : null;
+        }
+
+        /**
+         * Returns whether the categories of an intent are all in the filter.
+         */
+        boolean matchesCategories(Set<String> intentCategories) {
+            if (intentCategories == null) {
+                return true;
+            }
+            if (categories == null) {
+                return intentCategories.isEmpty();
+            }
+            return categories.containsAll(intentCategories);
+        }
+
+        /**
+         * Queues a broadcast for the executor.
+         */
+        void enqueue(BroadcastRecord broadcast) {
+            synchronized (this) {
+                if (!broadcast.coalesce || !replacePending(pending, broadcast)) {
+                    pending.add(broadcast);
+                }
+                if (scheduled) {
+                    return;
+                }
+                scheduled = true;
+            }
+            executor.execute(this);
+        }
+
+        /* Runs on the executor */
+        @Override
+        public void run() {
+            while (true) {
+                final BroadcastRecord[] brs;
+                synchronized (this) {
+                    if (pending.isEmpty()) {
+                        scheduled = false;
+                        return;
+                    }
+                    brs = pending.toArray(new BroadcastRecord[pending.size()]);
+                    pending.clear();
+                }
+                for (BroadcastRecord br : brs) {
+                    receiver.onReceive(mAppContext, br.intent);
+                }
+            }
         }
 
         @Override
@@ -69,10 +149,14 @@ public final class LocalBroadcastManager {
     private static class BroadcastRecord {
         final Intent intent;
         final ArrayList<ReceiverRecord> receivers;
+        // Whether a later broadcast of the same action replaces this one.
+        final boolean coalesce;
 
-        BroadcastRecord(Intent _intent, ArrayList<ReceiverRecord> _receivers) {
+        BroadcastRecord(Intent _intent, ArrayList<ReceiverRecord> _receivers,
+                boolean _coalesce) {
             intent = _intent;
             receivers = _receivers;
+            coalesce = _coalesce;
         }
     }
 
@@ -85,6 +169,10 @@ public final class LocalBroadcastManager {
             = new HashMap<BroadcastReceiver, ArrayList<IntentFilter>>();
     private final HashMap<String, ArrayList<ReceiverRecord>> mActions
             = new HashMap<String, ArrayList<ReceiverRecord>>();
+    // Immutable copy of mActions, replaced when receivers change, so broadcasts
+    // are matched without holding the lock.
+    private volatile HashMap<String, ReceiverRecord[]> mActionIndex
+            = new HashMap<String, ReceiverRecord[]>();
 
     private final ArrayList<BroadcastRecord> mPendingBroadcasts
             = new ArrayList<BroadcastRecord>();
@@ -131,8 +219,46 @@ public final class LocalBroadcastManager {
      * @see #unregisterReceiver
      */
     public void registerReceiver(BroadcastReceiver receiver, IntentFilter filter) {
+        registerReceiverOnExecutor(receiver, filter, null);
+    }
+
+    /**
+     * Register a receiver for any local broadcasts that match the given IntentFilter,
+     * to be called on the thread of the given Handler.
+     *
+     * @param receiver The BroadcastReceiver to handle the broadcast.
+     * @param filter Selects the Intent broadcasts to be received.
+     * @param scheduler Handler identifying the thread that will receive
+     *      the Intent.  If null, the main thread of the process will be used.
+     *
+     * @see #unregisterReceiver
+     */
+    public void registerReceiver(BroadcastReceiver receiver, IntentFilter filter,
+            final Handler scheduler) {
+        registerReceiverOnExecutor(receiver, filter, scheduler == null ? null : new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                scheduler.post(command);
+            }
+        });
+    }
+
+    /**
+     * Register a receiver for any local broadcasts that match the given IntentFilter,
+     * to be called on the given Executor.  Broadcasts are delivered to the receiver
+     * in the order they were sent, one at a time.
+     *
+     * @param receiver The BroadcastReceiver to handle the broadcast.
+     * @param filter Selects the Intent broadcasts to be received.
+     * @param executor Executor that will call the receiver.  If null, the main
+     *      thread of the process will be used.
+     *
+     * @see #unregisterReceiver
+     */
+    public void registerReceiverOnExecutor(BroadcastReceiver receiver, IntentFilter filter,
+            Executor executor) {
         synchronized (mReceivers) {
-            ReceiverRecord entry = new ReceiverRecord(filter, receiver);
+            ReceiverRecord entry = new ReceiverRecord(filter, receiver, executor);
             ArrayList<IntentFilter> filters = mReceivers.get(receiver);
             if (filters == null) {
                 filters = new ArrayList<IntentFilter>(1);
@@ -148,6 +274,7 @@ public final class LocalBroadcastManager {
                 }
                 entries.add(entry);
             }
+            updateActionIndex();
         }
     }
 
@@ -184,9 +311,20 @@ public final class LocalBroadcastManager {
                     }
                 }
             }
+            updateActionIndex();
         }
     }
 
+    private void updateActionIndex() {
+        final HashMap<String, ReceiverRecord[]> index =
+                new HashMap<String, ReceiverRecord[]>(mActions.size() * 2);
+        for (Map.Entry<String, ArrayList<ReceiverRecord>> entry : mActions.entrySet()) {
+            final ArrayList<ReceiverRecord> records = entry.getValue();
+            index.put(entry.getKey(), records.toArray(new ReceiverRecord[records.size()]));
+        }
+        mActionIndex = index;
+    }
+
     /**
      * Broadcast the given intent to all interested BroadcastReceivers.  This
      * call is asynchronous; it returns immediately, and you will continue
@@ -198,80 +336,204 @@ public final class LocalBroadcastManager {
      * @see #registerReceiver
      */
     public boolean sendBroadcast(Intent intent) {
-        synchronized (mReceivers) {
-            final String action = intent.getAction();
-            final String type = intent.resolveTypeIfNeeded(
-                    mAppContext.getContentResolver());
-            final Uri data = intent.getData();
-            final String scheme = intent.getScheme();
-            final Set<String> categories = intent.getCategories();
-
-            final boolean debug = DEBUG ||
-                    ((intent.getFlags() & Intent.FLAG_DEBUG_LOG_RESOLUTION) != 0);
-            if (debug) Log.v(
-                    TAG, "Resolving type " + type + " scheme " + scheme
-                    + " of intent " + intent);
-
-            ArrayList<ReceiverRecord> entries = mActions.get(intent.getAction());
-            if (entries != null) {
-                if (debug) Log.v(TAG, "Action list: " + entries);
-
-                ArrayList<ReceiverRecord> receivers = null;
-                for (int i=0; i<entries.size(); i++) {
-                    ReceiverRecord receiver = entries.get(i);
-                    if (debug) Log.v(TAG, "Matching against filter " + receiver.filter);
-
-                    if (receiver.broadcasting) {
-                        if (debug) {
-                            Log.v(TAG, "  Filter's target already added");
-                        }
-                        continue;
-                    }
+        return sendBroadcast(intent, false);
+    }
 
-                    int match = receiver.filter.match(action, type, scheme, data,
-                            categories, "LocalBroadcastManager");
-                    if (match >= 0) {
-                        if (debug) Log.v(TAG, "  Filter matched!  match=0x" +
-                                Integer.toHexString(match));
-                        if (receivers == null) {
-                            receivers = new ArrayList<ReceiverRecord>();
-                        }
-                        receivers.add(receiver);
-                        receiver.broadcasting = true;
-                    } else {
-                        if (debug) {
-                            String reason;
-                            switch (match) {
-                                case IntentFilter.NO_MATCH_ACTION: reason = "action"; break;
-                                case IntentFilter.NO_MATCH_CATEGORY: reason = "category"; break;
-                                case IntentFilter.NO_MATCH_DATA: reason = "data"; break;
-                                case IntentFilter.NO_MATCH_TYPE: reason = "type"; break;
-                                default: reason = "unknown reason"; break;
-                            }
-                            Log.v(TAG, "  Filter did not match: " + reason);
-                        }
-                    }
+    /**
+     * Like {@link #sendBroadcast(Intent)}, but if a receiver has not received
+     * an earlier broadcast of the same action sent with this method yet, the
+     * receiver only gets the given intent, in place of the earlier one.  Use it
+     * for broadcasts where only the latest one matters, such as progress updates,
+     * so they don't pile up when they are sent faster than they are received.
+     *
+     * @param intent The Intent to broadcast; all receivers matching this
+     *     Intent will receive the broadcast.
+     *
+     * @see #registerReceiver
+     */
+    public boolean sendCoalescedBroadcast(Intent intent) {
+        return sendBroadcast(intent, true);
+    }
+
+    private boolean sendBroadcast(Intent intent, boolean coalesce) {
+        final String action = intent.getAction();
+        final ReceiverRecord[] entries = mActionIndex.get(action);
+        if (entries == null) {
+            return false;
+        }
+        final Uri data = intent.getData();
+        final String scheme = intent.getScheme();
+        final Set<String> categories = intent.getCategories();
+        // The type is only resolved for filters with data, since it may query a provider.
+        final boolean hasData = data != null || intent.getType() != null;
+        String type = null;
+        boolean typeResolved = false;
+
+        final boolean debug = DEBUG ||
+                ((intent.getFlags() & Intent.FLAG_DEBUG_LOG_RESOLUTION) != 0);
+        if (debug) Log.v(
+                TAG, "Resolving scheme " + scheme + " of intent " + intent);
+        if (debug) Log.v(TAG, "Action list: " + Arrays.toString(entries));
+
+        ArrayList<ReceiverRecord> receivers = null;
+        for (int i=0; i<entries.length; i++) {
+            ReceiverRecord receiver = entries[i];
+            if (debug) Log.v(TAG, "Matching against filter " + receiver.filter);
+
+            if (receivers != null && receivers.contains(receiver)) {
+                if (debug) {
+                    Log.v(TAG, "  Filter's target already added");
                 }
+                continue;
+            }
 
-                if (receivers != null) {
-                    for (int i=0; i<receivers.size(); i++) {
-                        receivers.get(i).broadcasting = false;
-                    }
-                    mPendingBroadcasts.add(new BroadcastRecord(intent, receivers));
-                    if (!mHandler.hasMessages(MSG_EXEC_PENDING_BROADCASTS)) {
-                        mHandler.sendEmptyMessage(MSG_EXEC_PENDING_BROADCASTS);
+            int match;
+            if (receiver.matchesNoData) {
+                // Same result as IntentFilter.match(), from the precompiled filter
+                if (hasData) {
+                    match = IntentFilter.NO_MATCH_DATA;
+                } else if (!receiver.matchesCategories(categories)) {
+                    match = IntentFilter.NO_MATCH_CATEGORY;
+                } else {
+                    match = IntentFilter.MATCH_CATEGORY_EMPTY
+                            + IntentFilter.MATCH_ADJUSTMENT_NORMAL;
+                }
+            } else {
+                if (!typeResolved) {
+                    type = intent.resolveTypeIfNeeded(mAppContext.getContentResolver());
+                    typeResolved = true;
+                    if (debug) Log.v(TAG, "  Resolved type " + type);
+                }
+                match = receiver.filter.match(action, type, scheme, data,
+                        categories, "LocalBroadcastManager");
+            }
+            if (match >= 0) {
+                if (debug) Log.v(TAG, "  Filter matched!  match=0x" +
+                        Integer.toHexString(match));
+                if (receivers == null) {
+                    receivers = new ArrayList<ReceiverRecord>();
+                }
+                receivers.add(receiver);
+            } else {
+                if (debug) {
+                    String reason;
+                    switch (match) {
+                        case IntentFilter.NO_MATCH_ACTION: reason = "action"; break;
+                        case IntentFilter.NO_MATCH_CATEGORY: reason = "category"; break;
+                        case IntentFilter.NO_MATCH_DATA: reason = "data"; break;
+                        case IntentFilter.NO_MATCH_TYPE: reason = "type"; break;
+                        default: reason = "unknown reason"; break;
                     }
-                    return true;
+                    Log.v(TAG, "  Filter did not match: " + reason);
                 }
             }
         }
+
+        if (receivers == null) {
+            return false;
+        }
+        ArrayList<ReceiverRecord> mainReceivers = null;
+        BroadcastRecord backgroundBroadcast = null;
+        for (int i=0; i<receivers.size(); i++) {
+            final ReceiverRecord receiver = receivers.get(i);
+            if (receiver.executor == null) {
+                if (mainReceivers == null) {
+                    mainReceivers = new ArrayList<ReceiverRecord>(receivers.size());
+                }
+                mainReceivers.add(receiver);
+            } else {
+                if (backgroundBroadcast == null) {
+                    backgroundBroadcast = new BroadcastRecord(intent, null, coalesce);
+                }
+                receiver.enqueue(backgroundBroadcast);
+            }
+        }
+        if (mainReceivers != null) {
+            synchronized (mPendingBroadcasts) {
+                if (coalesce) {
+                    mainReceivers = coalescePending(mPendingBroadcasts, intent, mainReceivers);
+                }
+                if (!mainReceivers.isEmpty()) {
+                    mPendingBroadcasts.add(new BroadcastRecord(intent, mainReceivers, coalesce));
+                }
+                if (!mHandler.hasMessages(MSG_EXEC_PENDING_BROADCASTS)) {
+                    mHandler.sendEmptyMessage(MSG_EXEC_PENDING_BROADCASTS);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Replaces the pending broadcast of the same action in the queue of a
+     * receiver, if it can be coalesced.
+     *
+     * @return Whether a pending broadcast was replaced.
+     */
+    private static boolean replacePending(ArrayList<BroadcastRecord> pending,
+            BroadcastRecord broadcast) {
+        final String action = broadcast.intent.getAction();
+        for (int i=0; i<pending.size(); i++) {
+            final BroadcastRecord br = pending.get(i);
+            if (br.coalesce && sameAction(action, br.intent)) {
+                pending.set(i, broadcast);
+                return true;
+            }
+        }
         return false;
     }
 
+    /**
+     * Gives the receivers of a coalesced broadcast which have a pending
+     * broadcast of the same action the new intent in its place.  The other
+     * receivers of the pending broadcast still get it.
+     *
+     * @return The receivers which had no pending broadcast of the action.
+     */
+    private static ArrayList<ReceiverRecord> coalescePending(
+            ArrayList<BroadcastRecord> pending, Intent intent,
+            ArrayList<ReceiverRecord> receivers) {
+        final String action = intent.getAction();
+        for (int i=0; i<pending.size() && !receivers.isEmpty(); i++) {
+            final BroadcastRecord br = pending.get(i);
+            if (!br.coalesce || !sameAction(action, br.intent)) {
+                continue;
+            }
+            ArrayList<ReceiverRecord> replaced = null;
+            for (int j=br.receivers.size()-1; j>=0; j--) {
+                final ReceiverRecord receiver = br.receivers.get(j);
+                if (receivers.remove(receiver)) {
+                    if (replaced == null) {
+                        replaced = new ArrayList<ReceiverRecord>();
+                    }
+                    replaced.add(0, receiver);
+                    br.receivers.remove(j);
+                }
+            }
+            if (replaced == null) {
+                continue;
+            }
+            final BroadcastRecord replacement = new BroadcastRecord(intent, replaced, true);
+            if (br.receivers.isEmpty()) {
+                pending.set(i, replacement);
+            } else {
+                pending.add(i, replacement);
+                i++;
+            }
+        }
+        return receivers;
+    }
+
+    private static boolean sameAction(String action, Intent intent) {
+        return action == null ? intent.getAction() == null
+                : action.equals(intent.getAction());
+    }
+
     /**
      * Like {@link #sendBroadcast(Intent)}, but if there are any receivers for
      * the Intent this function will block and immediately dispatch them before
-     * returning.
+     * returning.  Receivers registered with a Handler or an Executor are still
+     * called asynchronously.
      */
     public void sendBroadcastSync(Intent intent) {
         if (sendBroadcast(intent)) {
@@ -282,7 +544,7 @@ public final class LocalBroadcastManager {
     private void executePendingBroadcasts() {
         while (true) {
             BroadcastRecord[] brs = null;
-            synchronized (mReceivers) {
+            synchronized (mPendingBroadcasts) {
                 final int N = mPendingBroadcasts.size();
                 if (N <= 0) {
                     return;
@@ -174,6 +174,13 @@ abstract class ModernAsyncTask<Params, Progress, Result> {
         return mStatus;
     }
 
+    /**
+     * Returns whether the task has started running in the background.
+     */
+    final boolean isInvoked() {
+        return mTaskInvoked.get();
+    }
+
     /**
      * Override this method to perform a computation on a background thread. The
      * specified parameters are the parameters passed to {@link #execute}
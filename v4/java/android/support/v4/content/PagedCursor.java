@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.content;
+
+import android.database.AbstractCursor;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.database.DataSetObserver;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cursor over the pages loaded by a {@link CursorLoader} in paged mode, one after the other.
+ *
+ * <p>Pages are shared between the cursors delivered for successive pages, so each page is
+ * reference counted and closed once the last cursor using it is closed. Since another cursor
+ * may move a shared page, it is moved back to the row of this cursor before each read.
+ */
+final class PagedCursor extends AbstractCursor {
+
+    /**
+     * A page of rows, which is closed when it is released by every cursor.
+     */
+    static final class Page {
+        final Cursor mCursor;
+        private final AtomicInteger mReferences = new AtomicInteger(1);
+
+        Page(Cursor cursor) {
+            mCursor = cursor;
+        }
+
+        /**
+         * Adds a reference, unless the page has been closed already.
+         */
+        boolean acquire() {
+            while (true) {
+                final int references = mReferences.get();
+                if (references == 0) {
+                    return false;
+                }
+                if (mReferences.compareAndSet(references, references + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void release() {
+            if (mReferences.decrementAndGet() == 0) {
+                mCursor.close();
+            }
+        }
+    }
+
+    private final Page[] mPages;
+    // Position of the first row of each page.
+    private final int[] mOffsets;
+    private final int mCount;
+    private final boolean mHasMore;
+    private final int mGeneration;
+    private Cursor mPage;
+    // Position of the current row within mPage.
+    private int mPagePosition = -1;
+
+    /**
+     * @param pages Pages, whose references are owned by the new cursor.
+     * @param hasMore Whether there are rows after the last page.
+     * @param generation Content generation of the loader the pages were loaded in.
+     */
+    PagedCursor(List<Page> pages, boolean hasMore, int generation) {
+        mPages = pages.toArray(new Page[pages.size()]);
+        mOffsets = new int[mPages.length];
+        int count = 0;
+        for (int i = 0; i < mPages.length; i++) {
+            mOffsets[i] = count;
+            count += mPages[i].mCursor.getCount();
+        }
+        mCount = count;
+        mHasMore = hasMore;
+        mGeneration = generation;
+        mPage = mPages.length > 0 ? mPages[0].mCursor : null;
+    }
+
+    /**
+     * Returns whether there are more rows after the loaded pages.
+     */
+    boolean hasMore() {
+        return mHasMore;
+    }
+
+    int getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Adds a reference to each page, for a cursor which continues this one.
+     *
+     * @return The pages, or null if they have been closed already.
+     */
+    Page[] acquirePages() {
+        for (int i = 0; i < mPages.length; i++) {
+            if (!mPages[i].acquire()) {
+                for (int j = 0; j < i; j++) {
+                    mPages[j].release();
+                }
+                return null;
+            }
+        }
+        return mPages.clone();
+    }
+
+    @Override
+    public int getCount() {
+        return mCount;
+    }
+
+    @Override
+    public boolean onMove(int oldPosition, int newPosition) {
+        // Find the last page starting at or before the position
+        int low = 0;
+        int high = mPages.length - 1;
+        while (low < high) {
+            final int middle = (low + high + 1) >>> 1;
+            if (mOffsets[middle] <= newPosition) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        mPage = mPages[low].mCursor;
+        mPagePosition = newPosition - mOffsets[low];
+        return mPage.moveToPosition(mPagePosition);
+    }
+
+    /**
+     * Returns the page of the current row, positioned on it.
+     */
+    private Cursor getPageRow() {
+        mPage.moveToPosition(mPagePosition);
+        return mPage;
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return mPage != null ? mPage.getColumnNames() : new String[0];
+    }
+
+    @Override
+    public String getString(int column) {
+        return getPageRow().getString(column);
+    }
+
+    @Override
+    public short getShort(int column) {
+        return getPageRow().getShort(column);
+    }
+
+    @Override
+    public int getInt(int column) {
+        return getPageRow().getInt(column);
+    }
+
+    @Override
+    public long getLong(int column) {
+        return getPageRow().getLong(column);
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return getPageRow().getFloat(column);
+    }
+
+    @Override
+    public double getDouble(int column) {
+        return getPageRow().getDouble(column);
+    }
+
+    // Overrides Cursor#getType(int), which was added in API 11, so it is only called there
+    public int getType(int column) {
+        return CursorCompatHoneycomb.getType(getPageRow(), column);
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        return getPageRow().isNull(column);
+    }
+
+    @Override
+    public byte[] getBlob(int column) {
+        return getPageRow().getBlob(column);
+    }
+
+    @Override
+    public void registerContentObserver(ContentObserver observer) {
+        for (Page page : mPages) {
+            page.mCursor.registerContentObserver(observer);
+        }
+    }
+
+    @Override
+    public void unregisterContentObserver(ContentObserver observer) {
+        for (Page page : mPages) {
+            page.mCursor.unregisterContentObserver(observer);
+        }
+    }
+
+    @Override
+    public void registerDataSetObserver(DataSetObserver observer) {
+        for (Page page : mPages) {
+            page.mCursor.registerDataSetObserver(observer);
+        }
+    }
+
+    @Override
+    public void unregisterDataSetObserver(DataSetObserver observer) {
+        for (Page page : mPages) {
+            page.mCursor.unregisterDataSetObserver(observer);
+        }
+    }
+
+    @Override
+    public boolean requery() {
+        // The loader reloads the pages when the content changes
+        return false;
+    }
+
+    @Override
+    public void close() {
+        if (isClosed()) {
+            return;
+        }
+        super.close();
+        for (Page page : mPages) {
+            page.release();
+        }
+    }
+}
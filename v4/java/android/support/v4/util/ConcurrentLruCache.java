@@ -0,0 +1,528 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A cache with the same contract as {@link LruCache}, for caches which are read from many
+ * threads at the same time.
+ *
+ * <p>{@link LruCache} takes its lock on every {@link LruCache#get}, as a hit moves the entry in
+ * its recency order. Here, hits are looked up without a lock and only recorded in one of
+ * several buffers, picked by thread. The buffers are applied to the recency order in batches,
+ * whenever the lock is free, and before entries are evicted. Buffered hits may be dropped when
+ * a buffer fills up faster than it is applied, so the eviction order is only approximately the
+ * least recently used one. Changes to the cache still take a single lock.
+ *
+ * <p>{@link #sizeOf}, {@link #create} and {@link #entryRemoved} are called the same way as
+ * by {@link LruCache}.
+ */
+public class ConcurrentLruCache<K, V> {
+    // Hits recorded per buffer before the buffers are applied, and the size of each buffer.
+    // The buffers only drop hits when a thread records more than this before the lock is free.
+    private static final int DRAIN_THRESHOLD = 16;
+    private static final int READ_BUFFER_SIZE = 4 * DRAIN_THRESHOLD;
+    private static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+    private static final int MAX_READ_BUFFERS = 16;
+
+    private final ConcurrentHashMap<K, Node<K, V>> mMap;
+    private final ReadBuffer<K, V>[] mReadBuffers;
+    private final int mReadBufferMask;
+
+    // Guards all changes to mMap, the recency order, the size and the counters below.
+    private final ReentrantLock mLock = new ReentrantLock();
+
+    // Sentinel of the list of entries, from least to most recently used.
+    private final Node<K, V> mHead = new Node<>(null, null, 0);
+
+    /** Size of this cache in units. Not necessarily the number of elements. */
+    private int mSize;
+    private volatile int mMaxSize;
+
+    private int mPutCount;
+    private int mCreateCount;
+    private int mEvictionCount;
+
+    private static final class Node<K, V> {
+        final K mKey;
+        final V mValue;
+        final int mSize;
+        // Guarded by the cache's lock. Both are null once the node is no longer in the cache.
+        Node<K, V> mPrevious;
+        Node<K, V> mNext;
+
+        Node(K key, V value, int size) {
+            mKey = key;
+            mValue = value;
+            mSize = size;
+        }
+    }
+
+    private static final class ReadBuffer<K, V> {
+        final AtomicReferenceArray<Node<K, V>> mNodes =
+                new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+        final AtomicInteger mWriteCount = new AtomicInteger();
+        // Number of hits applied so far. Guarded by the cache's lock.
+        int mDrainCount;
+        final AtomicInteger mHitCount = new AtomicInteger();
+        final AtomicInteger mMissCount = new AtomicInteger();
+    }
+
+    /**
+     * @param maxSize for caches that do not override {@link #sizeOf}, this is
+     *     the maximum number of entries in the cache. For all other caches,
+     *     this is the maximum sum of the sizes of the entries in this cache.
+     */
+    @SuppressWarnings("unchecked")
+    public ConcurrentLruCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        mMaxSize = maxSize;
+        mMap = new ConcurrentHashMap<>();
+        mHead.mPrevious = mHead;
+        mHead.mNext = mHead;
+
+        int bufferCount = 1;
+        final int processors = Runtime.getRuntime().availableProcessors();
+        while (bufferCount < processors && bufferCount < MAX_READ_BUFFERS) {
+            bufferCount <<= 1;
+        }
+        mReadBuffers = new ReadBuffer[bufferCount];
+        for (int i = 0; i < bufferCount; i++) {
+            mReadBuffers[i] = new ReadBuffer<>();
+        }
+        mReadBufferMask = bufferCount - 1;
+    }
+
+    /**
+     * Sets the size of the cache.
+     *
+     * @param maxSize The new maximum size.
+     */
+    public void resize(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+
+        mMaxSize = maxSize;
+        trimToSize(maxSize);
+    }
+
+    /**
+     * Returns the value for {@code key} if it exists in the cache or can be
+     * created by {@code #create}. If a value was returned, it is moved to the
+     * head of the queue, possibly at a later time. This returns null if a value
+     * is not cached and cannot be created.
+     *
+     * <p>Values which are in the cache are returned without locking.
+     */
+    public final V get(K key) {
+        if (key == null) {
+            throw new NullPointerException("key == null");
+        }
+
+        final ReadBuffer<K, V> buffer = getReadBuffer();
+        final Node<K, V> node = mMap.get(key);
+        if (node != null) {
+            buffer.mHitCount.incrementAndGet();
+            recordHit(buffer, node);
+            return node.mValue;
+        }
+        buffer.mMissCount.incrementAndGet();
+
+        /*
+         * Attempt to create a value. This may take a long time, and the map
+         * may be different when create() returns. If a conflicting value was
+         * added to the map while create() was working, we leave that value in
+         * the map and release the created value.
+         */
+
+        final V createdValue = create(key);
+        if (createdValue == null) {
+            return null;
+        }
+
+        final Node<K, V> createdNode =
+                new Node<>(key, createdValue, safeSizeOf(key, createdValue));
+        final Node<K, V> mapNode;
+        mLock.lock();
+        try {
+            mCreateCount++;
+            mapNode = mMap.putIfAbsent(key, createdNode);
+            if (mapNode == null) {
+                drainReadBuffers();
+                linkLast(createdNode);
+                mSize += createdNode.mSize;
+            }
+        } finally {
+            mLock.unlock();
+        }
+
+        if (mapNode != null) {
+            entryRemoved(false, key, createdValue, mapNode.mValue);
+            return mapNode.mValue;
+        } else {
+            trimToSize(mMaxSize);
+            return createdValue;
+        }
+    }
+
+    /**
+     * Caches {@code value} for {@code key}. The value is moved to the head of
+     * the queue.
+     *
+     * @return the previous value mapped by {@code key}.
+     */
+    public final V put(K key, V value) {
+        if (key == null || value == null) {
+            throw new NullPointerException("key == null || value == null");
+        }
+
+        final Node<K, V> node = new Node<>(key, value, safeSizeOf(key, value));
+        final Node<K, V> previous;
+        mLock.lock();
+        try {
+            mPutCount++;
+            // Apply the buffered hits first, so they are ordered before this write.
+            drainReadBuffers();
+            mSize += node.mSize;
+            previous = mMap.put(key, node);
+            if (previous != null) {
+                unlink(previous);
+                mSize -= previous.mSize;
+            }
+            linkLast(node);
+        } finally {
+            mLock.unlock();
+        }
+
+        if (previous != null) {
+            entryRemoved(false, key, previous.mValue, value);
+        }
+
+        trimToSize(mMaxSize);
+        return previous != null ? previous.mValue : null;
+    }
+
+    /**
+     * Remove the eldest entries until the total of remaining entries is at or
+     * below the requested size.
+     *
+     * @param maxSize the maximum size of the cache before returning. May be -1
+     *            to evict even 0-sized elements.
+     */
+    public void trimToSize(int maxSize) {
+        boolean drained = false;
+        while (true) {
+            final Node<K, V> toEvict;
+            mLock.lock();
+            try {
+                if (mSize < 0 || (mMap.isEmpty() && mSize != 0)) {
+                    throw new IllegalStateException(getClass().getName()
+                            + ".sizeOf() is reporting inconsistent results!");
+                }
+
+                if (mSize <= maxSize || mMap.isEmpty()) {
+                    break;
+                }
+
+                // Apply the buffered hits first, so recently used entries are not evicted.
+                if (!drained) {
+                    drainReadBuffers();
+                    drained = true;
+                }
+                toEvict = mHead.mNext;
+                mMap.remove(toEvict.mKey);
+                unlink(toEvict);
+                mSize -= toEvict.mSize;
+                mEvictionCount++;
+            } finally {
+                mLock.unlock();
+            }
+
+            entryRemoved(true, toEvict.mKey, toEvict.mValue, null);
+        }
+    }
+
+    /**
+     * Removes the entry for {@code key} if it exists.
+     *
+     * @return the previous value mapped by {@code key}.
+     */
+    public final V remove(K key) {
+        if (key == null) {
+            throw new NullPointerException("key == null");
+        }
+
+        final Node<K, V> previous;
+        mLock.lock();
+        try {
+            previous = mMap.remove(key);
+            if (previous != null) {
+                unlink(previous);
+                mSize -= previous.mSize;
+            }
+        } finally {
+            mLock.unlock();
+        }
+
+        if (previous != null) {
+            entryRemoved(false, key, previous.mValue, null);
+            return previous.mValue;
+        }
+        return null;
+    }
+
+    /**
+     * Called for entries that have been evicted or removed. This method is
+     * invoked when a value is evicted to make space, removed by a call to
+     * {@link #remove}, or replaced by a call to {@link #put}. The default
+     * implementation does nothing.
+     *
+     * <p>The method is called without synchronization: other threads may
+     * access the cache while this method is executing.
+     *
+     * @param evicted true if the entry is being removed to make space, false
+     *     if the removal was caused by a {@link #put} or {@link #remove}.
+     * @param newValue the new value for {@code key}, if it exists. If non-null,
+     *     this removal was caused by a {@link #put}. Otherwise it was caused by
+     *     an eviction or a {@link #remove}.
+     */
+    protected void entryRemoved(boolean evicted, K key, V oldValue, V newValue) {}
+
+    /**
+     * Called after a cache miss to compute a value for the corresponding key.
+     * Returns the computed value or null if no value can be computed. The
+     * default implementation returns null.
+     *
+     * <p>The method is called without synchronization: other threads may
+     * access the cache while this method is executing.
+     *
+     * <p>If a value for {@code key} exists in the cache when this method
+     * returns, the created value will be released with {@link #entryRemoved}
+     * and discarded. This can occur when multiple threads request the same key
+     * at the same time (causing multiple values to be created), or when one
+     * thread calls {@link #put} while another is creating a value for the same
+     * key.
+     */
+    protected V create(K key) {
+        return null;
+    }
+
+    private int safeSizeOf(K key, V value) {
+        int result = sizeOf(key, value);
+        if (result < 0) {
+            throw new IllegalStateException("Negative size: " + key + "=" + value);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the size of the entry for {@code key} and {@code value} in
+     * user-defined units.  The default implementation returns 1 so that size
+     * is the number of entries and max size is the maximum number of entries.
+     *
+     * <p>An entry's size must not change while it is in the cache. Unlike with
+     * {@link LruCache}, this is called without synchronization.
+     */
+    protected int sizeOf(K key, V value) {
+        return 1;
+    }
+
+    /**
+     * Clear the cache, calling {@link #entryRemoved} on each removed entry.
+     */
+    public final void evictAll() {
+        trimToSize(-1); // -1 will evict 0-sized elements
+    }
+
+    /**
+     * For caches that do not override {@link #sizeOf}, this returns the number
+     * of entries in the cache. For all other caches, this returns the sum of
+     * the sizes of the entries in this cache.
+     */
+    public final int size() {
+        mLock.lock();
+        try {
+            return mSize;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * For caches that do not override {@link #sizeOf}, this returns the maximum
+     * number of entries in the cache. For all other caches, this returns the
+     * maximum sum of the sizes of the entries in this cache.
+     */
+    public final int maxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * Returns the number of times {@link #get} returned a value that was
+     * already present in the cache.
+     */
+    public final int hitCount() {
+        int hitCount = 0;
+        for (ReadBuffer<K, V> buffer : mReadBuffers) {
+            hitCount += buffer.mHitCount.get();
+        }
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of times {@link #get} returned null or required a new
+     * value to be created.
+     */
+    public final int missCount() {
+        int missCount = 0;
+        for (ReadBuffer<K, V> buffer : mReadBuffers) {
+            missCount += buffer.mMissCount.get();
+        }
+        return missCount;
+    }
+
+    /**
+     * Returns the number of times {@link #create(Object)} returned a value.
+     */
+    public final int createCount() {
+        mLock.lock();
+        try {
+            return mCreateCount;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of times {@link #put} was called.
+     */
+    public final int putCount() {
+        mLock.lock();
+        try {
+            return mPutCount;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of values that have been evicted.
+     */
+    public final int evictionCount() {
+        mLock.lock();
+        try {
+            return mEvictionCount;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Returns a copy of the current contents of the cache, ordered from least
+     * recently accessed to most recently accessed.
+     */
+    public final Map<K, V> snapshot() {
+        mLock.lock();
+        try {
+            drainReadBuffers();
+            final Map<K, V> snapshot = new LinkedHashMap<>(mMap.size());
+            for (Node<K, V> node = mHead.mNext; node != mHead; node = node.mNext) {
+                snapshot.put(node.mKey, node.mValue);
+            }
+            return snapshot;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    @Override public final String toString() {
+        int hitCount = hitCount();
+        int accesses = hitCount + missCount();
+        int hitPercent = accesses != 0 ? (100 * hitCount / accesses) : 0;
+        return String.format("ConcurrentLruCache[maxSize=%d,hits=%d,misses=%d,hitRate=%d%%]",
+                mMaxSize, hitCount, accesses - hitCount, hitPercent);
+    }
+
+    private ReadBuffer<K, V> getReadBuffer() {
+        final long id = Thread.currentThread().getId();
+        return mReadBuffers[(int) (id ^ (id >>> 16)) & mReadBufferMask];
+    }
+
+    private void recordHit(ReadBuffer<K, V> buffer, Node<K, V> node) {
+        // When the buffer is full, the oldest hits in it are overwritten.
+        final int index = buffer.mWriteCount.getAndIncrement();
+        buffer.mNodes.set(index & READ_BUFFER_MASK, node);
+        if ((index + 1) % DRAIN_THRESHOLD == 0 && mLock.tryLock()) {
+            try {
+                drainReadBuffers();
+            } finally {
+                mLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Moves the entries of all buffered hits to the end of the recency order. Must be called
+     * with the lock held.
+     */
+    private void drainReadBuffers() {
+        for (ReadBuffer<K, V> buffer : mReadBuffers) {
+            final AtomicReferenceArray<Node<K, V>> nodes = buffer.mNodes;
+            final int writeCount = buffer.mWriteCount.get();
+            int i = buffer.mDrainCount;
+            if (writeCount - i > READ_BUFFER_SIZE) {
+                // Older hits have been overwritten already
+                i = writeCount - READ_BUFFER_SIZE;
+            }
+            for (; i - writeCount < 0; i++) {
+                final int index = i & READ_BUFFER_MASK;
+                final Node<K, V> node = nodes.get(index);
+                if (node != null && nodes.compareAndSet(index, node, null)
+                        && node.mNext != null) {
+                    // The node may have been removed since it was hit
+                    unlink(node);
+                    linkLast(node);
+                }
+            }
+            buffer.mDrainCount = writeCount;
+        }
+    }
+
+    private void linkLast(Node<K, V> node) {
+        final Node<K, V> last = mHead.mPrevious;
+        node.mPrevious = last;
+        node.mNext = mHead;
+        last.mNext = node;
+        mHead.mPrevious = node;
+    }
+
+    private void unlink(Node<K, V> node) {
+        node.mPrevious.mNext = node.mNext;
+        node.mNext.mPrevious = node.mPrevious;
+        node.mPrevious = null;
+        node.mNext = null;
+    }
+}
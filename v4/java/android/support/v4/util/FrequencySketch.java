@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.util;
+
+/**
+ * Approximate count of recent accesses to each key, used by {@link LruCache} to decide whether
+ * a new entry is worth keeping over the one it would evict.
+ *
+ * <p>This is a count-min sketch of 4-bit counters, 16 per long. Each key is counted in four
+ * counters, and its frequency is the smallest of them, so it is never underestimated. Once
+ * the number of accesses reaches ten times the capacity, all counters are halved, so keys
+ * which stop being used age out.
+ *
+ * <p>Not thread safe.
+ */
+final class FrequencySketch {
+    private static final int MAX_COUNT = 15;
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int[] SEEDS = {0x97cb3127, 0xb2f8e2b5, 0x8e0e8d7b, 0xc18a4c9d};
+
+    private long[] mTable;
+    private int mTableMask;
+    private int mSampleSize;
+    private int mAdditions;
+
+    FrequencySketch() {
+        ensureCapacity(16);
+    }
+
+    /**
+     * Grows the sketch so it can count at least {@code capacity} keys without too many
+     * collisions. Counts are reset when it grows.
+     */
+    void ensureCapacity(int capacity) {
+        // One long per key leaves 16 counters for the 4 of each key
+        int tableSize = 1;
+        while (tableSize < capacity && tableSize < (1 << 30)) {
+            tableSize <<= 1;
+        }
+        if (mTable != null && tableSize <= mTable.length) {
+            return;
+        }
+        mTable = new long[tableSize];
+        mTableMask = tableSize - 1;
+        mSampleSize = 10 * tableSize;
+        mAdditions = 0;
+    }
+
+    /**
+     * Returns the estimated number of recent accesses to the key, at most 15.
+     */
+    int frequency(Object key) {
+        final int hash = spread(key.hashCode());
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < SEEDS.length; i++) {
+            final int index = indexOf(hash, i);
+            final int shift = counterShift(hash, i);
+            frequency = Math.min(frequency, (int) ((mTable[index] >>> shift) & 0xf));
+        }
+        return frequency;
+    }
+
+    /**
+     * Records an access to the key.
+     */
+    void increment(Object key) {
+        final int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            final int index = indexOf(hash, i);
+            final int shift = counterShift(hash, i);
+            if (((mTable[index] >>> shift) & 0xf) != MAX_COUNT) {
+                mTable[index] += 1L << shift;
+                added = true;
+            }
+        }
+        if (added && ++mAdditions == mSampleSize) {
+            reset();
+        }
+    }
+
+    private void reset() {
+        for (int i = 0; i < mTable.length; i++) {
+            mTable[i] = (mTable[i] >>> 1) & RESET_MASK;
+        }
+        mAdditions /= 2;
+    }
+
+    private int indexOf(int hash, int i) {
+        int h = (hash + SEEDS[i]) * SEEDS[i];
+        h += h >>> 16;
+        return h & mTableMask;
+    }
+
+    private static int counterShift(int hash, int i) {
+        // Each of the four counters of a key is in a different quarter of the long
+        return ((i << 2) + ((hash >>> (i << 3)) & 3)) << 2;
+    }
+
+    private static int spread(int hash) {
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        return (hash >>> 16) ^ hash;
+    }
+}
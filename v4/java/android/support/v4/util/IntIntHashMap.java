@@ -0,0 +1,365 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.util;
+
+/**
+ * Maps ints to ints, like {@link android.util.SparseIntArray}, but with a hash table instead of
+ * a sorted array of keys, so lookups, insertions and removals take constant time however many
+ * mappings there are. Neither keys nor values are boxed.
+ *
+ * <p>Mappings are stored in two dense arrays, indexed from 0 to {@link #size()} - 1 for
+ * {@link #keyAt(int)} and {@link #valueAt(int)}, and an open addressing table with linear
+ * probing finds the index of a key. Unlike {@link android.util.SparseIntArray}, the indices are
+ * not in ascending key order: {@link #removeAt(int)} moves the last mapping to the removed
+ * index, so remove mappings while iterating from the last index to the first.
+ *
+ * <p>Prefer {@link android.util.SparseIntArray} for small maps, or when iterating in key order.
+ */
+public class IntIntHashMap implements Cloneable {
+    private static final int MIN_TABLE_SIZE = 8;
+
+    private int[] mKeys;
+    private int[] mValues;
+    private int mSize;
+    // Index of the mapping + 1 for each slot, or 0 for empty slots. At most half full.
+    private int[] mTable;
+
+    /**
+     * Creates a new IntIntHashMap containing no mappings.
+     */
+    public IntIntHashMap() {
+        this(10);
+    }
+
+    /**
+     * Creates a new IntIntHashMap containing no mappings that will not
+     * require any additional memory allocation to store the specified
+     * number of mappings.  If you supply an initial capacity of 0, the
+     * map will be initialized with a light-weight representation
+     * not requiring any additional array allocations.
+     */
+    public IntIntHashMap(int initialCapacity) {
+        if (initialCapacity == 0) {
+            mKeys = ContainerHelpers.EMPTY_INTS;
+            mValues = ContainerHelpers.EMPTY_INTS;
+            mTable = ContainerHelpers.EMPTY_INTS;
+        } else {
+            initialCapacity = ContainerHelpers.idealIntArraySize(initialCapacity);
+            mKeys = new int[initialCapacity];
+            mValues = new int[initialCapacity];
+            mTable = new int[tableSizeFor(initialCapacity)];
+        }
+        mSize = 0;
+    }
+
+    @Override
+    public IntIntHashMap clone() {
+        IntIntHashMap clone = null;
+        try {
+            clone = (IntIntHashMap) super.clone();
+            clone.mKeys = mKeys.clone();
+            clone.mValues = mValues.clone();
+            clone.mTable = mTable.clone();
+        } catch (CloneNotSupportedException cnse) {
+            /* ignore */
+        }
+        return clone;
+    }
+
+    /**
+     * Gets the int mapped from the specified key, or <code>0</code>
+     * if no such mapping has been made.
+     */
+    public int get(int key) {
+        return get(key, 0);
+    }
+
+    /**
+     * Gets the int mapped from the specified key, or the specified value
+     * if no such mapping has been made.
+     */
+    public int get(int key, int valueIfKeyNotFound) {
+        int i = indexOfKey(key);
+        return i >= 0 ? mValues[i] : valueIfKeyNotFound;
+    }
+
+    /**
+     * Returns true if a mapping from the specified key has been made.
+     */
+    public boolean containsKey(int key) {
+        return indexOfKey(key) >= 0;
+    }
+
+    /**
+     * Removes the mapping from the specified key, if there was any.
+     */
+    public void delete(int key) {
+        int i = indexOfKey(key);
+        if (i >= 0) {
+            removeAt(i);
+        }
+    }
+
+    /**
+     * Alias for {@link #delete(int)}.
+     */
+    public void remove(int key) {
+        delete(key);
+    }
+
+    /**
+     * Removes the mapping at the specified index. The last mapping is moved
+     * to this index.
+     */
+    public void removeAt(int index) {
+        if (index >= mSize) {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+        clearSlot(slotOfIndex(index));
+
+        final int last = mSize - 1;
+        if (index != last) {
+            mTable[slotOfIndex(last)] = index + 1;
+            mKeys[index] = mKeys[last];
+            mValues[index] = mValues[last];
+        }
+        mSize = last;
+    }
+
+    /**
+     * Adds a mapping from the specified key to the specified value,
+     * replacing the previous mapping from the specified key if there
+     * was one.
+     */
+    public void put(int key, int value) {
+        int mask = mTable.length - 1;
+        int slot = hash(key) & mask;
+        if (mTable.length != 0) {
+            for (int entry; (entry = mTable[slot]) != 0; slot = (slot + 1) & mask) {
+                if (mKeys[entry - 1] == key) {
+                    mValues[entry - 1] = value;
+                    return;
+                }
+            }
+        }
+
+        if (mSize >= mKeys.length) {
+            int n = ContainerHelpers.idealIntArraySize(mSize + 1);
+
+            int[] nkeys = new int[n];
+            int[] nvalues = new int[n];
+
+            System.arraycopy(mKeys, 0, nkeys, 0, mKeys.length);
+            System.arraycopy(mValues, 0, nvalues, 0, mValues.length);
+
+            mKeys = nkeys;
+            mValues = nvalues;
+        }
+        if ((mSize + 1) * 2 > mTable.length) {
+            rehash(tableSizeFor(mSize + 1));
+            mask = mTable.length - 1;
+            slot = hash(key) & mask;
+            while (mTable[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        mKeys[mSize] = key;
+        mValues[mSize] = value;
+        mSize++;
+        mTable[slot] = mSize;
+    }
+
+    /**
+     * Returns the number of key-value mappings that this IntIntHashMap
+     * currently stores.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Given an index in the range <code>0...size()-1</code>, returns
+     * the key from the <code>index</code>th key-value mapping that this
+     * IntIntHashMap stores.
+     */
+    public int keyAt(int index) {
+        if (index >= mSize) {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+        return mKeys[index];
+    }
+
+    /**
+     * Given an index in the range <code>0...size()-1</code>, returns
+     * the value from the <code>index</code>th key-value mapping that this
+     * IntIntHashMap stores.
+     */
+    public int valueAt(int index) {
+        if (index >= mSize) {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+        return mValues[index];
+    }
+
+    /**
+     * Given an index in the range <code>0...size()-1</code>, sets a new
+     * value for the <code>index</code>th key-value mapping that this
+     * IntIntHashMap stores.
+     */
+    public void setValueAt(int index, int value) {
+        if (index >= mSize) {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+        mValues[index] = value;
+    }
+
+    /**
+     * Returns the index for which {@link #keyAt} would return the
+     * specified key, or a negative number if the specified
+     * key is not mapped.
+     */
+    public int indexOfKey(int key) {
+        if (mSize == 0) {
+            return -1;
+        }
+        final int mask = mTable.length - 1;
+        for (int slot = hash(key) & mask, entry; (entry = mTable[slot]) != 0;
+                slot = (slot + 1) & mask) {
+            if (mKeys[entry - 1] == key) {
+                return entry - 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns an index for which {@link #valueAt} would return the
+     * specified value, or a negative number if no keys map to the
+     * specified value.
+     * Beware that this is a linear search, unlike lookups by key,
+     * and that multiple keys can map to the same value and this will
+     * find only one of them.
+     */
+    public int indexOfValue(int value) {
+        for (int i = 0; i < mSize; i++) {
+            if (mValues[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Removes all key-value mappings from this IntIntHashMap.
+     */
+    public void clear() {
+        for (int i = 0; i < mTable.length; i++) {
+            mTable[i] = 0;
+        }
+        mSize = 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>This implementation composes a string by iterating over its mappings.
+     */
+    @Override
+    public String toString() {
+        if (size() <= 0) {
+            return "{}";
+        }
+
+        StringBuilder buffer = new StringBuilder(mSize * 28);
+        buffer.append('{');
+        for (int i=0; i<mSize; i++) {
+            if (i > 0) {
+                buffer.append(", ");
+            }
+            int key = keyAt(i);
+            buffer.append(key);
+            buffer.append('=');
+            int value = valueAt(i);
+            buffer.append(value);
+        }
+        buffer.append('}');
+        return buffer.toString();
+    }
+
+    /**
+     * Returns the slot of the table which holds the index of a mapping.
+     */
+    private int slotOfIndex(int index) {
+        final int mask = mTable.length - 1;
+        int slot = hash(mKeys[index]) & mask;
+        while (mTable[slot] != index + 1) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Empties a slot, moving back the following entries which can't be found
+     * anymore past the empty slot.
+     */
+    private void clearSlot(int slot) {
+        final int mask = mTable.length - 1;
+        int hole = slot;
+        for (int next = (slot + 1) & mask, entry; (entry = mTable[next]) != 0;
+                next = (next + 1) & mask) {
+            final int ideal = hash(mKeys[entry - 1]) & mask;
+            // Move the entry unless its ideal slot is between the hole and itself
+            if (((next - ideal) & mask) >= ((next - hole) & mask)) {
+                mTable[hole] = entry;
+                hole = next;
+            }
+        }
+        mTable[hole] = 0;
+    }
+
+    private void rehash(int tableSize) {
+        final int[] table = new int[tableSize];
+        final int mask = tableSize - 1;
+        for (int i = 0; i < mSize; i++) {
+            int slot = hash(mKeys[i]) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = i + 1;
+        }
+        mTable = table;
+    }
+
+    /**
+     * Returns the smallest power of two table size which is at most half full
+     * with the specified number of mappings.
+     */
+    private static int tableSizeFor(int capacity) {
+        int size = MIN_TABLE_SIZE;
+        while (size < capacity * 2) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    private static int hash(int key) {
+        // Fibonacci hashing spreads sequential keys, such as IDs, over the whole table
+        final int h = key * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+}
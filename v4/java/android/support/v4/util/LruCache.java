@@ -16,6 +16,11 @@
 
 package android.support.v4.util;
 
+import android.support.annotation.IntDef;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -25,13 +30,57 @@ import java.util.Map;
  * this implementation is still used; it does not try to switch to the
  * framework's implementation. See the framework SDK documentation for a class
  * overview.
+ *
+ * <p>By default the least recently used entry is evicted first. A cache created
+ * with {@link #LruCache(int, int)} can use a policy which also takes into
+ * account how often entries are used, so a single scan through many entries,
+ * such as a fling through a long list, doesn't evict all the entries which are
+ * used over and over again.
  */
 public class LruCache<K, V> {
+    /**
+     * Evicts the least recently used entry first.
+     */
+    public static final int EVICTION_POLICY_LRU = 0;
+
+    /**
+     * Segmented LRU. New entries are put in a probation segment, and moved to a
+     * protected segment of up to 80% of the max size when they are accessed
+     * again. Entries are evicted from the probation segment first, so entries
+     * which are only accessed once can't evict the ones accessed several times.
+     */
+    public static final int EVICTION_POLICY_SEGMENTED_LRU = 1;
+
+    /**
+     * Segmented LRU, which additionally keeps a compact estimate of how often
+     * recently accessed keys were used, including keys which are no longer in
+     * the cache. A new entry is only kept when making room for it would evict
+     * an entry which is used less often than it. This is the TinyLFU admission
+     * policy.
+     */
+    public static final int EVICTION_POLICY_FREQUENCY_ADMISSION = 2;
+
+    /** @hide */
+    @IntDef({EVICTION_POLICY_LRU, EVICTION_POLICY_SEGMENTED_LRU,
+            EVICTION_POLICY_FREQUENCY_ADMISSION})
+    @Retention(RetentionPolicy.SOURCE)
+    private @interface EvictionPolicy {}
+
+    // Percentage of the max size for the protected segment of the segmented policies.
+    private static final int PROTECTED_PERCENT = 80;
+
+    // All entries for EVICTION_POLICY_LRU, the probation segment otherwise.
     private final LinkedHashMap<K, V> map;
+    // The protected segment, or null for EVICTION_POLICY_LRU.
+    private final LinkedHashMap<K, V> protectedMap;
+    // Access frequencies, or null unless EVICTION_POLICY_FREQUENCY_ADMISSION.
+    private final FrequencySketch sketch;
 
     /** Size of this cache in units. Not necessarily the number of elements. */
     private int size;
     private int maxSize;
+    private int protectedSize;
+    private int protectedMaxSize;
 
     private int putCount;
     private int createCount;
@@ -45,11 +94,35 @@ public class LruCache<K, V> {
      *     this is the maximum sum of the sizes of the entries in this cache.
      */
     public LruCache(int maxSize) {
+        this(maxSize, EVICTION_POLICY_LRU);
+    }
+
+    /**
+     * @param maxSize for caches that do not override {@link #sizeOf}, this is
+     *     the maximum number of entries in the cache. For all other caches,
+     *     this is the maximum sum of the sizes of the entries in this cache.
+     * @param evictionPolicy one of {@link #EVICTION_POLICY_LRU},
+     *     {@link #EVICTION_POLICY_SEGMENTED_LRU} or
+     *     {@link #EVICTION_POLICY_FREQUENCY_ADMISSION}.
+     */
+    public LruCache(int maxSize, @EvictionPolicy int evictionPolicy) {
         if (maxSize <= 0) {
             throw new IllegalArgumentException("maxSize <= 0");
         }
+        if (evictionPolicy < EVICTION_POLICY_LRU
+                || evictionPolicy > EVICTION_POLICY_FREQUENCY_ADMISSION) {
+            throw new IllegalArgumentException("Unknown eviction policy: " + evictionPolicy);
+        }
         this.maxSize = maxSize;
         this.map = new LinkedHashMap<K, V>(0, 0.75f, true);
+        if (evictionPolicy != EVICTION_POLICY_LRU) {
+            this.protectedMap = new LinkedHashMap<K, V>(0, 0.75f, true);
+            this.protectedMaxSize = protectedMaxSize(maxSize);
+        } else {
+            this.protectedMap = null;
+        }
+        this.sketch = evictionPolicy == EVICTION_POLICY_FREQUENCY_ADMISSION
+                ? new FrequencySketch() : null;
     }
 
     /**
@@ -64,6 +137,10 @@ public class LruCache<K, V> {
 
         synchronized (this) {
             this.maxSize = maxSize;
+            if (protectedMap != null) {
+                protectedMaxSize = protectedMaxSize(maxSize);
+                demoteProtectedEntries();
+            }
         }
         trimToSize(maxSize);
     }
@@ -81,11 +158,28 @@ public class LruCache<K, V> {
 
         V mapValue;
         synchronized (this) {
+            if (sketch != null) {
+                sketch.increment(key);
+            }
             mapValue = map.get(key);
             if (mapValue != null) {
+                if (protectedMap != null) {
+                    // Accessed again while on probation
+                    map.remove(key);
+                    protectedMap.put(key, mapValue);
+                    protectedSize += safeSizeOf(key, mapValue);
+                    demoteProtectedEntries();
+                }
                 hitCount++;
                 return mapValue;
             }
+            if (protectedMap != null) {
+                mapValue = protectedMap.get(key);
+                if (mapValue != null) {
+                    hitCount++;
+                    return mapValue;
+                }
+            }
             missCount++;
         }
 
@@ -103,13 +197,17 @@ public class LruCache<K, V> {
 
         synchronized (this) {
             createCount++;
-            mapValue = map.put(key, createdValue);
-
-            if (mapValue != null) {
-                // There was a conflict so undo that last put
-                map.put(key, mapValue);
-            } else {
-                size += safeSizeOf(key, createdValue);
+            mapValue = protectedMap != null ? protectedMap.get(key) : null;
+            if (mapValue == null) {
+                mapValue = map.put(key, createdValue);
+
+                if (mapValue != null) {
+                    // There was a conflict so undo that last put
+                    map.put(key, mapValue);
+                } else {
+                    size += safeSizeOf(key, createdValue);
+                    ensureSketchCapacity();
+                }
             }
         }
 
@@ -117,7 +215,7 @@ public class LruCache<K, V> {
             entryRemoved(false, key, createdValue, mapValue);
             return mapValue;
         } else {
-            trimToSize(maxSize);
+            trimToSize(maxSize, key);
             return createdValue;
         }
     }
@@ -136,8 +234,22 @@ public class LruCache<K, V> {
         V previous;
         synchronized (this) {
             putCount++;
+            if (sketch != null) {
+                sketch.increment(key);
+            }
             size += safeSizeOf(key, value);
-            previous = map.put(key, value);
+            previous = protectedMap != null ? protectedMap.get(key) : null;
+            if (previous != null) {
+                // Replacing a protected entry keeps it protected
+                protectedMap.put(key, value);
+                protectedSize += safeSizeOf(key, value) - safeSizeOf(key, previous);
+                demoteProtectedEntries();
+            } else {
+                previous = map.put(key, value);
+                if (previous == null) {
+                    ensureSketchCapacity();
+                }
+            }
             if (previous != null) {
                 size -= safeSizeOf(key, previous);
             }
@@ -147,7 +259,7 @@ public class LruCache<K, V> {
             entryRemoved(false, key, previous, value);
         }
 
-        trimToSize(maxSize);
+        trimToSize(maxSize, previous == null ? key : null);
         return previous;
     }
 
@@ -159,23 +271,46 @@ public class LruCache<K, V> {
      *            to evict even 0-sized elements.
      */
     public void trimToSize(int maxSize) {
+        trimToSize(maxSize, null);
+    }
+
+    /**
+     * @param candidate the key of an entry which was just added, and which may
+     *     be evicted instead of older entries when they are used more often.
+     */
+    private void trimToSize(int maxSize, K candidate) {
         while (true) {
             K key;
             V value;
             synchronized (this) {
-                if (size < 0 || (map.isEmpty() && size != 0)) {
+                final boolean empty = map.isEmpty()
+                        && (protectedMap == null || protectedMap.isEmpty());
+                if (size < 0 || (empty && size != 0)) {
                     throw new IllegalStateException(getClass().getName()
                             + ".sizeOf() is reporting inconsistent results!");
                 }
 
-                if (size <= maxSize || map.isEmpty()) {
+                if (size <= maxSize || empty) {
                     break;
                 }
 
-                Map.Entry<K, V> toEvict = map.entrySet().iterator().next();
+                Map.Entry<K, V> toEvict = (map.isEmpty() ? protectedMap : map)
+                        .entrySet().iterator().next();
                 key = toEvict.getKey();
-                value = toEvict.getValue();
-                map.remove(key);
+                if (sketch != null && candidate != null && !candidate.equals(key)
+                        && map.containsKey(candidate)
+                        && sketch.frequency(candidate) < sketch.frequency(key)) {
+                    // The older entry is used more often, so reject the new one instead
+                    key = candidate;
+                }
+                if (key.equals(candidate)) {
+                    candidate = null;
+                }
+                value = map.remove(key);
+                if (value == null) {
+                    value = protectedMap.remove(key);
+                    protectedSize -= safeSizeOf(key, value);
+                }
                 size -= safeSizeOf(key, value);
                 evictionCount++;
             }
@@ -184,6 +319,32 @@ public class LruCache<K, V> {
         }
     }
 
+    /**
+     * Moves the least recently used protected entries back to the probation
+     * segment until the protected segment fits in its share of the max size.
+     */
+    private void demoteProtectedEntries() {
+        Iterator<Map.Entry<K, V>> iterator = protectedMap.entrySet().iterator();
+        while (protectedSize > protectedMaxSize && iterator.hasNext()) {
+            Map.Entry<K, V> entry = iterator.next();
+            K key = entry.getKey();
+            V value = entry.getValue();
+            iterator.remove();
+            protectedSize -= safeSizeOf(key, value);
+            map.put(key, value);
+        }
+    }
+
+    private void ensureSketchCapacity() {
+        if (sketch != null) {
+            sketch.ensureCapacity(map.size() + protectedMap.size());
+        }
+    }
+
+    private static int protectedMaxSize(int maxSize) {
+        return (int) ((long) maxSize * PROTECTED_PERCENT / 100);
+    }
+
     /**
      * Removes the entry for {@code key} if it exists.
      *
@@ -197,6 +358,12 @@ public class LruCache<K, V> {
         V previous;
         synchronized (this) {
             previous = map.remove(key);
+            if (previous == null && protectedMap != null) {
+                previous = protectedMap.remove(key);
+                if (previous != null) {
+                    protectedSize -= safeSizeOf(key, previous);
+                }
+            }
             if (previous != null) {
                 size -= safeSizeOf(key, previous);
             }
@@ -280,6 +447,13 @@ public class LruCache<K, V> {
         return size;
     }
 
+    /**
+     * Returns the number of entries in the cache, whatever their sizes.
+     */
+    synchronized final int entryCount() {
+        return map.size() + (protectedMap != null ? protectedMap.size() : 0);
+    }
+
     /**
      * For caches that do not override {@link #sizeOf}, this returns the maximum
      * number of entries in the cache. For all other caches, this returns the
@@ -328,10 +502,16 @@ public class LruCache<K, V> {
 
     /**
      * Returns a copy of the current contents of the cache, ordered from least
-     * recently accessed to most recently accessed.
+     * recently accessed to most recently accessed. With a segmented eviction
+     * policy, the entries of the probation segment come first, so the order is
+     * that in which entries would be evicted.
      */
     public synchronized final Map<K, V> snapshot() {
-        return new LinkedHashMap<K, V>(map);
+        LinkedHashMap<K, V> snapshot = new LinkedHashMap<K, V>(map);
+        if (protectedMap != null) {
+            snapshot.putAll(protectedMap);
+        }
+        return snapshot;
     }
 
     @Override public synchronized final String toString() {
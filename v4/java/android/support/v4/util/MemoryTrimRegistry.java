@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.util;
+
+import android.support.annotation.NonNull;
+
+import java.io.PrintWriter;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Registry of in-memory caches which can be trimmed when the system is low on memory.
+ *
+ * <p>Forward the calls to {@link android.content.ComponentCallbacks2#onTrimMemory(int)} and
+ * {@link android.content.ComponentCallbacks2#onLowMemory()} of your application to
+ * {@link #onTrimMemory(int)} and {@link #onLowMemory()}. Every registered cache is then
+ * trimmed to the fraction of its current size given by {@link #getRetainedFraction(int)} for
+ * the trim level.
+ *
+ * <p>The array caches of {@link SimpleArrayMap} and {@link ArrayMap} are always registered.
+ * Other support library caches register themselves when they are created, and applications can
+ * register their own with {@link #register(String, Trimmable)} or
+ * {@link #register(String, LruCache, int)}. The registry only keeps weak references to the
+ * caches, so they don't need to be unregistered.
+ *
+ * <p>{@link #dump(String, PrintWriter)} prints the number of entries and the size of every
+ * registered cache, which helps choosing cache sizes for low-RAM devices.
+ *
+ * <p>This class is thread safe.
+ */
+public final class MemoryTrimRegistry {
+
+    /**
+     * A cache which can release some of its entries.
+     */
+    public interface Trimmable {
+        /**
+         * Releases entries until the cache holds at most {@code retainedFraction} of its
+         * current size. The least useful entries should be released first.
+         *
+         * @param retainedFraction from 0, to release all entries, to 1.
+         */
+        void trimMemory(float retainedFraction);
+
+        /**
+         * Returns the number of entries in the cache.
+         */
+        int getEntryCount();
+
+        /**
+         * Returns an estimate of the memory held by the cache, in bytes, or -1 if unknown.
+         */
+        long getSizeInBytes();
+    }
+
+    private static class Registration {
+        final String mName;
+        // Either a Trimmable or a LruCache
+        final WeakReference<Object> mCache;
+        final int mBytesPerUnit;
+
+        Registration(String name, Object cache, int bytesPerUnit) {
+            mName = name;
+            mCache = new WeakReference<>(cache);
+            mBytesPerUnit = bytesPerUnit;
+        }
+    }
+
+    // Trim levels of android.content.ComponentCallbacks2, which was added in API 14
+    private static final int TRIM_MEMORY_COMPLETE = 80;
+    private static final int TRIM_MEMORY_MODERATE = 60;
+    private static final int TRIM_MEMORY_BACKGROUND = 40;
+    private static final int TRIM_MEMORY_RUNNING_CRITICAL = 15;
+    private static final int TRIM_MEMORY_RUNNING_LOW = 10;
+    private static final int TRIM_MEMORY_RUNNING_MODERATE = 5;
+
+    private static final List<Registration> sRegistrations = new ArrayList<>();
+
+    static {
+        register("SimpleArrayMap array caches", SimpleArrayMap.ARRAY_CACHE_TRIMMABLE);
+    }
+
+    private MemoryTrimRegistry() {
+    }
+
+    /**
+     * Registers a cache to trim when memory is low. The cache is only weakly referenced.
+     *
+     * @param name name of the cache in {@link #dump(String, PrintWriter)}.
+     */
+    public static void register(@NonNull String name, @NonNull Trimmable cache) {
+        add(new Registration(name, cache, -1));
+    }
+
+    /**
+     * Registers a {@link LruCache} to trim when memory is low. The cache is only weakly
+     * referenced.
+     *
+     * @param name name of the cache in {@link #dump(String, PrintWriter)}.
+     * @param bytesPerUnit number of bytes in one unit of {@link LruCache#sizeOf}, such as 1024
+     *                     if it returns kilobytes, or 0 if the units aren't bytes.
+     */
+    public static void register(@NonNull String name, @NonNull LruCache<?, ?> cache,
+            int bytesPerUnit) {
+        add(new Registration(name, cache, bytesPerUnit > 0 ? bytesPerUnit : -1));
+    }
+
+    /**
+     * Unregisters a cache registered with {@link #register(String, Trimmable)} or
+     * {@link #register(String, LruCache, int)}.
+     */
+    public static void unregister(@NonNull Object cache) {
+        synchronized (sRegistrations) {
+            for (int i = sRegistrations.size() - 1; i >= 0; i--) {
+                final Object registered = sRegistrations.get(i).mCache.get();
+                if (registered == null || registered == cache) {
+                    sRegistrations.remove(i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Trims all registered caches according to the level passed to
+     * {@link android.content.ComponentCallbacks2#onTrimMemory(int)}.
+     */
+    public static void onTrimMemory(int level) {
+        trimMemory(getRetainedFraction(level));
+    }
+
+    /**
+     * Releases all entries of the registered caches, as for
+     * {@link android.content.ComponentCallbacks2#onLowMemory()}.
+     */
+    public static void onLowMemory() {
+        trimMemory(0);
+    }
+
+    /**
+     * Returns the fraction of their current size which caches keep for a trim level. The
+     * higher the level, the more is released, and all entries are released when the process
+     * is about to be killed.
+     */
+    public static float getRetainedFraction(int level) {
+        if (level >= TRIM_MEMORY_COMPLETE) {
+            return 0;
+        } else if (level >= TRIM_MEMORY_MODERATE) {
+            return 0.125f;
+        } else if (level >= TRIM_MEMORY_BACKGROUND) {
+            return 0.25f;
+        } else if (level >= TRIM_MEMORY_RUNNING_CRITICAL) {
+            // Also when the UI is hidden, at TRIM_MEMORY_UI_HIDDEN
+            return 0.5f;
+        } else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            return 0.75f;
+        } else if (level >= TRIM_MEMORY_RUNNING_MODERATE) {
+            return 0.875f;
+        }
+        return 1;
+    }
+
+    /**
+     * Trims all registered caches to a fraction of their current size.
+     *
+     * @param retainedFraction from 0, to release all entries, to 1.
+     */
+    public static void trimMemory(float retainedFraction) {
+        if (retainedFraction >= 1) {
+            return;
+        }
+        for (Registration registration : getRegistrations()) {
+            final Object cache = registration.mCache.get();
+            if (cache instanceof LruCache) {
+                trimLruCache((LruCache<?, ?>) cache, retainedFraction);
+            } else if (cache != null) {
+                ((Trimmable) cache).trimMemory(Math.max(retainedFraction, 0));
+            }
+        }
+    }
+
+    /**
+     * Prints the number of entries and the size of every registered cache.
+     */
+    public static void dump(String prefix, PrintWriter writer) {
+        long totalBytes = 0;
+        int totalEntries = 0;
+        writer.print(prefix);
+        writer.println("Memory trim registry:");
+        for (Registration registration : getRegistrations()) {
+            final Object cache = registration.mCache.get();
+            final int entries;
+            final long bytes;
+            if (cache instanceof LruCache) {
+                final LruCache<?, ?> lruCache = (LruCache<?, ?>) cache;
+                entries = lruCache.entryCount();
+                bytes = registration.mBytesPerUnit > 0
+                        ? (long) lruCache.size() * registration.mBytesPerUnit : -1;
+            } else if (cache != null) {
+                final Trimmable trimmable = (Trimmable) cache;
+                entries = trimmable.getEntryCount();
+                bytes = trimmable.getSizeInBytes();
+            } else {
+                continue;
+            }
+            totalEntries += entries;
+            writer.print(prefix);
+            writer.print("  ");
+            writer.print(registration.mName);
+            writer.print(": entries=");
+            writer.print(entries);
+            writer.print(" bytes=");
+            if (bytes >= 0) {
+                totalBytes += bytes;
+                writer.println(bytes);
+            } else {
+                writer.println("unknown");
+            }
+        }
+        writer.print(prefix);
+        writer.print("  Total: entries=");
+        writer.print(totalEntries);
+        writer.print(" known bytes=");
+        writer.println(totalBytes);
+    }
+
+    private static void add(Registration registration) {
+        synchronized (sRegistrations) {
+            // Drop the caches which were collected while we're here
+            for (int i = sRegistrations.size() - 1; i >= 0; i--) {
+                if (sRegistrations.get(i).mCache.get() == null) {
+                    sRegistrations.remove(i);
+                }
+            }
+            sRegistrations.add(registration);
+        }
+    }
+
+    /**
+     * Returns a copy of the registrations, so caches are called without holding the lock.
+     */
+    private static List<Registration> getRegistrations() {
+        synchronized (sRegistrations) {
+            return new ArrayList<>(sRegistrations);
+        }
+    }
+
+    private static void trimLruCache(LruCache<?, ?> cache, float retainedFraction) {
+        if (retainedFraction <= 0) {
+            cache.evictAll();
+        } else {
+            cache.trimToSize((int) (cache.size() * retainedFraction));
+        }
+    }
+}
@@ -17,6 +17,10 @@
 
 package android.support.v4.util;
 
+import android.support.annotation.Nullable;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Helper class for crating pools of objects. An example use looks like this:
@@ -66,6 +70,22 @@ public final class Pools {
         public boolean release(T instance);
     }
 
+    /**
+     * Callback to clear the state of an instance released to a {@link ConcurrentPool}.
+     *
+     * @param <T> The pooled type.
+     */
+    public static interface ResetCallback<T> {
+
+        /**
+         * Clears the state of an instance before it is put in the pool, such as references to
+         * other objects which could otherwise not be garbage collected.
+         *
+         * @param instance The released instance.
+         */
+        public void reset(T instance);
+    }
+
     private Pools() {
         /* do nothing - hiding constructor */
     }
@@ -163,4 +183,158 @@ public final class Pools {
             }
         }
     }
+
+    /**
+     * Thread safe pool of objects which doesn't lock. Each thread starts looking for a pooled
+     * instance, or for a free slot, at a different slot, and claims it with an atomic
+     * compare-and-set, so threads releasing and acquiring instances at the same time rarely
+     * contend.
+     *
+     * <p>Releasing an instance which is already in the pool is detected as in
+     * {@link SimplePool}, unless the same instance is released from two threads at the same
+     * time.
+     *
+     * @param <T> The pooled type.
+     */
+    public static class ConcurrentPool<T> implements Pool<T> {
+        private static final int MAX_STRIPES = 16;
+        // Counters of each stripe, spaced out so different stripes are in different cache lines.
+        private static final int COUNTER_STRIDE = 8;
+        private static final int HIT_COUNTER = 0;
+        private static final int MISS_COUNTER = 1;
+        private static final int DROP_COUNTER = 2;
+
+        private final AtomicReferenceArray<T> mPool;
+        private final ResetCallback<T> mResetCallback;
+        private final AtomicLongArray mCounters;
+        private final int mStripeMask;
+
+        /**
+         * Creates a new instance.
+         *
+         * @param maxPoolSize The max pool size.
+         *
+         * @throws IllegalArgumentException If the max pool size is less than zero.
+         */
+        public ConcurrentPool(int maxPoolSize) {
+            this(maxPoolSize, null);
+        }
+
+        /**
+         * Creates a new instance.
+         *
+         * @param maxPoolSize The max pool size.
+         * @param resetCallback Called for each instance put in the pool, or null.
+         *
+         * @throws IllegalArgumentException If the max pool size is less than zero.
+         */
+        public ConcurrentPool(int maxPoolSize, @Nullable ResetCallback<T> resetCallback) {
+            if (maxPoolSize <= 0) {
+                throw new IllegalArgumentException("The max pool size must be > 0");
+            }
+            mPool = new AtomicReferenceArray<>(maxPoolSize);
+            mResetCallback = resetCallback;
+
+            int stripes = 1;
+            final int processors = Runtime.getRuntime().availableProcessors();
+            while (stripes < processors && stripes < MAX_STRIPES) {
+                stripes <<= 1;
+            }
+            mCounters = new AtomicLongArray(stripes * COUNTER_STRIDE);
+            mStripeMask = stripes - 1;
+        }
+
+        @Override
+        public T acquire() {
+            final int threadHash = threadHash();
+            final int size = mPool.length();
+            for (int i = 0, index = threadHash % size; i < size; i++) {
+                final T instance = mPool.get(index);
+                if (instance != null && mPool.compareAndSet(index, instance, null)) {
+                    count(threadHash, HIT_COUNTER);
+                    return instance;
+                }
+                if (++index == size) {
+                    index = 0;
+                }
+            }
+            count(threadHash, MISS_COUNTER);
+            return null;
+        }
+
+        @Override
+        public boolean release(T instance) {
+            final int threadHash = threadHash();
+            final int size = mPool.length();
+            final int start = threadHash % size;
+            boolean reset = false;
+            while (true) {
+                int free = -1;
+                for (int i = 0, index = start; i < size; i++) {
+                    final T pooled = mPool.get(index);
+                    if (pooled == instance) {
+                        throw new IllegalStateException("Already in the pool!");
+                    } else if (pooled == null && free == -1) {
+                        free = index;
+                    }
+                    if (++index == size) {
+                        index = 0;
+                    }
+                }
+                if (free == -1) {
+                    count(threadHash, DROP_COUNTER);
+                    return false;
+                }
+                // Only reset once the instance is known not to be pooled, as it may be in use
+                if (!reset && mResetCallback != null) {
+                    mResetCallback.reset(instance);
+                    reset = true;
+                }
+                if (mPool.compareAndSet(free, null, instance)) {
+                    return true;
+                }
+                // Another thread took the free slot, look again
+            }
+        }
+
+        /**
+         * Returns the number of times {@link #acquire()} returned a pooled instance.
+         */
+        public long getHitCount() {
+            return sum(HIT_COUNTER);
+        }
+
+        /**
+         * Returns the number of times {@link #acquire()} returned null because the pool was
+         * empty.
+         */
+        public long getMissCount() {
+            return sum(MISS_COUNTER);
+        }
+
+        /**
+         * Returns the number of times {@link #release(Object)} returned false because the pool
+         * was full.
+         */
+        public long getDropCount() {
+            return sum(DROP_COUNTER);
+        }
+
+        private static int threadHash() {
+            final long id = Thread.currentThread().getId();
+            return (int) (id ^ (id >>> 32)) & Integer.MAX_VALUE;
+        }
+
+        private void count(int threadHash, int counter) {
+            mCounters.incrementAndGet((threadHash & mStripeMask) * COUNTER_STRIDE + counter);
+        }
+
+        private long sum(int counter) {
+            long sum = 0;
+            for (int i = counter; i < mCounters.length(); i += COUNTER_STRIDE) {
+                sum += mCounters.get(i);
+            }
+            return sum;
+        }
+    }
 }
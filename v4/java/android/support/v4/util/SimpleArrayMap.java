@@ -54,6 +54,52 @@ public class SimpleArrayMap<K, V> {
     static Object[] mTwiceBaseCache;
     static int mTwiceBaseCacheSize;
 
+    /**
+     * Trims the array caches when memory is low, registered by {@link MemoryTrimRegistry}.
+     */
+    static final MemoryTrimRegistry.Trimmable ARRAY_CACHE_TRIMMABLE =
+            new MemoryTrimRegistry.Trimmable() {
+                @Override
+                public void trimMemory(float retainedFraction) {
+                    synchronized (ArrayMap.class) {
+                        final int baseCacheSize = (int) (mBaseCacheSize * retainedFraction);
+                        while (mBaseCacheSize > baseCacheSize) {
+                            mBaseCache = (Object[]) mBaseCache[0];
+                            mBaseCacheSize--;
+                        }
+                        final int twiceBaseCacheSize =
+                                (int) (mTwiceBaseCacheSize * retainedFraction);
+                        while (mTwiceBaseCacheSize > twiceBaseCacheSize) {
+                            mTwiceBaseCache = (Object[]) mTwiceBaseCache[0];
+                            mTwiceBaseCacheSize--;
+                        }
+                    }
+                }
+
+                @Override
+                public int getEntryCount() {
+                    synchronized (ArrayMap.class) {
+                        return mBaseCacheSize + mTwiceBaseCacheSize;
+                    }
+                }
+
+                @Override
+                public long getSizeInBytes() {
+                    synchronized (ArrayMap.class) {
+                        return mBaseCacheSize * getArraysSize(BASE_SIZE)
+                                + mTwiceBaseCacheSize * getArraysSize(BASE_SIZE * 2);
+                    }
+                }
+
+                /**
+                 * Estimates the size of the hashes and the array for a capacity, with
+                 * 4 byte references, 12 byte array headers and an 8 byte alignment.
+                 */
+                private long getArraysSize(int capacity) {
+                    return ((12 + capacity * 4 + 7) & ~7) + ((12 + capacity * 2 * 4 + 7) & ~7);
+                }
+            };
+
     int[] mHashes;
     Object[] mArray;
     int mSize;
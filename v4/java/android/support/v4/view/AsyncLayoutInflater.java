@@ -26,13 +26,16 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.UiThread;
 import android.support.v4.util.Pools.SynchronizedPool;
+import android.support.v4.util.SparseArrayCompat;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.ArrayList;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * <p>Helper class for inflating layouts asynchronously. To use, construct
@@ -46,6 +49,25 @@ import java.util.concurrent.ArrayBlockingQueue;
  * to be responsive & animate while the relatively heavy inflate
  * is being performed.
  *
+ * <p>Layouts can also be inflated ahead of time with
+ * {@link #preInflate(int, ViewGroup, int)}, which keeps the views in a cache
+ * until they are taken by {@link #obtainView(int, ViewGroup)}. For instance, an
+ * adapter can pre-inflate its item layouts when it is created, and take the
+ * views from the cache in
+ * {@code RecyclerView.Adapter#onCreateViewHolder(ViewGroup, int)}:
+ *
+ * <pre>
+ * public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+ *     return new ViewHolder(mAsyncLayoutInflater.obtainView(R.layout.card, parent));
+ * }
+ * </pre>
+ *
+ * <p>Layouts are inflated by a single background thread shared by all
+ * instances, since {@link LayoutInflater} is not safe to use from several
+ * threads at once. Requests from
+ * {@link #inflate(int, ViewGroup, OnInflateFinishedListener)} are inflated
+ * before pre-inflation requests.
+ *
  * <p>For a layout to be inflated asynchronously it needs to have a parent
  * whose {@link ViewGroup#generateLayoutParams(AttributeSet)} is thread-safe
  * and all the Views being constructed as part of inflation must not create
@@ -71,6 +93,11 @@ public final class AsyncLayoutInflater {
     private Handler mHandler;
     private InflateThread mInflateThread;
 
+    // Pre-inflated views and number of pending pre-inflations of each layout,
+    // only accessed on the UI thread.
+    private final SparseArrayCompat<ArrayList<View>> mViewCache = new SparseArrayCompat<>();
+    private final SparseArrayCompat<int[]> mPendingPreInflations = new SparseArrayCompat<>();
+
     public AsyncLayoutInflater(@NonNull Context context) {
         mInflater = new BasicInflater(context);
         mHandler = new Handler(mHandlerCallback);
@@ -91,10 +118,104 @@ public final class AsyncLayoutInflater {
         mInflateThread.enqueue(request);
     }
 
+    /**
+     * Inflates a layout in the background until {@code count} views of it are
+     * cached, counting the views already cached or being inflated. The views are
+     * kept until they are taken by {@link #obtainView(int, ViewGroup)}.
+     *
+     * <p>The layout params of the views are generated by {@code parent}, so the
+     * views should be added to parents of the same type.
+     *
+     * @param resid The layout to inflate.
+     * @param parent The parent the views will be added to.
+     * @param count The number of views to cache, which bounds the cache of the layout.
+     */
+    @UiThread
+    public void preInflate(@LayoutRes int resid, @Nullable ViewGroup parent, int count) {
+        final int[] pending = getPendingPreInflations(resid);
+        for (int i = getCachedViewCount(resid) + pending[0]; i < count; i++) {
+            InflateRequest request = mInflateThread.obtainRequest();
+            request.inflater = this;
+            request.resid = resid;
+            request.parent = parent;
+            request.cacheSize = count;
+            request.prefetch = true;
+            pending[0]++;
+            mInflateThread.enqueue(request);
+        }
+    }
+
+    /**
+     * Returns a view of the layout inflated by {@link #preInflate(int, ViewGroup, int)}
+     * if there is one in the cache, or inflates the layout on the UI thread otherwise.
+     * The view is NOT added to the parent.
+     *
+     * @param resid The layout of the view.
+     * @param parent The parent the view will be added to.
+     */
+    @UiThread
+    @NonNull
+    public View obtainView(@LayoutRes int resid, @Nullable ViewGroup parent) {
+        final ArrayList<View> views = mViewCache.get(resid);
+        if (views != null && !views.isEmpty()) {
+            return views.remove(views.size() - 1);
+        }
+        return mInflater.inflate(resid, parent, false);
+    }
+
+    /**
+     * Returns the number of views of the layout in the cache.
+     */
+    @UiThread
+    public int getCachedViewCount(@LayoutRes int resid) {
+        final ArrayList<View> views = mViewCache.get(resid);
+        return views != null ? views.size() : 0;
+    }
+
+    /**
+     * Removes all the pre-inflated views from the cache, such as when the UI
+     * which would use them is gone. Views which are still being inflated are
+     * added to the cache when they are ready.
+     */
+    @UiThread
+    public void clearCache() {
+        mViewCache.clear();
+    }
+
+    private int[] getPendingPreInflations(int resid) {
+        int[] pending = mPendingPreInflations.get(resid);
+        if (pending == null) {
+            pending = new int[1];
+            mPendingPreInflations.put(resid, pending);
+        }
+        return pending;
+    }
+
+    private void addToCache(InflateRequest request) {
+        getPendingPreInflations(request.resid)[0]--;
+        if (request.view == null) {
+            // Pre-inflating on the UI thread would defeat its purpose
+            return;
+        }
+        ArrayList<View> views = mViewCache.get(request.resid);
+        if (views == null) {
+            views = new ArrayList<>(request.cacheSize);
+            mViewCache.put(request.resid, views);
+        }
+        if (views.size() < request.cacheSize) {
+            views.add(request.view);
+        }
+    }
+
     private Callback mHandlerCallback = new Callback() {
         @Override
         public boolean handleMessage(Message msg) {
             InflateRequest request = (InflateRequest) msg.obj;
+            if (request.prefetch) {
+                addToCache(request);
+                mInflateThread.releaseRequest(request);
+                return true;
+            }
             if (request.view == null) {
                 request.view = mInflater.inflate(
                         request.resid, request.parent, false);
@@ -110,12 +231,24 @@ public final class AsyncLayoutInflater {
         public void onInflateFinished(View view, int resid, ViewGroup parent);
     }
 
-    private static class InflateRequest {
+    private static class InflateRequest implements Comparable<InflateRequest> {
         AsyncLayoutInflater inflater;
         ViewGroup parent;
         int resid;
         View view;
         OnInflateFinishedListener callback;
+        // Whether the view goes to the cache, of at most cacheSize views.
+        boolean prefetch;
+        int cacheSize;
+        long sequence;
+
+        @Override
+        public int compareTo(InflateRequest other) {
+            if (prefetch != other.prefetch) {
+                return prefetch ? 1 : -1;
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
     }
 
     private static class BasicInflater extends LayoutInflater {
@@ -163,10 +296,12 @@ public final class AsyncLayoutInflater {
             return sInstance;
         }
 
-        private ArrayBlockingQueue<InflateRequest> mQueue
-                = new ArrayBlockingQueue<>(10);
+        // Unbounded, so a burst of requests doesn't block the UI thread.
+        private PriorityBlockingQueue<InflateRequest> mQueue
+                = new PriorityBlockingQueue<>();
         private SynchronizedPool<InflateRequest> mRequestPool
                 = new SynchronizedPool<>(10);
+        private final AtomicLong mSequence = new AtomicLong();
 
         @Override
         public void run() {
@@ -207,16 +342,14 @@ public final class AsyncLayoutInflater {
             obj.parent = null;
             obj.resid = 0;
             obj.view = null;
+            obj.prefetch = false;
+            obj.cacheSize = 0;
             mRequestPool.release(obj);
         }
 
         public void enqueue(InflateRequest request) {
-            try {
-                mQueue.put(request);
-            } catch (InterruptedException e) {
-                throw new RuntimeException(
-                        "Failed to enqueue async inflate request", e);
-            }
+            request.sequence = mSequence.getAndIncrement();
+            mQueue.put(request);
         }
     }
 }
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.support.v4.content;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v4.os.CancellationSignal;
+import android.test.suitebuilder.annotation.MediumTest;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+@MediumTest
+public class CursorLoaderTest {
+    private static final int ROW_COUNT = 250;
+    private static final int PAGE_SIZE = 100;
+
+    private TestCursorLoader mLoader;
+    private Cursor mCursor;
+    private boolean mLoadingPage;
+
+    /**
+     * Loads rows from a table of {@link #ROW_COUNT} rows with the row number as the only column.
+     */
+    private static class TestCursorLoader extends CursorLoader {
+        final List<String> mQueries = new ArrayList<>();
+
+        TestCursorLoader(Context context) {
+            super(context);
+            setPageSize(PAGE_SIZE);
+        }
+
+        @Override
+        protected Cursor queryPage(int offset, int limit, CancellationSignal cancellationSignal) {
+            mQueries.add(offset + "+" + limit);
+            final MatrixCursor cursor = new MatrixCursor(new String[] {"_id"});
+            for (int i = offset; i < Math.min(offset + limit, ROW_COUNT); i++) {
+                cursor.addRow(new Object[] {i});
+            }
+            return cursor;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mLoader = new TestCursorLoader(InstrumentationRegistry.getTargetContext());
+                mLoader.registerListener(0, new Loader.OnLoadCompleteListener<Cursor>() {
+                    @Override
+                    public void onLoadComplete(Loader<Cursor> loader, Cursor data) {
+                        mCursor = data;
+                    }
+                });
+                mLoader.startLoading();
+            }
+        });
+        mLoader.waitForLoader();
+    }
+
+    @Test
+    public void testLoadPages() {
+        assertEquals(PAGE_SIZE, mCursor.getCount());
+        final Cursor firstCursor = mCursor;
+
+        loadNextPage();
+        assertTrue(mLoadingPage);
+        assertEquals(2 * PAGE_SIZE, mCursor.getCount());
+        assertTrue(firstCursor.isClosed());
+        assertTrue(mCursor.moveToPosition(150));
+        assertEquals(150, mCursor.getInt(0));
+        assertTrue(mCursor.moveToPosition(99));
+        assertEquals(99, mCursor.getInt(0));
+
+        loadNextPage();
+        assertEquals(ROW_COUNT, mCursor.getCount());
+        assertTrue(mCursor.moveToLast());
+        assertEquals(ROW_COUNT - 1, mCursor.getInt(0));
+
+        // All rows are loaded
+        loadNextPage();
+        assertFalse(mLoadingPage);
+        assertEquals(Arrays.asList("0+100", "100+100", "200+100"), mLoader.mQueries);
+    }
+
+    @Test
+    public void testContentChangeReloadsLoadedPages() {
+        loadNextPage();
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mLoader.onContentChanged();
+            }
+        });
+        mLoader.waitForLoader();
+        assertEquals(2 * PAGE_SIZE, mCursor.getCount());
+        // The loaded rows are queried at once
+        assertEquals(Arrays.asList("0+100", "100+100", "0+200"), mLoader.mQueries);
+
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mLoader.reset();
+            }
+        });
+        assertTrue(mCursor.isClosed());
+    }
+
+    @Test
+    public void testCursorsSharingPagesKeepTheirRows() {
+        loadNextPage();
+        final PagedCursor firstCursor = (PagedCursor) mCursor;
+        final PagedCursor secondCursor = new PagedCursor(
+                Arrays.asList(firstCursor.acquirePages()), false, firstCursor.getGeneration());
+        try {
+            assertTrue(firstCursor.moveToPosition(150));
+            assertTrue(secondCursor.moveToPosition(120));
+            assertEquals(150, firstCursor.getInt(0));
+            assertEquals(120, secondCursor.getInt(0));
+            assertTrue(secondCursor.moveToPosition(50));
+            assertEquals(150, firstCursor.getInt(0));
+        } finally {
+            secondCursor.close();
+        }
+        assertFalse(firstCursor.isClosed());
+        assertEquals(150, firstCursor.getInt(0));
+    }
+
+    private void loadNextPage() {
+        runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mLoadingPage = mLoader.loadNextPage();
+            }
+        });
+        mLoader.waitForLoader();
+    }
+
+    private static void runOnMainSync(Runnable runnable) {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(runnable);
+    }
+}
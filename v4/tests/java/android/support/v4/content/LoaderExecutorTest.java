@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.support.v4.content;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class LoaderExecutorTest {
+    // Holds the tasks given to the underlying executor until they are run by the test
+    private final List<Runnable> mRunnables = new ArrayList<>();
+    private final List<String> mRun = new ArrayList<>();
+    // Number of tasks the underlying executor rejects before accepting them again
+    private int mRejections;
+    private LoaderExecutor mExecutor;
+
+    @Before
+    public void setUp() {
+        mExecutor = new LoaderExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                if (mRejections > 0) {
+                    mRejections--;
+                    throw new RejectedExecutionException();
+                }
+                mRunnables.add(command);
+            }
+        }, 1, 3);
+    }
+
+    @Test
+    public void testHighestPriorityRunsFirst() {
+        mExecutor.execute(task("first"), LoaderExecutor.PRIORITY_BACKGROUND, null);
+        mExecutor.execute(task("background"), LoaderExecutor.PRIORITY_BACKGROUND, null);
+        mExecutor.execute(task("default"));
+        mExecutor.execute(task("visible"), LoaderExecutor.PRIORITY_VISIBLE, null);
+        assertEquals(1, mExecutor.getActiveTaskCount());
+        assertEquals(3, mExecutor.getQueuedTaskCount());
+
+        runAll();
+        assertEquals(Arrays.asList("first", "visible", "default", "background"), mRun);
+        assertEquals(0, mExecutor.getActiveTaskCount());
+        assertEquals(0, mExecutor.getQueuedTaskCount());
+    }
+
+    @Test
+    public void testSamePriorityRunsInOrder() {
+        for (int i = 0; i < 4; i++) {
+            mExecutor.execute(task("task" + i));
+        }
+        runAll();
+        assertEquals(Arrays.asList("task0", "task1", "task2", "task3"), mRun);
+    }
+
+    @Test
+    public void testFullQueueRejects() {
+        for (int i = 0; i < 4; i++) {
+            mExecutor.execute(task("task" + i));
+        }
+        try {
+            mExecutor.execute(task("rejected"));
+            fail("Expected RejectedExecutionException");
+        } catch (RejectedExecutionException expected) {
+        }
+        assertEquals(1, mExecutor.getRejectedTaskCount());
+
+        runAll();
+        assertEquals(4, mRun.size());
+        // There is room again
+        mExecutor.execute(task("accepted"));
+        runAll();
+        assertEquals("accepted", mRun.get(4));
+    }
+
+    @Test
+    public void testQueuedTaskRejectedByExecutor() {
+        mExecutor.execute(task("first"));
+        mExecutor.execute(task("second"));
+        mExecutor.execute(task("third"));
+
+        // The second task is rejected when the first one finishes, and stays queued
+        mRejections = 1;
+        mRunnables.remove(0).run();
+        assertEquals(Arrays.asList("first"), mRun);
+        assertEquals(0, mExecutor.getActiveTaskCount());
+        assertEquals(2, mExecutor.getQueuedTaskCount());
+        assertEquals(0, mExecutor.getRejectedTaskCount());
+
+        // Queued tasks start again when the next task finishes
+        mExecutor.execute(task("fourth"));
+        runAll();
+        assertEquals(Arrays.asList("first", "fourth", "second", "third"), mRun);
+        assertEquals(0, mExecutor.getActiveTaskCount());
+        assertEquals(0, mExecutor.getQueuedTaskCount());
+    }
+
+    @Test
+    public void testListener() {
+        final Object owner = new Object();
+        final List<Object> owners = new ArrayList<>();
+        mExecutor.setListener(new LoaderExecutor.Listener() {
+            @Override
+            public void onTaskFinished(Object taskOwner, long queueTimeMillis,
+                    long runTimeMillis) {
+                owners.add(taskOwner);
+                assertTrue(queueTimeMillis >= 0);
+                assertTrue(runTimeMillis >= 0);
+            }
+        });
+        mExecutor.execute(task("owned"), LoaderExecutor.PRIORITY_DEFAULT, owner);
+        runAll();
+        assertEquals(1, owners.size());
+        assertSame(owner, owners.get(0));
+    }
+
+    @Test
+    public void testLoaderPriorities() {
+        final TestLoader first = new TestLoader("first", LoaderExecutor.PRIORITY_DEFAULT);
+        final TestLoader background = new TestLoader("background",
+                LoaderExecutor.PRIORITY_BACKGROUND);
+        final TestLoader visible = new TestLoader("visible", LoaderExecutor.PRIORITY_VISIBLE);
+        forceLoad(first);
+        forceLoad(background);
+        forceLoad(visible);
+        assertEquals(1, mExecutor.getActiveTaskCount());
+        assertEquals(2, mExecutor.getQueuedTaskCount());
+
+        runAll();
+        assertEquals(Arrays.asList("first", "visible", "background"), mRun);
+    }
+
+    @Test
+    public void testForceLoadCoalescesQueuedLoad() {
+        final TestLoader first = new TestLoader("first", LoaderExecutor.PRIORITY_DEFAULT);
+        final TestLoader second = new TestLoader("second", LoaderExecutor.PRIORITY_DEFAULT);
+        forceLoad(first);
+        for (int i = 0; i < 3; i++) {
+            forceLoad(second);
+        }
+        // The queued load is kept instead of being cancelled and queued again
+        assertEquals(1, mExecutor.getQueuedTaskCount());
+
+        runAll();
+        assertEquals(Arrays.asList("first", "second"), mRun);
+        assertEquals(0, mExecutor.getRejectedTaskCount());
+    }
+
+    private void forceLoad(final TestLoader loader) {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                loader.forceLoad();
+            }
+        });
+    }
+
+    private class TestLoader extends AsyncTaskLoader<String> {
+        private final String mName;
+
+        TestLoader(String name, int priority) {
+            super(InstrumentationRegistry.getTargetContext(), mExecutor);
+            mName = name;
+            setLoadPriority(priority);
+        }
+
+        @Override
+        public String loadInBackground() {
+            mRun.add(mName);
+            return mName;
+        }
+    }
+
+    private Runnable task(final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                mRun.add(name);
+            }
+        };
+    }
+
+    private void runAll() {
+        while (!mRunnables.isEmpty()) {
+            mRunnables.remove(0).run();
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.support.v4.content;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class LocalBroadcastManagerTest {
+    private static final String ACTION_PROGRESS = "android.support.v4.content.test.PROGRESS";
+    private static final String ACTION_DONE = "android.support.v4.content.test.DONE";
+    private static final String CATEGORY_TEST = "android.support.v4.content.test.CATEGORY";
+
+    private LocalBroadcastManager mManager;
+    // Holds the tasks given to the executor until they are run by the test
+    private final List<Runnable> mTasks = new ArrayList<>();
+    private final Executor mExecutor = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            mTasks.add(command);
+        }
+    };
+    private final List<Intent> mReceived = new ArrayList<>();
+    private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            mReceived.add(intent);
+        }
+    };
+
+    @Before
+    public void setUp() {
+        mManager = LocalBroadcastManager.getInstance(InstrumentationRegistry.getTargetContext());
+    }
+
+    @After
+    public void tearDown() {
+        mManager.unregisterReceiver(mReceiver);
+    }
+
+    @Test
+    public void testReceiverOnExecutor() {
+        final IntentFilter filter = new IntentFilter(ACTION_PROGRESS);
+        filter.addAction(ACTION_DONE);
+        mManager.registerReceiverOnExecutor(mReceiver, filter, mExecutor);
+
+        final Intent progress = new Intent(ACTION_PROGRESS);
+        final Intent done = new Intent(ACTION_DONE);
+        assertTrue(mManager.sendBroadcast(progress));
+        assertTrue(mManager.sendBroadcast(done));
+        assertTrue(mReceived.isEmpty());
+
+        // Both broadcasts are delivered by a single task, in order
+        assertEquals(1, mTasks.size());
+        runTasks();
+        assertEquals(2, mReceived.size());
+        assertSame(progress, mReceived.get(0));
+        assertSame(done, mReceived.get(1));
+    }
+
+    @Test
+    public void testCoalescedBroadcasts() {
+        final IntentFilter filter = new IntentFilter(ACTION_PROGRESS);
+        filter.addAction(ACTION_DONE);
+        mManager.registerReceiverOnExecutor(mReceiver, filter, mExecutor);
+
+        for (int i = 0; i < 10; i++) {
+            mManager.sendCoalescedBroadcast(new Intent(ACTION_PROGRESS).putExtra("progress", i));
+        }
+        final Intent done = new Intent(ACTION_DONE);
+        mManager.sendCoalescedBroadcast(done);
+        runTasks();
+
+        // Only the latest progress is delivered
+        assertEquals(2, mReceived.size());
+        assertEquals(9, mReceived.get(0).getIntExtra("progress", -1));
+        assertSame(done, mReceived.get(1));
+    }
+
+    @Test
+    public void testCoalescedBroadcastsPerReceiver() {
+        // Matches both intents
+        final IntentFilter filter = new IntentFilter(ACTION_PROGRESS);
+        filter.addCategory(CATEGORY_TEST);
+        mManager.registerReceiver(mReceiver, filter);
+        // Only matches the intent without category
+        final List<Intent> otherReceived = new ArrayList<>();
+        final BroadcastReceiver otherReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                otherReceived.add(intent);
+            }
+        };
+        mManager.registerReceiver(otherReceiver, new IntentFilter(ACTION_PROGRESS));
+
+        final Intent first = new Intent(ACTION_PROGRESS);
+        final Intent second = new Intent(ACTION_PROGRESS).addCategory(CATEGORY_TEST);
+        try {
+            // Sent on the main thread, so neither is delivered before both are sent
+            InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    mManager.sendCoalescedBroadcast(first);
+                    mManager.sendCoalescedBroadcast(second);
+                }
+            });
+            InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+        } finally {
+            mManager.unregisterReceiver(otherReceiver);
+        }
+
+        assertEquals(1, mReceived.size());
+        assertSame(second, mReceived.get(0));
+        // The second intent does not replace the first for a receiver which it doesn't match
+        assertEquals(1, otherReceived.size());
+        assertSame(first, otherReceived.get(0));
+    }
+
+    @Test
+    public void testBroadcastsAreNotCoalescedByDefault() {
+        mManager.registerReceiverOnExecutor(mReceiver, new IntentFilter(ACTION_PROGRESS),
+                mExecutor);
+        mManager.sendBroadcast(new Intent(ACTION_PROGRESS));
+        mManager.sendBroadcast(new Intent(ACTION_PROGRESS));
+        runTasks();
+        assertEquals(2, mReceived.size());
+    }
+
+    @Test
+    public void testCategoriesMatch() {
+        final IntentFilter filter = new IntentFilter(ACTION_PROGRESS);
+        filter.addCategory(CATEGORY_TEST);
+        mManager.registerReceiverOnExecutor(mReceiver, filter, mExecutor);
+
+        assertTrue(mManager.sendBroadcast(new Intent(ACTION_PROGRESS)));
+        assertTrue(mManager.sendBroadcast(
+                new Intent(ACTION_PROGRESS).addCategory(CATEGORY_TEST)));
+        assertFalse(mManager.sendBroadcast(
+                new Intent(ACTION_PROGRESS).addCategory(Intent.CATEGORY_DEFAULT)));
+        // Intents with data don't match filters without data
+        assertFalse(mManager.sendBroadcast(
+                new Intent(ACTION_PROGRESS).setType("text/plain")));
+        runTasks();
+        assertEquals(2, mReceived.size());
+    }
+
+    @Test
+    public void testUnregisteredReceiver() {
+        mManager.registerReceiverOnExecutor(mReceiver, new IntentFilter(ACTION_PROGRESS),
+                mExecutor);
+        mManager.unregisterReceiver(mReceiver);
+        assertFalse(mManager.sendBroadcast(new Intent(ACTION_PROGRESS)));
+        assertTrue(mTasks.isEmpty());
+    }
+
+    private void runTasks() {
+        while (!mTasks.isEmpty()) {
+            mTasks.remove(0).run();
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.util;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class ConcurrentLruCacheTest {
+
+    @Test
+    public void testStatistics() {
+        ConcurrentLruCache<String, String> cache = new ConcurrentLruCache<>(3);
+        cache.put("a", "A");
+        assertEquals("A", cache.get("a"));
+        assertNull(cache.get("b"));
+        cache.put("b", "B");
+        assertEquals(2, cache.putCount());
+        assertEquals(1, cache.hitCount());
+        assertEquals(1, cache.missCount());
+        assertEquals(0, cache.createCount());
+        assertEquals(0, cache.evictionCount());
+        assertEquals(2, cache.size());
+        assertEquals("ConcurrentLruCache[maxSize=3,hits=1,misses=1,hitRate=50%]",
+                cache.toString());
+    }
+
+    @Test
+    public void testEvictionWithHits() {
+        ConcurrentLruCache<String, String> cache = new ConcurrentLruCache<>(3);
+        cache.put("a", "A");
+        cache.put("b", "B");
+        cache.put("c", "C");
+        cache.get("a");
+        cache.put("d", "D");
+        assertEquals(Arrays.asList("c", "a", "d"), new ArrayList<>(cache.snapshot().keySet()));
+        assertEquals(1, cache.evictionCount());
+    }
+
+    @Test
+    public void testManyHitsKeepHotEntries() {
+        final ConcurrentLruCache<Integer, Integer> cache =
+                new ConcurrentLruCache<Integer, Integer>(8) {
+                    @Override
+                    protected Integer create(Integer key) {
+                        return key;
+                    }
+                };
+        for (int key = 0; key < 8; key++) {
+            cache.get(key);
+        }
+        // Far more hits than the read buffers hold before they are applied
+        for (int i = 0; i < 1000; i++) {
+            cache.get(i % 4);
+        }
+        for (int key = 8; key < 12; key++) {
+            cache.get(key);
+        }
+        assertEquals(Arrays.asList(0, 1, 2, 3, 8, 9, 10, 11),
+                sorted(cache.snapshot().keySet()));
+        assertEquals(1000, cache.hitCount());
+        assertEquals(12, cache.missCount());
+        assertEquals(12, cache.createCount());
+        assertEquals(4, cache.evictionCount());
+    }
+
+    private static List<Integer> sorted(Collection<Integer> keys) {
+        final List<Integer> list = new ArrayList<>(keys);
+        Collections.sort(list);
+        return list;
+    }
+
+    @Test
+    public void testPutReplacesValue() {
+        final List<String> removed = new ArrayList<>();
+        ConcurrentLruCache<String, String> cache = new ConcurrentLruCache<String, String>(3) {
+            @Override
+            protected void entryRemoved(boolean evicted, String key, String oldValue,
+                    String newValue) {
+                removed.add(key + "=" + oldValue + (evicted ? "" : ">" + newValue));
+            }
+        };
+        cache.put("a", "A");
+        assertEquals("A", cache.put("a", "A2"));
+        assertEquals(1, cache.size());
+        assertEquals("A2", cache.remove("a"));
+        assertNull(cache.remove("a"));
+        assertEquals(Arrays.asList("a=A>A2", "a=A2>null"), removed);
+    }
+
+    @Test
+    public void testCreateAndSizeOf() {
+        ConcurrentLruCache<String, String> cache = new ConcurrentLruCache<String, String>(10) {
+            @Override
+            protected String create(String key) {
+                return key.startsWith("no") ? null : key.toUpperCase();
+            }
+
+            @Override
+            protected int sizeOf(String key, String value) {
+                return value.length();
+            }
+        };
+        assertEquals("ABCD", cache.get("abcd"));
+        assertEquals("EFGH", cache.get("efgh"));
+        assertNull(cache.get("none"));
+        assertEquals(8, cache.size());
+        assertEquals(2, cache.createCount());
+        assertEquals(3, cache.missCount());
+
+        // Evicts the eldest entry to make room
+        assertEquals("IJK", cache.get("ijk"));
+        assertEquals(7, cache.size());
+        assertEquals(Arrays.asList("efgh", "ijk"), new ArrayList<>(cache.snapshot().keySet()));
+
+        cache.resize(3);
+        assertEquals(3, cache.size());
+        cache.evictAll();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.snapshot().size());
+    }
+
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        final int threadCount = 4;
+        final int keyCount = 200;
+        final ConcurrentLruCache<Integer, Integer> cache =
+                new ConcurrentLruCache<Integer, Integer>(50) {
+                    @Override
+                    protected Integer create(Integer key) {
+                        return key * 2;
+                    }
+                };
+        final CountDownLatch done = new CountDownLatch(threadCount);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        for (int t = 0; t < threadCount; t++) {
+            final int seed = t;
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 20000; i++) {
+                            final int key = (i * 31 + seed * 7) % keyCount;
+                            if (i % 10 == 0) {
+                                cache.remove(key);
+                            } else if (cache.get(key) != key * 2) {
+                                throw new AssertionError("Wrong value for " + key);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.set(e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        done.await();
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertTrue(cache.size() <= 50);
+        assertEquals(cache.size(), cache.snapshot().size());
+        assertEquals(threadCount * 18000, cache.hitCount() + cache.missCount());
+    }
+}
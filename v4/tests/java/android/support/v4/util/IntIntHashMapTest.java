@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.support.v4.util;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class IntIntHashMapTest {
+
+    @Test
+    public void testBasicOperations() {
+        IntIntHashMap map = new IntIntHashMap(0);
+        assertEquals(0, map.get(1));
+        assertEquals(-1, map.get(1, -1));
+
+        map.put(1, 10);
+        map.put(2, 20);
+        map.put(3, 30);
+        map.put(1, 11);
+        assertEquals(3, map.size());
+        assertEquals(11, map.get(1));
+        assertTrue(map.containsKey(2));
+        assertEquals("{1=11, 2=20, 3=30}", map.toString());
+
+        map.delete(1);
+        assertFalse(map.containsKey(1));
+        assertEquals(3, map.keyAt(0));
+        assertEquals(30, map.valueAt(0));
+        assertEquals(1, map.indexOfValue(20));
+        assertEquals(-1, map.indexOfValue(11));
+
+        IntIntHashMap clone = map.clone();
+        map.clear();
+        assertEquals(0, map.size());
+        assertEquals(0, map.get(2));
+        assertEquals(20, clone.get(2));
+    }
+
+    @Test
+    public void testMatchesHashMap() {
+        final Random random = new Random(0);
+        final IntIntHashMap map = new IntIntHashMap();
+        final Map<Integer, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 100000; i++) {
+            final int key = random.nextInt(3000) - 1000;
+            if (random.nextInt(3) == 0) {
+                map.delete(key);
+                expected.remove(key);
+            } else {
+                map.put(key, i);
+                expected.put(key, i);
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (int i = 0; i < map.size(); i++) {
+            assertEquals((int) expected.get(map.keyAt(i)), map.valueAt(i));
+        }
+        for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+            assertEquals((int) entry.getValue(), map.get(entry.getKey(), -1));
+        }
+    }
+
+    @Test
+    public void testPutGetDeleteManyRandomKeys() {
+        final Random random = new Random(1);
+        final IntIntHashMap map = new IntIntHashMap();
+        final Map<Integer, Integer> expected = new HashMap<>();
+        // Grows through many resizes, with keys from the full int range
+        for (int i = 0; i < 100000; i++) {
+            final int key = random.nextInt();
+            map.put(key, i);
+            expected.put(key, i);
+        }
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+            assertEquals((int) entry.getValue(), map.get(entry.getKey(), -1));
+        }
+        for (int key : expected.keySet()) {
+            map.delete(key);
+            assertEquals(-1, map.get(key, -1));
+        }
+        assertEquals(0, map.size());
+        for (int key : expected.keySet()) {
+            assertFalse(map.containsKey(key));
+        }
+    }
+}
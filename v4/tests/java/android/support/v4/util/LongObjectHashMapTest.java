@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.support.v4.util;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class LongObjectHashMapTest {
+
+    @Test
+    public void testBasicOperations() {
+        LongObjectHashMap<String> map = new LongObjectHashMap<>(0);
+        assertNull(map.get(1));
+        assertEquals("default", map.get(1, "default"));
+        assertEquals("{}", map.toString());
+
+        map.put(1, "one");
+        map.put(-5L, "minus five");
+        map.put(Long.MIN_VALUE, "min");
+        map.put(1, "uno");
+        assertEquals(3, map.size());
+        assertEquals("uno", map.get(1));
+        assertEquals("min", map.get(Long.MIN_VALUE));
+        assertTrue(map.containsKey(-5));
+        assertFalse(map.containsKey(5));
+        assertEquals("{1=uno, -5=minus five, -9223372036854775808=min}", map.toString());
+
+        map.remove(1);
+        // The last mapping moves to the removed index
+        assertEquals(Long.MIN_VALUE, map.keyAt(0));
+        assertEquals(0, map.indexOfKey(Long.MIN_VALUE));
+        assertEquals(1, map.indexOfValue("minus five"));
+        map.setValueAt(1, "five");
+        assertEquals("five", map.get(-5));
+
+        LongObjectHashMap<String> clone = map.clone();
+        map.clear();
+        assertEquals(0, map.size());
+        assertNull(map.get(-5));
+        assertEquals(2, clone.size());
+        assertEquals("five", clone.get(-5));
+    }
+
+    @Test
+    public void testMatchesHashMap() {
+        final Random random = new Random(0);
+        final LongObjectHashMap<Integer> map = new LongObjectHashMap<>();
+        final Map<Long, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 100000; i++) {
+            // Dense keys, and sparse keys which only differ in their high bits
+            final long key = i % 2 == 0 ? random.nextInt(2000) : random.nextInt(500) * (1L << 32);
+            if (random.nextInt(3) == 0) {
+                map.remove(key);
+                expected.remove(key);
+            } else {
+                map.put(key, i);
+                expected.put(key, i);
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (int i = 0; i < map.size(); i++) {
+            assertEquals(expected.get(map.keyAt(i)), map.valueAt(i));
+            assertEquals(i, map.indexOfKey(map.keyAt(i)));
+        }
+        for (Map.Entry<Long, Integer> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+    }
+
+    @Test
+    public void testRemoveWhileIterating() {
+        final LongObjectHashMap<String> map = new LongObjectHashMap<>();
+        for (int i = 0; i < 100; i++) {
+            map.put(i, i % 2 == 0 ? "even" : "odd");
+        }
+        for (int i = map.size() - 1; i >= 0; i--) {
+            if ("odd".equals(map.valueAt(i))) {
+                map.removeAt(i);
+            }
+        }
+        assertEquals(50, map.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i % 2 == 0, map.containsKey(i));
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.util;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.LargeTest;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Compares the throughput of {@link LruCache} and {@link ConcurrentLruCache} when read from
+ * several threads at the same time, as by image decoding threads. Each thread does a mix of
+ * hits, with a few misses which create a value.
+ * <p>
+ * This is not run as part of the regular test suite; remove the {@link Ignore} annotation to
+ * run it locally.
+ */
+@Ignore("benchmark, run manually")
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class LruCacheBenchmark {
+
+    private static final int CACHE_SIZE = 512;
+    private static final int KEY_COUNT = 600;
+    private static final int OPERATIONS_PER_THREAD = 200000;
+    private static final int WARMUP_RUNS = 3;
+    private static final int MEASURED_RUNS = 5;
+
+    @Test
+    public void oneThread() throws InterruptedException {
+        benchmark(1);
+    }
+
+    @Test
+    public void fourThreads() throws InterruptedException {
+        benchmark(4);
+    }
+
+    @Test
+    public void eightThreads() throws InterruptedException {
+        benchmark(8);
+    }
+
+    private void benchmark(int threadCount) throws InterruptedException {
+        final int[][] keys = createKeys(threadCount);
+        long lruCache = 0;
+        long concurrentLruCache = 0;
+        for (int run = 0; run < WARMUP_RUNS + MEASURED_RUNS; run++) {
+            final boolean measured = run >= WARMUP_RUNS;
+
+            final LruCache<Integer, Integer> cache = new LruCache<Integer, Integer>(CACHE_SIZE) {
+                @Override
+                protected Integer create(Integer key) {
+                    return key;
+                }
+            };
+            long duration = runThreads(keys, new Operation() {
+                @Override
+                public void get(Integer key) {
+                    cache.get(key);
+                }
+            });
+            if (measured) {
+                lruCache += duration;
+            }
+
+            final ConcurrentLruCache<Integer, Integer> concurrentCache =
+                    new ConcurrentLruCache<Integer, Integer>(CACHE_SIZE) {
+                        @Override
+                        protected Integer create(Integer key) {
+                            return key;
+                        }
+                    };
+            duration = runThreads(keys, new Operation() {
+                @Override
+                public void get(Integer key) {
+                    concurrentCache.get(key);
+                }
+            });
+            if (measured) {
+                concurrentLruCache += duration;
+            }
+        }
+        report(threadCount, "LruCache", lruCache);
+        report(threadCount, "ConcurrentLruCache", concurrentLruCache);
+    }
+
+    private interface Operation {
+        void get(Integer key);
+    }
+
+    /**
+     * Creates the keys read by each thread, mostly from a hot set which fits in the cache.
+     */
+    private static int[][] createKeys(int threadCount) {
+        final Random random = new Random(threadCount);
+        final int[][] keys = new int[threadCount][OPERATIONS_PER_THREAD];
+        for (int t = 0; t < threadCount; t++) {
+            for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                keys[t][i] = random.nextInt(10) == 0
+                        ? random.nextInt(KEY_COUNT) : random.nextInt(CACHE_SIZE / 2);
+            }
+        }
+        return keys;
+    }
+
+    private static long runThreads(final int[][] keys, final Operation operation)
+            throws InterruptedException {
+        // Box the keys up front, so the threads only measure the cache
+        final Integer[][] boxedKeys = new Integer[keys.length][];
+        for (int t = 0; t < keys.length; t++) {
+            boxedKeys[t] = new Integer[keys[t].length];
+            for (int i = 0; i < keys[t].length; i++) {
+                boxedKeys[t][i] = keys[t][i];
+            }
+        }
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(keys.length);
+        for (int t = 0; t < keys.length; t++) {
+            final Integer[] threadKeys = boxedKeys[t];
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (Integer key : threadKeys) {
+                            operation.get(key);
+                        }
+                    } catch (InterruptedException e) {
+                        // Finish early
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        final long startNanos = System.nanoTime();
+        start.countDown();
+        done.await();
+        return System.nanoTime() - startNanos;
+    }
+
+    private static void report(int threadCount, String name, long totalNanos) {
+        System.out.println(String.format("%s %d threads: %.2f ms", name, threadCount,
+                totalNanos / MEASURED_RUNS / 1000000f));
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.util;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class LruCacheTest {
+
+    @Test
+    public void testLruEvictionOrder() {
+        LruCache<String, String> cache = new LruCache<>(3);
+        cache.put("a", "A");
+        cache.put("b", "B");
+        cache.put("c", "C");
+        cache.get("a");
+        cache.put("d", "D");
+        assertEquals(Arrays.asList("c", "a", "d"), new ArrayList<>(cache.snapshot().keySet()));
+        assertEquals(1, cache.evictionCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownEvictionPolicy() {
+        new LruCache<String, String>(3, 3);
+    }
+
+    @Test
+    public void testSegmentedLruSurvivesScan() {
+        LruCache<String, String> cache =
+                new LruCache<>(10, LruCache.EVICTION_POLICY_SEGMENTED_LRU);
+        for (int i = 0; i < 8; i++) {
+            cache.put("hot" + i, "H");
+            cache.get("hot" + i);
+        }
+        for (int i = 0; i < 100; i++) {
+            cache.put("scan" + i, "S");
+        }
+        for (int i = 0; i < 8; i++) {
+            assertEquals("H", cache.get("hot" + i));
+        }
+        assertEquals(10, cache.size());
+        assertEquals(8 + 8, cache.hitCount());
+        assertEquals(100 - 2, cache.evictionCount());
+    }
+
+    @Test
+    public void testPlainLruLosesHotEntriesToScan() {
+        LruCache<String, String> cache = new LruCache<>(10);
+        for (int i = 0; i < 8; i++) {
+            cache.put("hot" + i, "H");
+            cache.get("hot" + i);
+        }
+        for (int i = 0; i < 100; i++) {
+            cache.put("scan" + i, "S");
+        }
+        for (int i = 0; i < 8; i++) {
+            assertNull(cache.get("hot" + i));
+        }
+    }
+
+    @Test
+    public void testSegmentedLruDemotesProtectedEntries() {
+        LruCache<String, String> cache =
+                new LruCache<>(5, LruCache.EVICTION_POLICY_SEGMENTED_LRU);
+        // The protected segment holds 4 entries
+        for (int i = 0; i < 5; i++) {
+            cache.put("k" + i, "V");
+            cache.get("k" + i);
+        }
+        // k0 was demoted to probation, so it is evicted first
+        assertEquals(Arrays.asList("k0", "k1", "k2", "k3", "k4"),
+                new ArrayList<>(cache.snapshot().keySet()));
+        cache.put("new", "N");
+        assertEquals(Arrays.asList("new", "k1", "k2", "k3", "k4"),
+                new ArrayList<>(cache.snapshot().keySet()));
+        assertNull(cache.get("k0"));
+    }
+
+    @Test
+    public void testFrequencyAdmissionRejectsRareEntries() {
+        final List<String> evicted = new ArrayList<>();
+        LruCache<String, String> cache =
+                new LruCache<String, String>(4, LruCache.EVICTION_POLICY_FREQUENCY_ADMISSION) {
+                    @Override
+                    protected void entryRemoved(boolean wasEvicted, String key, String oldValue,
+                            String newValue) {
+                        if (wasEvicted) {
+                            evicted.add(key);
+                        }
+                    }
+                };
+        for (int i = 0; i < 4; i++) {
+            cache.put("hot" + i, "H");
+            for (int j = 0; j < 5; j++) {
+                cache.get("hot" + i);
+            }
+        }
+        // The new entries are used less often than any entry in the cache
+        cache.put("rare0", "R");
+        cache.put("rare1", "R");
+        assertEquals(Arrays.asList("rare0", "rare1"), evicted);
+        for (int i = 0; i < 4; i++) {
+            assertEquals("H", cache.get("hot" + i));
+        }
+        assertEquals(4, cache.size());
+        assertEquals(2, cache.evictionCount());
+    }
+
+    @Test
+    public void testSizeOfAccounting() {
+        LruCache<String, String> cache =
+                new LruCache<String, String>(10, LruCache.EVICTION_POLICY_SEGMENTED_LRU) {
+                    @Override
+                    protected int sizeOf(String key, String value) {
+                        return value.length();
+                    }
+                };
+        cache.put("a", "aaaa");
+        cache.get("a");
+        cache.put("b", "bbb");
+        assertEquals(7, cache.size());
+        // Replacing the protected entry changes its size
+        assertEquals("aaaa", cache.put("a", "aa"));
+        assertEquals(5, cache.size());
+        assertEquals("bbb", cache.remove("b"));
+        assertEquals("aa", cache.remove("a"));
+        assertEquals(0, cache.size());
+
+        cache.put("c", "cccccc");
+        cache.get("c");
+        cache.put("d", "dddd");
+        cache.resize(6);
+        assertEquals(6, cache.size());
+        assertEquals("cccccc", cache.get("c"));
+        cache.evictAll();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.snapshot().size());
+    }
+}
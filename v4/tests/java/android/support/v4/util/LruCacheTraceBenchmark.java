@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.util;
+
+import android.os.Bundle;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v4.util.LruCacheTraceReplayer.Access;
+import android.test.suitebuilder.annotation.LargeTest;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Prints the hit rates of {@link LruCache} with each eviction policy on synthetic traces, and on
+ * a recorded trace, with {@link LruCacheTraceReplayer}.
+ * <p>
+ * A recorded trace can be replayed by passing its path on the device in the
+ * {@code lruCacheTrace} instrumentation argument, and the cache size in
+ * {@code lruCacheTraceMaxSize}.
+ * <p>
+ * This is not run as part of the regular test suite; remove the {@link Ignore} annotation to
+ * run it locally.
+ */
+@Ignore("benchmark, run manually")
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class LruCacheTraceBenchmark {
+
+    private static final String ARG_TRACE = "lruCacheTrace";
+    private static final String ARG_TRACE_MAX_SIZE = "lruCacheTraceMaxSize";
+
+    @Test
+    public void zipf() {
+        System.out.print(LruCacheTraceReplayer.report("zipf",
+                LruCacheTraceReplayer.createZipfTrace(new Random(1), 200000, 10000), 500));
+    }
+
+    @Test
+    public void zipfWithScans() {
+        // A fling through a long list every 20k accesses
+        final Random random = new Random(2);
+        final List<Access> trace = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            trace.addAll(LruCacheTraceReplayer.createZipfTrace(random, 20000, 10000));
+            for (int j = 0; j < 2000; j++) {
+                trace.add(new Access("scan" + i + "-" + j, 1));
+            }
+        }
+        System.out.print(LruCacheTraceReplayer.report("zipf with scans", trace, 500));
+    }
+
+    @Test
+    public void weightedZipf() {
+        final Random random = new Random(3);
+        final List<Access> trace = LruCacheTraceReplayer.createZipfTrace(random, 200000, 10000);
+        for (int i = 0; i < trace.size(); i++) {
+            // Sizes from 1 to 16, the same for each access to a key
+            final Access access = trace.get(i);
+            trace.set(i, new Access(access.key, 1 + (access.key.hashCode() & 0xf)));
+        }
+        System.out.print(LruCacheTraceReplayer.report("weighted zipf", trace, 4000));
+    }
+
+    @Test
+    public void recordedTrace() throws IOException {
+        final Bundle arguments = InstrumentationRegistry.getArguments();
+        final String path = arguments.getString(ARG_TRACE);
+        if (path == null) {
+            System.out.println("No trace given in the " + ARG_TRACE + " argument, skipping");
+            return;
+        }
+        final int maxSize = Integer.parseInt(arguments.getString(ARG_TRACE_MAX_SIZE, "1000"));
+        try (Reader reader = new FileReader(path)) {
+            System.out.print(LruCacheTraceReplayer.report(path,
+                    LruCacheTraceReplayer.readTrace(reader), maxSize));
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Replays access traces against {@link LruCache} with each eviction policy, to compare their
+ * hit rates. Each access is a {@link LruCache#get} followed by a {@link LruCache#put} on a
+ * miss, as done by an image cache.
+ * <p>
+ * A recorded trace has one access per line: the key, optionally followed by a space and the
+ * size of the entry, which is 1 otherwise. See {@link LruCacheTraceBenchmark} to replay one on
+ * a device.
+ */
+public final class LruCacheTraceReplayer {
+
+    static final int[] POLICIES = {
+            LruCache.EVICTION_POLICY_LRU,
+            LruCache.EVICTION_POLICY_SEGMENTED_LRU,
+            LruCache.EVICTION_POLICY_FREQUENCY_ADMISSION
+    };
+    static final String[] POLICY_NAMES = {"LRU", "SLRU", "TinyLFU"};
+
+    /** One access of a trace. */
+    public static final class Access {
+        final String key;
+        final int size;
+
+        public Access(String key, int size) {
+            this.key = key;
+            this.size = size;
+        }
+    }
+
+    private LruCacheTraceReplayer() {
+    }
+
+    /**
+     * Reads a trace in the format described in the class documentation.
+     */
+    public static List<Access> readTrace(Reader reader) throws IOException {
+        final BufferedReader in = new BufferedReader(reader);
+        final List<Access> trace = new ArrayList<>();
+        String line;
+        while ((line = in.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            final int separator = line.lastIndexOf(' ');
+            if (separator == -1) {
+                trace.add(new Access(line, 1));
+            } else {
+                trace.add(new Access(line.substring(0, separator),
+                        Integer.parseInt(line.substring(separator + 1))));
+            }
+        }
+        return trace;
+    }
+
+    /**
+     * Returns accesses to {@code keyCount} keys of size 1, where the n-th most used key is
+     * accessed with a probability proportional to 1 / n.
+     */
+    public static List<Access> createZipfTrace(Random random, int length, int keyCount) {
+        final double[] cumulative = new double[keyCount];
+        double total = 0;
+        for (int i = 0; i < keyCount; i++) {
+            total += 1.0 / (i + 1);
+            cumulative[i] = total;
+        }
+        final List<Access> trace = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            trace.add(new Access("key" + Math.min(index, keyCount - 1), 1));
+        }
+        return trace;
+    }
+
+    /**
+     * Replays a trace against a new cache with the given eviction policy, and returns the
+     * cache, whose statistics cover the whole trace.
+     */
+    public static LruCache<String, Access> replay(List<Access> trace, int maxSize,
+            int evictionPolicy) {
+        final LruCache<String, Access> cache = new LruCache<String, Access>(maxSize,
+                evictionPolicy) {
+            @Override
+            protected int sizeOf(String key, Access value) {
+                return value.size;
+            }
+        };
+        for (Access access : trace) {
+            if (cache.get(access.key) == null) {
+                cache.put(access.key, access);
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Returns the hit rate of every eviction policy on a trace, from 0 to 1, in the order of
+     * {@link #POLICIES}.
+     */
+    public static float[] getHitRates(List<Access> trace, int maxSize) {
+        final float[] hitRates = new float[POLICIES.length];
+        for (int i = 0; i < POLICIES.length; i++) {
+            final LruCache<String, Access> cache = replay(trace, maxSize, POLICIES[i]);
+            hitRates[i] = (float) cache.hitCount() / (cache.hitCount() + cache.missCount());
+        }
+        return hitRates;
+    }
+
+    /**
+     * Returns one line per eviction policy with its hit rate, evictions and replay time on a
+     * trace.
+     */
+    public static String report(String name, List<Access> trace, int maxSize) {
+        final StringBuilder report = new StringBuilder();
+        for (int i = 0; i < POLICIES.length; i++) {
+            final long start = System.nanoTime();
+            final LruCache<String, Access> cache = replay(trace, maxSize, POLICIES[i]);
+            final long duration = System.nanoTime() - start;
+            final int accesses = cache.hitCount() + cache.missCount();
+            report.append(String.format(
+                    "LruCache %s maxSize=%d %s: hit rate %.2f%%, %d evictions, %.2f ms%n", name,
+                    maxSize, POLICY_NAMES[i], 100f * cache.hitCount() / accesses,
+                    cache.evictionCount(), duration / 1000000f));
+        }
+        return report.toString();
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.util;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v4.util.LruCacheTraceReplayer.Access;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class LruCacheTraceReplayerTest {
+
+    @Test
+    public void testReadTrace() throws IOException {
+        final List<Access> trace = LruCacheTraceReplayer.readTrace(
+                new StringReader("a\n\nhttp://host/b c.png 12\n  d 3  \n"));
+        assertEquals(3, trace.size());
+        assertEquals("a", trace.get(0).key);
+        assertEquals(1, trace.get(0).size);
+        assertEquals("http://host/b c.png", trace.get(1).key);
+        assertEquals(12, trace.get(1).size);
+        assertEquals("d", trace.get(2).key);
+        assertEquals(3, trace.get(2).size);
+    }
+
+    @Test
+    public void testReplayCountsEveryAccess() {
+        final List<Access> trace = new ArrayList<>();
+        for (String key : new String[] {"a", "b", "a", "c", "a", "b"}) {
+            trace.add(new Access(key, 1));
+        }
+        final LruCache<String, Access> cache = LruCacheTraceReplayer.replay(trace, 2,
+                LruCache.EVICTION_POLICY_LRU);
+        // b is evicted by c, then missed again
+        assertEquals(2, cache.hitCount());
+        assertEquals(4, cache.missCount());
+        assertEquals(2, cache.evictionCount());
+    }
+
+    @Test
+    public void testScanResistantPoliciesHitMoreOnScannedTrace() {
+        // Skewed accesses to 1000 keys, with a fling through a long list after every 2000
+        final Random random = new Random(1);
+        final List<Access> trace = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            trace.addAll(LruCacheTraceReplayer.createZipfTrace(random, 2000, 1000));
+            for (int j = 0; j < 500; j++) {
+                trace.add(new Access("scan" + i + "-" + j, 1));
+            }
+        }
+        final float[] hitRates = LruCacheTraceReplayer.getHitRates(trace, 100);
+        final float lru = hitRates[0];
+        assertTrue("SLRU " + hitRates[1] + " <= LRU " + lru, hitRates[1] > lru);
+        assertTrue("TinyLFU " + hitRates[2] + " <= LRU " + lru, hitRates[2] > lru);
+    }
+
+    @Test
+    public void testWeightedTraceStaysWithinMaxSize() {
+        final List<Access> trace = LruCacheTraceReplayer.createZipfTrace(new Random(2), 20000,
+                1000);
+        for (int i = 0; i < trace.size(); i++) {
+            // From 1 to 16, the same for each access to a key
+            final String key = trace.get(i).key;
+            trace.set(i, new Access(key, 1 + (key.hashCode() & 0xf)));
+        }
+        for (int policy : LruCacheTraceReplayer.POLICIES) {
+            final LruCache<String, Access> cache = LruCacheTraceReplayer.replay(trace, 400,
+                    policy);
+            assertTrue(cache.size() <= cache.maxSize());
+            int size = 0;
+            for (Map.Entry<String, Access> entry : cache.snapshot().entrySet()) {
+                size += entry.getValue().size;
+            }
+            assertEquals(size, cache.size());
+            assertEquals(trace.size(), cache.hitCount() + cache.missCount());
+        }
+    }
+
+    @Test
+    public void testReport() {
+        final List<Access> trace = LruCacheTraceReplayer.createZipfTrace(new Random(3), 1000,
+                100);
+        final String report = LruCacheTraceReplayer.report("test", trace, 10);
+        for (String name : LruCacheTraceReplayer.POLICY_NAMES) {
+            assertTrue(report, report.contains("LruCache test maxSize=10 " + name
+                    + ": hit rate "));
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.util;
+
+import android.content.ComponentCallbacks2;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class MemoryTrimRegistryTest {
+
+    private final LruCache<Integer, String> mCache = new LruCache<Integer, String>(100) {
+        @Override
+        protected int sizeOf(Integer key, String value) {
+            return 2;
+        }
+    };
+
+    private final TestTrimmable mTrimmable = new TestTrimmable();
+
+    @After
+    public void tearDown() {
+        MemoryTrimRegistry.unregister(mCache);
+        MemoryTrimRegistry.unregister(mTrimmable);
+    }
+
+    @Test
+    public void testRetainedFraction() {
+        assertEquals(1f, MemoryTrimRegistry.getRetainedFraction(0), 0f);
+        assertEquals(0.75f, MemoryTrimRegistry.getRetainedFraction(
+                ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW), 0f);
+        assertEquals(0.25f, MemoryTrimRegistry.getRetainedFraction(
+                ComponentCallbacks2.TRIM_MEMORY_BACKGROUND), 0f);
+        assertEquals(0f, MemoryTrimRegistry.getRetainedFraction(
+                ComponentCallbacks2.TRIM_MEMORY_COMPLETE), 0f);
+        // Less is retained as the pressure rises
+        final int[] levels = {
+                ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE,
+                ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW,
+                ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL,
+                ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN,
+                ComponentCallbacks2.TRIM_MEMORY_BACKGROUND,
+                ComponentCallbacks2.TRIM_MEMORY_MODERATE,
+                ComponentCallbacks2.TRIM_MEMORY_COMPLETE
+        };
+        for (int i = 1; i < levels.length; i++) {
+            assertTrue(MemoryTrimRegistry.getRetainedFraction(levels[i])
+                    <= MemoryTrimRegistry.getRetainedFraction(levels[i - 1]));
+        }
+    }
+
+    @Test
+    public void testTrimLruCache() {
+        for (int i = 0; i < 40; i++) {
+            mCache.put(i, "value");
+        }
+        MemoryTrimRegistry.register("test", mCache, 1024);
+        MemoryTrimRegistry.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        assertEquals(60, mCache.size());
+        // The most recently used entries are kept
+        assertEquals("value", mCache.get(39));
+        assertEquals(null, mCache.get(0));
+
+        MemoryTrimRegistry.onLowMemory();
+        assertEquals(0, mCache.size());
+    }
+
+    @Test
+    public void testTrimTrimmable() {
+        MemoryTrimRegistry.register("test", mTrimmable);
+        MemoryTrimRegistry.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_MODERATE);
+        assertEquals(0.125f, mTrimmable.mRetainedFraction, 0f);
+
+        // Nothing to release on the lowest level
+        mTrimmable.mRetainedFraction = -1;
+        MemoryTrimRegistry.onTrimMemory(0);
+        assertEquals(-1f, mTrimmable.mRetainedFraction, 0f);
+
+        MemoryTrimRegistry.unregister(mTrimmable);
+        MemoryTrimRegistry.onLowMemory();
+        assertEquals(-1f, mTrimmable.mRetainedFraction, 0f);
+    }
+
+    @Test
+    public void testTrimArrayMapCaches() {
+        // Release two maps with base size arrays to the cache
+        final ArrayMap<String, String> map1 = new ArrayMap<>();
+        final ArrayMap<String, String> map2 = new ArrayMap<>();
+        map1.put("a", "a");
+        map2.put("a", "a");
+        map1.clear();
+        map2.clear();
+        assertTrue(SimpleArrayMap.ARRAY_CACHE_TRIMMABLE.getEntryCount() >= 2);
+        assertTrue(SimpleArrayMap.ARRAY_CACHE_TRIMMABLE.getSizeInBytes() > 0);
+
+        MemoryTrimRegistry.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+        assertEquals(0, SimpleArrayMap.ARRAY_CACHE_TRIMMABLE.getEntryCount());
+        assertEquals(0, SimpleArrayMap.ARRAY_CACHE_TRIMMABLE.getSizeInBytes());
+    }
+
+    @Test
+    public void testDump() {
+        mCache.put(1, "value");
+        MemoryTrimRegistry.register("lru", mCache, 1024);
+        MemoryTrimRegistry.register("trimmable", mTrimmable);
+        final StringWriter output = new StringWriter();
+        MemoryTrimRegistry.dump("", new PrintWriter(output));
+        final String dump = output.toString();
+        assertTrue(dump, dump.contains("  lru: entries=1 bytes=2048\n"));
+        assertTrue(dump, dump.contains("  trimmable: entries=3 bytes=unknown\n"));
+        assertTrue(dump, dump.contains("SimpleArrayMap array caches: entries="));
+    }
+
+    private static class TestTrimmable implements MemoryTrimRegistry.Trimmable {
+        float mRetainedFraction = -1;
+
+        @Override
+        public void trimMemory(float retainedFraction) {
+            mRetainedFraction = retainedFraction;
+        }
+
+        @Override
+        public int getEntryCount() {
+            return 3;
+        }
+
+        @Override
+        public long getSizeInBytes() {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.support.v4.util;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class PoolsTest {
+
+    private static class Item {
+        int mValue;
+    }
+
+    @Test
+    public void testConcurrentPoolAcquireRelease() {
+        final Pools.ConcurrentPool<Item> pool = new Pools.ConcurrentPool<>(2,
+                new Pools.ResetCallback<Item>() {
+                    @Override
+                    public void reset(Item item) {
+                        item.mValue = 0;
+                    }
+                });
+        assertNull(pool.acquire());
+
+        final Item item1 = new Item();
+        item1.mValue = 5;
+        final Item item2 = new Item();
+        final Item item3 = new Item();
+        assertTrue(pool.release(item1));
+        assertEquals(0, item1.mValue);
+        assertTrue(pool.release(item2));
+        assertFalse(pool.release(item3));
+
+        final Item acquired = pool.acquire();
+        assertTrue(acquired == item1 || acquired == item2);
+        assertSame(acquired == item1 ? item2 : item1, pool.acquire());
+        assertNull(pool.acquire());
+
+        assertEquals(2, pool.getHitCount());
+        assertEquals(2, pool.getMissCount());
+        assertEquals(1, pool.getDropCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testConcurrentPoolDoubleRelease() {
+        final Pools.ConcurrentPool<Item> pool = new Pools.ConcurrentPool<>(2);
+        final Item item = new Item();
+        pool.release(item);
+        pool.release(item);
+    }
+
+    @Test
+    public void testConcurrentPoolDoubleReleaseDoesNotReset() {
+        final Pools.ConcurrentPool<Item> pool = new Pools.ConcurrentPool<>(2,
+                new Pools.ResetCallback<Item>() {
+                    @Override
+                    public void reset(Item item) {
+                        item.mValue = 0;
+                    }
+                });
+        final Item item = new Item();
+        assertTrue(pool.release(item));
+        item.mValue = 5;
+        try {
+            pool.release(item);
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(5, item.mValue);
+    }
+
+    @Test
+    public void testConcurrentPoolFromManyThreads() throws InterruptedException {
+        final int threadCount = 4;
+        final Pools.ConcurrentPool<Item> pool = new Pools.ConcurrentPool<>(8);
+        final Set<Item> inUse = Collections.synchronizedSet(
+                Collections.newSetFromMap(new IdentityHashMap<Item, Boolean>()));
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch(threadCount);
+        for (int t = 0; t < threadCount; t++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 10000; i++) {
+                            Item item = pool.acquire();
+                            if (item == null) {
+                                item = new Item();
+                            }
+                            if (!inUse.add(item)) {
+                                throw new AssertionError("Item acquired twice");
+                            }
+                            inUse.remove(item);
+                            pool.release(item);
+                        }
+                    } catch (Throwable e) {
+                        failure.set(e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        done.await();
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertEquals(threadCount * 10000, pool.getHitCount() + pool.getMissCount());
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.support.v4.util;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.LargeTest;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Compares {@link IntObjectHashMap} and {@link IntIntHashMap} with {@link SparseArrayCompat}
+ * and {@link HashMap}, and {@link LongObjectHashMap} with {@link LongSparseArray}, by inserting
+ * random keys, looking up every key and removing every key, for 100, 10k and 1M entries.
+ * <p>
+ * Random insertions into a sparse array of 1M entries take minutes, so its keys are inserted in
+ * ascending order there, which is its best case.
+ * <p>
+ * This is not run as part of the regular test suite; remove the {@link Ignore} annotation to
+ * run it locally.
+ */
+@Ignore("benchmark, run manually")
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class PrimitiveHashMapBenchmark {
+
+    private static final int WARMUP_RUNS = 3;
+    private static final int MEASURED_RUNS = 5;
+    private static final int SORTED_INSERT_THRESHOLD = 100000;
+
+    @Test
+    public void entries100() {
+        benchmark(100, 1000);
+    }
+
+    @Test
+    public void entries10k() {
+        benchmark(10000, 10);
+    }
+
+    @Test
+    public void entries1M() {
+        benchmark(1000000, 1);
+    }
+
+    /**
+     * @param repeat number of times each operation is repeated in a run, so small maps take
+     *               long enough to measure.
+     */
+    private void benchmark(int size, int repeat) {
+        final Random random = new Random(size);
+        final int[] keys = new int[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = random.nextInt();
+        }
+        final int[] sortedKeys = keys.clone();
+        Arrays.sort(sortedKeys);
+        final int[] sparseArrayKeys = size >= SORTED_INSERT_THRESHOLD ? sortedKeys : keys;
+        final long[] longKeys = new long[size];
+        for (int i = 0; i < size; i++) {
+            longKeys[i] = random.nextLong();
+        }
+        final long[] sortedLongKeys = longKeys.clone();
+        Arrays.sort(sortedLongKeys);
+        final long[] longSparseArrayKeys = size >= SORTED_INSERT_THRESHOLD
+                ? sortedLongKeys : longKeys;
+        final Object value = new Object();
+
+        final long[] sparseArray = new long[3];
+        final long[] intObject = new long[3];
+        final long[] intInt = new long[3];
+        final long[] hashMap = new long[3];
+        final long[] longSparseArray = new long[3];
+        final long[] longObject = new long[3];
+        int checksum = 0;
+        for (int run = 0; run < WARMUP_RUNS + MEASURED_RUNS; run++) {
+            final boolean measured = run >= WARMUP_RUNS;
+            for (int r = 0; r < repeat; r++) {
+                long start = System.nanoTime();
+                final SparseArrayCompat<Object> sparse = new SparseArrayCompat<>();
+                for (int key : sparseArrayKeys) {
+                    sparse.put(key, value);
+                }
+                long put = System.nanoTime();
+                for (int key : keys) {
+                    checksum += sparse.get(key) == value ? 1 : 0;
+                }
+                long get = System.nanoTime();
+                for (int key : keys) {
+                    sparse.remove(key);
+                }
+                checksum += sparse.size();
+                record(measured, sparseArray, start, put, get, System.nanoTime());
+
+                start = System.nanoTime();
+                final IntObjectHashMap<Object> intObjectMap = new IntObjectHashMap<>();
+                for (int key : keys) {
+                    intObjectMap.put(key, value);
+                }
+                put = System.nanoTime();
+                for (int key : keys) {
+                    checksum += intObjectMap.get(key) == value ? 1 : 0;
+                }
+                get = System.nanoTime();
+                for (int key : keys) {
+                    intObjectMap.remove(key);
+                }
+                record(measured, intObject, start, put, get, System.nanoTime());
+
+                start = System.nanoTime();
+                final IntIntHashMap intIntMap = new IntIntHashMap();
+                for (int key : keys) {
+                    intIntMap.put(key, key);
+                }
+                put = System.nanoTime();
+                for (int key : keys) {
+                    checksum += intIntMap.get(key);
+                }
+                get = System.nanoTime();
+                for (int key : keys) {
+                    intIntMap.delete(key);
+                }
+                record(measured, intInt, start, put, get, System.nanoTime());
+
+                start = System.nanoTime();
+                final HashMap<Integer, Object> map = new HashMap<>();
+                for (int key : keys) {
+                    map.put(key, value);
+                }
+                put = System.nanoTime();
+                for (int key : keys) {
+                    checksum += map.get(key) == value ? 1 : 0;
+                }
+                get = System.nanoTime();
+                for (int key : keys) {
+                    map.remove(key);
+                }
+                record(measured, hashMap, start, put, get, System.nanoTime());
+
+                start = System.nanoTime();
+                final LongSparseArray<Object> longSparse = new LongSparseArray<>();
+                for (long key : longSparseArrayKeys) {
+                    longSparse.put(key, value);
+                }
+                put = System.nanoTime();
+                for (long key : longKeys) {
+                    checksum += longSparse.get(key) == value ? 1 : 0;
+                }
+                get = System.nanoTime();
+                for (long key : longKeys) {
+                    longSparse.remove(key);
+                }
+                checksum += longSparse.size();
+                record(measured, longSparseArray, start, put, get, System.nanoTime());
+
+                start = System.nanoTime();
+                final LongObjectHashMap<Object> longObjectMap = new LongObjectHashMap<>();
+                for (long key : longKeys) {
+                    longObjectMap.put(key, value);
+                }
+                put = System.nanoTime();
+                for (long key : longKeys) {
+                    checksum += longObjectMap.get(key) == value ? 1 : 0;
+                }
+                get = System.nanoTime();
+                for (long key : longKeys) {
+                    longObjectMap.remove(key);
+                }
+                record(measured, longObject, start, put, get, System.nanoTime());
+            }
+        }
+        report(size, "SparseArrayCompat", sparseArray);
+        report(size, "IntObjectHashMap", intObject);
+        report(size, "IntIntHashMap", intInt);
+        report(size, "HashMap<Integer, Object>", hashMap);
+        report(size, "LongSparseArray", longSparseArray);
+        report(size, "LongObjectHashMap", longObject);
+        // Keeps the lookups from being optimized away
+        System.out.println("checksum " + checksum);
+    }
+
+    private static void record(boolean measured, long[] totals, long start, long put, long get,
+            long remove) {
+        if (measured) {
+            totals[0] += put - start;
+            totals[1] += get - put;
+            totals[2] += remove - get;
+        }
+    }
+
+    private static void report(int size, String name, long[] totals) {
+        System.out.println(String.format("%s %d entries: put %.2f ms, get %.2f ms, "
+                + "remove %.2f ms", name, size, totals[0] / MEASURED_RUNS / 1000000f,
+                totals[1] / MEASURED_RUNS / 1000000f, totals[2] / MEASURED_RUNS / 1000000f));
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.view;
+
+import android.app.Instrumentation;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v4.test.R;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+@MediumTest
+public class AsyncLayoutInflaterTest {
+    private static final long TIMEOUT_MS = 5000;
+    private static final int LAYOUT = R.layout.text_view_activity;
+
+    private Instrumentation mInstrumentation;
+    private AsyncLayoutInflater mInflater;
+    private FrameLayout mParent;
+
+    @Before
+    public void setUp() {
+        mInstrumentation = InstrumentationRegistry.getInstrumentation();
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mInflater = new AsyncLayoutInflater(mInstrumentation.getTargetContext());
+                mParent = new FrameLayout(mInstrumentation.getTargetContext());
+            }
+        });
+    }
+
+    @Test
+    public void testPreInflateThenObtainView() {
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mInflater.preInflate(LAYOUT, mParent, 2);
+            }
+        });
+        waitForCachedViews(2);
+
+        final View[] views = new View[3];
+        final int[] cachedAfterObtaining = new int[1];
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                views[0] = mInflater.obtainView(LAYOUT, mParent);
+                views[1] = mInflater.obtainView(LAYOUT, mParent);
+                cachedAfterObtaining[0] = mInflater.getCachedViewCount(LAYOUT);
+                // Inflated on the UI thread once the cache is empty
+                views[2] = mInflater.obtainView(LAYOUT, mParent);
+            }
+        });
+        assertEquals(0, cachedAfterObtaining[0]);
+        for (View view : views) {
+            assertNotNull(view.findViewById(R.id.text_view));
+            assertTrue(view.getLayoutParams() instanceof FrameLayout.LayoutParams);
+            assertNull(view.getParent());
+        }
+        assertNotSame(views[0], views[1]);
+    }
+
+    @Test
+    public void testPreInflateCountsCachedAndPendingViews() {
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                // The second call doesn't add requests, since 3 are already pending
+                mInflater.preInflate(LAYOUT, mParent, 3);
+                mInflater.preInflate(LAYOUT, mParent, 3);
+            }
+        });
+        waitForCachedViews(3);
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                // Nothing to do with a smaller count either
+                mInflater.preInflate(LAYOUT, mParent, 1);
+            }
+        });
+        // Let any extra request complete
+        SystemClock.sleep(500);
+        mInstrumentation.waitForIdleSync();
+        assertEquals(3, getCachedViewCount());
+
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mInflater.clearCache();
+            }
+        });
+        assertEquals(0, getCachedViewCount());
+    }
+
+    @Test
+    public void testInflateBeforePreInflations() throws InterruptedException {
+        final int preInflateCount = 10;
+        final CountDownLatch latch = new CountDownLatch(1);
+        final int[] cachedWhenInflated = new int[1];
+        final View[] inflated = new View[1];
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mInflater.preInflate(LAYOUT, mParent, preInflateCount);
+                mInflater.inflate(LAYOUT, mParent,
+                        new AsyncLayoutInflater.OnInflateFinishedListener() {
+                            @Override
+                            public void onInflateFinished(View view, int resid,
+                                    ViewGroup parent) {
+                                cachedWhenInflated[0] = mInflater.getCachedViewCount(LAYOUT);
+                                inflated[0] = view;
+                                latch.countDown();
+                            }
+                        });
+            }
+        });
+        assertTrue(latch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertNotNull(inflated[0]);
+        // The request jumped ahead of the pre-inflations which were still queued
+        assertTrue("inflated after " + cachedWhenInflated[0] + " pre-inflations",
+                cachedWhenInflated[0] < preInflateCount);
+        waitForCachedViews(preInflateCount);
+        assertNull(inflated[0].getParent());
+    }
+
+    private int getCachedViewCount() {
+        final int[] count = new int[1];
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                count[0] = mInflater.getCachedViewCount(LAYOUT);
+            }
+        });
+        return count[0];
+    }
+
+    private void waitForCachedViews(int count) {
+        final long end = SystemClock.uptimeMillis() + TIMEOUT_MS;
+        while (SystemClock.uptimeMillis() < end) {
+            if (getCachedViewCount() == count) {
+                return;
+            }
+            SystemClock.sleep(10);
+        }
+        fail("Cached " + getCachedViewCount() + " views instead of " + count);
+    }
+}
@@ -18,7 +18,6 @@ package android.support.v7.widget;
 
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
-import org.xmlpull.v1.XmlSerializer;
 
 import android.content.ComponentName;
 import android.content.Context;
@@ -26,15 +25,23 @@ import android.content.Intent;
 import android.content.pm.ResolveInfo;
 import android.database.DataSetObservable;
 import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.v4.os.AsyncTaskCompat;
+import android.support.v4.util.AtomicFile;
 import android.text.TextUtils;
 import android.util.Log;
 import android.util.Xml;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -53,6 +60,14 @@ import java.util.Map;
  * based on historical usage for the current session.
  * <p>
  * </p>
+ * The history file is read in the background the first time the model is used,
+ * and the activities are sorted again when it has been read. Choices are
+ * written to the file in a compact binary format, a short while after they are
+ * made so that several choices in a row result in a single write. History
+ * files in the former XML format are still read, and replaced by the binary
+ * format at the next write.
+ * <p>
+ * </p>
  * For each backing history file there is a singleton instance of this class. Thus,
  * several clients that specify the same history file will share the same model. Note
  * that if multiple clients are sharing the same model they should implement semantically
@@ -208,6 +223,58 @@ class ActivityChooserModel extends DataSetObservable {
      */
     private static final String HISTORY_FILE_EXTENSION = ".xml";
 
+    /**
+     * The extension of the binary history file, which replaces the XML one.
+     */
+    private static final String BINARY_HISTORY_FILE_EXTENSION = ".bin";
+
+    /**
+     * The first int of the binary history file.
+     */
+    private static final int BINARY_HISTORY_MAGIC = 0x41434d48;
+
+    /**
+     * The version of the binary history format.
+     */
+    private static final int BINARY_HISTORY_VERSION = 1;
+
+    /**
+     * The largest binary history file that is read. Files written by this class are far
+     * smaller, so a larger file is corrupted.
+     */
+    private static final int MAX_BINARY_HISTORY_FILE_SIZE = 1024 * 1024;
+
+    /**
+     * The smallest number of bytes of an activity name in the binary history file.
+     */
+    private static final int MIN_BINARY_ACTIVITY_SIZE = 2;
+
+    /**
+     * The number of bytes of a record in the binary history file.
+     */
+    private static final int BINARY_RECORD_SIZE = 16;
+
+    /**
+     * Delay before persisting the history, so that choices made in a row
+     * result in a single write.
+     */
+    private static final long PERSIST_HISTORY_DELAY_MILLIS = 1000;
+
+    /**
+     * The history has not been read yet.
+     */
+    private static final int HISTORY_NOT_READ = 0;
+
+    /**
+     * The history is being read in the background.
+     */
+    private static final int HISTORY_READING = 1;
+
+    /**
+     * The history has been read, or there is no history file.
+     */
+    private static final int HISTORY_READ = 2;
+
     /**
      * An invalid item index.
      */
@@ -265,25 +332,25 @@ class ActivityChooserModel extends DataSetObservable {
     private int mHistoryMaxSize = DEFAULT_HISTORY_MAX_LENGTH;
 
     /**
-     * Flag whether choice history can be read. In general many clients can
-     * share the same data model and {@link #readHistoricalDataIfNeeded()} may be called
-     * by arbitrary of them any number of times. Therefore, this class guarantees
-     * that the very first read succeeds and subsequent reads can be performed
-     * only after a call to {@link #persistHistoricalDataIfNeeded()} followed by change
-     * of the share records.
+     * The binary history file, or null if the model is not backed by a file.
      */
-    private boolean mCanReadHistoricalData = true;
+    private final AtomicFile mHistoryFile;
 
     /**
-     * Flag whether the choice history was read. This is used to enforce that
-     * before calling {@link #persistHistoricalDataIfNeeded()} a call to
-     * {@link #persistHistoricalDataIfNeeded()} has been made. This aims to avoid a
-     * scenario in which a choice history file exits, it is not read yet and
-     * it is overwritten. Note that always all historical records are read in
-     * full and the file is rewritten. This is necessary since we need to
-     * purge old records that are outside of the sliding window of past choices.
+     * Handler delaying the writes of the history.
      */
-    private boolean mReadShareHistoryCalled = false;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Whether the choice history was read, which is one of {@link #HISTORY_NOT_READ},
+     * {@link #HISTORY_READING} or {@link #HISTORY_READ}. The history is only persisted
+     * once it has been read, to avoid a scenario in which a choice history file
+     * exists, it is not read yet and it is overwritten. Note that always all
+     * historical records are read in full and the file is rewritten. This is
+     * necessary since we need to purge old records that are outside of the sliding
+     * window of past choices.
+     */
+    private int mHistoryReadState = HISTORY_NOT_READ;
 
     /**
      * Flag whether the choice records have changed. In general many clients can
@@ -291,7 +358,29 @@ class ActivityChooserModel extends DataSetObservable {
      * by arbitrary of them any number of times. Therefore, this class guarantees
      * that choice history will be persisted only if it has changed.
      */
-    private boolean mHistoricalRecordsChanged = true;
+    private boolean mHistoricalRecordsChanged = false;
+
+    /**
+     * Flag whether a write of the history is scheduled.
+     */
+    private boolean mPersistScheduled = false;
+
+    /**
+     * Number of snapshots of the history taken for writing, so that a write
+     * which is late doesn't overwrite a more recent history.
+     */
+    private int mPersistGeneration;
+
+    /**
+     * Generation of the last history written, guarded by {@link #mHistoryFile}.
+     */
+    private int mWrittenGeneration;
+
+    /**
+     * Whether the XML history file may still exist and should be deleted once the binary
+     * one has been written, guarded by {@link #mHistoryFile}.
+     */
+    private boolean mXmlHistoryPending;
 
     /**
      * Flag whether to reload the activities for the current intent.
@@ -352,6 +441,15 @@ class ActivityChooserModel extends DataSetObservable {
         } else {
             mHistoryFileName = historyFileName;
         }
+        if (!TextUtils.isEmpty(mHistoryFileName)) {
+            final String binaryFileName = mHistoryFileName.substring(0,
+                    mHistoryFileName.length() - HISTORY_FILE_EXTENSION.length())
+                    + BINARY_HISTORY_FILE_EXTENSION;
+            mHistoryFile = new AtomicFile(mContext.getFileStreamPath(binaryFileName));
+        } else {
+            mHistoryFile = null;
+            mHistoryReadState = HISTORY_READ;
+        }
     }
 
     /**
@@ -555,28 +653,43 @@ class ActivityChooserModel extends DataSetObservable {
     }
 
     /**
-     * Persists the history data to the backing file if the latter
-     * was provided. Calling this method before a call to {@link #readHistoricalDataIfNeeded()}
-     * throws an exception. Calling this method more than one without choosing an
-     * activity has not effect.
-     *
-     * @throws IllegalStateException If this method is called before a call to
-     *         {@link #readHistoricalDataIfNeeded()}.
+     * Schedules a write of the history data to the backing file if the latter
+     * was provided. Calling this method before the history has been read has
+     * no effect, and the history is persisted once it has been read. Calling
+     * this method more than once before the write has no further effect.
      */
     private void persistHistoricalDataIfNeeded() {
-        if (!mReadShareHistoryCalled) {
-            throw new IllegalStateException("No preceding call to #readHistoricalData");
+        if (mHistoryReadState != HISTORY_READ) {
+            return;
         }
         if (!mHistoricalRecordsChanged) {
             return;
         }
         mHistoricalRecordsChanged = false;
-        if (!TextUtils.isEmpty(mHistoryFileName)) {
-            AsyncTaskCompat.executeParallel(new PersistHistoryAsyncTask(),
-                    new ArrayList<HistoricalRecord>(mHistoricalRecords), mHistoryFileName);
+        if (mHistoryFile != null && !mPersistScheduled) {
+            mPersistScheduled = true;
+            mHandler.postDelayed(mPersistHistoryRunnable, PERSIST_HISTORY_DELAY_MILLIS);
         }
     }
 
+    /**
+     * Takes a snapshot of the history and writes it off the UI thread.
+     */
+    private final Runnable mPersistHistoryRunnable = new Runnable() {
+        @Override
+        public void run() {
+            final List<HistoricalRecord> historicalRecords;
+            final int generation;
+            synchronized (mInstanceLock) {
+                mPersistScheduled = false;
+                historicalRecords = new ArrayList<HistoricalRecord>(mHistoricalRecords);
+                generation = ++mPersistGeneration;
+            }
+            AsyncTaskCompat.executeParallel(new PersistHistoryAsyncTask(),
+                    historicalRecords, generation);
+        }
+    };
+
     /**
      * Sets the sorter for ordering activities based on historical data and an intent.
      *
@@ -653,7 +766,7 @@ class ActivityChooserModel extends DataSetObservable {
      */
     private void ensureConsistentState() {
         boolean stateChanged = loadActivitiesIfNeeded();
-        stateChanged |= readHistoricalDataIfNeeded();
+        readHistoricalDataIfNeeded();
         pruneExcessiveHistoricalRecordsIfNeeded();
         if (stateChanged) {
             sortActivitiesIfNeeded();
@@ -701,21 +814,37 @@ class ActivityChooserModel extends DataSetObservable {
     }
 
     /**
-     * Reads the historical data if necessary which is it has
-     * changed, there is a history file, and there is not persist
-     * in progress.
+     * Starts reading the historical data in the background if it has not
+     * been read yet. The activities are sorted again once it has been read.
+     */
+    private void readHistoricalDataIfNeeded() {
+        if (mHistoryReadState == HISTORY_NOT_READ) {
+            mHistoryReadState = HISTORY_READING;
+            AsyncTaskCompat.executeParallel(new ReadHistoryAsyncTask());
+        }
+    }
+
+    /**
+     * Adds the records read from the history file before the records of the
+     * choices made while it was being read.
      *
-     * @return Whether reading was performed.
-     */
-    private boolean readHistoricalDataIfNeeded() {
-        if (mCanReadHistoricalData && mHistoricalRecordsChanged &&
-                !TextUtils.isEmpty(mHistoryFileName)) {
-            mCanReadHistoricalData = false;
-            mReadShareHistoryCalled = true;
-            readHistoricalDataImpl();
-            return true;
+     * @param historicalRecords The records read, or null if the file could not be read.
+     * @param migrate Whether the records were read from a file in the former format.
+     */
+    void onHistoricalDataRead(List<HistoricalRecord> historicalRecords, boolean migrate) {
+        synchronized (mInstanceLock) {
+            mHistoryReadState = HISTORY_READ;
+            if (historicalRecords != null) {
+                mHistoricalRecords.addAll(0, historicalRecords);
+            }
+            if (migrate) {
+                mHistoricalRecordsChanged = true;
+            }
+            pruneExcessiveHistoricalRecordsIfNeeded();
+            persistHistoricalDataIfNeeded();
+            sortActivitiesIfNeeded();
+            notifyChanged();
         }
-        return false;
     }
 
     /**
@@ -956,7 +1085,109 @@ class ActivityChooserModel extends DataSetObservable {
         }
     }
 
-    private void readHistoricalDataImpl() {
+    /**
+     * Reads the binary history file.
+     *
+     * @return The records, or null if there is no binary history file.
+     */
+    List<HistoricalRecord> readBinaryHistoricalData() throws IOException {
+        final long fileSize = mHistoryFile.getBaseFile().length();
+        if (fileSize > MAX_BINARY_HISTORY_FILE_SIZE) {
+            throw new IOException("History file too large: " + fileSize);
+        }
+        final byte[] data;
+        try {
+            data = mHistoryFile.readFully();
+        } catch (FileNotFoundException fnfe) {
+            return null;
+        }
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        if (in.readInt() != BINARY_HISTORY_MAGIC || in.readInt() != BINARY_HISTORY_VERSION) {
+            throw new IOException("Unknown history file format");
+        }
+        // Names of the activities, which are referenced by index from the records. The
+        // counts are checked against the bytes left, so that a corrupted count cannot make
+        // the arrays below larger than the file.
+        final int activityCount = in.readInt();
+        if (activityCount < 0 || activityCount > in.available() / MIN_BINARY_ACTIVITY_SIZE) {
+            throw new IOException("Invalid activity count: " + activityCount);
+        }
+        final ComponentName[] activities = new ComponentName[activityCount];
+        for (int i = 0; i < activityCount; i++) {
+            final String activity = in.readUTF();
+            activities[i] = ComponentName.unflattenFromString(activity);
+            if (activities[i] == null) {
+                throw new IOException("Invalid activity: " + activity);
+            }
+        }
+        final int recordCount = in.readInt();
+        if (recordCount < 0 || recordCount > in.available() / BINARY_RECORD_SIZE) {
+            throw new IOException("Invalid record count: " + recordCount);
+        }
+        final List<HistoricalRecord> historicalRecords =
+                new ArrayList<HistoricalRecord>(recordCount);
+        for (int i = 0; i < recordCount; i++) {
+            final int activity = in.readInt();
+            if (activity < 0 || activity >= activityCount) {
+                throw new IOException("Invalid activity index: " + activity);
+            }
+            final long time = in.readLong();
+            final float weight = in.readFloat();
+            HistoricalRecord readRecord = new HistoricalRecord(activities[activity], time, weight);
+            historicalRecords.add(readRecord);
+
+            if (DEBUG) {
+                Log.i(LOG_TAG, "Read " + readRecord.toString());
+            }
+        }
+        return historicalRecords;
+    }
+
+    /**
+     * Writes the records in the binary history format read by
+     * {@link #readBinaryHistoricalData()}.
+     */
+    static void writeBinaryHistoricalData(OutputStream os,
+            List<HistoricalRecord> historicalRecords) throws IOException {
+        final Map<ComponentName, Integer> activityIndices =
+                new HashMap<ComponentName, Integer>();
+        final List<ComponentName> activities = new ArrayList<ComponentName>();
+        final int recordCount = historicalRecords.size();
+        for (int i = 0; i < recordCount; i++) {
+            final ComponentName activity = historicalRecords.get(i).activity;
+            if (!activityIndices.containsKey(activity)) {
+                activityIndices.put(activity, activities.size());
+                activities.add(activity);
+            }
+        }
+
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os));
+        out.writeInt(BINARY_HISTORY_MAGIC);
+        out.writeInt(BINARY_HISTORY_VERSION);
+        out.writeInt(activities.size());
+        for (int i = 0; i < activities.size(); i++) {
+            out.writeUTF(activities.get(i).flattenToString());
+        }
+        out.writeInt(recordCount);
+        for (int i = 0; i < recordCount; i++) {
+            HistoricalRecord record = historicalRecords.get(i);
+            out.writeInt(activityIndices.get(record.activity));
+            out.writeLong(record.time);
+            out.writeFloat(record.weight);
+            if (DEBUG) {
+                Log.i(LOG_TAG, "Wrote " + record.toString());
+            }
+        }
+        // Not closed, since AtomicFile syncs the file before closing it
+        out.flush();
+    }
+
+    /**
+     * Reads the history file in the former XML format.
+     *
+     * @return The records, or null if there is no XML history file.
+     */
+    List<HistoricalRecord> readXmlHistoricalData() {
         FileInputStream fis = null;
         try {
             fis = mContext.openFileInput(mHistoryFileName);
@@ -964,7 +1195,7 @@ class ActivityChooserModel extends DataSetObservable {
             if (DEBUG) {
                 Log.i(LOG_TAG, "Could not open historical records file: " + mHistoryFileName);
             }
-            return;
+            return null;
         }
         try {
             XmlPullParser parser = Xml.newPullParser();
@@ -980,8 +1211,7 @@ class ActivityChooserModel extends DataSetObservable {
                         + TAG_HISTORICAL_RECORDS + " tag.");
             }
 
-            List<HistoricalRecord> historicalRecords = mHistoricalRecords;
-            historicalRecords.clear();
+            List<HistoricalRecord> historicalRecords = new ArrayList<HistoricalRecord>();
 
             while (true) {
                 type = parser.next();
@@ -1012,6 +1242,7 @@ class ActivityChooserModel extends DataSetObservable {
             if (DEBUG) {
                 Log.i(LOG_TAG, "Read " + historicalRecords.size() + " historical records.");
             }
+            return historicalRecords;
         } catch (XmlPullParserException xppe) {
             Log.e(LOG_TAG, "Error reading historical recrod file: " + mHistoryFileName, xppe);
         } catch (IOException ioe) {
@@ -1025,6 +1256,50 @@ class ActivityChooserModel extends DataSetObservable {
                 }
             }
         }
+        return null;
+    }
+
+    /**
+     * Command for reading the historical records off the UI thread.
+     */
+    private final class ReadHistoryAsyncTask
+            extends AsyncTask<Void, Void, List<HistoricalRecord>> {
+        private boolean mMigrate;
+
+        @Override
+        public List<HistoricalRecord> doInBackground(Void... args) {
+            synchronized (mHistoryFile) {
+                try {
+                    final List<HistoricalRecord> historicalRecords = readBinaryHistoricalData();
+                    if (historicalRecords != null) {
+                        if (DEBUG) {
+                            Log.i(LOG_TAG, "Read " + historicalRecords.size()
+                                    + " historical records.");
+                        }
+                        return historicalRecords;
+                    }
+                } catch (IOException ioe) {
+                    // Start over with an empty history, which replaces the file once written
+                    Log.e(LOG_TAG, "Error reading historical recrod file: "
+                            + mHistoryFile.getBaseFile(), ioe);
+                    return null;
+                } catch (RuntimeException re) {
+                    Log.e(LOG_TAG, "Error reading historical recrod file: "
+                            + mHistoryFile.getBaseFile(), re);
+                    return null;
+                }
+                // There is no binary history yet, so it is migrated from the XML one
+                mXmlHistoryPending = true;
+            }
+            final List<HistoricalRecord> historicalRecords = readXmlHistoricalData();
+            mMigrate = historicalRecords != null;
+            return historicalRecords;
+        }
+
+        @Override
+        protected void onPostExecute(List<HistoricalRecord> historicalRecords) {
+            onHistoricalDataRead(historicalRecords, mMigrate);
+        }
     }
 
     /**
@@ -1036,61 +1311,39 @@ class ActivityChooserModel extends DataSetObservable {
         @SuppressWarnings("unchecked")
         public Void doInBackground(Object... args) {
             List<HistoricalRecord> historicalRecords = (List<HistoricalRecord>) args[0];
-            String hostoryFileName = (String) args[1];
-
-            FileOutputStream fos = null;
+            final int generation = (Integer) args[1];
 
-            try {
-                fos = mContext.openFileOutput(hostoryFileName, Context.MODE_PRIVATE);
-            } catch (FileNotFoundException fnfe) {
-                Log.e(LOG_TAG, "Error writing historical recrod file: " + hostoryFileName, fnfe);
-                return null;
-            }
-
-            XmlSerializer serializer = Xml.newSerializer();
-
-            try {
-                serializer.setOutput(fos, null);
-                serializer.startDocument("UTF-8", true);
-                serializer.startTag(null, TAG_HISTORICAL_RECORDS);
-
-                final int recordCount = historicalRecords.size();
-                for (int i = 0; i < recordCount; i++) {
-                    HistoricalRecord record = historicalRecords.remove(0);
-                    serializer.startTag(null, TAG_HISTORICAL_RECORD);
-                    serializer.attribute(null, ATTRIBUTE_ACTIVITY,
-                            record.activity.flattenToString());
-                    serializer.attribute(null, ATTRIBUTE_TIME, String.valueOf(record.time));
-                    serializer.attribute(null, ATTRIBUTE_WEIGHT, String.valueOf(record.weight));
-                    serializer.endTag(null, TAG_HISTORICAL_RECORD);
-                    if (DEBUG) {
-                        Log.i(LOG_TAG, "Wrote " + record.toString());
-                    }
+            synchronized (mHistoryFile) {
+                if (generation <= mWrittenGeneration) {
+                    // A more recent history was written already
+                    return null;
                 }
+                mWrittenGeneration = generation;
 
-                serializer.endTag(null, TAG_HISTORICAL_RECORDS);
-                serializer.endDocument();
-
-                if (DEBUG) {
-                    Log.i(LOG_TAG, "Wrote " + recordCount + " historical records.");
-                }
-            } catch (IllegalArgumentException iae) {
-                Log.e(LOG_TAG, "Error writing historical recrod file: " + mHistoryFileName, iae);
-            } catch (IllegalStateException ise) {
-                Log.e(LOG_TAG, "Error writing historical recrod file: " + mHistoryFileName, ise);
-            } catch (IOException ioe) {
-                Log.e(LOG_TAG, "Error writing historical recrod file: " + mHistoryFileName, ioe);
-            } finally {
-                mCanReadHistoricalData = true;
-                if (fos != null) {
-                    try {
-                        fos.close();
-                    } catch (IOException e) {
-                        /* ignore */
+                FileOutputStream fos = null;
+                try {
+                    fos = mHistoryFile.startWrite();
+                    writeBinaryHistoricalData(fos, historicalRecords);
+                    mHistoryFile.finishWrite(fos);
+                } catch (IOException ioe) {
+                    Log.e(LOG_TAG, "Error writing historical recrod file: "
+                            + mHistoryFile.getBaseFile(), ioe);
+                    if (fos != null) {
+                        mHistoryFile.failWrite(fos);
                     }
+                    return null;
                 }
+                // The XML file, if any, is replaced by the binary one
+                if (mXmlHistoryPending) {
+                    mContext.deleteFile(mHistoryFileName);
+                    mXmlHistoryPending = false;
+                }
+            }
+
+            if (DEBUG) {
+                Log.i(LOG_TAG, "Wrote " + historicalRecords.size() + " historical records.");
             }
             return null;
         }
     }
-}
\ No newline at end of file
+}
@@ -42,6 +42,7 @@ import android.support.v4.graphics.drawable.DrawableCompat;
 import android.support.v4.util.ArrayMap;
 import android.support.v4.util.LongSparseArray;
 import android.support.v4.util.LruCache;
+import android.support.v4.util.MemoryTrimRegistry;
 import android.support.v7.appcompat.R;
 import android.support.v7.widget.VectorEnabledTintResources;
 import android.util.AttributeSet;
@@ -51,6 +52,7 @@ import android.util.TypedValue;
 import android.util.Xml;
 
 import java.lang.ref.WeakReference;
+import java.util.Iterator;
 import java.util.WeakHashMap;
 
 import static android.support.v7.content.res.AppCompatResources.getColorStateList;
@@ -81,6 +83,10 @@ public final class AppCompatDrawableManager {
         if (INSTANCE == null) {
             INSTANCE = new AppCompatDrawableManager();
             installDefaultInflateDelegates(INSTANCE);
+            MemoryTrimRegistry.register("AppCompatDrawableManager color filters",
+                    COLOR_FILTER_CACHE, 0);
+            MemoryTrimRegistry.register("AppCompatDrawableManager drawables",
+                    INSTANCE.mDrawableCacheTrimmable);
         }
         return INSTANCE;
     }
@@ -173,6 +179,50 @@ public final class AppCompatDrawableManager {
     private final WeakHashMap<Context, LongSparseArray<WeakReference<Drawable.ConstantState>>>
             mDrawableCaches = new WeakHashMap<>(0);
 
+    private final MemoryTrimRegistry.Trimmable mDrawableCacheTrimmable =
+            new MemoryTrimRegistry.Trimmable() {
+                @Override
+                public void trimMemory(float retainedFraction) {
+                    // The drawables are only weakly referenced, so dropping live entries would
+                    // not free them. Only the entries of purged drawables are dropped, whatever
+                    // the fraction.
+                    synchronized (mDrawableCacheLock) {
+                        final Iterator<LongSparseArray<WeakReference<ConstantState>>> caches =
+                                mDrawableCaches.values().iterator();
+                        while (caches.hasNext()) {
+                            final LongSparseArray<WeakReference<ConstantState>> cache =
+                                    caches.next();
+                            for (int i = cache.size() - 1; i >= 0; i--) {
+                                if (cache.valueAt(i).get() == null) {
+                                    cache.removeAt(i);
+                                }
+                            }
+                            if (cache.size() == 0) {
+                                caches.remove();
+                            }
+                        }
+                    }
+                }
+
+                @Override
+                public int getEntryCount() {
+                    int count = 0;
+                    synchronized (mDrawableCacheLock) {
+                        for (LongSparseArray<WeakReference<ConstantState>> cache
+                                : mDrawableCaches.values()) {
+                            count += cache.size();
+                        }
+                    }
+                    return count;
+                }
+
+                @Override
+                public long getSizeInBytes() {
+                    // The drawables are only weakly referenced, and owned by their views
+                    return -1;
+                }
+            };
+
     private TypedValue mTypedValue;
 
     private boolean mHasCheckedVectorDrawableSetup;
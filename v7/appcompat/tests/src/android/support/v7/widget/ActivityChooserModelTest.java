@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v7.widget;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v4.util.AtomicFile;
+import android.support.v7.widget.ActivityChooserModel.HistoricalRecord;
+import android.test.suitebuilder.annotation.MediumTest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+@MediumTest
+public class ActivityChooserModelTest {
+    private static final long TIMEOUT_MS = 5000;
+
+    private static final List<HistoricalRecord> RECORDS = Arrays.asList(
+            new HistoricalRecord("com.example/.First", 1000L, 1.0f),
+            new HistoricalRecord("com.example/.Second", 2000L, 5.0f),
+            new HistoricalRecord("com.example/.First", 3000L, 1.0f));
+
+    private Context mContext;
+    private String mHistoryName;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        // Models are kept by history file name, so every test uses its own
+        mHistoryName = "activity_chooser_model_test_" + SystemClock.uptimeMillis();
+        deleteHistoryFiles();
+    }
+
+    @After
+    public void tearDown() {
+        deleteHistoryFiles();
+    }
+
+    @Test
+    public void testBinaryHistoryRoundTrip() throws IOException {
+        writeBinaryHistory(RECORDS);
+        final ActivityChooserModel model = ActivityChooserModel.get(mContext, mHistoryName);
+        assertEquals(RECORDS, model.readBinaryHistoricalData());
+        waitForHistorySize(model, RECORDS.size());
+    }
+
+    @Test
+    public void testMigrateXmlHistory() throws IOException {
+        final Writer writer = new OutputStreamWriter(
+                mContext.openFileOutput(mHistoryName + ".xml", Context.MODE_PRIVATE), "UTF-8");
+        writer.write("<?xml version='1.0' encoding='utf-8' standalone='yes' ?>\n"
+                + "<historical-records>\n");
+        for (HistoricalRecord record : RECORDS) {
+            writer.write("<historical-record activity=\"" + record.activity.flattenToString()
+                    + "\" time=\"" + record.time + "\" weight=\"" + record.weight + "\" />\n");
+        }
+        writer.write("</historical-records>\n");
+        writer.close();
+
+        final ActivityChooserModel model = ActivityChooserModel.get(mContext, mHistoryName);
+        assertEquals(RECORDS, model.readXmlHistoricalData());
+        waitForHistorySize(model, RECORDS.size());
+
+        // The history is written in the binary format, which replaces the XML file
+        final long end = SystemClock.uptimeMillis() + TIMEOUT_MS;
+        while (getXmlFile().exists() && SystemClock.uptimeMillis() < end) {
+            SystemClock.sleep(50);
+        }
+        assertFalse(getXmlFile().exists());
+        assertEquals(RECORDS, model.readBinaryHistoricalData());
+    }
+
+    @Test
+    public void testRejectTruncatedBinaryHistory() throws IOException {
+        writeBinaryHistory(RECORDS);
+        final RandomAccessFile file = new RandomAccessFile(getBinaryFile(), "rw");
+        file.setLength(file.length() - 5);
+        file.close();
+        assertCorrupt();
+    }
+
+    @Test
+    public void testRejectOversizedBinaryHistory() throws IOException {
+        final List<HistoricalRecord> records = new ArrayList<HistoricalRecord>();
+        for (int i = 0; i < 70000; i++) {
+            records.add(new HistoricalRecord("com.example/.First", i, 1.0f));
+        }
+        writeBinaryHistory(records);
+        assertTrue(getBinaryFile().length() > 1024 * 1024);
+        assertCorrupt();
+    }
+
+    @Test
+    public void testRejectInvalidRecordCount() throws IOException {
+        // A valid header and no activities, but far more records than the file holds
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ActivityChooserModel.writeBinaryHistoricalData(bytes,
+                new ArrayList<HistoricalRecord>());
+        final byte[] data = bytes.toByteArray();
+        final DataOutputStream out = new DataOutputStream(
+                new FileOutputStream(getBinaryFile()));
+        out.write(data, 0, data.length - 4);
+        out.writeInt(Integer.MAX_VALUE);
+        out.close();
+        assertCorrupt();
+    }
+
+    /**
+     * Checks that the binary history file is rejected, and that the model starts over with an
+     * empty history instead of crashing.
+     */
+    private void assertCorrupt() {
+        final ActivityChooserModel model = ActivityChooserModel.get(mContext, mHistoryName);
+        try {
+            model.readBinaryHistoricalData();
+            fail("Corrupted history was read");
+        } catch (IOException e) {
+            // Expected
+        }
+        assertEquals(0, model.getHistorySize());
+        // Let the background read complete
+        SystemClock.sleep(500);
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+        assertEquals(0, model.getHistorySize());
+    }
+
+    private void writeBinaryHistory(List<HistoricalRecord> records) throws IOException {
+        final AtomicFile file = new AtomicFile(getBinaryFile());
+        final FileOutputStream fos = file.startWrite();
+        ActivityChooserModel.writeBinaryHistoricalData(fos, records);
+        file.finishWrite(fos);
+    }
+
+    private static void waitForHistorySize(ActivityChooserModel model, int size) {
+        final long end = SystemClock.uptimeMillis() + TIMEOUT_MS;
+        while (model.getHistorySize() != size && SystemClock.uptimeMillis() < end) {
+            SystemClock.sleep(50);
+        }
+        assertEquals(size, model.getHistorySize());
+    }
+
+    private File getXmlFile() {
+        return mContext.getFileStreamPath(mHistoryName + ".xml");
+    }
+
+    private File getBinaryFile() {
+        return mContext.getFileStreamPath(mHistoryName + ".bin");
+    }
+
+    private void deleteHistoryFiles() {
+        mContext.deleteFile(mHistoryName + ".xml");
+        mContext.deleteFile(mHistoryName + ".bin");
+        mContext.deleteFile(mHistoryName + ".bin.bak");
+    }
+}
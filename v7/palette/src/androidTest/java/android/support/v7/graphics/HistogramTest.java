@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v7.graphics;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.AsyncTask;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import static android.support.v7.graphics.TestUtils.loadSampleBitmap;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class HistogramTest {
+
+    @Test
+    @SmallTest
+    public void testPaletteFromHistogramMatchesBitmap() {
+        final Bitmap bitmap = loadSampleBitmap();
+        final Palette.Histogram histogram = Palette.from(bitmap).generateHistogram();
+
+        final Palette fromBitmap = Palette.from(bitmap).generate();
+        final Palette fromHistogram = Palette.from(histogram).generate();
+        assertEquals(fromBitmap.getSwatches(), fromHistogram.getSwatches());
+        assertEquals(fromBitmap.getVibrantSwatch(), fromHistogram.getVibrantSwatch());
+        assertEquals(fromBitmap.getMutedSwatch(), fromHistogram.getMutedSwatch());
+    }
+
+    @Test
+    @SmallTest
+    public void testByteArrayRoundTrip() {
+        final Palette.Histogram histogram = Palette.from(loadSampleBitmap()).generateHistogram();
+        final Palette.Histogram restored =
+                Palette.Histogram.fromByteArray(histogram.toByteArray());
+
+        assertEquals(histogram.getColorCount(), restored.getColorCount());
+        assertEquals(Palette.from(histogram).generate().getSwatches(),
+                Palette.from(restored).generate().getSwatches());
+    }
+
+    @Test
+    @SmallTest
+    public void testMalformedByteArray() {
+        final byte[] data = Palette.from(loadSampleBitmap()).generateHistogram().toByteArray();
+        try {
+            Palette.Histogram.fromByteArray(new byte[] {0, 0, 0, 1, 0, 0});
+            fail("Truncated data should not be accepted");
+        } catch (IllegalArgumentException expected) {
+        }
+        data[3] = 42;
+        try {
+            Palette.Histogram.fromByteArray(data);
+            fail("Unknown version should not be accepted");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    @SmallTest
+    public void testCache() {
+        final Bitmap bitmap = loadSampleBitmap();
+        final Palette.HistogramCache cache = new Palette.HistogramCache(4);
+
+        final Palette.Histogram first =
+                Palette.from(bitmap).setHistogramCache(cache).generateHistogram();
+        assertEquals(1, cache.size());
+        assertSame(first, Palette.from(bitmap).setHistogramCache(cache).generateHistogram());
+
+        // A different region is a different entry
+        final Palette.Histogram region = Palette.from(bitmap).setHistogramCache(cache)
+                .setRegion(0, 0, bitmap.getWidth() / 2, bitmap.getHeight() / 2)
+                .generateHistogram();
+        assertNotSame(first, region);
+        assertEquals(2, cache.size());
+
+        cache.evictAll();
+        assertEquals(0, cache.size());
+        assertNotSame(first, Palette.from(bitmap).setHistogramCache(cache).generateHistogram());
+    }
+
+    @Test
+    @SmallTest
+    public void testParallelHistogramMatchesSequential() {
+        final Random random = new Random(42);
+        final int[] pixels = new int[1 << 20];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt();
+        }
+
+        final Palette.Histogram sequential = ColorCutQuantizer.buildHistogram(pixels, false);
+        final Palette.Histogram parallel = ColorCutQuantizer.buildHistogram(pixels, true);
+        assertArrayEquals(sequential.mColors, parallel.mColors);
+        assertArrayEquals(sequential.mPopulations, parallel.mPopulations);
+    }
+
+    @Test
+    @SmallTest
+    public void testParallelHistogramOnAsyncTaskPool() throws Exception {
+        final Random random = new Random(42);
+        final int[] pixels = new int[1 << 20];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt();
+        }
+        final Palette.Histogram sequential = ColorCutQuantizer.buildHistogram(pixels, false);
+
+        // Occupy threads of the pool as other tasks would, like Palette.generateAsync() does
+        final CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < Runtime.getRuntime().availableProcessors(); i++) {
+            AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        // Exit
+                    }
+                }
+            });
+        }
+        final FutureTask<Palette.Histogram> task = new FutureTask<>(
+                new Callable<Palette.Histogram>() {
+                    @Override
+                    public Palette.Histogram call() {
+                        return ColorCutQuantizer.buildHistogram(pixels, true);
+                    }
+                });
+        final Palette.Histogram parallel;
+        try {
+            AsyncTask.THREAD_POOL_EXECUTOR.execute(task);
+            parallel = task.get(10, TimeUnit.SECONDS);
+        } finally {
+            release.countDown();
+        }
+        assertArrayEquals(sequential.mColors, parallel.mColors);
+        assertArrayEquals(sequential.mPopulations, parallel.mPopulations);
+    }
+
+    @Test
+    @MediumTest
+    public void testParallelHistogramOfFullSizeImage() {
+        // A 1080p screen capture processed without resizing, as with resizeBitmapArea(0)
+        final int width = 1080;
+        final int height = 1920;
+        final Random random = new Random(width * height);
+        final int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                // Smooth gradients with some noise, which have a realistic number of colors
+                final int noise = random.nextInt(24);
+                pixels[y * width + x] = Color.rgb(
+                        Math.min(255, x * 255 / width + noise),
+                        Math.min(255, y * 255 / height + noise),
+                        Math.min(255, (x + y) * 127 / (width + height) + 64 + noise));
+            }
+        }
+
+        final Palette.Histogram sequential = ColorCutQuantizer.buildHistogram(pixels, false);
+        final Palette.Histogram parallel = ColorCutQuantizer.buildHistogram(pixels, true);
+        assertArrayEquals(sequential.mColors, parallel.mColors);
+        assertArrayEquals(sequential.mPopulations, parallel.mPopulations);
+        assertEquals(new ColorCutQuantizer(sequential, 16, null).getQuantizedColors(),
+                new ColorCutQuantizer(parallel, 16, null).getQuantizedColors());
+    }
+}
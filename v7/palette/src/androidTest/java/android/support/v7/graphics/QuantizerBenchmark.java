@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v7.graphics;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import android.graphics.Color;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.LargeTest;
+
+import java.util.Random;
+
+/**
+ * Measures {@link ColorCutQuantizer} on images of typical artwork and photo sizes, which are
+ * processed at full size as when {@link Palette.Builder#resizeBitmapArea(int)} is turned off.
+ * Histogram construction is reported separately with and without parallel stripes, followed by
+ * the box splitting of the quantization.
+ * <p>
+ * This is not run as part of the regular test suite; remove the {@link Ignore} annotation to
+ * run it locally.
+ */
+@Ignore("benchmark, run manually")
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class QuantizerBenchmark {
+
+    private static final int WARMUP_RUNS = 3;
+    private static final int MEASURED_RUNS = 5;
+
+    @Test
+    public void albumArt512() {
+        benchmark(512, 512);
+    }
+
+    @Test
+    public void screen1080p() {
+        benchmark(1080, 1920);
+    }
+
+    @Test
+    public void photo12Mp() {
+        benchmark(4000, 3000);
+    }
+
+    private void benchmark(int width, int height) {
+        final int[] pixels = createPixels(width, height);
+        final String name = width + "x" + height;
+
+        long sequential = 0;
+        long parallel = 0;
+        long quantize = 0;
+        for (int run = 0; run < WARMUP_RUNS + MEASURED_RUNS; run++) {
+            final boolean measured = run >= WARMUP_RUNS;
+
+            long start = System.nanoTime();
+            ColorCutQuantizer.buildHistogram(pixels, false);
+            if (measured) {
+                sequential += System.nanoTime() - start;
+            }
+
+            start = System.nanoTime();
+            final Palette.Histogram histogram = ColorCutQuantizer.buildHistogram(pixels, true);
+            if (measured) {
+                parallel += System.nanoTime() - start;
+            }
+
+            start = System.nanoTime();
+            new ColorCutQuantizer(histogram, 16, null).getQuantizedColors();
+            if (measured) {
+                quantize += System.nanoTime() - start;
+            }
+        }
+        report(name, "histogram", sequential);
+        report(name, "histogram parallel", parallel);
+        report(name, "quantize 16 colors", quantize);
+    }
+
+    /**
+     * Creates smooth gradients with some noise, which have a realistic number of distinct
+     * colors for artwork and photos.
+     */
+    private static int[] createPixels(int width, int height) {
+        final Random random = new Random(width * height);
+        final int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                final int noise = random.nextInt(24);
+                pixels[y * width + x] = Color.rgb(
+                        Math.min(255, x * 255 / width + noise),
+                        Math.min(255, y * 255 / height + noise),
+                        Math.min(255, (x + y) * 127 / (width + height) + 64 + noise));
+            }
+        }
+        return pixels;
+    }
+
+    private static void report(String name, String method, long totalNanos) {
+        System.out.println(String.format("ColorCutQuantizer %s %s: %.2f ms", name, method,
+                totalNanos / MEASURED_RUNS / 1000000f));
+    }
+}
@@ -27,6 +27,12 @@ import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
 import java.util.PriorityQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * An color quantizer based on the Median-cut algorithm, but optimized for picking out distinct
@@ -53,6 +59,23 @@ final class ColorCutQuantizer {
     private static final int QUANTIZE_WORD_WIDTH = 5;
     private static final int QUANTIZE_WORD_MASK = (1 << QUANTIZE_WORD_WIDTH) - 1;
 
+    // Each stripe needs its own histogram, so only split when the pixel count outweighs merging
+    private static final int MIN_PARALLEL_HISTOGRAM_STRIPE = 1 << 16;
+    private static final int MAX_PARALLEL_HISTOGRAM_THREADS = 4;
+    // Private to the quantizer, since Palette.generateAsync() already runs on the shared
+    // AsyncTask pool. Stripes run on the calling thread when all threads are busy, instead of
+    // waiting in a queue behind it.
+    private static final Executor sHistogramExecutor = new ThreadPoolExecutor(0,
+            MAX_PARALLEL_HISTOGRAM_THREADS - 1, 1, TimeUnit.SECONDS,
+            new SynchronousQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "Palette histogram");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            }, new ThreadPoolExecutor.CallerRunsPolicy());
+
     final int[] mColors;
     final int[] mHistogram;
     final List<Swatch> mQuantizedColors;
@@ -60,6 +83,7 @@ final class ColorCutQuantizer {
     final Palette.Filter[] mFilters;
 
     private final float[] mTempHsl = new float[3];
+    private final int[] mDimensionHistogram = new int[1 << QUANTIZE_WORD_WIDTH];
 
     /**
      * Constructor.
@@ -69,20 +93,30 @@ final class ColorCutQuantizer {
      * @param filters Set of filters to use in the quantization stage
      */
     ColorCutQuantizer(final int[] pixels, final int maxColors, final Palette.Filter[] filters) {
+        this(buildHistogram(pixels), maxColors, filters);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param histogram compact histogram of an image's quantized pixel data, which is not modified
+     * @param maxColors The maximum number of colors that should be in the result palette.
+     * @param filters Set of filters to use in the quantization stage
+     */
+    ColorCutQuantizer(final Palette.Histogram histogram, final int maxColors,
+            final Palette.Filter[] filters) {
         mTimingLogger = LOG_TIMINGS ? new TimingLogger(LOG_TAG, "Creation") : null;
         mFilters = filters;
 
         final int[] hist = mHistogram = new int[1 << (QUANTIZE_WORD_WIDTH * 3)];
-        for (int i = 0; i < pixels.length; i++) {
-            final int quantizedColor = quantizeFromRgb888(pixels[i]);
-            // Now update the pixel value to the quantized value
-            pixels[i] = quantizedColor;
-            // And update the histogram
-            hist[quantizedColor]++;
+        final int[] histogramColors = histogram.mColors;
+        final int[] histogramPopulations = histogram.mPopulations;
+        for (int i = 0; i < histogramColors.length; i++) {
+            hist[histogramColors[i]] = histogramPopulations[i];
         }
 
         if (LOG_TIMINGS) {
-            mTimingLogger.addSplit("Histogram created");
+            mTimingLogger.addSplit("Histogram expanded");
         }
 
         // Now let's count the number of distinct colors
@@ -137,6 +171,117 @@ final class ColorCutQuantizer {
         }
     }
 
+    /**
+     * Quantizes the given pixels and counts the population of each quantized color.
+     *
+     * @param pixels an image's pixel data
+     * @return the compact histogram, containing only the colors which are present
+     */
+    static Palette.Histogram buildHistogram(final int[] pixels) {
+        return buildHistogram(pixels, false);
+    }
+
+    /**
+     * Quantizes the given pixels and counts the population of each quantized color.
+     *
+     * @param pixels an image's pixel data
+     * @param parallel whether large images should be processed in stripes on several threads,
+     *                 whose histograms are merged at the end
+     * @return the compact histogram, containing only the colors which are present
+     */
+    static Palette.Histogram buildHistogram(final int[] pixels, final boolean parallel) {
+        final int threadCount = parallel
+                ? Math.min(MAX_PARALLEL_HISTOGRAM_THREADS,
+                        Math.min(Runtime.getRuntime().availableProcessors(),
+                                pixels.length / MIN_PARALLEL_HISTOGRAM_STRIPE))
+                : 1;
+        final int[] hist = threadCount < 2
+                ? countPixels(pixels, 0, pixels.length)
+                : countPixelsInStripes(pixels, threadCount);
+
+        int distinctColorCount = 0;
+        for (int color = 0; color < hist.length; color++) {
+            if (hist[color] > 0) {
+                distinctColorCount++;
+            }
+        }
+
+        final int[] colors = new int[distinctColorCount];
+        final int[] populations = new int[distinctColorCount];
+        int distinctColorIndex = 0;
+        for (int color = 0; color < hist.length; color++) {
+            if (hist[color] > 0) {
+                colors[distinctColorIndex] = color;
+                populations[distinctColorIndex++] = hist[color];
+            }
+        }
+        return new Palette.Histogram(colors, populations);
+    }
+
+    private static int[] countPixels(final int[] pixels, final int from, final int to) {
+        final int[] hist = new int[1 << (QUANTIZE_WORD_WIDTH * 3)];
+        for (int i = from; i < to; i++) {
+            hist[quantizeFromRgb888(pixels[i])]++;
+        }
+        return hist;
+    }
+
+    private static int[] countPixelsInStripes(final int[] pixels, final int stripeCount) {
+        final int[][] stripeHists = new int[stripeCount][];
+        final RuntimeException[] failure = new RuntimeException[1];
+        final CountDownLatch counted = new CountDownLatch(stripeCount - 1);
+        final Executor executor = sHistogramExecutor;
+        for (int i = 1; i < stripeCount; i++) {
+            final int stripe = i;
+            final int from = (int) ((long) pixels.length * i / stripeCount);
+            final int to = (int) ((long) pixels.length * (i + 1) / stripeCount);
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        stripeHists[stripe] = countPixels(pixels, from, to);
+                    } catch (RuntimeException e) {
+                        synchronized (failure) {
+                            failure[0] = e;
+                        }
+                    } finally {
+                        counted.countDown();
+                    }
+                }
+            });
+        }
+        // The calling thread takes the first stripe, and merges the others into it
+        final int[] hist = countPixels(pixels, 0, pixels.length / stripeCount);
+        awaitUninterruptibly(counted);
+        synchronized (failure) {
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            for (int i = 1; i < stripeCount; i++) {
+                final int[] stripeHist = stripeHists[i];
+                for (int color = 0; color < hist.length; color++) {
+                    hist[color] += stripeHist[color];
+                }
+            }
+        }
+        return hist;
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     /**
      * @return the list of quantized colors
      */
@@ -330,9 +475,10 @@ final class ColorCutQuantizer {
         /**
          * Finds the point within this box's lowerIndex and upperIndex index of where to split.
          *
-         * This is calculated by finding the longest color dimension, and then sorting the
-         * sub-array based on that dimension value in each color. The colors are then iterated over
-         * until a color is found with at least the midpoint of the whole box's dimension midpoint.
+         * This is calculated by finding the longest color dimension, and then accumulating the
+         * population of each value of that dimension until the midpoint of the box's population
+         * is reached. The colors are then partitioned around that value, and only the colors
+         * with exactly that value are sorted to find where within them the midpoint lies.
          *
          * @return the index of the colors array to split from
          */
@@ -340,23 +486,53 @@ final class ColorCutQuantizer {
             final int longestDimension = getLongestColorDimension();
             final int[] colors = mColors;
             final int[] hist = mHistogram;
+            final int[] dimensionHist = mDimensionHistogram;
+
+            // Build the population histogram of the longest dimension
+            Arrays.fill(dimensionHist, 0);
+            for (int i = mLowerIndex; i <= mUpperIndex; i++) {
+                final int color = colors[i];
+                dimensionHist[quantizedComponent(color, longestDimension)] += hist[color];
+            }
 
-            // We need to sort the colors in this box based on the longest color dimension.
-            // As we can't use a Comparator to define the sort logic, we modify each color so that
-            // it's most significant is the desired dimension
-            modifySignificantOctet(colors, longestDimension, mLowerIndex, mUpperIndex);
+            // Find the value at which the cumulative population reaches the midpoint
+            final int midPoint = mPopulation / 2;
+            int splitValue = 0;
+            int countBelow = 0;
+            while (countBelow + dimensionHist[splitValue] < midPoint) {
+                countBelow += dimensionHist[splitValue++];
+            }
 
-            // Now sort... Arrays.sort uses a exclusive toIndex so we need to add 1
-            Arrays.sort(colors, mLowerIndex, mUpperIndex + 1);
+            // Partition the colors into those below, equal to and above the split value
+            int lower = mLowerIndex;
+            int i = mLowerIndex;
+            int upper = mUpperIndex;
+            while (i <= upper) {
+                final int color = colors[i];
+                final int value = quantizedComponent(color, longestDimension);
+                if (value < splitValue) {
+                    colors[i++] = colors[lower];
+                    colors[lower++] = color;
+                } else if (value > splitValue) {
+                    colors[i] = colors[upper];
+                    colors[upper--] = color;
+                } else {
+                    i++;
+                }
+            }
 
-            // Now revert all of the colors so that they are packed as RGB again
-            modifySignificantOctet(colors, longestDimension, mLowerIndex, mUpperIndex);
+            // Sort the colors with the split value by their other dimensions, so the split is the
+            // same as with a full sort along the longest dimension. As we can't use a Comparator
+            // to define the sort logic, we modify each color so that it's most significant is
+            // the desired dimension
+            modifySignificantOctet(colors, longestDimension, lower, upper);
+            Arrays.sort(colors, lower, upper + 1);
+            modifySignificantOctet(colors, longestDimension, lower, upper);
 
-            final int midPoint = mPopulation / 2;
-            for (int i = mLowerIndex, count = 0; i <= mUpperIndex; i++)  {
-                count += hist[colors[i]];
+            for (int j = lower, count = countBelow; j <= upper; j++)  {
+                count += hist[colors[j]];
                 if (count >= midPoint) {
-                    return i;
+                    return j;
                 }
             }
 
@@ -500,6 +676,20 @@ final class ColorCutQuantizer {
         return color & QUANTIZE_WORD_MASK;
     }
 
+    /**
+     * @return the given component of a quantized color
+     */
+    private static int quantizedComponent(int color, int dimension) {
+        switch (dimension) {
+            case COMPONENT_RED:
+                return quantizedRed(color);
+            case COMPONENT_GREEN:
+                return quantizedGreen(color);
+            default:
+                return quantizedBlue(color);
+        }
+    }
+
     private static int modifyWordWidth(int value, int currentWidth, int targetWidth) {
         final int newValue;
         if (targetWidth > currentWidth) {
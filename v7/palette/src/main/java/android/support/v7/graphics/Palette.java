@@ -26,10 +26,14 @@ import android.support.annotation.Nullable;
 import android.support.v4.graphics.ColorUtils;
 import android.support.v4.os.AsyncTaskCompat;
 import android.support.v4.util.ArrayMap;
+import android.support.v4.util.LruCache;
 import android.util.Log;
 import android.util.SparseBooleanArray;
 import android.util.TimingLogger;
 
+import java.lang.ref.WeakReference;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -100,6 +104,16 @@ public final class Palette {
         return new Builder(bitmap);
     }
 
+    /**
+     * Start generating a {@link Palette} from a previously generated {@link Histogram}, with the
+     * returned {@link Builder} instance. This does not need access to the source image's pixels.
+     *
+     * @see Builder#generateHistogram()
+     */
+    public static Builder from(Histogram histogram) {
+        return new Builder(histogram);
+    }
+
     /**
      * Generate a {@link Palette} from the pre-generated list of {@link Palette.Swatch} swatches.
      * This is useful for testing, or if you want to resurrect a {@link Palette} instance from a
@@ -563,12 +577,183 @@ public final class Palette {
         }
     }
 
+    /**
+     * The population of each quantized color of an image, or of a region of it. This is the
+     * result of the pixel processing step of {@link Builder#generate()}.
+     * <p>
+     * A histogram only contains the colors present in the image, so it is small enough to be kept
+     * in memory or persisted with {@link #toByteArray()}. Palettes with different
+     * {@link Target}s, {@link Filter}s or maximum color counts can then be generated from it with
+     * {@link Palette#from(Histogram)}, without accessing the image again.
+     */
+    public static final class Histogram {
+        private static final int FORMAT_VERSION = 1;
+
+        // Quantized colors, in ascending order
+        final int[] mColors;
+        final int[] mPopulations;
+
+        Histogram(int[] colors, int[] populations) {
+            mColors = colors;
+            mPopulations = populations;
+        }
+
+        /**
+         * Returns the number of distinct quantized colors in this histogram.
+         */
+        public int getColorCount() {
+            return mColors.length;
+        }
+
+        /**
+         * Returns a compact binary representation of this histogram, which can be turned back
+         * into a histogram with {@link #fromByteArray(byte[])}.
+         */
+        @NonNull
+        public byte[] toByteArray() {
+            // Quantized colors fit in a short
+            final ByteBuffer buffer = ByteBuffer.allocate(8 + mColors.length * 6);
+            buffer.putInt(FORMAT_VERSION);
+            buffer.putInt(mColors.length);
+            for (int i = 0; i < mColors.length; i++) {
+                buffer.putShort((short) mColors[i]);
+                buffer.putInt(mPopulations[i]);
+            }
+            return buffer.array();
+        }
+
+        /**
+         * Restores a histogram from the representation returned by {@link #toByteArray()}.
+         *
+         * @throws IllegalArgumentException if the data is not a valid histogram
+         */
+        @NonNull
+        public static Histogram fromByteArray(@NonNull byte[] data) {
+            try {
+                final ByteBuffer buffer = ByteBuffer.wrap(data);
+                final int version = buffer.getInt();
+                if (version != FORMAT_VERSION) {
+                    throw new IllegalArgumentException("Unsupported histogram version " + version);
+                }
+                final int count = buffer.getInt();
+                if (count < 0 || count * 6 != buffer.remaining()) {
+                    throw new IllegalArgumentException("Invalid histogram size " + count);
+                }
+                final int[] colors = new int[count];
+                final int[] populations = new int[count];
+                for (int i = 0; i < count; i++) {
+                    colors[i] = buffer.getShort() & 0xFFFF;
+                    populations[i] = buffer.getInt();
+                    if ((i > 0 && colors[i] <= colors[i - 1]) || populations[i] <= 0) {
+                        throw new IllegalArgumentException("Invalid histogram entry " + i);
+                    }
+                }
+                return new Histogram(colors, populations);
+            } catch (BufferUnderflowException e) {
+                throw new IllegalArgumentException("Truncated histogram data", e);
+            }
+        }
+    }
+
+    /**
+     * A cache of {@link Histogram}s, which lets {@link Builder#generate()} skip the pixel
+     * processing step for images it has already processed.
+     * <p>
+     * Entries are keyed by the identity and {@link Bitmap#getGenerationId() generation} of the
+     * source {@link Bitmap}, and by the region and resize options of the {@link Builder}. A
+     * modified Bitmap therefore misses the cache. The cache does not keep the Bitmaps alive.
+     * <p>
+     * A single cache can be shared by several Builders, on several threads.
+     *
+     * @see Builder#setHistogramCache(HistogramCache)
+     */
+    public static final class HistogramCache {
+        private final LruCache<Key, Histogram> mCache;
+
+        /**
+         * @param maxEntries The maximum number of histograms to keep.
+         */
+        public HistogramCache(int maxEntries) {
+            mCache = new LruCache<>(maxEntries);
+        }
+
+        /**
+         * Removes all histograms from the cache.
+         */
+        public void evictAll() {
+            mCache.evictAll();
+        }
+
+        /**
+         * Returns the number of histograms in the cache.
+         */
+        public int size() {
+            return mCache.size();
+        }
+
+        Histogram get(Key key) {
+            return mCache.get(key);
+        }
+
+        void put(Key key, Histogram histogram) {
+            mCache.put(key, histogram);
+        }
+
+        static final class Key {
+            private final WeakReference<Bitmap> mBitmap;
+            private final int mBitmapHash;
+            private final int mGenerationId;
+            private final Rect mRegion;
+            private final int mResizeArea;
+            private final int mResizeMaxDimension;
+
+            Key(Bitmap bitmap, Rect region, int resizeArea, int resizeMaxDimension) {
+                mBitmap = new WeakReference<>(bitmap);
+                mBitmapHash = System.identityHashCode(bitmap);
+                mGenerationId = bitmap.getGenerationId();
+                mRegion = region != null ? new Rect(region) : null;
+                mResizeArea = resizeArea;
+                mResizeMaxDimension = resizeMaxDimension;
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                if (this == o) {
+                    return true;
+                }
+                if (!(o instanceof Key)) {
+                    return false;
+                }
+                final Key key = (Key) o;
+                final Bitmap bitmap = mBitmap.get();
+                return bitmap != null && bitmap == key.mBitmap.get()
+                        && mGenerationId == key.mGenerationId
+                        && mResizeArea == key.mResizeArea
+                        && mResizeMaxDimension == key.mResizeMaxDimension
+                        && (mRegion == null ? key.mRegion == null : mRegion.equals(key.mRegion));
+            }
+
+            @Override
+            public int hashCode() {
+                int result = mBitmapHash;
+                result = 31 * result + mGenerationId;
+                result = 31 * result + (mRegion != null ? mRegion.hashCode() : 0);
+                result = 31 * result + mResizeArea;
+                result = 31 * result + mResizeMaxDimension;
+                return result;
+            }
+        }
+    }
+
     /**
      * Builder class for generating {@link Palette} instances.
      */
     public static final class Builder {
         private final List<Swatch> mSwatches;
         private final Bitmap mBitmap;
+        private final Histogram mHistogram;
+        private HistogramCache mHistogramCache;
+        private boolean mParallelHistogram;
 
         private final List<Target> mTargets = new ArrayList<>();
 
@@ -589,6 +774,7 @@ public final class Palette {
             mFilters.add(DEFAULT_FILTER);
             mBitmap = bitmap;
             mSwatches = null;
+            mHistogram = null;
 
             // Add the default targets
             mTargets.add(Target.LIGHT_VIBRANT);
@@ -610,6 +796,31 @@ public final class Palette {
             mFilters.add(DEFAULT_FILTER);
             mSwatches = swatches;
             mBitmap = null;
+            mHistogram = null;
+        }
+
+        /**
+         * Construct a new {@link Builder} using a {@link Histogram} previously generated from
+         * a {@link Bitmap}.
+         *
+         * @see #generateHistogram()
+         */
+        public Builder(Histogram histogram) {
+            if (histogram == null) {
+                throw new IllegalArgumentException("Histogram is not valid");
+            }
+            mFilters.add(DEFAULT_FILTER);
+            mHistogram = histogram;
+            mBitmap = null;
+            mSwatches = null;
+
+            // Add the default targets
+            mTargets.add(Target.LIGHT_VIBRANT);
+            mTargets.add(Target.VIBRANT);
+            mTargets.add(Target.DARK_VIBRANT);
+            mTargets.add(Target.LIGHT_MUTED);
+            mTargets.add(Target.MUTED);
+            mTargets.add(Target.DARK_MUTED);
         }
 
         /**
@@ -748,6 +959,82 @@ public final class Palette {
             return this;
         }
 
+        /**
+         * Set a {@link HistogramCache} to look up the {@link Histogram} of the {@link Bitmap}
+         * before processing its pixels, and to store it in afterwards.
+         */
+        @NonNull
+        public Builder setHistogramCache(HistogramCache cache) {
+            mHistogramCache = cache;
+            return this;
+        }
+
+        /**
+         * Set whether the pixels of large images should be processed on several threads. This
+         * is mostly useful when the resize options are used to keep a large image at its full
+         * size. The default is {@code false}.
+         */
+        @NonNull
+        public Builder setParallelHistogramEnabled(boolean enabled) {
+            mParallelHistogram = enabled;
+            return this;
+        }
+
+        /**
+         * Generate and return the {@link Histogram} of the source {@link Bitmap} synchronously,
+         * taking the region and resize options into account. This is the part of
+         * {@link #generate()} which processes the Bitmap's pixels.
+         *
+         * @throws IllegalStateException if this Builder was not created from a {@link Bitmap} or
+         *                               a {@link Histogram}
+         */
+        @NonNull
+        public Histogram generateHistogram() {
+            if (mHistogram != null) {
+                return mHistogram;
+            }
+            if (mBitmap == null) {
+                throw new IllegalStateException("A Histogram can only be generated from a Bitmap");
+            }
+
+            HistogramCache.Key key = null;
+            if (mHistogramCache != null) {
+                key = new HistogramCache.Key(mBitmap, mRegion, mResizeArea, mResizeMaxDimension);
+                final Histogram cached = mHistogramCache.get(key);
+                if (cached != null) {
+                    return cached;
+                }
+            }
+
+            // First we'll scale down the bitmap if needed
+            final Bitmap bitmap = scaleBitmapDown(mBitmap);
+
+            Rect region = mRegion;
+            if (bitmap != mBitmap && region != null) {
+                // If we have a scaled bitmap and a selected region, we need to scale down the
+                // region to match the new scale
+                final double scale = bitmap.getWidth() / (double) mBitmap.getWidth();
+                region = new Rect(
+                        (int) Math.floor(region.left * scale),
+                        (int) Math.floor(region.top * scale),
+                        Math.min((int) Math.ceil(region.right * scale), bitmap.getWidth()),
+                        Math.min((int) Math.ceil(region.bottom * scale), bitmap.getHeight()));
+            }
+
+            final Histogram histogram = ColorCutQuantizer.buildHistogram(
+                    getPixelsFromBitmap(bitmap, region), mParallelHistogram);
+
+            // If created a new bitmap, recycle it
+            if (bitmap != mBitmap) {
+                bitmap.recycle();
+            }
+
+            if (key != null) {
+                mHistogramCache.put(key, histogram);
+            }
+            return histogram;
+        }
+
         /**
          * Generate and return the {@link Palette} synchronously.
          */
@@ -759,40 +1046,22 @@ public final class Palette {
 
             List<Swatch> swatches;
 
-            if (mBitmap != null) {
+            if (mBitmap != null || mHistogram != null) {
                 // We have a Bitmap so we need to use quantization to reduce the number of colors
 
-                // First we'll scale down the bitmap if needed
-                final Bitmap bitmap = scaleBitmapDown(mBitmap);
+                // First we'll get the histogram of the (scaled down) bitmap, unless it is cached
+                final Histogram histogram = generateHistogram();
 
                 if (logger != null) {
                     logger.addSplit("Processed Bitmap");
                 }
 
-                final Rect region = mRegion;
-                if (bitmap != mBitmap && region != null) {
-                    // If we have a scaled bitmap and a selected region, we need to scale down the
-                    // region to match the new scale
-                    final double scale = bitmap.getWidth() / (double) mBitmap.getWidth();
-                    region.left = (int) Math.floor(region.left * scale);
-                    region.top = (int) Math.floor(region.top * scale);
-                    region.right = Math.min((int) Math.ceil(region.right * scale),
-                            bitmap.getWidth());
-                    region.bottom = Math.min((int) Math.ceil(region.bottom * scale),
-                            bitmap.getHeight());
-                }
-
-                // Now generate a quantizer from the Bitmap
+                // Now generate a quantizer from the histogram
                 final ColorCutQuantizer quantizer = new ColorCutQuantizer(
-                        getPixelsFromBitmap(bitmap),
+                        histogram,
                         mMaxColors,
                         mFilters.isEmpty() ? null : mFilters.toArray(new Filter[mFilters.size()]));
 
-                // If created a new bitmap, recycle it
-                if (bitmap != mBitmap) {
-                    bitmap.recycle();
-                }
-
                 swatches = quantizer.getQuantizedColors();
 
                 if (logger != null) {
@@ -846,25 +1115,25 @@ public final class Palette {
                     }, mBitmap);
         }
 
-        private int[] getPixelsFromBitmap(Bitmap bitmap) {
+        private static int[] getPixelsFromBitmap(Bitmap bitmap, Rect region) {
             final int bitmapWidth = bitmap.getWidth();
             final int bitmapHeight = bitmap.getHeight();
             final int[] pixels = new int[bitmapWidth * bitmapHeight];
             bitmap.getPixels(pixels, 0, bitmapWidth, 0, 0, bitmapWidth, bitmapHeight);
 
-            if (mRegion == null) {
+            if (region == null) {
                 // If we don't have a region, return all of the pixels
                 return pixels;
             } else {
                 // If we do have a region, lets create a subset array containing only the region's
                 // pixels
-                final int regionWidth = mRegion.width();
-                final int regionHeight = mRegion.height();
+                final int regionWidth = region.width();
+                final int regionHeight = region.height();
                 // pixels contains all of the pixels, so we need to iterate through each row and
                 // copy the regions pixels into a new smaller array
                 final int[] subsetPixels = new int[regionWidth * regionHeight];
                 for (int row = 0; row < regionHeight; row++) {
-                    System.arraycopy(pixels, ((row + mRegion.top) * bitmapWidth) + mRegion.left,
+                    System.arraycopy(pixels, ((row + region.top) * bitmapWidth) + region.left,
                             subsetPixels, row * regionWidth, regionWidth);
                 }
                 return subsetPixels;
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v7.util;
+
+import junit.framework.TestCase;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import android.test.suitebuilder.annotation.LargeTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures {@link DiffUtil} on lists of 10k to 100k items with a small, realistic amount of
+ * churn (a server refresh of a feed), with and without move detection.
+ * <p>
+ * This is not run as part of the regular test suite; remove the {@link Ignore} annotation to
+ * run it locally.
+ */
+@Ignore("benchmark, run manually")
+@RunWith(JUnit4.class)
+@LargeTest
+public class DiffUtilBenchmark extends TestCase {
+
+    private static final int WARMUP_RUNS = 3;
+    private static final int MEASURED_RUNS = 5;
+
+    @Test
+    public void diff10k() {
+        benchmark(10000, 0.01f);
+    }
+
+    @Test
+    public void diff50k() {
+        benchmark(50000, 0.01f);
+    }
+
+    @Test
+    public void diff100k() {
+        benchmark(100000, 0.01f);
+    }
+
+    @Test
+    public void diff100kHighChurn() {
+        benchmark(100000, 0.05f);
+    }
+
+    private void benchmark(int size, float churn) {
+        final Random random = new Random(size);
+        final List<DiffUtilTest.Item> before = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            before.add(new DiffUtilTest.Item(i, 0));
+        }
+        final List<DiffUtilTest.Item> after = new ArrayList<>(before);
+        final int changes = (int) (size * churn);
+        int nextId = size;
+        for (int i = 0; i < changes; i++) {
+            switch (i % 4) {
+                case 0:
+                    after.add(random.nextInt(after.size() + 1), new DiffUtilTest.Item(nextId++, 0));
+                    break;
+                case 1:
+                    after.remove(random.nextInt(after.size()));
+                    break;
+                case 2:
+                    final int index = random.nextInt(after.size());
+                    after.set(index, new DiffUtilTest.Item(after.get(index).id, 1));
+                    break;
+                case 3:
+                    final DiffUtilTest.Item moved = after.remove(random.nextInt(after.size()));
+                    after.add(random.nextInt(after.size() + 1), moved);
+                    break;
+            }
+        }
+        report(size, churn, true, measure(before, after, true));
+        report(size, churn, false, measure(before, after, false));
+    }
+
+    private static long measure(List<DiffUtilTest.Item> before, List<DiffUtilTest.Item> after,
+            boolean detectMoves) {
+        final DiffUtilTest.ItemListCallback callback =
+                new DiffUtilTest.ItemListCallback(before, after);
+        final ListUpdateCallback sink = new ListUpdateCallback() {
+            @Override
+            public void onInserted(int position, int count) {
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+            }
+
+            @Override
+            public void onChanged(int position, int count, Object payload) {
+            }
+        };
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            DiffUtil.calculateDiff(callback, detectMoves).dispatchUpdatesTo(sink);
+        }
+        long total = 0;
+        for (int i = 0; i < MEASURED_RUNS; i++) {
+            final long start = System.nanoTime();
+            DiffUtil.calculateDiff(callback, detectMoves).dispatchUpdatesTo(sink);
+            total += System.nanoTime() - start;
+        }
+        return total / MEASURED_RUNS;
+    }
+
+    private static void report(int size, float churn, boolean detectMoves, long nanos) {
+        System.out.println(String.format("DiffUtil size=%d churn=%.2f detectMoves=%b: %.2f ms",
+                size, churn, detectMoves, nanos / 1000000f));
+    }
+}
@@ -0,0 +1,391 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v7.util;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+@RunWith(JUnit4.class)
+@SmallTest
+public class DiffUtilTest extends TestCase {
+
+    private static final Random sRand = new Random(System.nanoTime());
+
+    private final List<Item> mBefore = new ArrayList<>();
+    private final List<Item> mAfter = new ArrayList<>();
+    private int mIdCounter = 0;
+
+    @Test
+    public void testNoChange() {
+        initWithSize(5);
+        check();
+    }
+
+    @Test
+    public void testAddItems() {
+        initWithSize(2);
+        add(1);
+        check();
+    }
+
+    @Test
+    public void testAddToEmpty() {
+        initWithSize(0);
+        add(0);
+        check();
+    }
+
+    @Test
+    public void testRemoveAll() {
+        initWithSize(5);
+        mAfter.clear();
+        check();
+    }
+
+    @Test
+    public void testRemoveItems() {
+        initWithSize(5);
+        remove(3);
+        remove(0);
+        check();
+    }
+
+    @Test
+    public void testChangeItems() {
+        initWithSize(5);
+        update(2);
+        update(4);
+        check();
+    }
+
+    @Test
+    public void testMoveItem() {
+        initWithSize(5);
+        mAfter.add(0, mAfter.remove(4));
+        check();
+    }
+
+    @Test
+    public void testMoveAndChange() {
+        initWithSize(10);
+        Item item = mAfter.remove(7);
+        mAfter.add(1, new Item(item.id, item.content + 1));
+        check();
+    }
+
+    @Test
+    public void testMovesDetectedOnlyWhenEnabled() {
+        initWithSize(5);
+        mAfter.add(0, mAfter.remove(4));
+        final List<String> events = new ArrayList<>();
+        DiffUtil.calculateDiff(new ItemListCallback(mBefore, mAfter), false)
+                .dispatchUpdatesTo(new RecordingCallback(events));
+        for (String event : events) {
+            assertFalse("no moves expected " + events, event.startsWith("mv"));
+        }
+        events.clear();
+        DiffUtil.calculateDiff(new ItemListCallback(mBefore, mAfter), true)
+                .dispatchUpdatesTo(new RecordingCallback(events));
+        assertEquals(Collections.singletonList("mv 4 0"), events);
+    }
+
+    @Test
+    public void testSortedListCallbackContract() {
+        initWithSize(5);
+        update(1);
+        remove(3);
+        final List<String> events = new ArrayList<>();
+        DiffUtil.calculateDiff(mBefore, mAfter, new SortedList.Callback<Item>() {
+            @Override
+            public int compare(Item o1, Item o2) {
+                return o1.id - o2.id;
+            }
+
+            @Override
+            public void onInserted(int position, int count) {
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+            }
+
+            @Override
+            public void onChanged(int position, int count) {
+            }
+
+            @Override
+            public boolean areContentsTheSame(Item oldItem, Item newItem) {
+                return oldItem.content == newItem.content;
+            }
+
+            @Override
+            public boolean areItemsTheSame(Item item1, Item item2) {
+                return item1.id == item2.id;
+            }
+        }, true).dispatchUpdatesTo(new RecordingCallback(events));
+        assertEquals(2, events.size());
+        assertTrue(events.contains("rm 3 1"));
+        assertTrue(events.contains("ch 1 1"));
+    }
+
+    @Test
+    public void testRandom() {
+        for (int i = 0; i < 500; i++) {
+            mBefore.clear();
+            mAfter.clear();
+            initWithSize(sRand.nextInt(50));
+            final int ops = sRand.nextInt(20);
+            for (int j = 0; j < ops; j++) {
+                randomOperation();
+            }
+            check();
+        }
+    }
+
+    @Test
+    public void testLargeListWithFewChanges() {
+        // A refresh of a long feed, where about 1% of the items changed
+        initWithSize(10000);
+        for (int j = 0; j < 100; j++) {
+            randomOperation();
+        }
+        check();
+    }
+
+    private void randomOperation() {
+        final int op = sRand.nextInt(4);
+        switch (op) {
+            case 0:
+                add(sRand.nextInt(mAfter.size() + 1));
+                break;
+            case 1:
+                if (!mAfter.isEmpty()) {
+                    remove(sRand.nextInt(mAfter.size()));
+                }
+                break;
+            case 2:
+                if (!mAfter.isEmpty()) {
+                    update(sRand.nextInt(mAfter.size()));
+                }
+                break;
+            case 3:
+                if (!mAfter.isEmpty()) {
+                    Item item = mAfter.remove(sRand.nextInt(mAfter.size()));
+                    mAfter.add(sRand.nextInt(mAfter.size() + 1), item);
+                }
+                break;
+        }
+    }
+
+    private void initWithSize(int size) {
+        for (int i = 0; i < size; i++) {
+            Item item = new Item(mIdCounter++, 0);
+            mBefore.add(item);
+            mAfter.add(item);
+        }
+    }
+
+    private void add(int index) {
+        mAfter.add(index, new Item(mIdCounter++, 0));
+    }
+
+    private void remove(int index) {
+        mAfter.remove(index);
+    }
+
+    private void update(int index) {
+        Item item = mAfter.get(index);
+        mAfter.set(index, new Item(item.id, item.content + 1));
+    }
+
+    /**
+     * Applies the dispatched updates to a copy of the old list and verifies that the outcome is
+     * the new list, with and without move detection.
+     */
+    private void check() {
+        check(true);
+        check(false);
+    }
+
+    private void check(boolean detectMoves) {
+        final DiffUtil.DiffResult result = DiffUtil.calculateDiff(
+                new ItemListCallback(mBefore, mAfter), detectMoves);
+        final List<Item> applied = new ArrayList<>(mBefore);
+        result.dispatchUpdatesTo(new ListUpdateCallback() {
+            @Override
+            public void onInserted(int position, int count) {
+                for (int i = 0; i < count; i++) {
+                    applied.add(position, null);
+                }
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                for (int i = 0; i < count; i++) {
+                    applied.remove(position);
+                }
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                applied.add(toPosition, applied.remove(fromPosition));
+            }
+
+            @Override
+            public void onChanged(int position, int count, Object payload) {
+                for (int i = position; i < position + count; i++) {
+                    applied.set(i, findNew(applied.get(i).id));
+                }
+            }
+        });
+        assertEquals(mAfter.size(), applied.size());
+        for (int i = 0; i < applied.size(); i++) {
+            final Item item = applied.get(i);
+            if (item == null) {
+                // inserted slot
+                if (detectMoves) {
+                    assertFalse("a moved item was reported as insertion",
+                            containsId(mBefore, mAfter.get(i).id));
+                }
+                continue;
+            }
+            assertEquals("unexpected item at " + i, mAfter.get(i), item);
+        }
+    }
+
+    private Item findNew(int id) {
+        for (Item item : mAfter) {
+            if (item.id == id) {
+                return item;
+            }
+        }
+        throw new AssertionError("changed item " + id + " is not in the new list");
+    }
+
+    private static boolean containsId(List<Item> items, int id) {
+        for (Item item : items) {
+            if (item.id == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static class ItemListCallback extends DiffUtil.Callback {
+        final List<Item> mOld;
+        final List<Item> mNew;
+
+        ItemListCallback(List<Item> oldList, List<Item> newList) {
+            mOld = oldList;
+            mNew = newList;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOld.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNew.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOld.get(oldItemPosition).id == mNew.get(newItemPosition).id;
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOld.get(oldItemPosition).content == mNew.get(newItemPosition).content;
+        }
+    }
+
+    static class RecordingCallback implements ListUpdateCallback {
+        final List<String> mEvents;
+
+        RecordingCallback(List<String> events) {
+            mEvents = events;
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            mEvents.add("add " + position + " " + count);
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            mEvents.add("rm " + position + " " + count);
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            mEvents.add("mv " + fromPosition + " " + toPosition);
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+            mEvents.add("ch " + position + " " + count);
+        }
+    }
+
+    static class Item {
+        final int id;
+        final int content;
+
+        Item(int id, int content) {
+            this.id = id;
+            this.content = content;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Item item = (Item) o;
+            return id == item.id && content == item.content;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * id + content;
+        }
+
+        @Override
+        public String toString() {
+            return "Item{id=" + id + ", content=" + content + '}';
+        }
+    }
+}
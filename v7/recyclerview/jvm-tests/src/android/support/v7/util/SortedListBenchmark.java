@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v7.util;
+
+import junit.framework.TestCase;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import android.test.suitebuilder.annotation.LargeTest;
+
+import java.util.Random;
+
+/**
+ * Measures adding sync batches of 20k to 100k items to a {@link SortedList} of 100k items, using
+ * the same item and callback setup as {@link SortedListTest}. Compares:
+ * <ul>
+ * <li>{@link SortedList#add(Object)} in a batched loop,</li>
+ * <li>{@link SortedList#addAll(Object[], boolean)},</li>
+ * <li>{@link SortedList#prepareAddAll(Object[], boolean, boolean)} with and without parallel
+ * sort, reported separately from the following {@link SortedList#addAll(SortedList.PreparedItems)}
+ * which is the only part left for the main thread.</li>
+ * </ul>
+ * This is not run as part of the regular test suite; remove the {@link Ignore} annotation to
+ * run it locally.
+ */
+@Ignore("benchmark, run manually")
+@RunWith(JUnit4.class)
+@LargeTest
+public class SortedListBenchmark extends TestCase {
+
+    private static final int LIST_SIZE = 100000;
+    private static final int WARMUP_RUNS = 3;
+    private static final int MEASURED_RUNS = 5;
+
+    private static final SortedList.Callback<SortedListTest.Item> CALLBACK =
+            new SortedList.Callback<SortedListTest.Item>() {
+                @Override
+                public int compare(SortedListTest.Item o1, SortedListTest.Item o2) {
+                    return o1.cmpField < o2.cmpField ? -1 : (o1.cmpField == o2.cmpField ? 0 : 1);
+                }
+
+                @Override
+                public void onInserted(int position, int count) {
+                }
+
+                @Override
+                public void onRemoved(int position, int count) {
+                }
+
+                @Override
+                public void onMoved(int fromPosition, int toPosition) {
+                }
+
+                @Override
+                public void onChanged(int position, int count) {
+                }
+
+                @Override
+                public boolean areContentsTheSame(SortedListTest.Item oldItem,
+                        SortedListTest.Item newItem) {
+                    return oldItem.cmpField == newItem.cmpField && oldItem.data == newItem.data;
+                }
+
+                @Override
+                public boolean areItemsTheSame(SortedListTest.Item item1,
+                        SortedListTest.Item item2) {
+                    return item1.id == item2.id;
+                }
+            };
+
+    @Test
+    public void randomBatch20k() {
+        benchmark(20000, false);
+    }
+
+    @Test
+    public void randomBatch100k() {
+        benchmark(100000, false);
+    }
+
+    @Test
+    public void appendedBatch20k() {
+        benchmark(20000, true);
+    }
+
+    @Test
+    public void appendedBatch100k() {
+        benchmark(100000, true);
+    }
+
+    /**
+     * @param appended If true, most of the batch sorts after the existing items, as for a sync
+     *                 of newer records. Otherwise the batch is spread over the whole list.
+     */
+    private void benchmark(int batchSize, boolean appended) {
+        final Random random = new Random(batchSize);
+        final SortedListTest.Item[] existing = new SortedListTest.Item[LIST_SIZE];
+        for (int i = 0; i < LIST_SIZE; i++) {
+            existing[i] = new SortedListTest.Item(i, i * 2);
+            existing[i].data = 0;
+        }
+        final SortedListTest.Item[] batch = new SortedListTest.Item[batchSize];
+        for (int i = 0; i < batchSize; i++) {
+            final int id;
+            if (i % 10 == 0) {
+                // update an existing item
+                id = random.nextInt(LIST_SIZE);
+                batch[i] = new SortedListTest.Item(id, id * 2);
+            } else {
+                id = LIST_SIZE + i;
+                final int cmpField = appended ? LIST_SIZE * 2 + i
+                        : random.nextInt(LIST_SIZE) * 2 + 1;
+                batch[i] = new SortedListTest.Item(id, cmpField);
+            }
+            batch[i].data = 1;
+        }
+        final String name = (appended ? "appended" : "random") + " batch=" + batchSize;
+
+        long addLoop = 0;
+        long addAll = 0;
+        long prepare = 0;
+        long prepareParallel = 0;
+        long mergePrepared = 0;
+        for (int run = 0; run < WARMUP_RUNS + MEASURED_RUNS; run++) {
+            final boolean measured = run >= WARMUP_RUNS;
+
+            SortedList<SortedListTest.Item> list = createList(existing);
+            long start = System.nanoTime();
+            list.beginBatchedUpdates();
+            for (SortedListTest.Item item : batch) {
+                list.add(item);
+            }
+            list.endBatchedUpdates();
+            if (measured) {
+                addLoop += System.nanoTime() - start;
+            }
+
+            list = createList(existing);
+            start = System.nanoTime();
+            list.addAll(batch, false);
+            if (measured) {
+                addAll += System.nanoTime() - start;
+            }
+
+            list = createList(existing);
+            start = System.nanoTime();
+            list.prepareAddAll(batch, false, false);
+            if (measured) {
+                prepare += System.nanoTime() - start;
+            }
+
+            start = System.nanoTime();
+            SortedList.PreparedItems<SortedListTest.Item> prepared =
+                    list.prepareAddAll(batch, false, true);
+            if (measured) {
+                prepareParallel += System.nanoTime() - start;
+            }
+
+            start = System.nanoTime();
+            list.addAll(prepared);
+            if (measured) {
+                mergePrepared += System.nanoTime() - start;
+            }
+        }
+        report(name, "add loop", addLoop);
+        report(name, "addAll", addAll);
+        report(name, "prepareAddAll", prepare);
+        report(name, "prepareAddAll parallel", prepareParallel);
+        report(name, "addAll(prepared) on main thread", mergePrepared);
+    }
+
+    private static SortedList<SortedListTest.Item> createList(SortedListTest.Item[] items) {
+        SortedList<SortedListTest.Item> list =
+                new SortedList<SortedListTest.Item>(SortedListTest.Item.class, CALLBACK);
+        list.addAll(items, false);
+        return list;
+    }
+
+    private static void report(String name, String method, long totalNanos) {
+        System.out.println(String.format("SortedList %s %s: %.2f ms", name, method,
+                totalNanos / MEASURED_RUNS / 1000000f));
+    }
+}
@@ -23,14 +23,21 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
+import android.support.v4.content.ParallelExecutorCompat;
 import android.test.suitebuilder.annotation.SmallTest;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
 
 @RunWith(JUnit4.class)
 @SmallTest
@@ -706,6 +713,191 @@ public class SortedListTest extends TestCase {
         assertTrue(mAdditions.contains(new Pair(0, 6)));
     }
 
+    @Test
+    public void testPrepareAddAll() {
+        mList.addAll(createItems(0, 8, 2));
+        mAdditions.clear();
+
+        SortedList.PreparedItems<Item> prepared =
+                mList.prepareAddAll(shuffle(createItems(1, 19, 1)), false, false);
+        assertEquals(19, prepared.size());
+        assertEquals(0, mAdditions.size());
+        assertIntegrity(5, "prepareAddAll does not modify the list");
+
+        mList.addAll(prepared);
+        assertIntegrity(20, "addAll with prepared items");
+        // 1, 3, 5, 7 are inserted one by one, 9 to 19 in a single range
+        assertEquals(5, mAdditions.size());
+        for (int i = 1; i <= 7; i += 2) {
+            assertTrue(mAdditions.contains(new Pair(i, 1)));
+        }
+        assertTrue(mAdditions.contains(new Pair(9, 11)));
+        assertSequentialOrder();
+
+        try {
+            mList.addAll(prepared);
+            fail("prepared items can only be added once");
+        } catch (IllegalStateException e) {
+        }
+        SortedList<Item> other = new SortedList<Item>(Item.class, mCallback);
+        try {
+            other.addAll(mList.prepareAddAll(createItems(0, 1, 1), false, false));
+            fail("prepared items can only be added to the list that prepared them");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    @Test
+    public void testPrepareAddAllUpdates() {
+        Item[] evenItems = createItems(0, 8, 2);
+        mList.addAll(evenItems);
+        Item[] sequentialItems = createItems(0, 9, 1);
+        for (Item item : sequentialItems) {
+            item.data = -1;
+        }
+        mList.addAll(mList.prepareAddAll(sequentialItems, true, false));
+        assertEquals(6, mAdditions.size());
+        assertEquals(5, mUpdates.size());
+        for (int i = 0; i < 5; i++) {
+            assertTrue(mUpdates.contains(new Pair(i * 2, 1)));
+        }
+        assertIntegrity(10, "prepareAddAll updates");
+        for (int i = 0; i < 10; i++) {
+            assertEquals(-1, mList.get(i).data);
+        }
+    }
+
+    @Test
+    public void testPrepareAddAllParallelSort() {
+        final int count = 50000;
+        Item[] existing = createItems(0, count - 2, 2);
+        mList.addAll(existing);
+
+        // Every item twice, the second copy must win.
+        Item[] items = new Item[count * 2];
+        for (int i = 0; i < count; i++) {
+            items[i] = new Item(i, i);
+            items[i].data = 1;
+            items[count + i] = new Item(i, i);
+            items[count + i].data = 2;
+        }
+        Random random = new Random(1);
+        // Shuffle within each copy so that the copies keep their relative order.
+        for (int copy = 0; copy < 2; copy++) {
+            for (int i = count - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                Item tmp = items[copy * count + i];
+                items[copy * count + i] = items[copy * count + j];
+                items[copy * count + j] = tmp;
+            }
+        }
+        SortedList.PreparedItems<Item> prepared = mList.prepareAddAll(items, false, true);
+        assertEquals(count, prepared.size());
+        mList.addAll(prepared);
+        assertEquals(count, size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, mList.get(i).id);
+            assertEquals(2, mList.get(i).data);
+        }
+    }
+
+    @Test
+    public void testLargeBatchSameForEveryAddMethod() {
+        final int count = 20000;
+        final Item[] existing = new Item[count];
+        for (int i = 0; i < count; i++) {
+            existing[i] = new Item(i, i * 2);
+            existing[i].data = 0;
+        }
+        // Every tenth item updates an existing one, the others are inserted between them in a
+        // scattered order, without ties so that every method has a single valid outcome
+        final Random random = new Random(1);
+        final Item[] batch = new Item[count / 4];
+        for (int i = 0; i < batch.length; i++) {
+            if (i % 10 == 0) {
+                final int id = random.nextInt(count);
+                batch[i] = new Item(id, id * 2);
+            } else {
+                batch[i] = new Item(count + i, (i * 7919 % count) * 2 + 1);
+            }
+            batch[i].data = 1;
+        }
+
+        final SortedList<Item> addLoop = createList(existing);
+        addLoop.beginBatchedUpdates();
+        for (Item item : batch) {
+            addLoop.add(item);
+        }
+        addLoop.endBatchedUpdates();
+
+        final SortedList<Item> addAll = createList(existing);
+        addAll.addAll(batch, false);
+
+        final SortedList<Item> prepared = createList(existing);
+        prepared.addAll(prepared.prepareAddAll(batch, false, false));
+
+        final SortedList<Item> preparedParallel = createList(existing);
+        preparedParallel.addAll(preparedParallel.prepareAddAll(batch, false, true));
+
+        assertSameItems(addLoop, addAll);
+        assertSameItems(addLoop, prepared);
+        assertSameItems(addLoop, preparedParallel);
+    }
+
+    private SortedList<Item> createList(Item[] items) {
+        final SortedList<Item> list = new SortedList<Item>(Item.class, mCallback);
+        list.addAll(items, false);
+        return list;
+    }
+
+    private static void assertSameItems(SortedList<Item> expected, SortedList<Item> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals("item at " + i, expected.get(i), actual.get(i));
+            assertEquals("data at " + i, expected.get(i).data, actual.get(i).data);
+        }
+    }
+
+    @Test
+    public void testPrepareAddAllParallelSortOnSharedExecutor() throws Exception {
+        final int count = 50000;
+        final Executor executor = ParallelExecutorCompat.getParallelExecutor();
+        // Occupy threads of the shared executor as other tasks would, so chunks queued on it
+        // would wait behind the task which sorts
+        final CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 4; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        // Exit
+                    }
+                }
+            });
+        }
+        final FutureTask<SortedList.PreparedItems<Item>> task = new FutureTask<>(
+                new Callable<SortedList.PreparedItems<Item>>() {
+                    @Override
+                    public SortedList.PreparedItems<Item> call() {
+                        Item[] items = createItems(0, count - 1, 1);
+                        Collections.reverse(Arrays.asList(items));
+                        return mList.prepareAddAll(items, true, true);
+                    }
+                });
+        try {
+            executor.execute(task);
+            mList.addAll(task.get(10, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+        }
+        assertEquals(count, size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, mList.get(i).id);
+        }
+    }
+
     private int size() {
         return mList.size();
     }
@@ -18,10 +18,19 @@ package android.support.v7.util;
 
 import android.support.annotation.UiThread;
 import android.support.annotation.WorkerThread;
+import android.os.Build;
 import android.util.Log;
 import android.util.SparseBooleanArray;
 import android.util.SparseIntArray;
 
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * A utility class that supports asynchronous content loading.
  * <p>
@@ -36,8 +45,11 @@ import android.util.SparseIntArray;
  * {@link ViewCallback} when the data is loaded. It may load some extra items for smoother
  * scrolling.
  * <p>
- * Note that this class uses a single thread to load the data, so it suitable to load data from
- * secondary storage such as disk, but not from network.
+ * Note that by default this class uses a single thread to load the data, so it suitable to load
+ * data from secondary storage such as disk, but not from network. If loading a tile is slow, use
+ * {@link #AsyncListUtil(Class, int, DataCallback, ViewCallback, int)} to load several tiles in
+ * parallel. Tiles in the visible range are then loaded before tiles in the extended range, and
+ * queued tiles that leave the extended range are not loaded at all.
  * <p>
  * This class is designed to work with {@link android.support.v7.widget.RecyclerView}, but it does
  * not depend on it and can be used with other list views.
@@ -50,6 +62,8 @@ public class AsyncListUtil<T> {
 
     final Class<T> mTClass;
     final int mTileSize;
+    final int mLoaderThreadCount;
+    Executor mLoaderExecutor;
     final DataCallback<T> mDataCallback;
     final ViewCallback mViewCallback;
 
@@ -86,8 +100,54 @@ public class AsyncListUtil<T> {
      */
     public AsyncListUtil(Class<T> klass, int tileSize, DataCallback<T> dataCallback,
                          ViewCallback viewCallback) {
+        this(klass, tileSize, dataCallback, viewCallback, 1);
+    }
+
+    /**
+     * Creates an AsyncListUtil which loads up to <code>loaderThreadCount</code> tiles in
+     * parallel.
+     * <p>
+     * When more than one loader thread is used, {@link DataCallback#fillData} and
+     * {@link DataCallback#recycleData} may be called concurrently from several background
+     * threads, and concurrently with {@link DataCallback#refreshData()}, so they must be thread
+     * safe. Tiles loaded for a data set older than the last refresh are discarded.
+     *
+     * @param klass Class of the data item.
+     * @param tileSize Number of item per chunk loaded at once.
+     * @param dataCallback Data access callback.
+     * @param viewCallback Callback for querying visible item range and update notifications.
+     * @param loaderThreadCount Maximum number of tiles loaded at the same time.
+     */
+    public AsyncListUtil(Class<T> klass, int tileSize, DataCallback<T> dataCallback,
+                         ViewCallback viewCallback, int loaderThreadCount) {
+        this(klass, tileSize, dataCallback, viewCallback, loaderThreadCount, null);
+    }
+
+    /**
+     * Creates an AsyncListUtil which loads up to <code>loaderThreadCount</code> tiles in
+     * parallel on the given executor.
+     * <p>
+     * The executor is only used when <code>loaderThreadCount</code> is more than one. It must
+     * not run the tasks on the calling thread. If it is null, the tiles are loaded on threads
+     * owned by this AsyncListUtil, which stop when they are idle.
+     *
+     * @param klass Class of the data item.
+     * @param tileSize Number of item per chunk loaded at once.
+     * @param dataCallback Data access callback.
+     * @param viewCallback Callback for querying visible item range and update notifications.
+     * @param loaderThreadCount Maximum number of tiles loaded at the same time.
+     * @param loaderExecutor Executor which runs the tile loads, or null to use dedicated threads.
+     */
+    public AsyncListUtil(Class<T> klass, int tileSize, DataCallback<T> dataCallback,
+                         ViewCallback viewCallback, int loaderThreadCount,
+                         Executor loaderExecutor) {
+        if (loaderThreadCount < 1) {
+            throw new IllegalArgumentException("loaderThreadCount must be at least 1");
+        }
         mTClass = klass;
         mTileSize = tileSize;
+        mLoaderThreadCount = loaderThreadCount;
+        mLoaderExecutor = loaderExecutor;
         mDataCallback = dataCallback;
         mViewCallback = viewCallback;
 
@@ -100,6 +160,29 @@ public class AsyncListUtil<T> {
         refresh();
     }
 
+    /**
+     * Creates the executor used when none is given, with one thread per loader. Tile loads can
+     * block for a long time, so they do not run on a pool shared with other work.
+     */
+    private static Executor createLoaderExecutor(int threadCount) {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threadCount, threadCount, 1,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    private final AtomicInteger mCount = new AtomicInteger(1);
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        final Thread thread = new Thread(r,
+                                "AsyncListUtil loader #" + mCount.getAndIncrement());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        if (Build.VERSION.SDK_INT >= 9) {
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+
     private boolean isRefreshPending() {
         return mRequestedGeneration != mDisplayedGeneration;
     }
@@ -253,6 +336,8 @@ public class AsyncListUtil<T> {
                     index++;
                 }
             }
+            mViewCallback.onTileLoaded(tile.mStartPosition, tile.mItemCount,
+                    tile.mQueuedNanos, tile.mLoadNanos);
         }
 
         @Override
@@ -289,6 +374,9 @@ public class AsyncListUtil<T> {
     private final ThreadUtil.BackgroundCallback<T>
             mBackgroundCallback = new ThreadUtil.BackgroundCallback<T>() {
 
+        // Guards the loading state below when tiles are loaded by several threads.
+        private final Object mLock = new Object();
+
         private TileList.Tile<T> mRecycledRoot;
 
         final SparseBooleanArray mLoadedTiles = new SparseBooleanArray();
@@ -299,12 +387,31 @@ public class AsyncListUtil<T> {
         private int mFirstRequiredTileStart;
         private int mLastRequiredTileStart;
 
+        private int mFirstVisibleTileStart;
+        private int mLastVisibleTileStart;
+        private int mScrollHint;
+
+        // Used only with more than one loader thread.
+        private final ArrayList<TileRequest> mPendingRequests = new ArrayList<TileRequest>();
+        private final SparseBooleanArray mRequestedTiles = new SparseBooleanArray();
+        private TileRequest mRecycledRequestRoot;
+        private int mActiveLoaderCount;
+
         @Override
         public void refresh(int generation) {
-            mGeneration = generation;
-            mLoadedTiles.clear();
-            mItemCount = mDataCallback.refreshData();
-            mMainThreadProxy.updateItemCount(mGeneration, mItemCount);
+            synchronized (mLock) {
+                mGeneration = generation;
+                mLoadedTiles.clear();
+                cancelPendingRequests();
+                // Tiles of the previous generation that are still being loaded are discarded
+                // as they complete.
+                mRequestedTiles.clear();
+            }
+            final int itemCount = mDataCallback.refreshData();
+            synchronized (mLock) {
+                mItemCount = itemCount;
+            }
+            mMainThreadProxy.updateItemCount(generation, itemCount);
         }
 
         @Override
@@ -322,8 +429,14 @@ public class AsyncListUtil<T> {
             final int firstVisibleTileStart = getTileStart(rangeStart);
             final int lastVisibleTileStart = getTileStart(rangeEnd);
 
-            mFirstRequiredTileStart = getTileStart(extRangeStart);
-            mLastRequiredTileStart = getTileStart(extRangeEnd);
+            synchronized (mLock) {
+                mFirstVisibleTileStart = firstVisibleTileStart;
+                mLastVisibleTileStart = lastVisibleTileStart;
+                mScrollHint = scrollHint;
+                mFirstRequiredTileStart = getTileStart(extRangeStart);
+                mLastRequiredTileStart = getTileStart(extRangeEnd);
+                cancelRequestsOutOfRange();
+            }
             if (DEBUG) {
                 log("requesting tile range: %d..%d",
                         mFirstRequiredTileStart, mLastRequiredTileStart);
@@ -359,16 +472,23 @@ public class AsyncListUtil<T> {
 
         @Override
         public void loadTile(int position, int scrollHint) {
+            if (mLoaderThreadCount > 1) {
+                enqueueTile(position);
+                return;
+            }
             if (isTileLoaded(position)) {
                 if (DEBUG) {
                     log("already loaded tile @%d", position);
                 }
                 return;
             }
+            final long startNanos = System.nanoTime();
             TileList.Tile<T> tile = acquireTile();
             tile.mStartPosition = position;
             tile.mItemCount = Math.min(mTileSize, mItemCount - tile.mStartPosition);
             mDataCallback.fillData(tile.mItems, tile.mStartPosition, tile.mItemCount);
+            tile.mQueuedNanos = 0;
+            tile.mLoadNanos = System.nanoTime() - startNanos;
             flushTileCache(scrollHint);
             addTile(tile);
         }
@@ -380,15 +500,19 @@ public class AsyncListUtil<T> {
             }
             mDataCallback.recycleData(tile.mItems, tile.mItemCount);
 
-            tile.mNext = mRecycledRoot;
-            mRecycledRoot = tile;
+            synchronized (mLock) {
+                tile.mNext = mRecycledRoot;
+                mRecycledRoot = tile;
+            }
         }
 
         private TileList.Tile<T> acquireTile() {
-            if (mRecycledRoot != null) {
-                TileList.Tile<T> result = mRecycledRoot;
-                mRecycledRoot = mRecycledRoot.mNext;
-                return result;
+            synchronized (mLock) {
+                if (mRecycledRoot != null) {
+                    TileList.Tile<T> result = mRecycledRoot;
+                    mRecycledRoot = mRecycledRoot.mNext;
+                    return result;
+                }
             }
             return new TileList.Tile<T>(mTClass, mTileSize);
         }
@@ -433,11 +557,168 @@ public class AsyncListUtil<T> {
             }
         }
 
+        private void enqueueTile(int position) {
+            synchronized (mLock) {
+                if (isTileLoaded(position) || mRequestedTiles.get(position)) {
+                    if (DEBUG) {
+                        log("already loaded or loading tile @%d", position);
+                    }
+                    return;
+                }
+                TileRequest request = mRecycledRequestRoot;
+                if (request != null) {
+                    mRecycledRequestRoot = request.mNext;
+                    request.mNext = null;
+                } else {
+                    request = new TileRequest();
+                }
+                request.mStartPosition = position;
+                request.mGeneration = mGeneration;
+                request.mRequestNanos = System.nanoTime();
+                mPendingRequests.add(request);
+                mRequestedTiles.put(position, true);
+                if (mActiveLoaderCount < mLoaderThreadCount
+                        && mActiveLoaderCount < mPendingRequests.size()) {
+                    mActiveLoaderCount++;
+                    if (mLoaderExecutor == null) {
+                        mLoaderExecutor = createLoaderExecutor(mLoaderThreadCount);
+                    }
+                    mLoaderExecutor.execute(mLoaderRunnable);
+                }
+            }
+        }
+
+        /**
+         * Removes and returns the queued request with the highest priority. Tiles in the visible
+         * range come first, in the scroll direction. Other tiles are ordered by their distance to
+         * the visible range, favoring the scroll direction on ties.
+         */
+        private TileRequest nextRequest() {
+            final int size = mPendingRequests.size();
+            if (size == 0) {
+                return null;
+            }
+            int bestIndex = 0;
+            int bestPriority = Integer.MAX_VALUE;
+            for (int i = 0; i < size; i++) {
+                final int priority = getPriority(mPendingRequests.get(i).mStartPosition);
+                if (priority < bestPriority) {
+                    bestPriority = priority;
+                    bestIndex = i;
+                }
+            }
+            return mPendingRequests.remove(bestIndex);
+        }
+
+        private int getPriority(int tileStart) {
+            final boolean descending = mScrollHint == ViewCallback.HINT_SCROLL_DESC;
+            if (tileStart >= mFirstVisibleTileStart && tileStart <= mLastVisibleTileStart) {
+                return descending ? mLastVisibleTileStart - tileStart
+                        : tileStart - mFirstVisibleTileStart;
+            }
+            final int visibleTileCount =
+                    (mLastVisibleTileStart - mFirstVisibleTileStart) / mTileSize + 1;
+            final boolean before = tileStart < mFirstVisibleTileStart;
+            final int distance = before ? (mFirstVisibleTileStart - tileStart) / mTileSize
+                    : (tileStart - mLastVisibleTileStart) / mTileSize;
+            final boolean inScrollDirection = descending == before;
+            return (visibleTileCount + distance) * 2 + (inScrollDirection ? 0 : 1);
+        }
+
+        private boolean isInRequiredRange(int tileStart) {
+            return tileStart >= mFirstRequiredTileStart && tileStart <= mLastRequiredTileStart;
+        }
+
+        private void cancelRequestsOutOfRange() {
+            for (int i = mPendingRequests.size() - 1; i >= 0; i--) {
+                final TileRequest request = mPendingRequests.get(i);
+                if (!isInRequiredRange(request.mStartPosition)) {
+                    if (DEBUG) {
+                        log("cancelled tile @%d", request.mStartPosition);
+                    }
+                    mPendingRequests.remove(i);
+                    mRequestedTiles.delete(request.mStartPosition);
+                    recycleRequest(request);
+                }
+            }
+        }
+
+        private void cancelPendingRequests() {
+            for (int i = mPendingRequests.size() - 1; i >= 0; i--) {
+                final TileRequest request = mPendingRequests.remove(i);
+                mRequestedTiles.delete(request.mStartPosition);
+                recycleRequest(request);
+            }
+        }
+
+        private void recycleRequest(TileRequest request) {
+            request.mNext = mRecycledRequestRoot;
+            mRecycledRequestRoot = request;
+        }
+
+        private final Runnable mLoaderRunnable = new Runnable() {
+            @Override
+            public void run() {
+                while (true) {
+                    final int position;
+                    final int generation;
+                    final int itemCount;
+                    final long requestNanos;
+                    synchronized (mLock) {
+                        final TileRequest request = nextRequest();
+                        if (request == null) {
+                            mActiveLoaderCount--;
+                            return;
+                        }
+                        position = request.mStartPosition;
+                        generation = request.mGeneration;
+                        requestNanos = request.mRequestNanos;
+                        itemCount = Math.min(mTileSize, mItemCount - position);
+                        recycleRequest(request);
+                    }
+                    final long startNanos = System.nanoTime();
+                    final TileList.Tile<T> tile = acquireTile();
+                    tile.mStartPosition = position;
+                    tile.mItemCount = itemCount;
+                    mDataCallback.fillData(tile.mItems, position, itemCount);
+                    tile.mQueuedNanos = startNanos - requestNanos;
+                    tile.mLoadNanos = System.nanoTime() - startNanos;
+                    boolean added = false;
+                    synchronized (mLock) {
+                        if (generation == mGeneration) {
+                            mRequestedTiles.delete(position);
+                            if (isInRequiredRange(position)) {
+                                flushTileCache(mScrollHint);
+                                addTile(tile);
+                                added = true;
+                            }
+                        }
+                    }
+                    if (!added) {
+                        if (DEBUG) {
+                            log("discarding tile @%d, out of range or stale", position);
+                        }
+                        recycleTile(tile);
+                    }
+                }
+            }
+        };
+
         private void log(String s, Object... args) {
             Log.d(TAG, "[BKGR] " + String.format(s, args));
         }
     };
 
+    /**
+     * A queued tile load, used when tiles are loaded by several threads.
+     */
+    private static class TileRequest {
+        int mStartPosition;
+        int mGeneration;
+        long mRequestNanos;
+        TileRequest mNext;  // Used only for pooling recycled requests.
+    }
+
     /**
      * The callback that provides data access for {@link AsyncListUtil}.
      *
@@ -588,5 +869,21 @@ public class AsyncListUtil<T> {
          */
         @UiThread
         public abstract void onItemLoaded(int position);
+
+        /**
+         * Called when a tile is loaded, with the time it took to load it.
+         * <p>
+         * This can be used to monitor the latency of {@link DataCallback#fillData}. The default
+         * implementation does nothing.
+         *
+         * @param startPosition Position of the first item of the tile.
+         * @param itemCount Number of items in the tile.
+         * @param queuedNanos Time the tile waited for a free loader thread, in nanoseconds.
+         * @param loadNanos Time spent in {@link DataCallback#fillData}, in nanoseconds.
+         */
+        @UiThread
+        public void onTileLoaded(int startPosition, int itemCount, long queuedNanos,
+                long loadNanos) {
+        }
     }
 }
@@ -20,6 +20,12 @@ import java.lang.reflect.Array;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A Sorted list implementation that can keep items in order and also notify for changes in the
@@ -46,6 +52,27 @@ public class SortedList<T> {
     private static final int INSERTION = 1;
     private static final int DELETION = 1 << 1;
     private static final int LOOKUP = 1 << 2;
+    /**
+     * Minimum number of items per thread for {@link #prepareAddAll(Object[], boolean, boolean)}
+     * to sort on several threads.
+     */
+    private static final int MIN_PARALLEL_SORT_CHUNK = 4096;
+    private static final int MAX_PARALLEL_SORT_THREADS = 4;
+    /**
+     * Sorts the chunks of {@link #parallelSort(Object[], Comparator)}. It is not shared with
+     * other code, and runs chunks on the calling thread when all its threads are busy instead of
+     * queueing them, so a sort never waits for a chunk stuck behind the thread which sorts.
+     */
+    private static final Executor sParallelSortExecutor = new ThreadPoolExecutor(0,
+            MAX_PARALLEL_SORT_THREADS - 1, 1, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "SortedList sort");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            }, new ThreadPoolExecutor.CallerRunsPolicy());
     T[] mData;
 
     /**
@@ -185,7 +212,83 @@ public class SortedList<T> {
         addAll(items.toArray(copy), true);
     }
 
+    /**
+     * Sorts and deduplicates the given items so that they can later be added to this list with
+     * {@link #addAll(PreparedItems)}.
+     * <p>
+     * This is the expensive part of {@link #addAll(Object[], boolean)}. Unlike the other methods
+     * of SortedList, it does not access the contents of the list, so it can be called on a
+     * background thread while the list is being used on the main thread, as long as
+     * {@link Callback#compare(Object, Object)} and
+     * {@link Callback#areItemsTheSame(Object, Object)} can be called from that thread. Only the
+     * linear merge with the current contents of the list is left for
+     * {@link #addAll(PreparedItems)}.
+     *
+     * @param items Array of items to be added into the list.
+     * @param mayModifyInput If true, SortedList is allowed to modify the input and take the
+     *                       ownership over it.
+     * @param parallelSort If true, large inputs are sorted on several threads. The calling thread
+     *                     waits until sorting completes.
+     * @return The prepared items, to be passed to {@link #addAll(PreparedItems)}.
+     */
+    public PreparedItems<T> prepareAddAll(T[] items, boolean mayModifyInput,
+            boolean parallelSort) {
+        final Callback callback = mCallback;
+        T[] sorted;
+        if (mayModifyInput) {
+            sorted = items;
+        } else {
+            sorted = (T[]) Array.newInstance(mTClass, items.length);
+            System.arraycopy(items, 0, sorted, 0, items.length);
+        }
+        int size = 0;
+        if (sorted.length > 0) {
+            if (parallelSort) {
+                parallelSort(sorted, callback);
+            } else {
+                Arrays.sort(sorted, callback);  // Arrays.sort is stable.
+            }
+            size = deduplicate(sorted, callback);
+        }
+        return new PreparedItems<T>(this, sorted, size);
+    }
+
+    /**
+     * Adds items that were sorted and deduplicated by
+     * {@link #prepareAddAll(Object[], boolean, boolean)} to the list. Equivalent to
+     * {@link #addAll(Object[], boolean)}, but only merges the items into the list, dispatching
+     * consecutive insertions as a single {@link Callback#onInserted(int, int)} call.
+     * <p>
+     * Prepared items can only be added once, to the list that prepared them.
+     *
+     * @param preparedItems Items returned by {@link #prepareAddAll(Object[], boolean, boolean)}.
+     */
+    public void addAll(PreparedItems<T> preparedItems) {
+        throwIfMerging();
+        if (preparedItems.mOwner != this) {
+            throw new IllegalArgumentException("Items were prepared by another SortedList");
+        }
+        final T[] items = preparedItems.mItems;
+        if (items == null) {
+            throw new IllegalStateException("Prepared items were already added");
+        }
+        preparedItems.mItems = null;
+        if (preparedItems.mSize == 0) {
+            return;
+        }
+        addAllSorted(items, preparedItems.mSize);
+    }
+
     private void addAllInternal(T[] newItems) {
+        Arrays.sort(newItems, mCallback);  // Arrays.sort is stable.
+        final int newSize = deduplicate(newItems, mCallback);
+        addAllSorted(newItems, newSize);
+    }
+
+    /**
+     * This method assumes that newItems are sorted and deduplicated.
+     */
+    private void addAllSorted(T[] newItems, int newSize) {
         final boolean forceBatchedUpdates = !(mCallback instanceof BatchedCallback);
         if (forceBatchedUpdates) {
             beginBatchedUpdates();
@@ -195,9 +298,6 @@ public class SortedList<T> {
         mOldDataStart = 0;
         mOldDataSize = mSize;
 
-        Arrays.sort(newItems, mCallback);  // Arrays.sort is stable.
-
-        final int newSize = deduplicate(newItems);
         if (mSize == 0) {
             mData = newItems;
             mSize = newSize;
@@ -220,7 +320,7 @@ public class SortedList<T> {
      *
      * @return Number of deduplicated items at the beginning of the array.
      */
-    private int deduplicate(T[] items) {
+    private static <T> int deduplicate(T[] items, Callback callback) {
         if (items.length == 0) {
             throw new IllegalArgumentException("Input array must be non-empty");
         }
@@ -233,14 +333,15 @@ public class SortedList<T> {
         for (int i = 1; i < items.length; ++i) {
             T currentItem = items[i];
 
-            int compare = mCallback.compare(items[rangeStart], currentItem);
+            int compare = callback.compare(items[rangeStart], currentItem);
             if (compare > 0) {
                 throw new IllegalArgumentException("Input must be sorted in ascending order.");
             }
 
             if (compare == 0) {
                 // The range of equal items continues, update it.
-                final int sameItemPos = findSameItem(currentItem, items, rangeStart, rangeEnd);
+                final int sameItemPos = findSameItem(currentItem, items, rangeStart, rangeEnd,
+                        callback);
                 if (sameItemPos != INVALID_POSITION) {
                     // Replace the duplicate item.
                     items[sameItemPos] = currentItem;
@@ -263,9 +364,10 @@ public class SortedList<T> {
     }
 
 
-    private int findSameItem(T item, T[] items, int from, int to) {
+    private static <T> int findSameItem(T item, T[] items, int from, int to,
+            Callback callback) {
         for (int pos = from; pos < to; pos++) {
-            if (mCallback.areItemsTheSame(items[pos], item)) {
+            if (callback.areItemsTheSame(items[pos], item)) {
                 return pos;
             }
         }
@@ -304,11 +406,21 @@ public class SortedList<T> {
             T newItem = newData[newDataStart];
             int compare = mCallback.compare(oldItem, newItem);
             if (compare > 0) {
-                // New item is lower, output it.
-                mData[mMergedSize++] = newItem;
-                mSize++;
-                newDataStart++;
-                mCallback.onInserted(mMergedSize - 1, 1);
+                // New item is lower, output it along with all new items lower than the old one.
+                final int newDataEnd = findRunEnd(oldItem, newData, newDataStart, newDataSize);
+                final int itemCount = newDataEnd - newDataStart;
+                System.arraycopy(newData, newDataStart, mData, mMergedSize, itemCount);
+                mMergedSize += itemCount;
+                mSize += itemCount;
+                newDataStart = newDataEnd;
+                mCallback.onInserted(mMergedSize - itemCount, itemCount);
+            } else if (compare < 0) {
+                // Old item is lower, output it along with all old items lower than the new one.
+                final int oldDataEnd = findRunEnd(newItem, mOldData, mOldDataStart, mOldDataSize);
+                final int itemCount = oldDataEnd - mOldDataStart;
+                System.arraycopy(mOldData, mOldDataStart, mData, mMergedSize, itemCount);
+                mMergedSize += itemCount;
+                mOldDataStart = oldDataEnd;
             } else if (compare == 0 && mCallback.areItemsTheSame(oldItem, newItem)) {
                 // Items are the same. Output the new item, but consume both.
                 mData[mMergedSize++] = newItem;
@@ -318,7 +430,7 @@ public class SortedList<T> {
                     mCallback.onChanged(mMergedSize - 1, 1);
                 }
             } else {
-                // Old item is lower than or equal to (but not the same as the new). Output it.
+                // Old item is equal to (but not the same as the new). Output it.
                 // New item with the same sort order will be inserted later.
                 mData[mMergedSize++] = oldItem;
                 mOldDataStart++;
@@ -326,6 +438,132 @@ public class SortedList<T> {
         }
     }
 
+    /**
+     * Returns the end of the run of items starting at {@code start} that are lower than the
+     * pivot. Assumes that {@code data[start]} is lower than the pivot.
+     * <p>
+     * Gallops forward before doing a binary search, so short runs need few comparisons.
+     */
+    private int findRunEnd(T pivot, T[] data, int start, int end) {
+        int lastLower = start;
+        int step = 1;
+        int high = start + step;
+        while (high < end && mCallback.compare(data[high], pivot) < 0) {
+            lastLower = high;
+            step <<= 1;
+            high = start + step;
+        }
+        if (high > end) {
+            high = end;
+        }
+        int low = lastLower + 1;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (mCallback.compare(data[middle], pivot) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Stable sort which sorts chunks of large arrays on several threads before merging them.
+     */
+    private static <T> void parallelSort(final T[] items, final Comparator<? super T> comparator) {
+        final int threadCount = Math.min(MAX_PARALLEL_SORT_THREADS,
+                Math.min(Runtime.getRuntime().availableProcessors(),
+                        items.length / MIN_PARALLEL_SORT_CHUNK));
+        if (threadCount < 2) {
+            Arrays.sort(items, comparator);
+            return;
+        }
+        final int[] bounds = new int[threadCount + 1];
+        for (int i = 0; i <= threadCount; i++) {
+            bounds[i] = (int) ((long) items.length * i / threadCount);
+        }
+        final Executor executor = sParallelSortExecutor;
+        final RuntimeException[] failure = new RuntimeException[1];
+        final CountDownLatch sorted = new CountDownLatch(threadCount - 1);
+        for (int i = 1; i < threadCount; i++) {
+            final int from = bounds[i];
+            final int to = bounds[i + 1];
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Arrays.sort(items, from, to, comparator);
+                    } catch (RuntimeException e) {
+                        synchronized (failure) {
+                            failure[0] = e;
+                        }
+                    } finally {
+                        sorted.countDown();
+                    }
+                }
+            });
+        }
+        Arrays.sort(items, bounds[0], bounds[1], comparator);
+        awaitUninterruptibly(sorted);
+        synchronized (failure) {
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+        }
+
+        // Merge neighbouring chunks until a single one is left, preferring the left chunk on
+        // ties to keep the sort stable.
+        T[] source = items;
+        T[] target = (T[]) Array.newInstance(items.getClass().getComponentType(), items.length);
+        for (int width = 1; width < threadCount; width *= 2) {
+            for (int i = 0; i < threadCount; i += 2 * width) {
+                final int from = bounds[i];
+                final int middle = bounds[Math.min(i + width, threadCount)];
+                final int to = bounds[Math.min(i + 2 * width, threadCount)];
+                mergeRuns(source, from, middle, to, target, comparator);
+            }
+            T[] tmp = source;
+            source = target;
+            target = tmp;
+        }
+        if (source != items) {
+            System.arraycopy(source, 0, items, 0, items.length);
+        }
+    }
+
+    private static <T> void mergeRuns(T[] source, int from, int middle, int to, T[] target,
+            Comparator<? super T> comparator) {
+        int left = from;
+        int right = middle;
+        int out = from;
+        while (left < middle && right < to) {
+            if (comparator.compare(source[right], source[left]) < 0) {
+                target[out++] = source[right++];
+            } else {
+                target[out++] = source[left++];
+            }
+        }
+        System.arraycopy(source, left, target, out, middle - left);
+        out += middle - left;
+        System.arraycopy(source, right, target, out, to - right);
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     private void throwIfMerging() {
         if (mOldData != null) {
             throw new IllegalStateException("Cannot call this method from within addAll");
@@ -673,6 +911,31 @@ public class SortedList<T> {
         mCallback.onRemoved(0, prevSize);
     }
 
+    /**
+     * Items sorted and deduplicated by {@link SortedList#prepareAddAll(Object[], boolean,
+     * boolean)}, ready to be added to the SortedList that prepared them.
+     *
+     * @see SortedList#addAll(PreparedItems)
+     */
+    public static class PreparedItems<T> {
+        final SortedList<T> mOwner;
+        T[] mItems;
+        final int mSize;
+
+        PreparedItems(SortedList<T> owner, T[] items, int size) {
+            mOwner = owner;
+            mItems = items;
+            mSize = size;
+        }
+
+        /**
+         * @return The number of items left after deduplication.
+         */
+        public int size() {
+            return mSize;
+        }
+    }
+
     /**
      * The class that controls the behavior of the {@link SortedList}.
      * <p>
@@ -681,7 +944,7 @@ public class SortedList<T> {
      * SortedList calls the callback methods on this class to notify changes about the underlying
      * data.
      */
-    public static abstract class Callback<T2> implements Comparator<T2> {
+    public static abstract class Callback<T2> implements Comparator<T2>, ListUpdateCallback {
 
         /**
          * Similar to {@link java.util.Comparator#compare(Object, Object)}, should compare two and
@@ -728,6 +991,11 @@ public class SortedList<T> {
          */
         abstract public void onChanged(int position, int count);
 
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+            onChanged(position, count);
+        }
+
         /**
          * Called by the SortedList when it wants to check whether two items have the same data
          * or not. SortedList uses this information to decide whether it should call
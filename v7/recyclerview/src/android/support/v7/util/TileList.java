@@ -87,6 +87,8 @@ class TileList<T> {
         public final T[] mItems;
         public int mStartPosition;
         public int mItemCount;
+        long mQueuedNanos;
+        long mLoadNanos;
         Tile<T> mNext;  // Used only for pooling recycled tiles.
 
         public Tile(Class<T> klass, int size) {
@@ -494,6 +494,33 @@ public class GridLayoutManager extends LinearLayoutManager {
         return mSpanSizeLookup.getSpanSize(adapterPosition);
     }
 
+    @Override
+    int getItemPrefetchCount() {
+        return mSpanCount;
+    }
+
+    @Override
+    int gatherPrefetchIndicesForLayoutState(RecyclerView.State state, LayoutState layoutState,
+            int[] outIndices) {
+        // Mirrors the row filling logic of layoutChunk, without acquiring any views. Span
+        // indices are not resolved so the chunk may spill into the row after the next one, which
+        // is harmless for prefetch.
+        int remainingSpan = mSpanCount;
+        int count = 0;
+        int pos = layoutState.mCurrentPosition;
+        while (count < mSpanCount && pos >= 0 && pos < state.getItemCount()
+                && remainingSpan > 0) {
+            remainingSpan -= mSpanSizeLookup.getSpanSize(pos);
+            if (remainingSpan < 0 && count > 0) {
+                break; // item would not fit into this row or column
+            }
+            outIndices[count] = pos;
+            count++;
+            pos += layoutState.mItemDirection;
+        }
+        return count;
+    }
+
     @Override
     void layoutChunk(RecyclerView.Recycler recycler, RecyclerView.State state,
             LayoutState layoutState, LayoutChunkResult result) {
@@ -57,8 +57,8 @@ import android.support.v7.widget.RecyclerView.ItemAnimator.ItemHolderInfo;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.util.SparseArray;
-import android.util.SparseIntArray;
 import android.util.TypedValue;
+import android.view.Display;
 import android.view.FocusFinder;
 import android.view.MotionEvent;
 import android.view.VelocityTracker;
@@ -75,8 +75,10 @@ import java.lang.annotation.RetentionPolicy;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static android.support.v7.widget.AdapterHelper.Callback;
 import static android.support.v7.widget.AdapterHelper.UpdateOp;
@@ -175,6 +177,13 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
      */
     static final boolean ALLOW_SIZE_IN_UNSPECIFIED_SPEC = Build.VERSION.SDK_INT >= 23;
 
+    /**
+     * Prefetching relies on the RenderThread to draw the previous frame while the UI thread is
+     * idle and waiting for the next VSYNC. Before L, drawing happens on the UI thread so there is
+     * no idle time to use.
+     */
+    static final boolean ALLOW_PREFETCHING = Build.VERSION.SDK_INT >= 21;
+
     static final boolean DISPATCH_TEMP_DETACH = false;
     public static final int HORIZONTAL = 0;
     public static final int VERTICAL = 1;
@@ -251,6 +260,24 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
      * >Try increasing your pool size and item cache size.
      */
     private static final String TRACE_CREATE_VIEW_TAG = "RV CreateView";
+
+    /**
+     * RecyclerView is creating and binding Views ahead of time, in the idle time between frames.
+     * If this is taking a lot of time, the prefetched items are probably expensive to create or
+     * bind. Prefetch work is abandoned if it cannot finish before the next frame is due.
+     */
+    private static final String TRACE_PREFETCH_TAG = "RV Prefetch";
+
+    /**
+     * Minimum time that must remain before the next frame for a prefetch pass to start.
+     */
+    private static final long MIN_PREFETCH_TIME_NANOS = TimeUnit.MILLISECONDS.toNanos(4);
+
+    /**
+     * Interval between frames of the default display, shared by all RecyclerViews. Computed
+     * lazily on first attach since querying the refresh rate is a binder call.
+     */
+    static long sFrameIntervalNanos = 0;
     private static final Class<?>[] LAYOUT_MANAGER_CONSTRUCTOR_SIGNATURE =
             new Class[]{Context.class, AttributeSet.class, int.class, int.class};
 
@@ -312,6 +339,8 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
     private Adapter mAdapter;
     @VisibleForTesting LayoutManager mLayout;
     private RecyclerListener mRecyclerListener;
+    private final PerformanceStats mPerformanceStats = new PerformanceStats();
+    private PerformanceListener mPerformanceListener;
     private final ArrayList<ItemDecoration> mItemDecorations = new ArrayList<>();
     private final ArrayList<OnItemTouchListener> mOnItemTouchListeners =
             new ArrayList<>();
@@ -393,6 +422,8 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
 
     private final ViewFlinger mViewFlinger = new ViewFlinger();
 
+    final ViewPrefetcher mViewPrefetcher = ALLOW_PREFETCHING ? new ViewPrefetcher() : null;
+
     final State mState = new State();
 
     private OnScrollListener mScrollListener;
@@ -975,6 +1006,33 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
         mRecyclerListener = listener;
     }
 
+    /**
+     * Register a listener that will be notified with the duration of every ViewHolder creation,
+     * ViewHolder bind and layout pass of this RecyclerView.
+     * <p>
+     * The listener is called on the UI thread, right after the measured work completes, so
+     * implementations should be cheap and should not allocate.
+     *
+     * @param listener Listener to register, or null to clear
+     * @see #getPerformanceStats()
+     */
+    public void setPerformanceListener(PerformanceListener listener) {
+        mPerformanceListener = listener;
+    }
+
+    /**
+     * Returns the statistics this RecyclerView collected about ViewHolder creation and binding,
+     * where reused ViewHolders came from and how long its layout passes took.
+     * <p>
+     * The returned object is updated live as the RecyclerView works. Collecting these numbers
+     * does not allocate once every view type has been seen, so they are always available.
+     *
+     * @return The performance statistics of this RecyclerView.
+     */
+    public PerformanceStats getPerformanceStats() {
+        return mPerformanceStats;
+    }
+
     /**
      * <p>Return the offset of the RecyclerView's text baseline from the its top
      * boundary. If the LayoutManager of this RecyclerView does not support baseline alignment,
@@ -1070,6 +1128,7 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
                 mLayout.dispatchAttachedToWindow(this);
             }
         }
+        mRecycler.updateViewCacheSize();
         requestLayout();
     }
 
@@ -2293,6 +2352,19 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
             mLayout.dispatchAttachedToWindow(this);
         }
         mPostedAnimatorRunner = false;
+
+        if (ALLOW_PREFETCHING && sFrameIntervalNanos == 0) {
+            // We only query the display/refresh rate once, since it's an expensive binder call
+            float refreshRate = 60.0f;
+            Display display = getDisplay();
+            if (!isInEditMode() && display != null) {
+                float displayRefreshRate = display.getRefreshRate();
+                if (displayRefreshRate >= 30.0f) {
+                    refreshRate = displayRefreshRate;
+                }
+            }
+            sFrameIntervalNanos = (long) (1000000000 / refreshRate);
+        }
     }
 
     @Override
@@ -2308,6 +2380,9 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
         }
         removeCallbacks(mItemAnimatorRunner);
         mViewInfoStore.onDetach();
+        if (ALLOW_PREFETCHING) {
+            removeCallbacks(mViewPrefetcher);
+        }
     }
 
     /**
@@ -2652,6 +2727,9 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
                             vtev)) {
                         getParent().requestDisallowInterceptTouchEvent(true);
                     }
+                    if (ALLOW_PREFETCHING) {
+                        mViewPrefetcher.postFromTraversal(dx, dy);
+                    }
                 }
             } break;
 
@@ -3515,8 +3593,14 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
     @Override
     protected void onLayout(boolean changed, int l, int t, int r, int b) {
         TraceCompat.beginSection(TRACE_ON_LAYOUT_TAG);
+        final long startLayoutNs = System.nanoTime();
         dispatchLayout();
+        final long layoutDurationNs = System.nanoTime() - startLayoutNs;
         TraceCompat.endSection();
+        mPerformanceStats.recordLayout(layoutDurationNs);
+        if (mPerformanceListener != null) {
+            mPerformanceListener.onLayoutCompleted(this, layoutDurationNs);
+        }
         mFirstLayoutComplete = true;
     }
 
@@ -4424,6 +4508,9 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
                     setScrollState(SCROLL_STATE_IDLE); // setting state to idle will stop this.
                 } else {
                     postOnAnimation();
+                    if (ALLOW_PREFETCHING) {
+                        mViewPrefetcher.postFromTraversal(dx, dy);
+                    }
                 }
             }
             // call this after the onAnimation is complete not to have inconsistent callbacks etc.
@@ -4525,6 +4612,108 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
 
     }
 
+    /**
+     * Runs prefetch work immediately after a traversal, in the downtime while the UI thread is
+     * waiting for VSYNC.
+     * <p>
+     * The LayoutManager is asked for the positions it will need next, based on the direction and
+     * distance of the last scroll step. Views for those positions are created and bound into the
+     * Recycler's view cache one at a time, for as long as the estimated cost of the next item
+     * still fits before the next frame is due.
+     */
+    class ViewPrefetcher implements Runnable {
+        private long mPostTimeNanos;
+        private int mDx;
+        private int mDy;
+        private boolean mPosted;
+
+        /**
+         * Positions requested by the LayoutManager in the last prefetch pass.
+         */
+        int[] mItemPrefetchArray;
+        int mItemPrefetchCount;
+
+        void postFromTraversal(int dx, int dy) {
+            if (mAdapter != null
+                    && mLayout != null
+                    && mLayout.isItemPrefetchEnabled()
+                    && mLayout.getItemPrefetchCount() > 0) {
+                mDx = dx;
+                mDy = dy;
+                mPostTimeNanos = System.nanoTime();
+                if (!mPosted) {
+                    mPosted = true;
+                    RecyclerView.this.post(this);
+                }
+            }
+        }
+
+        void clearPrefetchPositions() {
+            mItemPrefetchCount = 0;
+            if (mItemPrefetchArray != null) {
+                Arrays.fill(mItemPrefetchArray, NO_POSITION);
+            }
+        }
+
+        boolean lastPrefetchIncludedPosition(int position) {
+            for (int i = 0; i < mItemPrefetchCount; i++) {
+                if (mItemPrefetchArray[i] == position) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void run() {
+            mPosted = false;
+            if (mAdapter == null
+                    || mLayout == null
+                    || !mLayout.isItemPrefetchEnabled()
+                    || mLayoutFrozen
+                    || hasPendingAdapterUpdates()) {
+                // abort - no work, or layout is out of sync with the adapter
+                return;
+            }
+            final int maxPrefetchCount = mLayout.getItemPrefetchCount();
+            if (maxPrefetchCount < 1) {
+                return;
+            }
+
+            // The drawing time of the last traversal is the VSYNC that frame was started for.
+            final long lastFrameVsyncNanos = TimeUnit.MILLISECONDS.toNanos(getDrawingTime());
+            if (lastFrameVsyncNanos == 0 || sFrameIntervalNanos == 0) {
+                // abort - couldn't get vsync timestamp or refresh rate
+                return;
+            }
+
+            final long nowNanos = System.nanoTime();
+            final long deadlineNanos = lastFrameVsyncNanos + sFrameIntervalNanos;
+            if (nowNanos - mPostTimeNanos > sFrameIntervalNanos
+                    || deadlineNanos - nowNanos < MIN_PREFETCH_TIME_NANOS) {
+                // abort - executing either too far after post, or too near the next frame
+                return;
+            }
+
+            if (mItemPrefetchArray == null || mItemPrefetchArray.length < maxPrefetchCount) {
+                mItemPrefetchArray = new int[maxPrefetchCount];
+                // prefetch count grew (e.g. span count changed), make room in the view cache
+                mRecycler.updateViewCacheSize();
+            }
+            Arrays.fill(mItemPrefetchArray, NO_POSITION);
+            mItemPrefetchCount = mLayout.gatherPrefetchIndices(mDx, mDy, mState,
+                    mItemPrefetchArray);
+            if (mItemPrefetchCount > 0) {
+                TraceCompat.beginSection(TRACE_PREFETCH_TAG);
+                try {
+                    mRecycler.prefetch(mItemPrefetchArray, mItemPrefetchCount, deadlineNanos);
+                } finally {
+                    TraceCompat.endSection();
+                }
+            }
+        }
+    }
+
     private void repositionShadowingViews() {
         // Fix up shadow views used by change animations
         int count = mChildHelper.getChildCount();
@@ -4613,45 +4802,146 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
      * and use {@link RecyclerView#setRecycledViewPool(RecycledViewPool)}.
      * <p>
      * RecyclerView automatically creates a pool for itself if you don't provide one.
-     *
+     * <p>
+     * By default, the pool keeps up to a fixed number of ViewHolders for each view type, see
+     * {@link #setMaxRecycledViews(int, int)}. When many RecyclerViews with many view types share a
+     * pool, you can instead bound the total number of pooled ViewHolders with
+     * {@link #setGlobalMaxRecycledViews(int)}. In that mode, the capacity of each view type grows
+     * with observed demand and the least recently recycled ViewHolders are evicted across all view
+     * types once the global limit is reached.
+     * <p>
+     * The pool also keeps per view type statistics about how often a ViewHolder could be reused
+     * and how long it takes to create and bind ViewHolders of that type.
      */
     public static class RecycledViewPool {
-        private SparseArray<ArrayList<ViewHolder>> mScrap =
-                new SparseArray<ArrayList<ViewHolder>>();
-        private SparseIntArray mMaxScrap = new SparseIntArray();
+        private static final int DEFAULT_MAX_SCRAP = 5;
+        // number of requests served with holders to spare after which an adapted capacity
+        // shrinks by one
+        static final int CAPACITY_DECAY_HITS = 32;
+
+        /**
+         * Value of {@link #getGlobalMaxRecycledViews()} when the total number of pooled
+         * ViewHolders is not bounded.
+         */
+        public static final int NO_GLOBAL_LIMIT = -1;
+
+        /**
+         * Tracks both pooled holders, as well as create/bind timing metadata for the given type.
+         * <p>
+         * Note that this tracks running averages of create/bind time across all RecyclerViews
+         * (and, indirectly, Adapters) that use this pool.
+         */
+        static class ScrapData {
+            final ArrayList<ViewHolder> mScrapHeap = new ArrayList<>();
+            int mMaxScrap = DEFAULT_MAX_SCRAP;
+            // true if the max was set via setMaxRecycledViews, in which case it is never adapted
+            boolean mMaxScrapFixed = false;
+            long mCreateRunningAverageNs = 0;
+            long mBindRunningAverageNs = 0;
+            int mHitCount = 0;
+            int mMissCount = 0;
+            int mCreateCount = 0;
+            // hits since the last miss which left holders in the heap
+            int mSpareHitCount = 0;
+        }
+
+        SparseArray<ScrapData> mScrap = new SparseArray<>();
+
         private int mAttachCount = 0;
 
-        private static final int DEFAULT_MAX_SCRAP = 5;
+        private int mGlobalMaxScrap = NO_GLOBAL_LIMIT;
+
+        // number of pooled holders across all types
+        private int mScrapCount = 0;
+
+        private int mEvictionCount = 0;
+
+        // incremented for every recycled holder, used to find the least recently recycled one
+        private long mRecycleSequence = 0;
 
         public void clear() {
-            mScrap.clear();
+            for (int i = 0; i < mScrap.size(); i++) {
+                ScrapData data = mScrap.valueAt(i);
+                data.mScrapHeap.clear();
+            }
+            mScrapCount = 0;
         }
 
         public void setMaxRecycledViews(int viewType, int max) {
-            mMaxScrap.put(viewType, max);
-            final ArrayList<ViewHolder> scrapHeap = mScrap.get(viewType);
-            if (scrapHeap != null) {
-                while (scrapHeap.size() > max) {
-                    scrapHeap.remove(scrapHeap.size() - 1);
+            ScrapData scrapData = getScrapDataForType(viewType);
+            scrapData.mMaxScrap = max;
+            scrapData.mMaxScrapFixed = true;
+            trimScrapHeap(scrapData, max);
+        }
+
+        /**
+         * Bounds the total number of ViewHolders kept in this pool across all view types.
+         * <p>
+         * When a limit is set, view types whose capacity was not set explicitly via
+         * {@link #setMaxRecycledViews(int, int)} grow their capacity each time a ViewHolder of
+         * that type is requested but none is available, and shrink it back towards the default
+         * while requests keep being served with ViewHolders to spare. Once the pool holds
+         * {@code maxTotal} ViewHolders, the least recently recycled ViewHolder, regardless of its
+         * view type, is evicted to make room.
+         *
+         * @param maxTotal Maximum number of ViewHolders to keep in total, or
+         *                 {@link #NO_GLOBAL_LIMIT} to only apply the per view type limits.
+         */
+        public void setGlobalMaxRecycledViews(int maxTotal) {
+            if (maxTotal < 0 && maxTotal != NO_GLOBAL_LIMIT) {
+                throw new IllegalArgumentException("Invalid global max " + maxTotal);
+            }
+            mGlobalMaxScrap = maxTotal;
+            if (maxTotal != NO_GLOBAL_LIMIT) {
+                while (mScrapCount > maxTotal) {
+                    evictLeastRecentlyRecycled();
                 }
             }
         }
 
+        /**
+         * Returns the maximum number of ViewHolders kept in this pool across all view types.
+         *
+         * @return The global limit or {@link #NO_GLOBAL_LIMIT} if there is none.
+         * @see #setGlobalMaxRecycledViews(int)
+         */
+        public int getGlobalMaxRecycledViews() {
+            return mGlobalMaxScrap;
+        }
+
         public ViewHolder getRecycledView(int viewType) {
-            final ArrayList<ViewHolder> scrapHeap = mScrap.get(viewType);
-            if (scrapHeap != null && !scrapHeap.isEmpty()) {
+            final ScrapData scrapData = getScrapDataForType(viewType);
+            final boolean adaptive = mGlobalMaxScrap != NO_GLOBAL_LIMIT
+                    && !scrapData.mMaxScrapFixed;
+            final ArrayList<ViewHolder> scrapHeap = scrapData.mScrapHeap;
+            if (!scrapHeap.isEmpty()) {
                 final int index = scrapHeap.size() - 1;
                 final ViewHolder scrap = scrapHeap.get(index);
                 scrapHeap.remove(index);
+                mScrapCount--;
+                scrapData.mHitCount++;
+                if (adaptive && !scrapHeap.isEmpty() && scrapData.mMaxScrap > DEFAULT_MAX_SCRAP
+                        && ++scrapData.mSpareHitCount >= CAPACITY_DECAY_HITS) {
+                    // demand stayed below what we keep around, keep one less
+                    scrapData.mSpareHitCount = 0;
+                    scrapData.mMaxScrap--;
+                    trimScrapHeap(scrapData, scrapData.mMaxScrap);
+                }
                 return scrap;
             }
+            scrapData.mMissCount++;
+            scrapData.mSpareHitCount = 0;
+            if (adaptive && scrapData.mMaxScrap < mGlobalMaxScrap) {
+                // demand for this type exceeded what we kept around, keep one more next time
+                scrapData.mMaxScrap++;
+            }
             return null;
         }
 
         int size() {
             int count = 0;
             for (int i = 0; i < mScrap.size(); i ++) {
-                ArrayList<ViewHolder> viewHolders = mScrap.valueAt(i);
+                ArrayList<ViewHolder> viewHolders = mScrap.valueAt(i).mScrapHeap;
                 if (viewHolders != null) {
                     count += viewHolders.size();
                 }
@@ -4661,15 +4951,128 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
 
         public void putRecycledView(ViewHolder scrap) {
             final int viewType = scrap.getItemViewType();
-            final ArrayList scrapHeap = getScrapHeapForType(viewType);
-            if (mMaxScrap.get(viewType) <= scrapHeap.size()) {
+            final ScrapData scrapData = getScrapDataForType(viewType);
+            final ArrayList scrapHeap = scrapData.mScrapHeap;
+            if (scrapData.mMaxScrap <= scrapHeap.size()) {
                 return;
             }
             if (DEBUG && scrapHeap.contains(scrap)) {
                 throw new IllegalArgumentException("this scrap item already exists");
             }
+            if (mGlobalMaxScrap != NO_GLOBAL_LIMIT) {
+                if (mGlobalMaxScrap == 0) {
+                    return;
+                }
+                while (mScrapCount >= mGlobalMaxScrap) {
+                    evictLeastRecentlyRecycled();
+                }
+            }
             scrap.resetInternal();
+            scrap.mPoolSequence = mRecycleSequence++;
             scrapHeap.add(scrap);
+            mScrapCount++;
+        }
+
+        /**
+         * Returns the number of times a ViewHolder of the given type was requested and could be
+         * reused from this pool.
+         */
+        public int hitCount(int viewType) {
+            final ScrapData scrapData = mScrap.get(viewType);
+            return scrapData == null ? 0 : scrapData.mHitCount;
+        }
+
+        /**
+         * Returns the number of times a ViewHolder of the given type was requested but none was
+         * available in this pool.
+         */
+        public int missCount(int viewType) {
+            final ScrapData scrapData = mScrap.get(viewType);
+            return scrapData == null ? 0 : scrapData.mMissCount;
+        }
+
+        /**
+         * Returns the number of ViewHolders of the given type created by the RecyclerViews that
+         * use this pool.
+         */
+        public int createCount(int viewType) {
+            final ScrapData scrapData = mScrap.get(viewType);
+            return scrapData == null ? 0 : scrapData.mCreateCount;
+        }
+
+        /**
+         * Returns the number of ViewHolders evicted to stay within the global limit.
+         *
+         * @see #setGlobalMaxRecycledViews(int)
+         */
+        public int evictionCount() {
+            return mEvictionCount;
+        }
+
+        /**
+         * Returns the running average of the time it takes to create a ViewHolder of the given
+         * type, in nanoseconds, or 0 if none has been created yet.
+         */
+        public long getCreateTimeAverageNanos(int viewType) {
+            final ScrapData scrapData = mScrap.get(viewType);
+            return scrapData == null ? 0 : scrapData.mCreateRunningAverageNs;
+        }
+
+        /**
+         * Returns the running average of the time it takes to bind a ViewHolder of the given
+         * type, in nanoseconds, or 0 if none has been bound yet.
+         */
+        public long getBindTimeAverageNanos(int viewType) {
+            final ScrapData scrapData = mScrap.get(viewType);
+            return scrapData == null ? 0 : scrapData.mBindRunningAverageNs;
+        }
+
+        /**
+         * Returns the number of ViewHolders of the given type the pool currently keeps at most.
+         * Unless set via {@link #setMaxRecycledViews(int, int)}, this value adapts to demand when
+         * a global limit is set.
+         */
+        public int getMaxRecycledViews(int viewType) {
+            final ScrapData scrapData = mScrap.get(viewType);
+            return scrapData == null ? DEFAULT_MAX_SCRAP : scrapData.mMaxScrap;
+        }
+
+        /**
+         * Folds a new duration into a running average which weighs it by 1/4. Also used by
+         * {@link PerformanceStats}, so that both report comparable averages.
+         */
+        static long runningAverage(long oldAverage, long newValue) {
+            if (oldAverage == 0) {
+                return newValue;
+            }
+            return (oldAverage / 4 * 3) + (newValue / 4);
+        }
+
+        void factorInCreateTime(int viewType, long createTimeNs) {
+            ScrapData scrapData = getScrapDataForType(viewType);
+            scrapData.mCreateRunningAverageNs = runningAverage(
+                    scrapData.mCreateRunningAverageNs, createTimeNs);
+            scrapData.mCreateCount++;
+        }
+
+        void factorInBindTime(int viewType, long bindTimeNs) {
+            ScrapData scrapData = getScrapDataForType(viewType);
+            scrapData.mBindRunningAverageNs = runningAverage(
+                    scrapData.mBindRunningAverageNs, bindTimeNs);
+        }
+
+        /**
+         * Estimates whether a ViewHolder of the given type can be obtained and bound before the
+         * deadline, based on the averages observed so far. A ViewHolder that has to be created
+         * also pays the create cost.
+         */
+        boolean willCompleteInTime(int viewType, long approxCurrentNs, long deadlineNs) {
+            final ScrapData scrapData = getScrapDataForType(viewType);
+            long expectedDurationNs = scrapData.mBindRunningAverageNs;
+            if (scrapData.mScrapHeap.isEmpty()) {
+                expectedDurationNs += scrapData.mCreateRunningAverageNs;
+            }
+            return expectedDurationNs == 0 || (approxCurrentNs + expectedDurationNs < deadlineNs);
         }
 
         void attach(Adapter adapter) {
@@ -4705,16 +5108,47 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
             }
         }
 
-        private ArrayList<ViewHolder> getScrapHeapForType(int viewType) {
-            ArrayList<ViewHolder> scrap = mScrap.get(viewType);
-            if (scrap == null) {
-                scrap = new ArrayList<>();
-                mScrap.put(viewType, scrap);
-                if (mMaxScrap.indexOfKey(viewType) < 0) {
-                    mMaxScrap.put(viewType, DEFAULT_MAX_SCRAP);
+        private void trimScrapHeap(ScrapData scrapData, int max) {
+            final ArrayList<ViewHolder> scrapHeap = scrapData.mScrapHeap;
+            while (scrapHeap.size() > max) {
+                scrapHeap.remove(scrapHeap.size() - 1);
+                mScrapCount--;
+            }
+        }
+
+        /**
+         * Evicts the ViewHolder that has been in the pool the longest, across all view types.
+         * Each scrap heap is ordered by recycle time so only the head of each heap is considered.
+         */
+        private void evictLeastRecentlyRecycled() {
+            ScrapData oldest = null;
+            long oldestSequence = Long.MAX_VALUE;
+            for (int i = 0; i < mScrap.size(); i++) {
+                final ScrapData scrapData = mScrap.valueAt(i);
+                if (!scrapData.mScrapHeap.isEmpty()) {
+                    final long sequence = scrapData.mScrapHeap.get(0).mPoolSequence;
+                    if (sequence < oldestSequence) {
+                        oldestSequence = sequence;
+                        oldest = scrapData;
+                    }
                 }
             }
-            return scrap;
+            if (oldest == null) {
+                throw new IllegalStateException("Pool counts " + mScrapCount
+                        + " ViewHolders but holds none");
+            }
+            oldest.mScrapHeap.remove(0);
+            mScrapCount--;
+            mEvictionCount++;
+        }
+
+        private ScrapData getScrapDataForType(int viewType) {
+            ScrapData scrapData = mScrap.get(viewType);
+            if (scrapData == null) {
+                scrapData = new ScrapData();
+                mScrap.put(viewType, scrapData);
+            }
+            return scrapData;
         }
     }
 
@@ -4740,6 +5174,7 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
         private final List<ViewHolder>
                 mUnmodifiableAttachedScrap = Collections.unmodifiableList(mAttachedScrap);
 
+        private int mRequestedCacheMax = DEFAULT_CACHE_SIZE;
         private int mViewCacheMax = DEFAULT_CACHE_SIZE;
 
         private RecycledViewPool mRecyclerPool;
@@ -4755,6 +5190,9 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
         public void clear() {
             mAttachedScrap.clear();
             recycleAndClearCachedViews();
+            if (ALLOW_PREFETCHING) {
+                mViewPrefetcher.clearPrefetchPositions();
+            }
         }
 
         /**
@@ -4763,13 +5201,85 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
          * @param viewCount Number of views to keep before sending views to the shared pool
          */
         public void setViewCacheSize(int viewCount) {
-            mViewCacheMax = viewCount;
+            mRequestedCacheMax = viewCount;
+            updateViewCacheSize();
+        }
+
+        /**
+         * Recomputes the cache size, reserving room for views prefetched on behalf of the
+         * LayoutManager on top of the size requested by the developer.
+         */
+        void updateViewCacheSize() {
+            int extraCache = 0;
+            if (ALLOW_PREFETCHING && mLayout != null && mLayout.isItemPrefetchEnabled()) {
+                extraCache = mLayout.getItemPrefetchCount();
+            }
+            mViewCacheMax = mRequestedCacheMax + extraCache;
+
             // first, try the views that can be recycled
-            for (int i = mCachedViews.size() - 1; i >= 0 && mCachedViews.size() > viewCount; i--) {
+            for (int i = mCachedViews.size() - 1;
+                    i >= 0 && mCachedViews.size() > mViewCacheMax; i--) {
                 recycleCachedViewAt(i);
             }
         }
 
+        /**
+         * Creates and binds the views for the given positions ahead of time, and moves them into
+         * the view cache so that the LayoutManager can pick them up without rebinding.
+         * <p>
+         * Positions that are already attached or cached are skipped. Stops as soon as the next
+         * item is not expected to be ready before {@code deadlineNanos}, based on the create and
+         * bind times the {@link RecycledViewPool} observed for its view type.
+         *
+         * @param itemPrefetchArray Positions to prefetch, in order of priority
+         * @param viewCount Number of valid positions in itemPrefetchArray
+         * @param deadlineNanos {@link System#nanoTime()} by which prefetch work should be done
+         */
+        void prefetch(int[] itemPrefetchArray, int viewCount, long deadlineNanos) {
+            for (int i = 0; i < viewCount; i++) {
+                final int position = itemPrefetchArray[i];
+                if (position < 0 || position >= mState.getItemCount()) {
+                    throw new IllegalArgumentException("Recycler requested to prefetch invalid"
+                            + " view " + position + ". Item count:" + mState.getItemCount());
+                }
+                if (isPrefetchPositionAttached(position) || isPrefetchPositionCached(position)) {
+                    continue;
+                }
+                final int type = mAdapter.getItemViewType(position);
+                if (!getRecycledViewPool().willCompleteInTime(type, System.nanoTime(),
+                        deadlineNanos)) {
+                    // abort - the next item would likely push the frame over its deadline
+                    return;
+                }
+                final View prefetchView = getViewForPosition(position);
+                recycleView(prefetchView);
+            }
+        }
+
+        private boolean isPrefetchPositionAttached(int position) {
+            final int childCount = mChildHelper.getUnfilteredChildCount();
+            for (int i = 0; i < childCount; i++) {
+                final View attachedView = mChildHelper.getUnfilteredChildAt(i);
+                final ViewHolder holder = getChildViewHolderInt(attachedView);
+                // Note: can use mPosition here because adapter doesn't have pending updates
+                if (holder.mPosition == position) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean isPrefetchPositionCached(int position) {
+            final int cacheSize = mCachedViews.size();
+            for (int i = 0; i < cacheSize; i++) {
+                final ViewHolder holder = mCachedViews.get(i);
+                if (holder.mPosition == position && !holder.isInvalid()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
         /**
          * Returns an unmodifiable list of ViewHolders that are currently in the scrap list.
          *
@@ -4843,7 +5353,9 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
                         + "state:" + mState.getItemCount());
             }
             holder.mOwnerRecyclerView = RecyclerView.this;
+            final long startBindNs = System.nanoTime();
             mAdapter.bindViewHolder(holder, offsetPosition);
+            onViewHolderBound(holder.getItemViewType(), System.nanoTime() - startBindNs);
             attachAccessibilityDelegate(view);
             if (mState.isPreLayout()) {
                 holder.mPreLayoutPosition = position;
@@ -4982,6 +5494,9 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
                                     + " a view that is ignored. You must call stopIgnoring before"
                                     + " returning this view.");
                         }
+                        if (!dryRun) {
+                            mPerformanceStats.mCacheHitCount++;
+                        }
                     }
                 }
                 if (holder == null) { // fallback to recycler
@@ -4993,6 +5508,9 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
                     }
                     holder = getRecycledViewPool().getRecycledView(type);
                     if (holder != null) {
+                        if (!dryRun) {
+                            mPerformanceStats.mPoolHitCount++;
+                        }
                         holder.resetInternal();
                         if (FORCE_INVALIDATE_DISPLAY_LIST) {
                             invalidateDisplayListInt(holder);
@@ -5000,13 +5518,23 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
                     }
                 }
                 if (holder == null) {
+                    final long startCreateNs = System.nanoTime();
                     holder = mAdapter.createViewHolder(RecyclerView.this, type);
+                    onViewHolderCreated(type, System.nanoTime() - startCreateNs);
                     if (DEBUG) {
                         Log.d(TAG, "getViewForPosition created new ViewHolder");
                     }
                 }
             }
 
+            if (fromScrap && !dryRun) {
+                if (holder.isScrap() || holder.wasReturnedFromScrap()) {
+                    mPerformanceStats.mScrapHitCount++;
+                } else {
+                    mPerformanceStats.mCacheHitCount++;
+                }
+            }
+
             // This is very ugly but the only place we can grab this information
             // before the View is rebound and returned to the LayoutManager for post layout ops.
             // We don't need this in pre-layout since the VH is not updated by the LM.
@@ -5034,7 +5562,9 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
                 }
                 final int offsetPosition = mAdapterHelper.findPositionOffset(position);
                 holder.mOwnerRecyclerView = RecyclerView.this;
+                final long startBindNs = System.nanoTime();
                 mAdapter.bindViewHolder(holder, offsetPosition);
+                onViewHolderBound(holder.getItemViewType(), System.nanoTime() - startBindNs);
                 attachAccessibilityDelegate(holder.itemView);
                 bound = true;
                 if (mState.isPreLayout()) {
@@ -5207,8 +5737,24 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
                         recycleCachedViewAt(0);
                         cachedViewSize --;
                     }
+
+                    int targetCacheIndex = cachedViewSize;
+                    if (ALLOW_PREFETCHING && cachedViewSize > 0
+                            && !mViewPrefetcher.lastPrefetchIncludedPosition(holder.mPosition)) {
+                        // when adding the view, skip past most recently prefetched views so that
+                        // they are not the first ones to be retired
+                        int cacheIndex = cachedViewSize - 1;
+                        while (cacheIndex >= 0) {
+                            int cachedPos = mCachedViews.get(cacheIndex).mPosition;
+                            if (!mViewPrefetcher.lastPrefetchIncludedPosition(cachedPos)) {
+                                break;
+                            }
+                            cacheIndex--;
+                        }
+                        targetCacheIndex = cacheIndex + 1;
+                    }
                     if (cachedViewSize < mViewCacheMax) {
-                        mCachedViews.add(holder);
+                        mCachedViews.add(targetCacheIndex, holder);
                         cached = true;
                     }
                 }
@@ -5309,6 +5855,22 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
             }
         }
 
+        private void onViewHolderCreated(int viewType, long durationNs) {
+            getRecycledViewPool().factorInCreateTime(viewType, durationNs);
+            mPerformanceStats.recordCreate(viewType, durationNs);
+            if (mPerformanceListener != null) {
+                mPerformanceListener.onViewHolderCreated(RecyclerView.this, viewType, durationNs);
+            }
+        }
+
+        private void onViewHolderBound(int viewType, long durationNs) {
+            getRecycledViewPool().factorInBindTime(viewType, durationNs);
+            mPerformanceStats.recordBind(viewType, durationNs);
+            if (mPerformanceListener != null) {
+                mPerformanceListener.onViewHolderBound(RecyclerView.this, viewType, durationNs);
+            }
+        }
+
         ViewHolder getChangedScrapViewForPosition(int position) {
             // If pre-layout, check the changed scrap for an exact match.
             final int changedScrapSize;
@@ -6279,6 +6841,8 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
 
         private boolean mAutoMeasure = false;
 
+        private boolean mItemPrefetchEnabled = true;
+
         /**
          * LayoutManager has its own more strict measurement cache to avoid re-measuring a child
          * if the space that will be given to it is already larger than what it has measured before.
@@ -6542,6 +7106,75 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
             return mAutoMeasure;
         }
 
+        /**
+         * Sets whether the LayoutManager should be queried for views outside of its viewport
+         * while the UI thread is idle between frames.
+         *
+         * <p>If enabled, the LayoutManager will be queried for items to inflate/bind in between
+         * view system traversals on devices running API 21 or greater. Default value is true.</p>
+         *
+         * <p>On platforms API level 21 and higher, the UI thread is idle between passing a frame
+         * to RenderThread and the starting up its next frame at the next VSync pulse. By
+         * prefetching out of window views in this time period, delays from inflation and view
+         * binding are much less likely to cause jank and stuttering during scrolls and flings.</p>
+         *
+         * <p>While prefetch is enabled, it will have the side effect of expanding the effective
+         * size of the View cache to hold prefetched views.</p>
+         *
+         * @param enabled <code>True</code> if items should be prefetched in between traversals.
+         *
+         * @see #isItemPrefetchEnabled()
+         */
+        public final void setItemPrefetchEnabled(boolean enabled) {
+            if (enabled != mItemPrefetchEnabled) {
+                mItemPrefetchEnabled = enabled;
+                if (mRecyclerView != null) {
+                    mRecyclerView.mRecycler.updateViewCacheSize();
+                }
+            }
+        }
+
+        /**
+         * Sets whether the LayoutManager should be queried for views outside of its viewport
+         * while the UI thread is idle between frames.
+         *
+         * @see #setItemPrefetchEnabled(boolean)
+         *
+         * @return true if item prefetch is enabled, false otherwise
+         */
+        public final boolean isItemPrefetchEnabled() {
+            return mItemPrefetchEnabled;
+        }
+
+        /**
+         * Returns the maximum number of items that {@link #gatherPrefetchIndices} may report in a
+         * single pass. RecyclerView expands its view cache by this amount to hold the prefetched
+         * views.
+         *
+         * @return Maximum number of items to prefetch, or 0 if this LayoutManager does not
+         * support prefetch.
+         */
+        int getItemPrefetchCount() {
+            return 0;
+        }
+
+        /**
+         * Gather the adapter positions of the items that will most likely be needed next, given
+         * the delta of the last scroll step, so that they can be created and bound before they
+         * come into view.
+         *
+         * @param dx X movement component of the last scroll.
+         * @param dy Y movement component of the last scroll.
+         * @param state State of RecyclerView
+         * @param outIndices Array to be filled with positions, most urgent first. Has at least
+         *                   {@link #getItemPrefetchCount()} slots.
+         *
+         * @return Number of positions written into outIndices.
+         */
+        int gatherPrefetchIndices(int dx, int dy, State state, int[] outIndices) {
+            return 0;
+        }
+
         /**
          * Returns whether this LayoutManager supports automatic item animations.
          * A LayoutManager wishing to support item animations should obey certain
@@ -9212,6 +9845,298 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
         public void onViewRecycled(ViewHolder holder);
     }
 
+    /**
+     * A PerformanceListener can be set on a RecyclerView to receive the duration of each
+     * ViewHolder creation, ViewHolder bind and layout pass.
+     * <p>
+     * All durations are in nanoseconds, as measured by {@link System#nanoTime()}. The same work is
+     * also emitted as {@link android.support.v4.os.TraceCompat TraceCompat} sections, which can be
+     * inspected with systrace.
+     *
+     * @see RecyclerView#setPerformanceListener(PerformanceListener)
+     * @see PerformanceStats
+     */
+    public abstract static class PerformanceListener {
+
+        /**
+         * Called after the Adapter created a new ViewHolder.
+         *
+         * @param recyclerView The RecyclerView which requested the ViewHolder.
+         * @param viewType The view type of the new ViewHolder.
+         * @param durationNanos Time spent in {@link Adapter#createViewHolder(ViewGroup, int)}.
+         */
+        public void onViewHolderCreated(RecyclerView recyclerView, int viewType,
+                long durationNanos) {
+        }
+
+        /**
+         * Called after the Adapter bound a ViewHolder to a position.
+         *
+         * @param recyclerView The RecyclerView which requested the bind.
+         * @param viewType The view type of the bound ViewHolder.
+         * @param durationNanos Time spent in {@link Adapter#bindViewHolder(ViewHolder, int)}.
+         */
+        public void onViewHolderBound(RecyclerView recyclerView, int viewType,
+                long durationNanos) {
+        }
+
+        /**
+         * Called after the RecyclerView completed a layout pass.
+         *
+         * @param recyclerView The RecyclerView which was laid out.
+         * @param durationNanos Time spent laying out the RecyclerView's children.
+         */
+        public void onLayoutCompleted(RecyclerView recyclerView, long durationNanos) {
+        }
+    }
+
+    /**
+     * Statistics a RecyclerView collects about the work it does to provide item views.
+     * <p>
+     * For each view type, it keeps the running average of the create and bind durations along
+     * with a histogram of them. Histogram bucket {@code i} counts durations below
+     * {@link #getHistogramBucketUpperBoundNanos(int)}, and at least the upper bound of bucket
+     * {@code i - 1}. The last bucket has no upper bound. The averages are computed like those of
+     * {@link RecycledViewPool#getCreateTimeAverageNanos(int)}, but only cover this RecyclerView,
+     * while a pool may be shared, and they are cleared by {@link #reset()}.
+     * <p>
+     * It also counts where the ViewHolders given to the LayoutManager came from:
+     * <ul>
+     * <li>The scrap: views that were attached before the layout pass,</li>
+     * <li>The view cache: recently detached views kept bound to their position, see
+     * {@link #setItemViewCacheSize(int)},</li>
+     * <li>The {@link RecycledViewPool}, which requires a re-bind,</li>
+     * <li>Creation by the Adapter.</li>
+     * </ul>
+     * <p>
+     * Recording does not allocate once each view type has been seen, so it is always enabled.
+     *
+     * @see RecyclerView#getPerformanceStats()
+     */
+    public static class PerformanceStats {
+        /**
+         * Number of buckets of the create and bind duration histograms.
+         */
+        public static final int HISTOGRAM_BUCKET_COUNT = 10;
+
+        // the first bucket holds durations below 2^16 ns, about 65 microseconds
+        private static final int HISTOGRAM_FIRST_BUCKET_SHIFT = 16;
+
+        static class TypeStats {
+            long mCreateRunningAverageNs;
+            long mBindRunningAverageNs;
+            int mCreateCount;
+            int mBindCount;
+            final int[] mCreateHistogram = new int[HISTOGRAM_BUCKET_COUNT];
+            final int[] mBindHistogram = new int[HISTOGRAM_BUCKET_COUNT];
+        }
+
+        final SparseArray<TypeStats> mTypeStats = new SparseArray<>();
+
+        int mScrapHitCount;
+        int mCacheHitCount;
+        int mPoolHitCount;
+        int mCreateCount;
+
+        int mLayoutCount;
+        long mLayoutRunningAverageNs;
+        long mLastLayoutNs;
+        long mMaxLayoutNs;
+
+        /**
+         * Returns the exclusive upper bound of the given histogram bucket.
+         *
+         * @param bucket Index of the bucket, between 0 and {@link #HISTOGRAM_BUCKET_COUNT} - 1.
+         * @return The upper bound in nanoseconds or {@link Long#MAX_VALUE} for the last bucket.
+         */
+        public static long getHistogramBucketUpperBoundNanos(int bucket) {
+            if (bucket < 0 || bucket >= HISTOGRAM_BUCKET_COUNT) {
+                throw new IndexOutOfBoundsException("Invalid bucket " + bucket);
+            }
+            if (bucket == HISTOGRAM_BUCKET_COUNT - 1) {
+                return Long.MAX_VALUE;
+            }
+            return 1L << (HISTOGRAM_FIRST_BUCKET_SHIFT + bucket);
+        }
+
+        static int getHistogramBucket(long durationNs) {
+            final long scaled = durationNs >> HISTOGRAM_FIRST_BUCKET_SHIFT;
+            if (scaled <= 0) {
+                return 0;
+            }
+            final int bucket = 64 - Long.numberOfLeadingZeros(scaled);
+            return Math.min(bucket, HISTOGRAM_BUCKET_COUNT - 1);
+        }
+
+        private TypeStats getTypeStats(int viewType) {
+            TypeStats typeStats = mTypeStats.get(viewType);
+            if (typeStats == null) {
+                typeStats = new TypeStats();
+                mTypeStats.put(viewType, typeStats);
+            }
+            return typeStats;
+        }
+
+        void recordCreate(int viewType, long durationNs) {
+            final TypeStats typeStats = getTypeStats(viewType);
+            typeStats.mCreateRunningAverageNs = RecycledViewPool.runningAverage(
+                    typeStats.mCreateRunningAverageNs, durationNs);
+            typeStats.mCreateCount++;
+            typeStats.mCreateHistogram[getHistogramBucket(durationNs)]++;
+            mCreateCount++;
+        }
+
+        void recordBind(int viewType, long durationNs) {
+            final TypeStats typeStats = getTypeStats(viewType);
+            typeStats.mBindRunningAverageNs = RecycledViewPool.runningAverage(
+                    typeStats.mBindRunningAverageNs, durationNs);
+            typeStats.mBindCount++;
+            typeStats.mBindHistogram[getHistogramBucket(durationNs)]++;
+        }
+
+        void recordLayout(long durationNs) {
+            mLayoutCount++;
+            mLayoutRunningAverageNs = RecycledViewPool.runningAverage(mLayoutRunningAverageNs,
+                    durationNs);
+            mLastLayoutNs = durationNs;
+            if (durationNs > mMaxLayoutNs) {
+                mMaxLayoutNs = durationNs;
+            }
+        }
+
+        /**
+         * Clears all collected statistics.
+         */
+        public void reset() {
+            mTypeStats.clear();
+            mScrapHitCount = 0;
+            mCacheHitCount = 0;
+            mPoolHitCount = 0;
+            mCreateCount = 0;
+            mLayoutCount = 0;
+            mLayoutRunningAverageNs = 0;
+            mLastLayoutNs = 0;
+            mMaxLayoutNs = 0;
+        }
+
+        /**
+         * @return Number of ViewHolders reused from the scrap of attached views.
+         */
+        public int getScrapHitCount() {
+            return mScrapHitCount;
+        }
+
+        /**
+         * @return Number of ViewHolders reused from the view cache without being re-bound.
+         */
+        public int getCacheHitCount() {
+            return mCacheHitCount;
+        }
+
+        /**
+         * @return Number of ViewHolders reused from the {@link RecycledViewPool}.
+         */
+        public int getPoolHitCount() {
+            return mPoolHitCount;
+        }
+
+        /**
+         * @return Number of ViewHolders created by the Adapter.
+         */
+        public int getCreateCount() {
+            return mCreateCount;
+        }
+
+        /**
+         * @param viewType The view type to query.
+         * @return Number of ViewHolders of the given type created by the Adapter.
+         */
+        public int getCreateCount(int viewType) {
+            final TypeStats typeStats = mTypeStats.get(viewType);
+            return typeStats == null ? 0 : typeStats.mCreateCount;
+        }
+
+        /**
+         * @param viewType The view type to query.
+         * @return Number of times a ViewHolder of the given type was bound by the Adapter.
+         */
+        public int getBindCount(int viewType) {
+            final TypeStats typeStats = mTypeStats.get(viewType);
+            return typeStats == null ? 0 : typeStats.mBindCount;
+        }
+
+        /**
+         * @param viewType The view type to query.
+         * @return Running average of the create duration for the type in nanoseconds, or 0 if no
+         * ViewHolder of that type was created.
+         */
+        public long getCreateTimeAverageNanos(int viewType) {
+            final TypeStats typeStats = mTypeStats.get(viewType);
+            return typeStats == null ? 0 : typeStats.mCreateRunningAverageNs;
+        }
+
+        /**
+         * @param viewType The view type to query.
+         * @return Running average of the bind duration for the type in nanoseconds, or 0 if no
+         * ViewHolder of that type was bound.
+         */
+        public long getBindTimeAverageNanos(int viewType) {
+            final TypeStats typeStats = mTypeStats.get(viewType);
+            return typeStats == null ? 0 : typeStats.mBindRunningAverageNs;
+        }
+
+        /**
+         * @param viewType The view type to query.
+         * @param bucket Index of the histogram bucket.
+         * @return Number of ViewHolders of the type whose creation took a duration within the
+         * bucket's bounds.
+         * @see #getHistogramBucketUpperBoundNanos(int)
+         */
+        public int getCreateHistogramCount(int viewType, int bucket) {
+            final TypeStats typeStats = mTypeStats.get(viewType);
+            return typeStats == null ? 0 : typeStats.mCreateHistogram[bucket];
+        }
+
+        /**
+         * @param viewType The view type to query.
+         * @param bucket Index of the histogram bucket.
+         * @return Number of binds of the type which took a duration within the bucket's bounds.
+         * @see #getHistogramBucketUpperBoundNanos(int)
+         */
+        public int getBindHistogramCount(int viewType, int bucket) {
+            final TypeStats typeStats = mTypeStats.get(viewType);
+            return typeStats == null ? 0 : typeStats.mBindHistogram[bucket];
+        }
+
+        /**
+         * @return Number of layout passes the RecyclerView completed.
+         */
+        public int getLayoutCount() {
+            return mLayoutCount;
+        }
+
+        /**
+         * @return Running average of the layout pass duration in nanoseconds.
+         */
+        public long getLayoutTimeAverageNanos() {
+            return mLayoutRunningAverageNs;
+        }
+
+        /**
+         * @return Duration of the last layout pass in nanoseconds.
+         */
+        public long getLastLayoutTimeNanos() {
+            return mLastLayoutNs;
+        }
+
+        /**
+         * @return Duration of the longest layout pass in nanoseconds.
+         */
+        public long getMaxLayoutTimeNanos() {
+            return mMaxLayoutNs;
+        }
+    }
+
     /**
      * A Listener interface that can be attached to a RecylcerView to get notified
      * whenever a ViewHolder is attached to or detached from RecyclerView.
@@ -9254,6 +10179,9 @@ public class RecyclerView extends ViewGroup implements ScrollingView, NestedScro
         int mItemViewType = INVALID_TYPE;
         int mPreLayoutPosition = NO_POSITION;
 
+        // Order in which this holder was put into the RecycledViewPool, used for LRU eviction
+        long mPoolSequence;
+
         // The item that this holder is shadowing during an item change event/animation
         ViewHolder mShadowedHolder = null;
         // The item that is shadowing this holder during an item change event/animation
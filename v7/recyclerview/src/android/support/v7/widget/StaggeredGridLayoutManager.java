@@ -2048,6 +2048,38 @@ public class StaggeredGridLayoutManager extends RecyclerView.LayoutManager {
         requestLayout();
     }
 
+    @Override
+    int getItemPrefetchCount() {
+        return mSpanCount;
+    }
+
+    @Override
+    int gatherPrefetchIndices(int dx, int dy, RecyclerView.State state, int[] outIndices) {
+        int delta = (mOrientation == HORIZONTAL) ? dx : dy;
+        if (getChildCount() == 0 || delta == 0) {
+            return 0;
+        }
+        final int referenceChildPosition;
+        if (delta > 0) { // layout towards end
+            setLayoutStateDirection(LAYOUT_END);
+            referenceChildPosition = getLastChildPosition();
+        } else {
+            setLayoutStateDirection(LAYOUT_START);
+            referenceChildPosition = getFirstChildPosition();
+        }
+        // Each span takes the next item once it becomes the shortest one, so the next
+        // mSpanCount items are the best guess for what the upcoming fill will add.
+        final int itemDirection = mLayoutState.mItemDirection;
+        int position = referenceChildPosition + itemDirection;
+        int count = 0;
+        while (count < mSpanCount && position >= 0 && position < state.getItemCount()) {
+            outIndices[count] = position;
+            count++;
+            position += itemDirection;
+        }
+        return count;
+    }
+
     int scrollBy(int dt, RecyclerView.Recycler recycler, RecyclerView.State state) {
         final int referenceChildPosition;
         final int layoutDir;
@@ -306,7 +306,16 @@ class ViewInfoStore {
         int flags;
         @Nullable ItemHolderInfo preInfo;
         @Nullable ItemHolderInfo postInfo;
-        static Pools.Pool<InfoRecord> sPool = new Pools.SimplePool<>(20);
+        // Shared by all RecyclerViews, which may not all be on the same thread
+        static Pools.Pool<InfoRecord> sPool = new Pools.ConcurrentPool<>(20,
+                new Pools.ResetCallback<InfoRecord>() {
+                    @Override
+                    public void reset(InfoRecord record) {
+                        record.flags = 0;
+                        record.preInfo = null;
+                        record.postInfo = null;
+                    }
+                });
 
         private InfoRecord() {
         }
@@ -317,9 +326,6 @@ class ViewInfoStore {
         }
 
         static void recycle(InfoRecord record) {
-            record.flags = 0;
-            record.preInfo = null;
-            record.postInfo = null;
             sPool.release(record);
         }
 
@@ -27,7 +27,9 @@ import android.test.suitebuilder.annotation.MediumTest;
 import android.util.SparseBooleanArray;
 
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import static org.junit.Assert.*;
 
 @MediumTest
@@ -124,6 +126,62 @@ public class AsyncListUtilTest extends BaseThreadedTest {
         assertLoadedItemsOnUiThread("all new items should be loaded", count, position, count);
     }
 
+    @Test
+    public void parallelLoading() throws Throwable {
+        mDataCallback.expectTiles(0, 10, 20);
+        runTestOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                mAsyncListUtil = new AsyncListUtil<String>(
+                        String.class, TILE_SIZE, mDataCallback, mViewCallback, 3);
+            }
+        });
+        mDataCallback.waitForTiles("initial parallel load");
+
+        final int position = 30;
+        final int count = 20;
+        assertLoadedItemsOnUiThread("no new items should be loaded", 0, position, count);
+
+        mViewCallback.expectItemRangeChanged(position, count);
+        scrollAndExpectTiles(20, "scrolling to missing items", 30, 40);
+        mViewCallback.waitForItems();
+
+        assertLoadedItemsOnUiThread("all new items should be loaded", count, position, count);
+        runTestOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                assertTrue(mViewCallback.mLoadedTiles.get(30));
+                assertTrue(mViewCallback.mLoadedTiles.get(40));
+            }
+        });
+    }
+
+    @Test
+    public void parallelLoadingOnGivenExecutor() throws Throwable {
+        final AtomicInteger executed = new AtomicInteger();
+        final Executor executor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                executed.incrementAndGet();
+                new Thread(command).start();
+            }
+        };
+        mDataCallback.expectTiles(0, 10, 20);
+        runTestOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                mAsyncListUtil = new AsyncListUtil<String>(
+                        String.class, TILE_SIZE, mDataCallback, mViewCallback, 3, executor);
+            }
+        });
+        mDataCallback.waitForTiles("initial load on the given executor");
+        assertTrue(executed.get() > 0);
+
+        final int executedBeforeScroll = executed.get();
+        scrollAndExpectTiles(20, "scrolling on the given executor", 30, 40);
+        assertTrue(executed.get() > executedBeforeScroll);
+    }
+
     @UiThread
     private int getLoadedItemCount(int startPosition, int itemCount) {
         int loaded = 0;
@@ -228,6 +286,8 @@ public class AsyncListUtilTest extends BaseThreadedTest {
 
         PositionSetLatch mItemsChangedLatch = new PositionSetLatch("item changed");
 
+        final SparseBooleanArray mLoadedTiles = new SparseBooleanArray();
+
         @Override
         public void getItemRangeInto(int[] outRange) {
             outRange[0] = mFirstVisibleItem;
@@ -257,6 +317,14 @@ public class AsyncListUtilTest extends BaseThreadedTest {
             mItemsChangedLatch.countDown(position);
         }
 
+        @Override
+        public void onTileLoaded(int startPosition, int itemCount, long queuedNanos,
+                long loadNanos) {
+            assertTrue(queuedNanos >= 0);
+            assertTrue(loadNanos >= 0);
+            mLoadedTiles.put(startPosition, true);
+        }
+
         public void expectDataSetChanged(int expectedItemCount) {
             mDataCallback.mDataItemCount = expectedItemCount;
             mExpectedItemCount = expectedItemCount;
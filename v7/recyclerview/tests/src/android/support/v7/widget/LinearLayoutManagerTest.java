@@ -433,6 +433,53 @@ public class LinearLayoutManagerTest extends BaseLinearLayoutManagerTest {
     }
 
 
+    @Test
+    public void gatherPrefetchIndices() throws Throwable {
+        setupByConfig(new Config(VERTICAL, false, false).itemCount(100), true);
+        runTestOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                final int[] outIndices = new int[mLayoutManager.getItemPrefetchCount()];
+                final View lastChild = mLayoutManager.getChildAt(
+                        mLayoutManager.getChildCount() - 1);
+                final int lastChildPosition = mLayoutManager.getPosition(lastChild);
+                assertEquals(1, mLayoutManager.gatherPrefetchIndices(0, 10,
+                        mRecyclerView.mState, outIndices));
+                assertEquals(lastChildPosition + 1, outIndices[0]);
+                // nothing to prefetch above the first item
+                assertEquals(0, mLayoutManager.gatherPrefetchIndices(0, -10,
+                        mRecyclerView.mState, outIndices));
+                // no movement in the layout's orientation
+                assertEquals(0, mLayoutManager.gatherPrefetchIndices(10, 0,
+                        mRecyclerView.mState, outIndices));
+            }
+        });
+    }
+
+    @Test
+    public void prefetchIntoViewCache() throws Throwable {
+        if (!RecyclerView.ALLOW_PREFETCHING) {
+            return;
+        }
+        setupByConfig(new Config(VERTICAL, false, false).itemCount(100), true);
+        runTestOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                final int target = mLayoutManager.getPosition(
+                        mLayoutManager.getChildAt(mLayoutManager.getChildCount() - 1)) + 1;
+                mRecyclerView.mRecycler.prefetch(new int[]{target}, 1, Long.MAX_VALUE);
+                boolean found = false;
+                for (RecyclerView.ViewHolder holder : mRecyclerView.mRecycler.mCachedViews) {
+                    if (holder.mPosition == target) {
+                        found = true;
+                        assertTrue(holder.isBound());
+                    }
+                }
+                assertTrue("prefetched view should be in the view cache", found);
+            }
+        });
+    }
+
     @Test
     public void dontRecycleChildrenOnDetach() throws Throwable {
         setupByConfig(new Config().recycleChildrenOnDetach(false), true);
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v7.widget;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import static android.support.v7.widget.RecyclerView.PerformanceStats.HISTOGRAM_BUCKET_COUNT;
+import static android.support.v7.widget.RecyclerView.PerformanceStats.getHistogramBucket;
+import static android.support.v7.widget.RecyclerView.PerformanceStats
+        .getHistogramBucketUpperBoundNanos;
+import static org.junit.Assert.assertEquals;
+
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class PerformanceStatsTest {
+
+    RecyclerView.PerformanceStats mStats;
+
+    @Before
+    public void setUp() throws Exception {
+        mStats = new RecyclerView.PerformanceStats();
+    }
+
+    @Test
+    public void histogramBuckets() {
+        assertEquals(0, getHistogramBucket(0));
+        assertEquals(0, getHistogramBucket(getHistogramBucketUpperBoundNanos(0) - 1));
+        for (int i = 1; i < HISTOGRAM_BUCKET_COUNT - 1; i++) {
+            assertEquals(i, getHistogramBucket(getHistogramBucketUpperBoundNanos(i - 1)));
+            assertEquals(i, getHistogramBucket(getHistogramBucketUpperBoundNanos(i) - 1));
+        }
+        assertEquals(HISTOGRAM_BUCKET_COUNT - 1, getHistogramBucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void recordCreateAndBind() {
+        final long fast = getHistogramBucketUpperBoundNanos(0) / 2;
+        final long slow = getHistogramBucketUpperBoundNanos(3) + 1;
+        mStats.recordCreate(1, slow);
+        mStats.recordBind(1, fast);
+        mStats.recordBind(1, fast);
+        mStats.recordCreate(2, fast);
+        assertEquals(2, mStats.getCreateCount());
+        assertEquals(1, mStats.getCreateCount(1));
+        assertEquals(2, mStats.getBindCount(1));
+        assertEquals(0, mStats.getBindCount(2));
+        assertEquals(slow, mStats.getCreateTimeAverageNanos(1));
+        assertEquals(fast, mStats.getBindTimeAverageNanos(1));
+        assertEquals(1, mStats.getCreateHistogramCount(1, 4));
+        assertEquals(2, mStats.getBindHistogramCount(1, 0));
+        assertEquals(1, mStats.getCreateHistogramCount(2, 0));
+    }
+
+    @Test
+    public void recordLayout() {
+        mStats.recordLayout(400);
+        mStats.recordLayout(800);
+        mStats.recordLayout(200);
+        assertEquals(3, mStats.getLayoutCount());
+        assertEquals(200, mStats.getLastLayoutTimeNanos());
+        assertEquals(800, mStats.getMaxLayoutTimeNanos());
+        mStats.reset();
+        assertEquals(0, mStats.getLayoutCount());
+        assertEquals(0, mStats.getMaxLayoutTimeNanos());
+        assertEquals(0, mStats.getCreateCount(1));
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v7.widget;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.view.View;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class RecycledViewPoolTest {
+
+    RecyclerView.RecycledViewPool mPool;
+
+    @Before
+    public void setUp() throws Exception {
+        mPool = new RecyclerView.RecycledViewPool();
+    }
+
+    private Context getContext() {
+        return InstrumentationRegistry.getContext();
+    }
+
+    private RecyclerView.ViewHolder createHolder(int viewType) {
+        RecyclerView.ViewHolder holder = new RecyclerView.ViewHolder(new View(getContext())) {};
+        holder.mItemViewType = viewType;
+        return holder;
+    }
+
+    @Test
+    public void perTypeLimit() {
+        mPool.setMaxRecycledViews(0, 2);
+        for (int i = 0; i < 4; i++) {
+            mPool.putRecycledView(createHolder(0));
+        }
+        assertEquals(2, mPool.size());
+    }
+
+    @Test
+    public void hitAndMissCounts() {
+        RecyclerView.ViewHolder holder = createHolder(3);
+        mPool.putRecycledView(holder);
+        assertSame(holder, mPool.getRecycledView(3));
+        assertNull(mPool.getRecycledView(3));
+        assertEquals(1, mPool.hitCount(3));
+        assertEquals(1, mPool.missCount(3));
+        assertEquals(0, mPool.hitCount(4));
+    }
+
+    @Test
+    public void globalLimitEvictsLeastRecentlyRecycled() {
+        mPool.setGlobalMaxRecycledViews(3);
+        RecyclerView.ViewHolder first = createHolder(0);
+        RecyclerView.ViewHolder second = createHolder(1);
+        RecyclerView.ViewHolder third = createHolder(0);
+        RecyclerView.ViewHolder fourth = createHolder(2);
+        mPool.putRecycledView(first);
+        mPool.putRecycledView(second);
+        mPool.putRecycledView(third);
+        mPool.putRecycledView(fourth);
+        assertEquals(3, mPool.size());
+        assertEquals(1, mPool.evictionCount());
+        // first was the oldest one, so only third is left for type 0
+        assertSame(third, mPool.getRecycledView(0));
+        assertNull(mPool.getRecycledView(0));
+        assertSame(second, mPool.getRecycledView(1));
+        assertSame(fourth, mPool.getRecycledView(2));
+    }
+
+    @Test
+    public void loweringGlobalLimitTrims() {
+        for (int i = 0; i < 4; i++) {
+            mPool.putRecycledView(createHolder(i));
+        }
+        mPool.setGlobalMaxRecycledViews(1);
+        assertEquals(1, mPool.size());
+        assertEquals(3, mPool.evictionCount());
+        assertTrue(mPool.getRecycledView(3) != null);
+    }
+
+    @Test
+    public void capacityAdaptsToMisses() {
+        mPool.setGlobalMaxRecycledViews(20);
+        mPool.putRecycledView(createHolder(0));
+        final int initialMax = mPool.getMaxRecycledViews(0);
+        mPool.getRecycledView(0);
+        mPool.getRecycledView(0);
+        assertEquals(initialMax + 1, mPool.getMaxRecycledViews(0));
+        for (int i = 0; i < initialMax + 1; i++) {
+            mPool.putRecycledView(createHolder(0));
+        }
+        assertEquals(initialMax + 1, mPool.size());
+    }
+
+    @Test
+    public void missOfUnseenTypeIsCounted() {
+        mPool.setGlobalMaxRecycledViews(20);
+        final int initialMax = mPool.getMaxRecycledViews(5);
+        assertNull(mPool.getRecycledView(5));
+        assertEquals(1, mPool.missCount(5));
+        assertEquals(initialMax + 1, mPool.getMaxRecycledViews(5));
+    }
+
+    @Test
+    public void capacityDecaysWithSpareHits() {
+        mPool.setGlobalMaxRecycledViews(20);
+        final int initialMax = mPool.getMaxRecycledViews(0);
+        mPool.getRecycledView(0);
+        mPool.getRecycledView(0);
+        assertEquals(initialMax + 2, mPool.getMaxRecycledViews(0));
+        for (int i = 0; i < initialMax + 2; i++) {
+            mPool.putRecycledView(createHolder(0));
+        }
+
+        // Every request leaves holders in the pool
+        for (int i = 0; i < RecyclerView.RecycledViewPool.CAPACITY_DECAY_HITS; i++) {
+            mPool.putRecycledView(mPool.getRecycledView(0));
+        }
+        assertEquals(initialMax + 1, mPool.getMaxRecycledViews(0));
+        assertEquals(initialMax + 1, mPool.size());
+
+        // Never below the default
+        for (int i = 0; i < RecyclerView.RecycledViewPool.CAPACITY_DECAY_HITS * 4; i++) {
+            mPool.putRecycledView(mPool.getRecycledView(0));
+        }
+        assertEquals(initialMax, mPool.getMaxRecycledViews(0));
+    }
+
+    @Test
+    public void capacityDoesNotAdaptWhenFixed() {
+        mPool.setGlobalMaxRecycledViews(20);
+        mPool.setMaxRecycledViews(0, 1);
+        mPool.getRecycledView(0);
+        mPool.getRecycledView(0);
+        assertEquals(1, mPool.getMaxRecycledViews(0));
+    }
+
+    @Test
+    public void createAndBindAverages() {
+        mPool.factorInCreateTime(1, 1000);
+        mPool.factorInCreateTime(1, 2000);
+        mPool.factorInBindTime(1, 400);
+        assertEquals(1250, mPool.getCreateTimeAverageNanos(1));
+        assertEquals(400, mPool.getBindTimeAverageNanos(1));
+        assertEquals(2, mPool.createCount(1));
+        // pool is empty, so both create and bind must fit
+        assertTrue(mPool.willCompleteInTime(1, 0, 2000));
+        assertTrue(!mPool.willCompleteInTime(1, 0, 1500));
+        mPool.putRecycledView(createHolder(1));
+        assertTrue(mPool.willCompleteInTime(1, 0, 1500));
+    }
+}